@@ -26,5 +26,6 @@ if [ ! -z "${N4J_RESULTS}" ] && [ -d "${N4J_RESULTS}" ] ; then
   echo "Copying test ${N4J_TEST} results to ${N4J_RESULTS}"  
   [ ! -d "build/test-results/test" ] || cp -r "build/test-results" "${N4J_RESULTS}/"     
   [ ! -d "build/reports/tests/test" ] || cp -r "build/reports" "${N4J_RESULTS}/"     
+  [ ! -d "build/n4j-results" ] || cp -r "build/n4j-results" "${N4J_RESULTS}/"
   chmod --recursive go+=rwX "${N4J_RESULTS}"/*
 fi
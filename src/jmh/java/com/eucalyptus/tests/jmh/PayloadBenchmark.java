@@ -0,0 +1,86 @@
+package com.eucalyptus.tests.jmh;
+
+import com.eucalyptus.tests.load.Payload;
+import com.eucalyptus.tests.load.SeededContent;
+import com.google.common.collect.Iterators;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of object payload streams, both construction and reading the full
+ * payload as the client would, for the Guava concatenated stream previously
+ * used by ObjectChurnLoadTest, the shared block Payload and SeededContent.
+ *
+ * Verification of seeded content reads the content as it is generated.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class PayloadBenchmark {
+
+  private final byte[] data = new byte[ 1024 * 1024 /*    1MiB */ ];
+  private final ByteSource byteSource = ByteSource.wrap( data );
+  private final Payload payload = Payload.of( data );
+  private final SeededContent content = new SeededContent( 42L );
+
+  @Param( { "10485760", "104857600" } )
+  public long size;
+
+  @Benchmark
+  public InputStream concatOpen( ) throws IOException {
+    return concatStream( );
+  }
+
+  @Benchmark
+  public long concatRead( ) throws IOException {
+    try ( final InputStream in = concatStream( ) ) {
+      return ByteStreams.copy( in, ByteStreams.nullOutputStream( ) );
+    }
+  }
+
+  @Benchmark
+  public InputStream payloadOpen( ) {
+    return payload.stream( size );
+  }
+
+  @Benchmark
+  public long payloadRead( ) throws IOException {
+    try ( final InputStream in = payload.stream( size ) ) {
+      return ByteStreams.copy( in, ByteStreams.nullOutputStream( ) );
+    }
+  }
+
+  @Benchmark
+  public long seededRead( ) throws IOException {
+    try ( final InputStream in = content.stream( 0, size ) ) {
+      return ByteStreams.copy( in, ByteStreams.nullOutputStream( ) );
+    }
+  }
+
+  @Benchmark
+  public long seededVerify( ) throws IOException {
+    content.verify( content.stream( 0, size ), 0, size );
+    return size;
+  }
+
+  private InputStream concatStream( ) throws IOException {
+    return ByteSource.concat( Iterators.limit( Iterators.cycle( byteSource ), (int) ( size / data.length ) ) ).openStream( );
+  }
+}
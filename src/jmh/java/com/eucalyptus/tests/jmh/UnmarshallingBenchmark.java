@@ -0,0 +1,137 @@
+package com.eucalyptus.tests.jmh;
+
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.transform.DescribeInstancesResultStaxUnmarshaller;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.transform.XmlResponsesSaxParser;
+import com.amazonaws.transform.StaxUnmarshallerContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of unmarshalling large DescribeInstances and ListObjects responses,
+ * as seen when describing or cleaning up resources for many accounts.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class UnmarshallingBenchmark {
+
+  @Param( { "10", "1000" } )
+  public int count;
+
+  private final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance( );
+  private byte[] describeInstances;
+  private byte[] listObjects;
+
+  @Setup
+  public void setup( ) {
+    describeInstances = describeInstancesXml( count ).getBytes( StandardCharsets.UTF_8 );
+    listObjects = listObjectsXml( count ).getBytes( StandardCharsets.UTF_8 );
+  }
+
+  @Benchmark
+  public DescribeInstancesResult describeInstances( ) throws Exception {
+    final XMLEventReader reader = xmlInputFactory.createXMLEventReader( new ByteArrayInputStream( describeInstances ) );
+    try {
+      return DescribeInstancesResultStaxUnmarshaller.getInstance( ).unmarshall( new StaxUnmarshallerContext( reader ) );
+    } finally {
+      reader.close( );
+    }
+  }
+
+  @Benchmark
+  public ObjectListing listObjects( ) throws Exception {
+    return new XmlResponsesSaxParser( )
+        .parseListBucketObjectsResponse( new ByteArrayInputStream( listObjects ), false )
+        .getObjectListing( );
+  }
+
+  /**
+   * One reservation per instance, as for instances launched by separate
+   * RunInstances requests.
+   */
+  private static String describeInstancesXml( final int count ) {
+    final StringBuilder xml = new StringBuilder( )
+        .append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" )
+        .append( "<DescribeInstancesResponse xmlns=\"http://ec2.amazonaws.com/doc/2016-11-15/\">" )
+        .append( "<requestId>00000000-0000-0000-0000-000000000000</requestId>" )
+        .append( "<reservationSet>" );
+    for ( int i = 0; i < count; i++ ) {
+      final String id = String.format( "%08x", i );
+      xml.append( "<item>" )
+          .append( "<reservationId>r-" ).append( id ).append( "</reservationId>" )
+          .append( "<ownerId>000000000001</ownerId>" )
+          .append( "<groupSet><item><groupId>sg-00000001</groupId><groupName>default</groupName></item></groupSet>" )
+          .append( "<instancesSet><item>" )
+          .append( "<instanceId>i-" ).append( id ).append( "</instanceId>" )
+          .append( "<imageId>emi-00000001</imageId>" )
+          .append( "<instanceState><code>16</code><name>running</name></instanceState>" )
+          .append( "<privateDnsName>euca-172-31-0-1.eucalyptus.internal</privateDnsName>" )
+          .append( "<dnsName>euca-10-111-0-1.eucalyptus.local</dnsName>" )
+          .append( "<reason/>" )
+          .append( "<keyName>n4j-key</keyName>" )
+          .append( "<amiLaunchIndex>0</amiLaunchIndex>" )
+          .append( "<productCodes/>" )
+          .append( "<instanceType>t2.micro</instanceType>" )
+          .append( "<launchTime>2019-01-01T00:00:00.000Z</launchTime>" )
+          .append( "<placement><availabilityZone>one</availabilityZone><tenancy>default</tenancy></placement>" )
+          .append( "<kernelId>eki-00000001</kernelId>" )
+          .append( "<ramdiskId>eri-00000001</ramdiskId>" )
+          .append( "<monitoring><state>disabled</state></monitoring>" )
+          .append( "<privateIpAddress>172.31.0.1</privateIpAddress>" )
+          .append( "<ipAddress>10.111.0.1</ipAddress>" )
+          .append( "<groupSet><item><groupId>sg-00000001</groupId><groupName>default</groupName></item></groupSet>" )
+          .append( "<architecture>x86_64</architecture>" )
+          .append( "<rootDeviceType>instance-store</rootDeviceType>" )
+          .append( "<blockDeviceMapping/>" )
+          .append( "<virtualizationType>hvm</virtualizationType>" )
+          .append( "<clientToken/>" )
+          .append( "<tagSet><item><key>Name</key><value>n4j-" ).append( id ).append( "</value></item></tagSet>" )
+          .append( "<hypervisor>xen</hypervisor>" )
+          .append( "</item></instancesSet>" )
+          .append( "</item>" );
+    }
+    return xml.append( "</reservationSet></DescribeInstancesResponse>" ).toString( );
+  }
+
+  private static String listObjectsXml( final int count ) {
+    final StringBuilder xml = new StringBuilder( )
+        .append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" )
+        .append( "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">" )
+        .append( "<Name>n4j-benchmark-bucket</Name>" )
+        .append( "<Prefix></Prefix>" )
+        .append( "<Marker></Marker>" )
+        .append( "<MaxKeys>" ).append( count ).append( "</MaxKeys>" )
+        .append( "<IsTruncated>false</IsTruncated>" );
+    for ( int i = 0; i < count; i++ ) {
+      xml.append( "<Contents>" )
+          .append( "<Key>n4j-object-" ).append( i ).append( "</Key>" )
+          .append( "<LastModified>2019-01-01T00:00:00.000Z</LastModified>" )
+          .append( "<ETag>&quot;d41d8cd98f00b204e9800998ecf8427e&quot;</ETag>" )
+          .append( "<Size>10485760</Size>" )
+          .append( "<Owner><ID>000000000001</ID><DisplayName>eucalyptus</DisplayName></Owner>" )
+          .append( "<StorageClass>STANDARD</StorageClass>" )
+          .append( "</Contents>" );
+    }
+    return xml.append( "</ListBucketResult>" ).toString( );
+  }
+}
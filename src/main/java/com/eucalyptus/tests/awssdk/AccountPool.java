@@ -0,0 +1,332 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.github.sjones4.youcan.youare.YouAre;
+import com.github.sjones4.youcan.youare.model.Account;
+import com.github.sjones4.youcan.youare.model.CreateAccountRequest;
+import com.github.sjones4.youcan.youare.model.DeleteAccountRequest;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pool of pre-provisioned test accounts.
+ *
+ * Accounts and their admin credentials are created in the background, in
+ * parallel, when the pool is first used (or when provision is called) and
+ * are leased to test classes. A released account has its resources scrubbed
+ * in the background (using ResourceCleaner, BucketDrainer and deleting SQS
+ * queues) and is then returned to the pool, an account that cannot be
+ * scrubbed is deleted and replaced. Pooled accounts are deleted at JVM exit.
+ *
+ * The pool is configured via system properties:
+ *
+ *   n4j.account-pool.size          - number of pooled accounts, 0 to disable (default 4)
+ *   n4j.account-pool.parallelism   - concurrent account provisioning/scrubbing (default 4)
+ *   n4j.account-pool.lease-timeout - maximum time to wait for an account (default 10m)
+ *   n4j.account-pool.keep          - keep pooled accounts at exit for reuse by later runs (default false)
+ *
+ * When the pool is disabled each lease creates a new account that is
+ * deleted on release.
+ */
+public final class AccountPool {
+
+  private static final int SIZE = Integer.getInteger( "n4j.account-pool.size", 4 );
+  private static final int PARALLELISM = Integer.getInteger( "n4j.account-pool.parallelism", 4 );
+  private static final long LEASE_TIMEOUT_MILLIS = N4j.parseInterval(
+      System.getProperty( "n4j.account-pool.lease-timeout", "10m" ), TimeUnit.MINUTES.toMillis( 10 ) );
+  private static final boolean KEEP =
+      Boolean.valueOf( System.getProperty( "n4j.account-pool.keep", "false" ) );
+  private static final String PREFIX = KEEP ? "n4j-pool-" : "n4j-pool-" + N4j.eucaUUID( ) + "-";
+
+  private static final ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max( 1, PARALLELISM ),
+      new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "n4j-account-pool-%d" ).build( ) );
+  private static final BlockingQueue<Lease> available = new LinkedBlockingQueue<>( );
+  private static final Set<String> accounts = ConcurrentHashMap.newKeySet( );
+  private static final AtomicInteger live = new AtomicInteger( );
+  private static final AtomicInteger counter = new AtomicInteger( );
+  private static final AtomicReference<Throwable> lastFailure = new AtomicReference<>( );
+  private static final AtomicBoolean provisioned = new AtomicBoolean( false );
+
+  static {
+    if ( !KEEP ) {
+      ClientRegistry.beforeShutdown( AccountPool::deleteAll );
+    }
+  }
+
+  private AccountPool( ) {
+  }
+
+  /**
+   * Start provisioning pooled accounts in the background.
+   *
+   * Cloud endpoints and admin credentials must be initialized. Calling this
+   * early in a run takes account setup out of the critical path.
+   */
+  public static void provision( ) {
+    if ( SIZE > 0 && provisioned.compareAndSet( false, true ) ) {
+      N4j.print( "Provisioning " + SIZE + " pooled accounts" );
+      for ( int i = 0; i < SIZE; i++ ) {
+        provisionAccount( );
+      }
+    }
+  }
+
+  /**
+   * Lease an account, waiting for a pooled account to become available.
+   *
+   * @param purpose Description of the lease, used for logging and for the
+   *                account name when the pool is disabled
+   * @return The lease, which must be released when no longer required
+   */
+  public static Lease lease( final String purpose ) {
+    if ( SIZE <= 0 ) {
+      final String accountName = ( N4j.NAME_PREFIX == null ? N4j.eucaUUID( ) + "-" : N4j.NAME_PREFIX ) +
+          purpose.toLowerCase( ).replaceAll( "[^a-z0-9-]", "-" );
+      final String accountId = createAccount( accountName );
+      return new Lease( accountName, accountId, N4j.getUserCreds( accountName, "admin" ), false );
+    }
+    provision( );
+    final long deadline = System.currentTimeMillis( ) + LEASE_TIMEOUT_MILLIS;
+    try {
+      while ( System.currentTimeMillis( ) < deadline ) {
+        final Lease lease = available.poll( 1, TimeUnit.SECONDS );
+        if ( lease != null ) {
+          lease.leased( );
+          N4j.print( "Leased pooled account " + lease.getAccountName( ) + " for " + purpose );
+          return lease;
+        }
+        if ( live.get( ) <= 0 ) {
+          throw new IllegalStateException( "No pooled accounts available", lastFailure.get( ) );
+        }
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      throw new IllegalStateException( "Interrupted waiting for pooled account" );
+    }
+    throw new IllegalStateException( "Timed out waiting for pooled account for " + purpose );
+  }
+
+  /**
+   * Lease an account for the given test class.
+   */
+  public static Lease lease( final Class<?> testClass ) {
+    return lease( testClass.getSimpleName( ) );
+  }
+
+  /**
+   * Number of accounts currently available for lease
+   */
+  public static int available( ) {
+    return available.size( );
+  }
+
+  /**
+   * Delete all pooled accounts.
+   */
+  public static void deleteAll( ) {
+    final List<CompletableFuture<Void>> deletes = new ArrayList<>( );
+    for ( final String accountName : new ArrayList<>( accounts ) ) {
+      deletes.add( CompletableFuture.runAsync( ( ) -> deleteAccount( accountName ), executor ) );
+    }
+    available.clear( );
+    for ( final CompletableFuture<Void> delete : deletes ) {
+      try {
+        delete.get( 1, TimeUnit.MINUTES );
+      } catch ( final Exception e ) {
+        N4j.print( "Error deleting pooled account: " + e );
+      }
+    }
+  }
+
+  private static void provisionAccount( ) {
+    live.incrementAndGet( );
+    final String accountName = PREFIX + counter.incrementAndGet( );
+    CompletableFuture.runAsync( ( ) -> {
+      final String accountId = createAccount( accountName );
+      accounts.add( accountName );
+      final Lease lease = new Lease( accountName, accountId, N4j.getUserCreds( accountName, "admin" ), true );
+      scrub( lease ); // account may be left over from an earlier run
+      available.add( lease );
+      N4j.print( "Pooled account " + accountName + " [" + accountId + "] available" );
+    }, executor ).whenComplete( ( result, throwable ) -> {
+      if ( throwable != null ) {
+        N4j.print( "Error provisioning pooled account " + accountName + ": " + throwable );
+        lastFailure.set( throwable );
+        live.decrementAndGet( );
+        if ( accounts.contains( accountName ) ) {
+          CompletableFuture.runAsync( ( ) -> deleteAccount( accountName ), executor );
+        }
+      }
+    } );
+  }
+
+  private static void release( final Lease lease ) {
+    if ( !lease.pooled ) {
+      deleteAccount( lease.getAccountName( ) );
+      return;
+    }
+    CompletableFuture.runAsync( ( ) -> scrub( lease ), executor ).whenComplete( ( result, throwable ) -> {
+      if ( throwable == null ) {
+        available.add( lease );
+        N4j.print( "Pooled account " + lease.getAccountName( ) + " returned" );
+      } else {
+        N4j.print( "Error scrubbing pooled account " + lease.getAccountName( ) + ", replacing: " + throwable );
+        live.decrementAndGet( );
+        CompletableFuture.runAsync( ( ) -> deleteAccount( lease.getAccountName( ) ), executor )
+            .whenComplete( ( deleted, deleteThrowable ) -> provisionAccount( ) );
+      }
+    } );
+  }
+
+  private static YouAre youAre( ) {
+    return N4j.getYouAreClient( N4j.getAdminCredentialsProvider( ), N4j.IAM_ENDPOINT );
+  }
+
+  private static String createAccount( final String accountName ) {
+    try {
+      final String accountId = youAre( ).createAccount( new CreateAccountRequest( ).withAccountName( accountName ) )
+          .getAccount( ).getAccountId( );
+      N4j.print( "Created account: " + accountName + " [" + accountId + "]" );
+      return accountId;
+    } catch ( final AmazonServiceException e ) {
+      if ( !"EntityAlreadyExists".equals( e.getErrorCode( ) ) ) throw e;
+      for ( final Account account : youAre( ).listAccounts( ).getAccounts( ) ) {
+        if ( accountName.equals( account.getAccountName( ) ) ) {
+          N4j.print( "Using existing account: " + accountName + " [" + account.getAccountId( ) + "]" );
+          return account.getAccountId( );
+        }
+      }
+      throw e;
+    }
+  }
+
+  private static void deleteAccount( final String accountName ) {
+    try {
+      youAre( ).deleteAccount( new DeleteAccountRequest( ).withAccountName( accountName ).withRecursive( true ) );
+      N4j.print( "Deleted account: " + accountName );
+    } catch ( final AmazonServiceException e ) {
+      if ( e.getStatusCode( ) != 404 ) throw e;
+    } finally {
+      accounts.remove( accountName );
+      CredentialCache.evictAccount( accountName );
+    }
+  }
+
+  /**
+   * Remove resources created in the account.
+   *
+   * @throws IllegalStateException if any resource could not be removed
+   */
+  private static void scrub( final Lease lease ) {
+    final long start = System.currentTimeMillis( );
+    final ResourceCleaner.Report report =
+        new ResourceCleaner( lease.getAccountName( ), lease.getCredentialsProvider( ) ).clean( );
+    if ( report.getFailures( ) > 0 ) {
+      throw new IllegalStateException( report.getFailures( ) + " resources not deleted" );
+    }
+    if ( N4j.S3_ENDPOINT != null ) {
+      final AmazonS3 s3 = N4j.getS3Client( lease.getCredentialsProvider( ), N4j.S3_ENDPOINT );
+      final BucketDrainer drainer = new BucketDrainer( s3 );
+      for ( final Bucket bucket : s3.listBuckets( ) ) {
+        final BucketDrainer.Result result = drainer.drainAndDelete( bucket.getName( ) );
+        if ( result.getErrors( ) > 0 ) {
+          throw new IllegalStateException( result.getErrors( ) + " objects not deleted from " + bucket.getName( ) );
+        }
+      }
+    }
+    if ( N4j.SQS_ENDPOINT != null ) {
+      scrubSqs( N4j.getSqsClient(
+          lease.getCredentials( ).getAWSAccessKeyId( ),
+          lease.getCredentials( ).getAWSSecretKey( ),
+          N4j.SQS_ENDPOINT ) );
+    }
+    N4j.print( "Scrubbed account " + lease.getAccountName( ) + " in " + ( System.currentTimeMillis( ) - start ) + "ms" );
+  }
+
+  private static void scrubSqs( final AmazonSQS sqs ) {
+    sqs.listQueues( ).getQueueUrls( ).forEach( sqs::deleteQueue );
+  }
+
+  /**
+   * A leased account with admin credentials.
+   */
+  public static final class Lease {
+    private final String accountName;
+    private final String accountId;
+    private final AWSCredentials credentials;
+    private final boolean pooled;
+    private final AtomicBoolean released = new AtomicBoolean( true );
+
+    private Lease(
+        final String accountName,
+        final String accountId,
+        final AWSCredentials credentials,
+        final boolean pooled
+    ) {
+      this.accountName = accountName;
+      this.accountId = accountId;
+      this.credentials = credentials;
+      this.pooled = pooled;
+      if ( !pooled ) leased( );
+    }
+
+    public String getAccountName( ) {
+      return accountName;
+    }
+
+    public String getAccountId( ) {
+      return accountId;
+    }
+
+    /**
+     * Credentials for the admin user of the account
+     */
+    public AWSCredentials getCredentials( ) {
+      return credentials;
+    }
+
+    public AWSCredentialsProvider getCredentialsProvider( ) {
+      return new AWSStaticCredentialsProvider( credentials );
+    }
+
+    /**
+     * Return the account to the pool, resources in the account are removed.
+     *
+     * Releasing a lease more than once has no effect.
+     */
+    public void release( ) {
+      if ( released.compareAndSet( false, true ) ) {
+        AccountPool.release( this );
+      }
+    }
+
+    private void leased( ) {
+      released.set( false );
+    }
+
+    @Override
+    public String toString( ) {
+      return "Lease{account=" + accountName + "}";
+    }
+  }
+}
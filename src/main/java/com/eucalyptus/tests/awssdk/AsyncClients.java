@@ -0,0 +1,124 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Shared executor and CompletableFuture adapters for async service clients.
+ *
+ * Async clients built via the N4j factory (e.g. getEc2AsyncClient) all run
+ * their requests on one bounded executor, so the number of threads used for
+ * requests does not grow with the number of operations in flight. Requests
+ * beyond the executor queue capacity run on the submitting thread, slowing
+ * callers that get too far ahead.
+ *
+ * Async clients built on the shared executor are cached by the
+ * ClientRegistry and must not be shut down by callers, shutting down an
+ * async client shuts down its executor.
+ *
+ * The executor is configured via system properties:
+ *
+ *   n4j.async.threads - threads for async requests (default 100)
+ *   n4j.async.queue   - queued requests before callers run requests (default 10000)
+ */
+public final class AsyncClients {
+
+  private static final int THREADS = Integer.getInteger( "n4j.async.threads", 100 );
+  private static final int QUEUE = Integer.getInteger( "n4j.async.queue", 10_000 );
+
+  private static final ThreadPoolExecutor executor = buildExecutor( );
+
+  private AsyncClients( ) {
+  }
+
+  /**
+   * The shared executor for async clients.
+   */
+  public static ExecutorService executor( ) {
+    return executor;
+  }
+
+  /**
+   * Adapt an async client call to a CompletableFuture.
+   *
+   * Usage:
+   *
+   *   AsyncClients.future( handler -> sqs.sendMessageAsync( request, handler ) )
+   *
+   * @param call Function making the async call with the given handler
+   * @return Future completed with the result or error of the call
+   */
+  public static <Q extends AmazonWebServiceRequest,R> CompletableFuture<R> future(
+      final Function<AsyncHandler<Q,R>,Future<R>> call
+  ) {
+    final CompletableFuture<R> future = new CompletableFuture<>( );
+    try {
+      final Future<R> requestFuture = call.apply( new AsyncHandler<Q,R>( ) {
+        @Override
+        public void onError( final Exception exception ) {
+          future.completeExceptionally( exception );
+        }
+
+        @Override
+        public void onSuccess( final Q request, final R result ) {
+          future.complete( result );
+        }
+      } );
+      future.whenComplete( ( result, throwable ) -> {
+        if ( future.isCancelled( ) ) requestFuture.cancel( true );
+      } );
+    } catch ( final RuntimeException e ) {
+      future.completeExceptionally( e );
+    }
+    return future;
+  }
+
+  /**
+   * Run a blocking call on the shared executor.
+   *
+   * For services without an async client, e.g. S3.
+   */
+  public static <R> CompletableFuture<R> supply( final Callable<R> call ) {
+    final CompletableFuture<R> future = new CompletableFuture<>( );
+    executor.execute( ( ) -> {
+      try {
+        future.complete( call.call( ) );
+      } catch ( final Throwable t ) {
+        future.completeExceptionally( t );
+      }
+    } );
+    return future;
+  }
+
+  /**
+   * Number of requests in progress or waiting for a thread.
+   */
+  public static int pending( ) {
+    return executor.getActiveCount( ) + executor.getQueue( ).size( );
+  }
+
+  private static ThreadPoolExecutor buildExecutor( ) {
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        THREADS,
+        THREADS,
+        60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>( QUEUE ),
+        new ThreadFactoryBuilder( )
+            .setDaemon( true )
+            .setNameFormat( "n4j-async-client-%d" )
+            .build( ),
+        new ThreadPoolExecutor.CallerRunsPolicy( ) );
+    executor.allowCoreThreadTimeOut( true );
+    return executor;
+  }
+}
@@ -0,0 +1,337 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.BucketVersioningConfiguration;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ListVersionsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.S3VersionSummary;
+import com.amazonaws.services.s3.model.VersionListing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Deletes all content from buckets.
+ *
+ * The bucket root is listed once with a delimiter, keys at the root are
+ * deleted as they are listed and each first level prefix is listed
+ * concurrently as it is found. Objects (or all versions and delete markers for
+ * buckets that have had versioning enabled) are deleted using multi-object
+ * delete requests of up to 1000 keys and incomplete multipart uploads are
+ * aborted. If the service does not implement multi-object delete then keys
+ * are deleted individually.
+ *
+ * Concurrency is configured via system properties:
+ *
+ *   n4j.drain.threads      - maximum concurrent delete requests (default 20)
+ *   n4j.drain.list-threads - maximum concurrent listings (default 4)
+ */
+public final class BucketDrainer {
+
+  private static final int THREADS = Integer.getInteger( "n4j.drain.threads", 20 );
+  private static final int LIST_THREADS = Integer.getInteger( "n4j.drain.list-threads", 4 );
+  private static final int BATCH_SIZE = 1000;
+  private static final String DELIMITER = "/";
+
+  private static final ExecutorService deleteExecutor = Executors.newFixedThreadPool(
+      Math.max( 1, THREADS ),
+      new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "n4j-drain-%d" ).build( ) );
+  private static final ExecutorService listExecutor = Executors.newFixedThreadPool(
+      Math.max( 1, LIST_THREADS ),
+      new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "n4j-drain-list-%d" ).build( ) );
+
+  private final AmazonS3 s3;
+  private volatile boolean multiObjectDelete = true;
+
+  /**
+   * Create a drainer using the given client.
+   *
+   * @param s3 The client, which is not shut down by the drainer
+   */
+  public BucketDrainer( final AmazonS3 s3 ) {
+    this.s3 = s3;
+  }
+
+  /**
+   * Delete all objects, versions and multipart uploads from the bucket.
+   *
+   * @param bucket The bucket name
+   * @return The result
+   */
+  public Result drain( final String bucket ) {
+    final Result result = new Result( bucket );
+    final long start = System.currentTimeMillis( );
+    final boolean versioned = !BucketVersioningConfiguration.OFF.equals(
+        s3.getBucketVersioningConfiguration( bucket ).getStatus( ) );
+    final Semaphore inFlight = new Semaphore( Math.max( 1, THREADS ) * 2 );
+    final Queue<CompletableFuture<Void>> deletes = new ConcurrentLinkedQueue<>( );
+
+    final BatchConsumer consumer = batch -> {
+      acquire( inFlight );
+      deletes.add( CompletableFuture.runAsync( ( ) -> {
+        try {
+          delete( bucket, batch, result );
+        } finally {
+          inFlight.release( );
+        }
+      }, deleteExecutor ) );
+    };
+    final Queue<CompletableFuture<Void>> listings = new ConcurrentLinkedQueue<>( );
+    listings.add( CompletableFuture.runAsync( ( ) -> abortUploads( bucket, result ), listExecutor ) );
+    final CompletableFuture<Void> root = CompletableFuture.runAsync( ( ) ->
+        list( bucket, "", DELIMITER, versioned, consumer, prefix ->
+            listings.add( CompletableFuture.runAsync( ( ) ->
+                list( bucket, prefix, null, versioned, consumer, null ), listExecutor ) ) ), listExecutor );
+    try {
+      // prefix listings are all added before the root listing completes
+      root.join( );
+      CompletableFuture.allOf( listings.toArray( new CompletableFuture<?>[ 0 ] ) ).join( );
+    } finally {
+      CompletableFuture.allOf( listings.toArray( new CompletableFuture<?>[ 0 ] ) ).exceptionally( t -> null ).join( );
+      CompletableFuture.allOf( deletes.toArray( new CompletableFuture<?>[ 0 ] ) ).join( );
+      result.elapsedMillis = System.currentTimeMillis( ) - start;
+    }
+    N4j.print( result.toString( ) );
+    return result;
+  }
+
+  /**
+   * Drain and then delete the bucket.
+   *
+   * @param bucket The bucket name
+   * @return The drain result
+   */
+  public Result drainAndDelete( final String bucket ) {
+    final Result result = drain( bucket );
+    N4j.print( "Deleting bucket " + bucket );
+    s3.deleteBucket( bucket );
+    return result;
+  }
+
+  /**
+   * List keys with the prefix, passing batches of keys to the consumer and
+   * any common prefixes (when listing with a delimiter) to the prefix consumer.
+   */
+  private void list(
+      final String bucket,
+      final String prefix,
+      final String delimiter,
+      final boolean versioned,
+      final BatchConsumer consumer,
+      final Consumer<String> prefixConsumer
+  ) {
+    if ( versioned ) {
+      VersionListing listing = s3.listVersions( new ListVersionsRequest( )
+          .withBucketName( bucket )
+          .withPrefix( prefix )
+          .withDelimiter( delimiter )
+          .withMaxResults( BATCH_SIZE ) );
+      while ( true ) {
+        final List<Key> batch = new ArrayList<>( );
+        for ( final S3VersionSummary summary : listing.getVersionSummaries( ) ) {
+          batch.add( new Key( summary.getKey( ), summary.getVersionId( ), summary.isDeleteMarker( ) ) );
+        }
+        if ( !batch.isEmpty( ) ) consumer.accept( batch );
+        if ( prefixConsumer != null ) listing.getCommonPrefixes( ).forEach( prefixConsumer );
+        if ( !listing.isTruncated( ) ) break;
+        listing = s3.listNextBatchOfVersions( listing );
+      }
+    } else {
+      ObjectListing listing = s3.listObjects( new ListObjectsRequest( )
+          .withBucketName( bucket )
+          .withPrefix( prefix )
+          .withDelimiter( delimiter )
+          .withMaxKeys( BATCH_SIZE ) );
+      while ( true ) {
+        final List<Key> batch = new ArrayList<>( );
+        for ( final S3ObjectSummary summary : listing.getObjectSummaries( ) ) {
+          batch.add( new Key( summary.getKey( ), null, false ) );
+        }
+        if ( !batch.isEmpty( ) ) consumer.accept( batch );
+        if ( prefixConsumer != null ) listing.getCommonPrefixes( ).forEach( prefixConsumer );
+        if ( !listing.isTruncated( ) ) break;
+        listing = s3.listNextBatchOfObjects( listing );
+      }
+    }
+  }
+
+  private void delete( final String bucket, final List<Key> batch, final Result result ) {
+    if ( multiObjectDelete ) try {
+      final List<KeyVersion> keys = new ArrayList<>( batch.size( ) );
+      for ( final Key key : batch ) {
+        keys.add( new KeyVersion( key.key, key.versionId ) );
+      }
+      s3.deleteObjects( new DeleteObjectsRequest( bucket ).withKeys( keys ).withQuiet( true ) );
+      result.record( batch, batch.size( ) );
+      return;
+    } catch ( final MultiObjectDeleteException e ) {
+      result.record( batch, batch.size( ) - e.getErrors( ).size( ) );
+      for ( final MultiObjectDeleteException.DeleteError error : e.getErrors( ) ) {
+        N4j.print( "Error deleting " + bucket + "/" + error.getKey( ) + ": " + error.getCode( ) );
+      }
+      return;
+    } catch ( final AmazonServiceException e ) {
+      if ( e.getStatusCode( ) != 501 && !"NotImplemented".equals( e.getErrorCode( ) ) ) {
+        throw e;
+      }
+      N4j.print( "Multi-object delete not available, deleting keys individually" );
+      multiObjectDelete = false;
+    }
+    for ( final Key key : batch ) {
+      try {
+        if ( key.versionId == null ) {
+          s3.deleteObject( bucket, key.key );
+        } else {
+          s3.deleteVersion( bucket, key.key, key.versionId );
+        }
+        result.record( key );
+      } catch ( final AmazonServiceException e ) {
+        if ( e.getStatusCode( ) != 404 ) {
+          result.errors.incrementAndGet( );
+          N4j.print( "Error deleting " + bucket + "/" + key.key + ": " + e.getErrorCode( ) );
+        }
+      }
+    }
+  }
+
+  private void abortUploads( final String bucket, final Result result ) {
+    MultipartUploadListing listing = s3.listMultipartUploads( new ListMultipartUploadsRequest( bucket ) );
+    while ( true ) {
+      for ( final MultipartUpload upload : listing.getMultipartUploads( ) ) {
+        try {
+          s3.abortMultipartUpload(
+              new AbortMultipartUploadRequest( bucket, upload.getKey( ), upload.getUploadId( ) ) );
+          result.uploads.incrementAndGet( );
+        } catch ( final AmazonServiceException e ) {
+          if ( e.getStatusCode( ) != 404 ) {
+            result.errors.incrementAndGet( );
+            N4j.print( "Error aborting upload " + bucket + "/" + upload.getKey( ) + ": " + e.getErrorCode( ) );
+          }
+        }
+      }
+      if ( !listing.isTruncated( ) ) break;
+      listing = s3.listMultipartUploads( new ListMultipartUploadsRequest( bucket )
+          .withKeyMarker( listing.getNextKeyMarker( ) )
+          .withUploadIdMarker( listing.getNextUploadIdMarker( ) ) );
+    }
+  }
+
+  private static void acquire( final Semaphore semaphore ) {
+    try {
+      semaphore.acquire( );
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      throw new IllegalStateException( "Interrupted draining bucket" );
+    }
+  }
+
+  private interface BatchConsumer {
+    void accept( List<Key> batch );
+  }
+
+  private static final class Key {
+    private final String key;
+    private final String versionId;
+    private final boolean deleteMarker;
+
+    Key( final String key, final String versionId, final boolean deleteMarker ) {
+      this.key = key;
+      this.versionId = versionId;
+      this.deleteMarker = deleteMarker;
+    }
+  }
+
+  /**
+   * Counts and rate for a drained bucket.
+   */
+  public static final class Result {
+    private final String bucket;
+    private final AtomicLong objects = new AtomicLong( );
+    private final AtomicLong versions = new AtomicLong( );
+    private final AtomicLong deleteMarkers = new AtomicLong( );
+    private final AtomicLong uploads = new AtomicLong( );
+    private final AtomicLong errors = new AtomicLong( );
+    private volatile long elapsedMillis;
+
+    Result( final String bucket ) {
+      this.bucket = bucket;
+    }
+
+    private void record( final List<Key> batch, final int deleted ) {
+      if ( deleted < batch.size( ) ) {
+        errors.addAndGet( batch.size( ) - deleted );
+      }
+      // approximate the split for partial failures, counts are for reporting only
+      int remaining = deleted;
+      for ( final Key key : batch ) {
+        if ( remaining-- <= 0 ) break;
+        record( key );
+      }
+    }
+
+    private void record( final Key key ) {
+      if ( key.deleteMarker ) {
+        deleteMarkers.incrementAndGet( );
+      } else if ( key.versionId != null ) {
+        versions.incrementAndGet( );
+      } else {
+        objects.incrementAndGet( );
+      }
+    }
+
+    public String getBucket( ) {
+      return bucket;
+    }
+
+    /**
+     * Total deleted objects, versions and delete markers.
+     */
+    public long getDeleted( ) {
+      return objects.get( ) + versions.get( ) + deleteMarkers.get( );
+    }
+
+    public long getUploadsAborted( ) {
+      return uploads.get( );
+    }
+
+    public long getErrors( ) {
+      return errors.get( );
+    }
+
+    public long getElapsedMillis( ) {
+      return elapsedMillis;
+    }
+
+    public double getObjectsPerSecond( ) {
+      return elapsedMillis == 0 ? 0d : getDeleted( ) * 1000d / elapsedMillis;
+    }
+
+    @Override
+    public String toString( ) {
+      return String.format(
+          "Drained bucket %s in %dms: %d objects, %d versions, %d delete markers, %d uploads aborted, " +
+              "%d errors (%.1f objects/s)",
+          bucket, elapsedMillis, objects.get( ), versions.get( ), deleteMarkers.get( ), uploads.get( ),
+          errors.get( ), getObjectsPerSecond( ) );
+    }
+  }
+}
@@ -0,0 +1,336 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Long lived SSH session to the CLC.
+ *
+ * A single authenticated session is kept open per host/user and exec and
+ * sftp channels are multiplexed over it. The session is reconnected if it
+ * is found to be down. Sessions are closed at JVM exit.
+ *
+ * Remote commands are run with blocking reads of the command output and
+ * error output, the result is available as soon as the channel closes.
+ * Commands can be run concurrently from multiple threads over the one
+ * session.
+ */
+public final class ClcSession {
+
+  private static final int PORT = 22;
+  private static final int SERVER_ALIVE_INTERVAL = (int) TimeUnit.SECONDS.toMillis( 30 );
+  private static final long DEFAULT_TIMEOUT_MINUTES = 15;
+  private static final ConcurrentMap<SessionKey,ClcSession> sessions = new ConcurrentHashMap<>( );
+  private static final ExecutorService errorExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "n4j-clc-exec-stderr-%d" ).build( ) );
+  private static final ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "n4j-clc-exec-timeout" ).build( ) );
+
+  static {
+    Runtime.getRuntime( ).addShutdownHook( new Thread( ClcSession::closeAll, "n4j-clc-session-shutdown" ) );
+  }
+
+  private final String host;
+  private final String user;
+  private final String password;
+  private Session session;
+
+  private ClcSession( final String host, final String user, final String password ) {
+    this.host = host;
+    this.user = user;
+    this.password = password;
+  }
+
+  /**
+   * Get the shared session for the given host and user.
+   */
+  public static ClcSession of( final String host, final String user, final String password ) {
+    return sessions.computeIfAbsent(
+        new SessionKey( host, user, password ),
+        key -> new ClcSession( host, user, password ) );
+  }
+
+  /**
+   * Get the shared session for the CLC using the configured user.
+   */
+  public static ClcSession clc( ) {
+    return of( N4j.CLC_IP, N4j.USER, N4j.PASSWORD );
+  }
+
+  /**
+   * Close all shared sessions.
+   */
+  public static void closeAll( ) {
+    for ( final ClcSession clcSession : new ArrayList<>( sessions.values( ) ) ) {
+      clcSession.close( );
+    }
+  }
+
+  /**
+   * Get the connected session, connecting or reconnecting as necessary.
+   */
+  public synchronized Session session( ) throws JSchException {
+    if ( session == null || !session.isConnected( ) ) {
+      if ( session != null ) {
+        N4j.print( "Reconnecting to " + host );
+        session.disconnect( );
+      }
+      final JSch jsch = new JSch( );
+      final Session newSession = jsch.getSession( user, host, PORT );
+      newSession.setPassword( password );
+      newSession.setConfig( "StrictHostKeyChecking", "no" );
+      newSession.setServerAliveInterval( SERVER_ALIVE_INTERVAL );
+      N4j.print( "Establishing Connection..." );
+      newSession.connect( );
+      N4j.print( "Connection established." );
+      session = newSession;
+    }
+    return session;
+  }
+
+  /**
+   * Perform sftp operations on a channel over the shared session.
+   */
+  public <T> T sftp( final SftpCallback<T> callback ) throws JSchException, SftpException, IOException {
+    final ChannelSftp sftpChannel = (ChannelSftp) openChannel( "sftp" );
+    try {
+      sftpChannel.connect( );
+      return callback.apply( sftpChannel );
+    } finally {
+      sftpChannel.disconnect( );
+    }
+  }
+
+  /**
+   * Execute a remote command over the shared session.
+   *
+   * @param command The command to run
+   * @param output Consumer for command output
+   * @return The exit status
+   */
+  public int exec( final String command, final Consumer<String> output ) throws JSchException, IOException {
+    return run( command, output, DEFAULT_TIMEOUT_MINUTES, TimeUnit.MINUTES ).getExitStatus( );
+  }
+
+  /**
+   * Run a remote command over the shared session.
+   *
+   * @param command The command to run
+   * @param timeout The command timeout
+   * @param unit The command timeout unit
+   * @return The command result
+   */
+  public CommandResult run( final String command, final long timeout, final TimeUnit unit ) throws JSchException, IOException {
+    return run( command, text -> { }, timeout, unit );
+  }
+
+  /**
+   * Run a remote command over the shared session.
+   *
+   * Command output and error output are read as they arrive and passed to
+   * the given consumer, the result is returned as soon as the channel
+   * closes.
+   *
+   * @param command The command to run
+   * @param output Consumer for command output
+   * @param timeout The command timeout
+   * @param unit The command timeout unit
+   * @return The command result
+   * @throws IOException If the command times out or output cannot be read
+   */
+  public CommandResult run(
+      final String command,
+      final Consumer<String> output,
+      final long timeout,
+      final TimeUnit unit
+  ) throws JSchException, IOException {
+    final long startTime = System.currentTimeMillis( );
+    final ChannelExec channel = (ChannelExec) openChannel( "exec" );
+    final AtomicBoolean timedOut = new AtomicBoolean( false );
+    ScheduledFuture<?> timeoutFuture = null;
+    try {
+      final ByteArrayOutputStream stdout = new ByteArrayOutputStream( );
+      final ByteArrayOutputStream stderr = new ByteArrayOutputStream( );
+      channel.setCommand( command );
+      final InputStream in = channel.getInputStream( );
+      final InputStream err = channel.getExtInputStream( );
+      channel.connect( );
+      timeoutFuture = timeoutExecutor.schedule( ( ) -> {
+        timedOut.set( true );
+        channel.disconnect( );
+      }, timeout, unit );
+      // error output ends when the channel closes, after the exit status is received
+      final CompletableFuture<Void> errors = CompletableFuture.runAsync( ( ) -> {
+        try {
+          read( err, stderr, output );
+        } catch ( final IOException e ) {
+          throw new CompletionException( e );
+        }
+      }, errorExecutor );
+      try {
+        read( in, stdout, output );
+        errors.join( );
+      } catch ( final IOException e ) {
+        if ( !timedOut.get( ) ) throw e;
+      } catch ( final CompletionException e ) {
+        if ( !timedOut.get( ) ) throw new IOException( "Error reading command error output: " + command, e.getCause( ) );
+      }
+      if ( timedOut.get( ) ) {
+        throw new IOException( "Command timed out after " + unit.toMillis( timeout ) + "ms: " + command );
+      }
+      return new CommandResult(
+          command,
+          channel.getExitStatus( ),
+          new String( stdout.toByteArray( ), StandardCharsets.UTF_8 ),
+          new String( stderr.toByteArray( ), StandardCharsets.UTF_8 ),
+          System.currentTimeMillis( ) - startTime );
+    } finally {
+      if ( timeoutFuture != null ) timeoutFuture.cancel( false );
+      channel.disconnect( );
+    }
+  }
+
+  /**
+   * Disconnect the session, it will be reconnected on next use.
+   */
+  public synchronized void close( ) {
+    if ( session != null ) {
+      session.disconnect( );
+      session = null;
+    }
+  }
+
+  private static void read(
+      final InputStream in,
+      final ByteArrayOutputStream buffered,
+      final Consumer<String> output
+  ) throws IOException {
+    final byte[] buffer = new byte[ 8192 ];
+    int read;
+    while ( ( read = in.read( buffer ) ) >= 0 ) {
+      buffered.write( buffer, 0, read );
+      output.accept( new String( buffer, 0, read, StandardCharsets.UTF_8 ) );
+    }
+  }
+
+  /**
+   * Open a channel, reconnecting once if the session was found to be down.
+   */
+  private Channel openChannel( final String type ) throws JSchException {
+    try {
+      return session( ).openChannel( type );
+    } catch ( final JSchException e ) {
+      N4j.print( "Error opening " + type + " channel to " + host + ", reconnecting: " + e.getMessage( ) );
+      close( );
+      return session( ).openChannel( type );
+    }
+  }
+
+  public interface SftpCallback<T> {
+    T apply( ChannelSftp sftp ) throws JSchException, SftpException, IOException;
+  }
+
+  public static final class CommandResult {
+    private final String command;
+    private final int exitStatus;
+    private final String stdout;
+    private final String stderr;
+    private final long durationMillis;
+
+    CommandResult(
+        final String command,
+        final int exitStatus,
+        final String stdout,
+        final String stderr,
+        final long durationMillis
+    ) {
+      this.command = command;
+      this.exitStatus = exitStatus;
+      this.stdout = stdout;
+      this.stderr = stderr;
+      this.durationMillis = durationMillis;
+    }
+
+    public String getCommand( ) {
+      return command;
+    }
+
+    public int getExitStatus( ) {
+      return exitStatus;
+    }
+
+    public String getStdout( ) {
+      return stdout;
+    }
+
+    public String getStderr( ) {
+      return stderr;
+    }
+
+    public long getDurationMillis( ) {
+      return durationMillis;
+    }
+
+    public boolean isSuccess( ) {
+      return exitStatus == 0;
+    }
+
+    @Override
+    public String toString( ) {
+      return "CommandResult{command=" + command + ", exitStatus=" + exitStatus +
+          ", durationMillis=" + durationMillis + "}";
+    }
+  }
+
+  private static final class SessionKey {
+    private final String host;
+    private final String user;
+    private final String password;
+
+    SessionKey( final String host, final String user, final String password ) {
+      this.host = host;
+      this.user = user;
+      this.password = password;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final SessionKey that = (SessionKey) o;
+      return Objects.equals( host, that.host ) &&
+          Objects.equals( user, that.user ) &&
+          Objects.equals( password, that.password );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( host, user, password );
+    }
+  }
+}
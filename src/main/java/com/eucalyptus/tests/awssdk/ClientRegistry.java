@@ -0,0 +1,216 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.amazonaws.AmazonWebServiceClient;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSSessionCredentials;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.internal.StaticCredentialsProvider;
+import com.google.common.base.MoreObjects;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Registry of shared service clients.
+ *
+ * Clients are cached by service, credentials, endpoint and signer (or other
+ * client variant) so that tests reuse warm connection pools rather than
+ * building a new client for each call. Cached clients are shut down once at
+ * JVM exit, callers must not shut down a client obtained from the registry.
+ * All clients built by the registry record RequestMetrics.
+ *
+ * Pool sizing and keep-alive are configured via system properties:
+ *
+ *   n4j.client.max-connections - connections per client pool (default 50)
+ *   n4j.client.keep-alive      - enable TCP keep-alive (default true)
+ *   n4j.client.max-idle        - idle time before pooled connections are closed (default 60s)
+ *   n4j.client.ttl             - connection time to live, -1 for no limit (default -1)
+ *   n4j.client.socket-timeout  - socket read timeout (default 2m)
+ */
+public final class ClientRegistry {
+
+  private static final int MAX_CONNECTIONS =
+      Integer.getInteger( "n4j.client.max-connections", ClientConfiguration.DEFAULT_MAX_CONNECTIONS );
+  private static final boolean KEEP_ALIVE =
+      Boolean.valueOf( System.getProperty( "n4j.client.keep-alive", "true" ) );
+  private static final long MAX_IDLE_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.client.max-idle", "60s" ), TimeUnit.SECONDS.toMillis( 60 ) );
+  private static final long TTL_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.client.ttl", "-1" ), -1L );
+  private static final long SOCKET_TIMEOUT_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.client.socket-timeout", "2m" ), TimeUnit.MINUTES.toMillis( 2 ) );
+
+  private static final ConcurrentMap<ClientKey,Object> clients = new ConcurrentHashMap<>( );
+  private static final List<Runnable> beforeShutdownTasks = new CopyOnWriteArrayList<>( );
+
+  static {
+    Runtime.getRuntime( ).addShutdownHook( new Thread( ClientRegistry::shutdown, "n4j-client-registry-shutdown" ) );
+  }
+
+  private ClientRegistry( ) {
+  }
+
+  /**
+   * Client configuration with the registry pool settings.
+   */
+  public static ClientConfiguration configuration( ) {
+    return new ClientConfiguration( )
+        .withMaxConnections( MAX_CONNECTIONS )
+        .withTcpKeepAlive( KEEP_ALIVE )
+        .withConnectionMaxIdleMillis( MAX_IDLE_MILLIS )
+        .withConnectionTTL( TTL_MILLIS )
+        .withSocketTimeout( (int) SOCKET_TIMEOUT_MILLIS );
+  }
+
+  /**
+   * Get a cached client or build and cache a new one.
+   *
+   * Clients using credentials that are not static are built but not cached.
+   *
+   * @param service The service name, e.g. ec2
+   * @param credentials The credentials used by the client
+   * @param endpoint The service endpoint
+   * @param signer The signer override or other client variant, may be null
+   * @param factory Function to build the client with the given configuration
+   * @return The client
+   */
+  @SuppressWarnings( "unchecked" )
+  public static <T> T client(
+      final String service,
+      final AWSCredentialsProvider credentials,
+      final String endpoint,
+      final String signer,
+      final Function<ClientConfiguration,T> factory
+  ) {
+    if ( !isStatic( credentials ) ) {
+      return RequestMetrics.instrument( factory.apply( configuration( ) ) );
+    }
+    final ClientKey key = new ClientKey( service, credentials.getCredentials( ), endpoint, signer );
+    return (T) clients.computeIfAbsent( key, k -> RequestMetrics.instrument( factory.apply( configuration( ) ) ) );
+  }
+
+  /**
+   * Remove and shut down a cached client, e.g. when the resource the client
+   * variant is for has been deleted.
+   *
+   * @param service The service name, e.g. iam
+   * @param credentials The credentials used by the client
+   * @param endpoint The service endpoint
+   * @param signer The signer override or other client variant, may be null
+   */
+  public static void evict(
+      final String service,
+      final AWSCredentialsProvider credentials,
+      final String endpoint,
+      final String signer
+  ) {
+    if ( !isStatic( credentials ) ) return;
+    final Object client = clients.remove( new ClientKey( service, credentials.getCredentials( ), endpoint, signer ) );
+    if ( client instanceof AmazonWebServiceClient ) {
+      ( (AmazonWebServiceClient) client ).shutdown( );
+    }
+  }
+
+  /**
+   * Number of cached clients
+   */
+  public static int size( ) {
+    return clients.size( );
+  }
+
+  /**
+   * Register a task to run at shutdown while cached clients are still usable.
+   */
+  public static void beforeShutdown( final Runnable task ) {
+    beforeShutdownTasks.add( task );
+  }
+
+  /**
+   * Shutdown and remove all cached clients.
+   */
+  public static void shutdown( ) {
+    for ( final Runnable task : beforeShutdownTasks ) {
+      try {
+        task.run( );
+      } catch ( final RuntimeException e ) {
+        N4j.print( "Error running shutdown task: " + e );
+      }
+    }
+    final List<Object> shutdownClients = new ArrayList<>( clients.values( ) );
+    clients.clear( );
+    for ( final Object client : shutdownClients ) {
+      if ( client instanceof AmazonWebServiceClient ) try {
+        ( (AmazonWebServiceClient) client ).shutdown( );
+      } catch ( final RuntimeException e ) {
+        // ignore errors on shutdown
+      }
+    }
+  }
+
+  @SuppressWarnings( "deprecation" )
+  private static boolean isStatic( final AWSCredentialsProvider credentials ) {
+    return credentials instanceof AWSStaticCredentialsProvider ||
+        credentials instanceof StaticCredentialsProvider;
+  }
+
+  private static final class ClientKey {
+    private final String service;
+    private final String accessKey;
+    private final String secretKey;
+    private final String sessionToken;
+    private final String endpoint;
+    private final String signer;
+
+    ClientKey(
+        final String service,
+        final AWSCredentials credentials,
+        final String endpoint,
+        final String signer
+    ) {
+      this.service = service;
+      this.accessKey = credentials.getAWSAccessKeyId( );
+      this.secretKey = credentials.getAWSSecretKey( );
+      this.sessionToken = credentials instanceof AWSSessionCredentials ?
+          ( (AWSSessionCredentials) credentials ).getSessionToken( ) :
+          null;
+      this.endpoint = endpoint;
+      this.signer = signer;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final ClientKey that = (ClientKey) o;
+      return Objects.equals( service, that.service ) &&
+          Objects.equals( accessKey, that.accessKey ) &&
+          Objects.equals( secretKey, that.secretKey ) &&
+          Objects.equals( sessionToken, that.sessionToken ) &&
+          Objects.equals( endpoint, that.endpoint ) &&
+          Objects.equals( signer, that.signer );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( service, accessKey, secretKey, sessionToken, endpoint, signer );
+    }
+
+    @Override
+    public String toString( ) {
+      return MoreObjects.toStringHelper( this )
+          .add( "service", service )
+          .add( "accessKey", accessKey )
+          .add( "endpoint", endpoint )
+          .add( "signer", signer )
+          .toString( );
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.github.sjones4.youcan.youare.YouAreClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of user credentials keyed by account and user.
+ *
+ * Access keys are created on first use and reused for the rest of the run,
+ * keys created by the cache are deleted at JVM exit. When disk caching is
+ * enabled keys are instead stored in the N4j cache directory and reused by
+ * later runs (after a check that they are still valid).
+ *
+ * Caching is controlled via the system property:
+ *
+ *   n4j.credentials.cache - none, memory or disk (default memory)
+ */
+public final class CredentialCache {
+
+  private static final String MODE = System.getProperty( "n4j.credentials.cache", "memory" );
+  private static final boolean ENABLED = !"none".equals( MODE );
+  private static final boolean PERSISTENT = "disk".equals( MODE );
+
+  private static final ConcurrentMap<UserKey,AWSCredentials> credentials = new ConcurrentHashMap<>( );
+  private static final ConcurrentMap<UserKey,AWSCredentials> minted = new ConcurrentHashMap<>( );
+  private static boolean loaded = false;
+
+  static {
+    if ( ENABLED && !PERSISTENT ) {
+      ClientRegistry.beforeShutdown( CredentialCache::deleteMinted );
+    }
+  }
+
+  private CredentialCache( ) {
+  }
+
+  /**
+   * Get cached credentials for the user or create new credentials.
+   *
+   * @param accountName The account name
+   * @param userName The user name
+   * @param creator Supplier that creates a new access key for the user
+   * @return The credentials
+   */
+  public static AWSCredentials get(
+      final String accountName,
+      final String userName,
+      final Supplier<AWSCredentials> creator
+  ) {
+    if ( !ENABLED ) {
+      return creator.get( );
+    }
+    load( );
+    final UserKey key = new UserKey( accountName, userName );
+    final AWSCredentials cached = credentials.get( key );
+    if ( cached != null ) {
+      return cached;
+    }
+    final AWSCredentials created = creator.get( );
+    final AWSCredentials existing = credentials.putIfAbsent( key, created );
+    if ( existing != null ) {
+      // created concurrently, discard our key
+      try {
+        N4j.deleteUserKey( accountName, userName, created.getAWSAccessKeyId( ) );
+      } catch ( final RuntimeException e ) {
+        N4j.print( "Error deleting access key " + created.getAWSAccessKeyId( ) + ": " + e );
+      }
+      return existing;
+    }
+    minted.put( key, created );
+    if ( PERSISTENT ) {
+      store( );
+    }
+    return created;
+  }
+
+  /**
+   * Remove cached credentials for all users in the account.
+   */
+  public static void evictAccount( final String accountName ) {
+    credentials.keySet( ).removeIf( key -> key.accountName.equals( accountName ) );
+    minted.keySet( ).removeIf( key -> key.accountName.equals( accountName ) );
+    if ( PERSISTENT ) {
+      store( );
+    }
+  }
+
+  /**
+   * Remove cached credentials for the user.
+   */
+  public static void evict( final String accountName, final String userName ) {
+    final UserKey key = new UserKey( accountName, userName );
+    credentials.remove( key );
+    minted.remove( key );
+    if ( PERSISTENT ) {
+      store( );
+    }
+  }
+
+  /**
+   * Remove cached credentials for a deleted access key.
+   */
+  public static void evictAccessKey( final String accessKeyId ) {
+    final boolean removed = credentials.values( ).removeIf( creds -> creds.getAWSAccessKeyId( ).equals( accessKeyId ) );
+    minted.values( ).removeIf( creds -> creds.getAWSAccessKeyId( ).equals( accessKeyId ) );
+    if ( removed && PERSISTENT ) {
+      store( );
+    }
+  }
+
+  /**
+   * Delete access keys created by the cache.
+   */
+  public static void deleteMinted( ) {
+    final List<Map.Entry<UserKey,AWSCredentials>> entries = new ArrayList<>( minted.entrySet( ) );
+    minted.clear( );
+    credentials.clear( );
+    for ( final Map.Entry<UserKey,AWSCredentials> entry : entries ) {
+      try {
+        N4j.deleteUserKey(
+            entry.getKey( ).accountName,
+            entry.getKey( ).userName,
+            entry.getValue( ).getAWSAccessKeyId( ) );
+      } catch ( final RuntimeException e ) {
+        // account or user may have been deleted
+      }
+    }
+  }
+
+  private static File file( ) {
+    if ( N4j.CLC_IP == null || N4j.CLC_IP.isEmpty( ) ) {
+      return null;
+    }
+    return new File( N4j.cacheDir, "n4j-credentials-" + N4j.CLC_IP + ".properties" );
+  }
+
+  private static synchronized void load( ) {
+    if ( loaded || !PERSISTENT ) {
+      return;
+    }
+    loaded = true;
+    final File file = file( );
+    if ( file == null || !file.isFile( ) ) {
+      return;
+    }
+    final Properties properties = new Properties( );
+    try ( final InputStream in = Files.newInputStream( file.toPath( ) ) ) {
+      properties.load( in );
+    } catch ( final IOException e ) {
+      N4j.print( "Error loading credential cache " + file + ": " + e );
+      return;
+    }
+    for ( final String name : properties.stringPropertyNames( ) ) {
+      final String[] user = name.split( "/", 2 );
+      final String[] keys = properties.getProperty( name ).split( ":", 2 );
+      if ( user.length == 2 && keys.length == 2 ) {
+        final BasicAWSCredentials cached = new BasicAWSCredentials( keys[ 0 ], keys[ 1 ] );
+        if ( isValid( cached ) ) {
+          credentials.put( new UserKey( user[ 0 ], user[ 1 ] ), cached );
+        }
+      }
+    }
+    N4j.print( "Loaded " + credentials.size( ) + " cached credentials from " + file );
+  }
+
+  private static synchronized void store( ) {
+    final File file = file( );
+    if ( file == null ) {
+      return;
+    }
+    final Properties properties = new Properties( );
+    for ( final Map.Entry<UserKey,AWSCredentials> entry : credentials.entrySet( ) ) {
+      properties.setProperty(
+          entry.getKey( ).accountName + "/" + entry.getKey( ).userName,
+          entry.getValue( ).getAWSAccessKeyId( ) + ":" + entry.getValue( ).getAWSSecretKey( ) );
+    }
+    try {
+      Files.deleteIfExists( file.toPath( ) );
+      Files.createFile( file.toPath( ) );
+      try {
+        Files.setPosixFilePermissions( file.toPath( ), PosixFilePermissions.fromString( "rw-------" ) );
+      } catch ( final UnsupportedOperationException e ) {
+        // not a posix file system
+      }
+      try ( final OutputStream out = Files.newOutputStream( file.toPath( ) ) ) {
+        properties.store( out, "n4j user credentials" );
+      }
+    } catch ( final IOException e ) {
+      N4j.print( "Error storing credential cache " + file + ": " + e );
+    }
+  }
+
+  /**
+   * Check cached credentials using a client that is not registered, so
+   * credentials that are never used do not keep a client open.
+   */
+  private static boolean isValid( final AWSCredentials cached ) {
+    final YouAreClient youAre =
+        new YouAreClient( new AWSStaticCredentialsProvider( cached ), ClientRegistry.configuration( ) );
+    try {
+      youAre.setEndpoint( N4j.IAM_ENDPOINT );
+      youAre.getUser( );
+      return true;
+    } catch ( final RuntimeException e ) {
+      return false;
+    } finally {
+      youAre.shutdown( );
+    }
+  }
+
+  private static final class UserKey {
+    private final String accountName;
+    private final String userName;
+
+    UserKey( final String accountName, final String userName ) {
+      this.accountName = accountName;
+      this.userName = userName;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final UserKey that = (UserKey) o;
+      return Objects.equals( accountName, that.accountName ) &&
+          Objects.equals( userName, that.userName );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( accountName, userName );
+    }
+  }
+}
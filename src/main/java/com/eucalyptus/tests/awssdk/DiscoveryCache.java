@@ -0,0 +1,272 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2Client;
+import com.amazonaws.services.ec2.model.DescribeImagesRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache of cloud discovery results.
+ *
+ * Discovery results (endpoints, credentials, image, instance type, etc) are
+ * stored in the N4j cache directory keyed by CLC IP and cloud version. A
+ * stored snapshot is used if it has not expired and a single request
+ * confirms that the cloud version and image are unchanged. The snapshot is
+ * resolved once per JVM.
+ *
+ * Caching is controlled via system properties:
+ *
+ *   n4j.discovery.cache - enable the on-disk cache (default true)
+ *   n4j.discovery.ttl   - time after which a stored snapshot expires (default 12h)
+ */
+public final class DiscoveryCache {
+
+  private static final boolean ENABLED =
+      Boolean.valueOf( System.getProperty( "n4j.discovery.cache", "true" ) );
+  private static final long TTL_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.discovery.ttl", "12h" ), TimeUnit.HOURS.toMillis( 12 ) );
+
+  private static boolean resolved = false;
+  private static Snapshot snapshot;
+
+  private DiscoveryCache( ) {
+  }
+
+  /**
+   * Get the validated snapshot for this JVM, loading it on first use.
+   *
+   * @return The snapshot or null if there is no valid snapshot
+   */
+  public static synchronized Snapshot get( ) {
+    if ( !resolved ) {
+      resolved = true;
+      final Snapshot loaded = load( );
+      if ( loaded != null && loaded.validate( ) ) {
+        N4j.print( "Using cached cloud discovery from " + file( ) );
+        snapshot = loaded;
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Store the snapshot for use in this and later runs.
+   */
+  public static synchronized void put( final Snapshot update ) {
+    resolved = true;
+    snapshot = update;
+    store( update );
+  }
+
+  /**
+   * Discard any cached snapshot so that the next discovery is performed in full.
+   */
+  public static synchronized void invalidate( ) {
+    resolved = true;
+    snapshot = null;
+    final File file = file( );
+    if ( file != null && file.isFile( ) && !file.delete( ) ) {
+      N4j.print( "Unable to delete discovery cache " + file );
+    }
+  }
+
+  private static File file( ) {
+    if ( !ENABLED || N4j.CLC_IP == null || N4j.CLC_IP.isEmpty( ) ) {
+      return null;
+    }
+    return new File( N4j.cacheDir, "n4j-discovery-" + N4j.CLC_IP + ".properties" );
+  }
+
+  private static Snapshot load( ) {
+    final File file = file( );
+    if ( file == null || !file.isFile( ) ) {
+      return null;
+    }
+    final Properties properties = new Properties( );
+    try ( final InputStream in = Files.newInputStream( file.toPath( ) ) ) {
+      properties.load( in );
+    } catch ( final IOException e ) {
+      N4j.print( "Error loading discovery cache " + file + ": " + e );
+      return null;
+    }
+    final Snapshot loaded = new Snapshot( properties );
+    if ( !N4j.CLC_IP.equals( loaded.get( "clcip" ) ) ) {
+      return null;
+    }
+    if ( loaded.getCreated( ) + TTL_MILLIS < System.currentTimeMillis( ) ) {
+      N4j.print( "Discovery cache " + file + " expired" );
+      return null;
+    }
+    return loaded;
+  }
+
+  private static void store( final Snapshot snapshot ) {
+    final File file = file( );
+    if ( file == null ) {
+      return;
+    }
+    try {
+      Files.deleteIfExists( file.toPath( ) );
+      Files.createFile( file.toPath( ) );
+      try {
+        Files.setPosixFilePermissions( file.toPath( ), PosixFilePermissions.fromString( "rw-------" ) );
+      } catch ( final UnsupportedOperationException e ) {
+        // not a posix file system
+      }
+      try ( final OutputStream out = Files.newOutputStream( file.toPath( ) ) ) {
+        snapshot.properties.store( out, "n4j cloud discovery" );
+      }
+    } catch ( final IOException e ) {
+      N4j.print( "Error storing discovery cache " + file + ": " + e );
+    }
+  }
+
+  /**
+   * Snapshot of discovery results
+   */
+  public static final class Snapshot {
+    private final Properties properties;
+
+    private Snapshot( final Properties properties ) {
+      this.properties = properties;
+    }
+
+    /**
+     * Capture the current N4j discovery results.
+     */
+    public static Snapshot capture( ) {
+      final Snapshot snapshot = new Snapshot( new Properties( ) );
+      snapshot.set( "clcip", N4j.CLC_IP );
+      snapshot.set( "created", String.valueOf( System.currentTimeMillis( ) ) );
+      snapshot.set( "version", N4j.EUCALYPTUS_VERSION );
+      snapshot.set( "ec2-url", N4j.EC2_ENDPOINT );
+      snapshot.set( "autoscaling-url", N4j.AS_ENDPOINT );
+      snapshot.set( "elasticloadbalancing-url", N4j.ELB_ENDPOINT );
+      snapshot.set( "cloudformation-url", N4j.CF_ENDPOINT );
+      snapshot.set( "monitoring-url", N4j.CW_ENDPOINT );
+      snapshot.set( "iam-url", N4j.IAM_ENDPOINT );
+      snapshot.set( "s3-url", N4j.S3_ENDPOINT );
+      snapshot.set( "sts-url", N4j.TOKENS_ENDPOINT );
+      snapshot.set( "bootstrap-url", N4j.SERVICES_ENDPOINT );
+      snapshot.set( "properties-url", N4j.PROPERTIES_ENDPOINT );
+      snapshot.set( "secret-key", N4j.SECRET_KEY );
+      snapshot.set( "key-id", N4j.ACCESS_KEY );
+      snapshot.set( "account-id", N4j.ACCOUNT_ID );
+      snapshot.set( "image-id", N4j.IMAGE_ID );
+      snapshot.set( "kernel-id", N4j.KERNEL_ID );
+      snapshot.set( "ramdisk-id", N4j.RAMDISK_ID );
+      snapshot.set( "instance-type", N4j.INSTANCE_TYPE );
+      snapshot.set( "availability-zone", N4j.AVAILABILITY_ZONE );
+      return snapshot;
+    }
+
+    /**
+     * Apply the cached endpoints and credentials to N4j.
+     */
+    public void applyEndpoints( ) {
+      N4j.EC2_ENDPOINT = get( "ec2-url" );
+      N4j.AS_ENDPOINT = get( "autoscaling-url" );
+      N4j.ELB_ENDPOINT = get( "elasticloadbalancing-url" );
+      N4j.CF_ENDPOINT = get( "cloudformation-url" );
+      N4j.CW_ENDPOINT = get( "monitoring-url" );
+      N4j.IAM_ENDPOINT = get( "iam-url" );
+      N4j.S3_ENDPOINT = get( "s3-url" );
+      N4j.TOKENS_ENDPOINT = get( "sts-url" );
+      N4j.SERVICES_ENDPOINT = get( "bootstrap-url" );
+      N4j.PROPERTIES_ENDPOINT = get( "properties-url" );
+      N4j.SECRET_KEY = get( "secret-key" );
+      N4j.ACCESS_KEY = get( "key-id" );
+      N4j.ACCOUNT_ID = get( "account-id" );
+    }
+
+    /**
+     * Apply all cached discovery results to N4j.
+     */
+    public void apply( ) {
+      applyEndpoints( );
+      N4j.EUCALYPTUS_VERSION = get( "version" );
+      N4j.IMAGE_ID = get( "image-id" );
+      N4j.KERNEL_ID = get( "kernel-id" );
+      N4j.RAMDISK_ID = get( "ramdisk-id" );
+      N4j.INSTANCE_TYPE = get( "instance-type" );
+      N4j.AVAILABILITY_ZONE = get( "availability-zone" );
+    }
+
+    long getCreated( ) {
+      try {
+        return Long.parseLong( get( "created" ) );
+      } catch ( final NumberFormatException e ) {
+        return 0L;
+      }
+    }
+
+    String get( final String name ) {
+      return properties.getProperty( name );
+    }
+
+    private void set( final String name, final String value ) {
+      if ( value != null ) {
+        properties.setProperty( name, value );
+      }
+    }
+
+    /**
+     * Validate with a single request that the cloud version and image are unchanged.
+     */
+    private boolean validate( ) {
+      final String version = get( "version" );
+      final String imageId = get( "image-id" );
+      if ( version == null || imageId == null || get( "ec2-url" ) == null || get( "key-id" ) == null ) {
+        return false;
+      }
+      final AtomicReference<String> serverVersion = new AtomicReference<>( );
+      final AmazonEC2 client = AmazonEC2Client.builder( )
+          .withEndpointConfiguration( new AwsClientBuilder.EndpointConfiguration( get( "ec2-url" ), "eucalyptus" ) )
+          .withCredentials( new AWSStaticCredentialsProvider(
+              new BasicAWSCredentials( get( "key-id" ), get( "secret-key" ) ) ) )
+          .withRequestHandlers( new RequestHandler2( ) {
+            @Override
+            public void afterResponse( final Request<?> request, final Response<?> response ) {
+              final String server = response.getHttpResponse( ).getHeader( "server" );
+              if ( server != null && server.startsWith( "Eucalyptus/" ) ) {
+                serverVersion.set( server.substring( 11 ) );
+              }
+            }
+          } )
+          .build( );
+      try {
+        final boolean imageFound = !client.describeImages( new DescribeImagesRequest( ).withImageIds( imageId ) )
+            .getImages( ).isEmpty( );
+        if ( !version.equals( serverVersion.get( ) ) ) {
+          N4j.print( "Discovery cache invalid, cloud version changed from " + version + " to " + serverVersion.get( ) );
+          return false;
+        }
+        if ( !imageFound ) {
+          N4j.print( "Discovery cache invalid, image not found " + imageId );
+          return false;
+        }
+        return true;
+      } catch ( final RuntimeException e ) {
+        N4j.print( "Discovery cache invalid, validation failed: " + e );
+        return false;
+      } finally {
+        client.shutdown( );
+      }
+    }
+  }
+}
@@ -1,14 +1,14 @@
 package com.eucalyptus.tests.awssdk
 
-import com.amazonaws.services.ec2.model.DeleteSnapshotRequest
-import com.amazonaws.services.ec2.model.DeleteVolumeRequest
-import com.amazonaws.services.ec2.model.DeregisterImageRequest
-import com.amazonaws.services.ec2.model.DescribeImagesRequest
-import com.amazonaws.services.ec2.model.TerminateInstancesRequest
+import com.amazonaws.auth.AWSStaticCredentialsProvider
 import org.junit.Test
 
+import static org.junit.Assert.assertEquals
+
 /**
  * Test that cleans up all ec2 resources for non-system accounts
+ *
+ * Resources are deleted in dependency order by the ResourceCleaner.
  */
 class Ec2CleanupTest {
 
@@ -28,39 +28,14 @@ class Ec2CleanupTest {
     }
 
     N4j.print( "Accounts : ${nonSystemAccounts}" )
+    int failures = 0
     nonSystemAccounts.each { accountName ->
       N4j.print( "Cleaning account: ${accountName}" )
-      N4j.getEc2Client( N4j.getUserCreds( accountName, 'admin' ), N4j.EC2_ENDPOINT ).with {
-        describeImages( new DescribeImagesRequest( owners: ['self'] ) ).with {
-          images.each { image ->
-            N4j.print( "Cleaning account ${accountName} image ${image.imageId}" )
-            deregisterImage( new DeregisterImageRequest( imageId: image.imageId ) )
-          }
-        }
-
-        describeInstances( ).with {
-          reservations.each { reservation ->
-            reservation.instances.each { instance ->
-              N4j.print( "Cleaning account ${accountName} instance ${instance.instanceId}" )
-              terminateInstances( new TerminateInstancesRequest( instanceIds: [ instance.instanceId ] ))
-            }
-          }
-        }
-
-        describeVolumes( ).with {
-          volumes.each { volume ->
-            N4j.print( "Cleaning account ${accountName} volume ${volume.volumeId}" )
-            deleteVolume( new DeleteVolumeRequest( volumeId: volume.volumeId ) )
-          }
-        }
-
-        describeSnapshots( ).with {
-          snapshots.each { snapshot ->
-            N4j.print( "Cleaning account ${accountName} snapshot ${snapshot.snapshotId}" )
-            deleteSnapshot( new DeleteSnapshotRequest( snapshotId: snapshot.snapshotId ) )
-          }
-        }
-      }
+      ResourceCleaner cleaner = new ResourceCleaner(
+          accountName,
+          new AWSStaticCredentialsProvider( N4j.getUserCreds( accountName, 'admin' ) ) )
+      failures += cleaner.clean( ).failures
     }
+    assertEquals( 'Resources not deleted', 0, failures )
   }
 }
@@ -82,4 +82,12 @@ class InitializationTest {
       }
     }
   }
+
+  /**
+   * Start provisioning pooled test accounts in the background
+   */
+  @Test
+  void provisionAccountPool( ) {
+    AccountPool.provision( )
+  }
 }
@@ -2,7 +2,6 @@ package com.eucalyptus.tests.awssdk;
 
 import static org.junit.Assert.fail;
 import com.amazonaws.AmazonServiceException;
-import com.amazonaws.ClientConfiguration;
 import com.amazonaws.Request;
 import com.amazonaws.Response;
 import com.amazonaws.auth.AWSCredentials;
@@ -22,6 +21,8 @@ import com.amazonaws.services.autoscaling.model.Tag;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatchClient;
 import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2Async;
+import com.amazonaws.services.ec2.AmazonEC2AsyncClientBuilder;
 import com.amazonaws.services.ec2.AmazonEC2Client;
 import com.amazonaws.services.ec2.model.*;
 import com.amazonaws.services.ec2.model.Filter;
@@ -36,7 +37,10 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.S3ClientOptions;
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClientBuilder;
 import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.eucalyptus.tests.local.LocalCloud;
 import com.github.sjones4.youcan.youare.YouAre;
 import com.github.sjones4.youcan.youare.YouAreClient;
 import com.github.sjones4.youcan.youare.model.CreateAccountRequest;
@@ -46,10 +50,12 @@ import com.github.sjones4.youcan.youprop.YouPropClient;
 import com.github.sjones4.youcan.youprop.model.DescribePropertiesRequest;
 import com.github.sjones4.youcan.youprop.model.DescribePropertiesResult;
 import com.github.sjones4.youcan.youprop.model.ModifyPropertyValueRequest;
+import com.github.sjones4.youcan.youtwo.YouTwo;
 import com.github.sjones4.youcan.youtwo.YouTwoClient;
 import com.github.sjones4.youcan.youtwo.model.DescribeInstanceTypesResult;
 import com.github.sjones4.youcan.youtwo.model.InstanceType;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ObjectArrays;
 import com.jcraft.jsch.*;
 import org.apache.log4j.Logger;
 import org.junit.Assume;
@@ -62,6 +68,7 @@ import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
@@ -78,6 +85,7 @@ public class N4j {
     static String REMOTE_INI_FILE ="/root/.euca/euca-admin.ini";
     static String LOCAL_EUCTL_FILE = System.getProperty("euctlfile", "euctl.ini");
     static String REMOTE_EUCTL_FILE ="/root/euctl.ini";
+    static final int CONSISTENCY_RETRIES = 5;
 
     static Logger logger = Logger.getLogger(N4j.class.getCanonicalName());
 
@@ -111,6 +119,15 @@ public class N4j {
     public static String EUCALYPTUS_VERSION = null;
 
     public static void initEndpoints( ) throws Exception {
+      if ( LocalCloud.isEnabled( ) ) {
+        LocalCloud.get( ).applyEndpoints( );
+        return;
+      }
+      final DiscoveryCache.Snapshot snapshot = DiscoveryCache.get( );
+      if ( snapshot != null ) {
+        snapshot.applyEndpoints( );
+        return;
+      }
       getAdminCreds(CLC_IP, USER, PASSWORD);
       print("Getting cloud information from " + LOCAL_INI_FILE);
       EC2_ENDPOINT = getAttribute(LOCAL_INI_FILE, "ec2-url");
@@ -129,40 +146,59 @@ public class N4j {
     }
 
     public static void getCloudInfo() throws Exception {
-        initEndpoints( );
+        final DiscoveryCache.Snapshot snapshot = LocalCloud.isEnabled( ) ? null : DiscoveryCache.get( );
+        if ( snapshot != null ) {
+            snapshot.apply( );
+            print("Getting cloud connections");
+            initClients( );
+            print("Using image: " + IMAGE_ID);
+        } else {
+            initEndpoints( );
+
+            print("Getting cloud connections");
+            initClients( );
+            IMAGE_ID = findImage();
+            INSTANCE_TYPE = findInstanceType( "t2.micro", "m1.small" );
+            EUCALYPTUS_VERSION = getEucalyptusVersion( );
+
+            KERNEL_ID = null;
+            RAMDISK_ID = null;
+            if (!isHVM()) {
+                KERNEL_ID = findKernel();
+                RAMDISK_ID = findRamdisk();
+            }
 
-        print("Getting cloud connections");
+            AVAILABILITY_ZONE = findAvailablityZone();
+            if ( !LocalCloud.isEnabled( ) ) {
+                DiscoveryCache.put( DiscoveryCache.Snapshot.capture( ) );
+            }
+        }
+        NAME_PREFIX = eucaUUID() + "-";
+        print("Using resource prefix for test: " + NAME_PREFIX);
+        print("Cloud Discovery Complete");
+    }
+
+    private static void initClients( ) {
         as = getAutoScalingClient(ACCESS_KEY, SECRET_KEY, AS_ENDPOINT);
         ec2 = getEc2Client(ACCESS_KEY, SECRET_KEY, EC2_ENDPOINT);
         elb = getElbClient(ACCESS_KEY, SECRET_KEY, ELB_ENDPOINT);
         cw = getCwClient(ACCESS_KEY, SECRET_KEY, CW_ENDPOINT);
         s3 = getS3Client(ACCESS_KEY, SECRET_KEY, S3_ENDPOINT);
         youAre = getYouAreClient(ACCESS_KEY, SECRET_KEY, IAM_ENDPOINT);
-        IMAGE_ID = findImage();
-        INSTANCE_TYPE = findInstanceType( "t2.micro", "m1.small" );
-        EUCALYPTUS_VERSION = getEucalyptusVersion( );
-
-        if (!isHVM()) {
-            KERNEL_ID = findKernel();
-            RAMDISK_ID = findRamdisk();
-        }
-
-        AVAILABILITY_ZONE = findAvailablityZone();
-        NAME_PREFIX = eucaUUID() + "-";
-        print("Using resource prefix for test: " + NAME_PREFIX);
-        print("Cloud Discovery Complete");
     }
 
     private static boolean cloudInfoAndSqsLoaded = false;
     public static synchronized void getCloudInfoAndSqs() throws Exception {
         if (cloudInfoAndSqsLoaded) return;
         getCloudInfo();
-        getConfigProperties(CLC_IP, USER, PASSWORD);
-        print("Getting sqs info from " + LOCAL_INI_FILE);
-        SQS_ENDPOINT = getAttribute(LOCAL_INI_FILE, "simplequeue-url");
-        // In case we don't put the sqs endpoint in there, use another one
-        if (SQS_ENDPOINT == null) {
-          SQS_ENDPOINT = S3_ENDPOINT.replace("s3.","simplequeue.");
+        if (!LocalCloud.isEnabled()) {
+            getConfigProperties(CLC_IP, USER, PASSWORD);
+            print("Getting sqs info from " + LOCAL_INI_FILE);
+            SQS_ENDPOINT = getAttribute(LOCAL_INI_FILE, "simplequeue-url");
+            // In case we don't put the sqs endpoint in there, use another one
+            if (SQS_ENDPOINT == null) {
+              SQS_ENDPOINT = S3_ENDPOINT.replace("s3.","simplequeue.");
+            }
         }
         sqs = getSqsClient(ACCESS_KEY, SECRET_KEY, SQS_ENDPOINT);
         cloudInfoAndSqsLoaded = true;
@@ -176,6 +212,17 @@ public class N4j {
         return getSqsClient(creds.getAWSAccessKeyId(), creds.getAWSSecretKey(), SQS_ENDPOINT);
     }
 
+    /**
+     * SQS client for the user that is not shared, for tests that modify the
+     * client (e.g. add request handlers). The caller must shut down the client.
+     */
+    public static AmazonSQSClient getUnsharedSqsClient(String account, String user) {
+        final AmazonSQSClient sqs = new AmazonSQSClient(
+            new AWSStaticCredentialsProvider(getUserCreds(account, user)), ClientRegistry.configuration());
+        sqs.setEndpoint(SQS_ENDPOINT);
+        return RequestMetrics.instrument(sqs);
+    }
+
     // Quick way to initialize just the S3 client without initializing other clients in getCloudInfo().
     // For ease of use against AWS (mainly) as well as Eucalyptus
     public static void initS3Client() throws Exception {
@@ -243,61 +290,31 @@ public class N4j {
      */
     public static void getAdminCreds(String clcip, String user, String password) {
         print("CLC IP: " + clcip);
-        SftpATTRS attrs = null;
 
         if ( clcip == null || clcip.isEmpty( ) ) {
             return;
         }
 
         try {
-            JSch jsch = new JSch();
-            Session session = jsch.getSession(user, clcip, 22);
-            session.setPassword(password);
-            session.setConfig("StrictHostKeyChecking", "no");
-            print("Establishing Connection...");
-            session.connect();
-            print("Connection established.");
-            ChannelSftp sftpChannel = (ChannelSftp) session.openChannel("sftp");
-            sftpChannel.connect();
+            final ClcSession clc = ClcSession.of(clcip, user, password);
 
             // check to see if there are already creds created by us present
-            try {
-                attrs = sftpChannel.stat(REMOTE_INI_FILE);
-            } catch (Exception e){
-                print("No existing test creds found.");
-            }
+            boolean credsExist = remoteFileExists(clc, REMOTE_INI_FILE);
 
             // if there are not creds already created by us create them
-            if (attrs != null) {
+            if (credsExist) {
                 print("Existing test creds found");
             } else {
+                print("No existing test creds found.");
                 print("Creating test creds: " + REMOTE_INI_FILE);
                 String command = "eval `clcadmin-assume-system-credentials`; " +
                         "DNSDOMAIN=`euctl -n system.dns.dnsdomain`; " +
                         "euare-useraddkey admin -wd $DNSDOMAIN &> " + REMOTE_INI_FILE + ";" +
                         "echo [global] >> " + REMOTE_INI_FILE + ";" +
                         "echo default-region = $DNSDOMAIN >>  " + REMOTE_INI_FILE;
-                Channel channel=session.openChannel("exec");
-                ((ChannelExec)channel).setCommand(command);
-                channel.connect();
-                InputStream in=channel.getInputStream();
-                byte[] tmp=new byte[1024];
-                while(true){
-                    while(in.available()>0){
-                        int i=in.read(tmp, 0, 1024);
-                        if(i<0)break;
-                        print(new String(tmp, 0, i));
-                    }
-                    if(channel.isClosed()){
-                        if(in.available()>0) continue;
-                        print("Get creds exit-status: "+channel.getExitStatus());
-                        break;
-                    }
-                    try{Thread.sleep(1000);}catch(Exception ee){}
-                }
-                channel.disconnect();
+                int exitStatus = clc.exec(command, N4j::print);
+                print("Get creds exit-status: " + exitStatus);
             }
-            session.disconnect();
         }
         catch(JSchException | IOException e) {
             System.err.print(e);
@@ -312,38 +329,11 @@ public class N4j {
         print("CLC IP: " + clcip);
 
         try {
-            JSch jsch = new JSch();
-            Session session = jsch.getSession(user, clcip, 22);
-            session.setPassword(password);
-            session.setConfig("StrictHostKeyChecking", "no");
-            print("Establishing Connection...");
-            session.connect();
-            print("Connection established.");
-
-
             print("Creating config properties: " + REMOTE_EUCTL_FILE);
             String command = "eval `clcadmin-assume-system-credentials`; " +
                 "euctl > " + REMOTE_EUCTL_FILE;
-            Channel channel=session.openChannel("exec");
-            ((ChannelExec)channel).setCommand(command);
-            channel.connect();
-            InputStream in=channel.getInputStream();
-            byte[] tmp=new byte[1024];
-            while(true){
-                while(in.available()>0){
-                    int i=in.read(tmp, 0, 1024);
-                    if(i<0)break;
-                    print(new String(tmp, 0, i));
-                }
-                if(channel.isClosed()){
-                    if(in.available()>0) continue;
-                    print("Creating config properties exit-status: "+channel.getExitStatus());
-                    break;
-                }
-                try{Thread.sleep(1000);}catch(Exception ee){}
-            }
-            channel.disconnect();
-            session.disconnect();
+            int exitStatus = ClcSession.of(clcip, user, password).exec(command, N4j::print);
+            print("Creating config properties exit-status: " + exitStatus);
         }
         catch(JSchException | IOException e) {
             System.err.print(e);
@@ -356,28 +346,19 @@ public class N4j {
     public static void getRemoteFile(String clcip, String user, String password, String remoteFile, String localFile) {
         try
         {
-            JSch jsch = new JSch();
-            Session session = jsch.getSession(user, clcip, 22);
-            session.setPassword(password);
-            session.setConfig("StrictHostKeyChecking", "no");
-            session.connect();
-            ChannelSftp sftpChannel = (ChannelSftp) session.openChannel("sftp");
-            sftpChannel.connect();
-            InputStream out;
-            out = sftpChannel.get(remoteFile);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(out));
-            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(localFile)));
-            String line;
-            while ((line = reader.readLine()) != null)
-            {
-                writer.write(line);
-                // must do this: .readLine() will have stripped line endings
-                writer.newLine();
-            }
-            reader.close();
-            writer.close();
-            sftpChannel.disconnect();
-            session.disconnect();
+            ClcSession.of(clcip, user, password).sftp(sftpChannel -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(sftpChannel.get(remoteFile)));
+                     BufferedWriter writer = new BufferedWriter(new FileWriter(new File(localFile)))) {
+                    String line;
+                    while ((line = reader.readLine()) != null)
+                    {
+                        writer.write(line);
+                        // must do this: .readLine() will have stripped line endings
+                        writer.newLine();
+                    }
+                }
+                return null;
+            });
         }
         catch(JSchException | SftpException | IOException e)
         {
@@ -386,59 +367,38 @@ public class N4j {
     }
 
     public static void removeRemoteFile(String clcip, String user, String password, String remoteFile) {
-        SftpATTRS attrs = null;
-
         try {
-            JSch jsch = new JSch();
-            Session session = jsch.getSession(user, clcip, 22);
-            session.setPassword(password);
-            session.setConfig("StrictHostKeyChecking", "no");
-            print("Establishing Connection...");
-            session.connect();
-            print("Connection established.");
-            ChannelSftp sftpChannel = (ChannelSftp) session.openChannel("sftp");
-            sftpChannel.connect();
-
-            // check to see if there are already creds created by us present
-            try {
-                attrs = sftpChannel.stat(remoteFile);
-            } catch (Exception e){
-                print("No existing test creds found.");
-            }
+            final ClcSession clc = ClcSession.of(clcip, user, password);
 
             // if there are creds already created by us delete them
-            if (attrs == null) {
+            if (!remoteFileExists(clc, remoteFile)) {
                 print("Nothing to delete.");
             } else {
                 print("Removing test creds: " + remoteFile);
                 String command = "rm -rf " + remoteFile;
-                Channel channel=session.openChannel("exec");
-                ((ChannelExec)channel).setCommand(command);
-                channel.connect();
-                InputStream in=channel.getInputStream();
-                byte[] tmp=new byte[1024];
-                while(true){
-                    while(in.available()>0){
-                        int i=in.read(tmp, 0, 1024);
-                        if(i<0)break;
-                        print(new String(tmp, 0, i));
-                    }
-                    if(channel.isClosed()){
-                        if(in.available()>0) continue;
-                        print("Remove remote file exit-status: "+channel.getExitStatus());
-                        break;
-                    }
-                    try{Thread.sleep(1000);}catch(Exception ee){}
-                }
-                channel.disconnect();
+                int exitStatus = clc.exec(command, N4j::print);
+                print("Remove remote file exit-status: " + exitStatus);
             }
-            session.disconnect();
         }
         catch(JSchException | IOException e) {
             System.err.print(e);
         }
     }
 
+    private static boolean remoteFileExists(final ClcSession clc, final String remoteFile) throws JSchException, IOException {
+        try {
+            return clc.sftp(sftpChannel -> {
+                try {
+                    return sftpChannel.stat(remoteFile) != null;
+                } catch (SftpException e) {
+                    return false;
+                }
+            });
+        } catch (SftpException e) {
+            return false;
+        }
+    }
+
     public static Runnable disableAuthorizationCache( ) {
       final long expiry = getAuthorizationExpiry( );
       setAuthorizationExpiry(0);
@@ -480,34 +440,73 @@ public class N4j {
      */
     static AmazonEC2 getEc2Client(AWSCredentialsProvider credentials,
                                   String endpoint) {
-        return AmazonEC2Client.builder( )
-            .withCredentials( credentials )
-            .withEndpointConfiguration( new EndpointConfiguration( endpoint, "eucalyptus" ) )
-            .build( );
+        return ClientRegistry.client( "ec2", credentials, endpoint, null, config ->
+            AmazonEC2Client.builder( )
+                .withCredentials( credentials )
+                .withClientConfiguration( config )
+                .withEndpointConfiguration( new EndpointConfiguration( endpoint, "eucalyptus" ) )
+                .withRequestHandlers( RequestMetrics.handlers( ) )
+                .build( ) );
+    }
+
+    /**
+     * create async ec2 connection using the shared async client executor
+     */
+    public static AmazonEC2Async getEc2AsyncClient(AWSCredentialsProvider credentials,
+                                                   String endpoint) {
+        return ClientRegistry.client( "ec2", credentials, endpoint, "async", config ->
+            AmazonEC2AsyncClientBuilder.standard( )
+                .withCredentials( credentials )
+                .withClientConfiguration( config )
+                .withEndpointConfiguration( new EndpointConfiguration( endpoint, "eucalyptus" ) )
+                .withExecutorFactory( AsyncClients::executor )
+                .withRequestHandlers( RequestMetrics.handlers( ) )
+                .build( ) );
     }
 
     public static AmazonAutoScaling getAutoScalingClient(String accessKey,
                                                          String secretKey, String endpoint) {
-        AWSCredentials creds = new BasicAWSCredentials(accessKey, secretKey);
-        final AmazonAutoScaling as = new AmazonAutoScalingClient(creds);
-        as.setEndpoint(endpoint);
-        return as;
+        AWSCredentialsProvider creds = new AWSStaticCredentialsProvider( new BasicAWSCredentials(accessKey, secretKey) );
+        return ClientRegistry.client( "autoscaling", creds, endpoint, null, config -> {
+            final AmazonAutoScaling as = new AmazonAutoScalingClient(creds, config);
+            as.setEndpoint(endpoint);
+            return as;
+        } );
     }
 
       static AmazonSQS getSqsClient(String accessKey, String secretKey,
                                     String endpoint) {
-        AWSCredentials creds = new BasicAWSCredentials(accessKey, secretKey);
-        final AmazonSQS sqs = new AmazonSQSClient(creds);
-        sqs.setEndpoint(endpoint);
-        return sqs;
+        AWSCredentialsProvider creds = new AWSStaticCredentialsProvider( new BasicAWSCredentials(accessKey, secretKey) );
+        return ClientRegistry.client( "sqs", creds, endpoint, null, config -> {
+            final AmazonSQS sqs = new AmazonSQSClient(creds, config);
+            sqs.setEndpoint(endpoint);
+            return sqs;
+        } );
     }
 
-    private static AmazonElasticLoadBalancing getElbClient(String accessKey, String secretKey,
-                                                           String endpoint) {
-        AWSCredentials creds = new BasicAWSCredentials(accessKey, secretKey);
-        final AmazonElasticLoadBalancing elb = new AmazonElasticLoadBalancingClient(creds);
-        elb.setEndpoint(endpoint);
-        return elb;
+    /**
+     * create async sqs connection using the shared async client executor
+     */
+    public static AmazonSQSAsync getSqsAsyncClient(AWSCredentialsProvider credentials,
+                                                   String endpoint) {
+        return ClientRegistry.client( "sqs", credentials, endpoint, "async", config ->
+            AmazonSQSAsyncClientBuilder.standard( )
+                .withCredentials( credentials )
+                .withClientConfiguration( config )
+                .withEndpointConfiguration( new EndpointConfiguration( endpoint, "eucalyptus" ) )
+                .withExecutorFactory( AsyncClients::executor )
+                .withRequestHandlers( RequestMetrics.handlers( ) )
+                .build( ) );
+    }
+
+    static AmazonElasticLoadBalancing getElbClient(String accessKey, String secretKey,
+                                                   String endpoint) {
+        AWSCredentialsProvider creds = new AWSStaticCredentialsProvider( new BasicAWSCredentials(accessKey, secretKey) );
+        return ClientRegistry.client( "elasticloadbalancing", creds, endpoint, null, config -> {
+            final AmazonElasticLoadBalancing elb = new AmazonElasticLoadBalancingClient(creds, config);
+            elb.setEndpoint(endpoint);
+            return elb;
+        } );
     }
 
     /**
@@ -523,17 +522,42 @@ public class N4j {
     }
 
     public static YouAre getYouAreClient(AWSCredentialsProvider credentials, String endpoint) {
-        final YouAre youAre = new YouAreClient(credentials);
-        youAre.setEndpoint(endpoint);
-        return youAre;
+        return ClientRegistry.client( "iam", credentials, endpoint, null, config -> {
+            final YouAre youAre = new YouAreClient(credentials, config);
+            youAre.setEndpoint(endpoint);
+            return youAre;
+        } );
+    }
+
+    /**
+     * Cloud admin YouAre client acting on behalf of the given account.
+     */
+    private static YouAre getDelegateYouAreClient(final String accountName) {
+        final AWSCredentialsProvider credentials = getAdminCredentialsProvider( );
+        return ClientRegistry.client( "iam", credentials, IAM_ENDPOINT, "delegate:" + accountName, config -> {
+            final YouAreClient youAre = new YouAreClient(credentials, config);
+            youAre.setEndpoint(IAM_ENDPOINT);
+            youAre.addRequestHandler(new RequestHandler2() {
+                public void beforeRequest(final Request<?> request) {
+                    request.addParameter("DelegateAccount", accountName);
+                }
+            });
+            return youAre;
+        } );
+    }
+
+    private static void evictDelegateYouAreClient(final String accountName) {
+        ClientRegistry.evict( "iam", getAdminCredentialsProvider( ), IAM_ENDPOINT, "delegate:" + accountName );
     }
 
     public static AmazonCloudWatch getCwClient(String accessKey, String secretKey,
                                                String endpoint) {
-        AWSCredentials creds = new BasicAWSCredentials(accessKey, secretKey);
-        final AmazonCloudWatch cw = new AmazonCloudWatchClient(creds);
-        cw.setEndpoint(endpoint);
-        return cw;
+        AWSCredentialsProvider creds = new AWSStaticCredentialsProvider( new BasicAWSCredentials(accessKey, secretKey) );
+        return ClientRegistry.client( "monitoring", creds, endpoint, null, config -> {
+            final AmazonCloudWatch cw = new AmazonCloudWatchClient(creds, config);
+            cw.setEndpoint(endpoint);
+            return cw;
+        } );
     }
 
     public static AmazonS3 getS3Client(String accessKey, String secretKey,
@@ -546,10 +570,12 @@ public class N4j {
     }
 
     public static AmazonS3 getS3Client(AWSCredentialsProvider credentials, String endpoint) {
-        AmazonS3Client client = new AmazonS3Client( credentials, new ClientConfiguration( ).withSignerOverride("S3SignerType"));
-        client.setEndpoint( endpoint );
-        client.setS3ClientOptions( new S3ClientOptions( ).withPathStyleAccess( endpoint.endsWith( "/services/objectstorage" ) ) );
-        return client;
+        return ClientRegistry.client( "s3", credentials, endpoint, "S3SignerType", config -> {
+            AmazonS3Client client = new AmazonS3Client( credentials, config.withSignerOverride("S3SignerType"));
+            client.setEndpoint( endpoint );
+            client.setS3ClientOptions( new S3ClientOptions( ).withPathStyleAccess( endpoint.endsWith( "/services/objectstorage" ) ) );
+            return client;
+        } );
     }
 
     public static String getConfigProperty(String configPath, String field) throws IOException {
@@ -574,11 +600,13 @@ public class N4j {
     }
 
     public static AmazonS3 getS3SigV4Client(AWSCredentialsProvider credentials, String endpoint) {
-        return AmazonS3Client.builder( )
-            .withCredentials( credentials )
-            .withClientConfiguration( new ClientConfiguration( ).withSignerOverride("AWSS3V4SignerType") )
-            .withEndpointConfiguration( new AwsClientBuilder.EndpointConfiguration( endpoint, "eucalyptus" ) )
-            .build( );
+        return ClientRegistry.client( "s3", credentials, endpoint, "AWSS3V4SignerType", config ->
+            AmazonS3Client.builder( )
+                .withCredentials( credentials )
+                .withClientConfiguration( config.withSignerOverride("AWSS3V4SignerType") )
+                .withEndpointConfiguration( new AwsClientBuilder.EndpointConfiguration( endpoint, "eucalyptus" ) )
+                .withRequestHandlers( RequestMetrics.handlers( ) )
+                .build( ) );
     }
 
     public static YouProp getPropertiesClient( final AWSCredentialsProvider credentials ) {
@@ -586,9 +614,11 @@ public class N4j {
     }
 
     public static YouProp getPropertiesClient( final AWSCredentialsProvider credentials, final String endpoint ) {
-      final YouPropClient youProp = new YouPropClient( credentials );
-      youProp.setEndpoint( endpoint );
-      return youProp;
+      return ClientRegistry.client( "properties", credentials, endpoint, null, config -> {
+        final YouPropClient youProp = new YouPropClient( credentials, config );
+        youProp.setEndpoint( endpoint );
+        return youProp;
+      } );
     }
 
     /**
@@ -623,22 +653,32 @@ public class N4j {
         Files.write(path, content.getBytes(charset));
     }
 
+    /**
+     * Detect the version from the server header, the client is not cached as
+     * it is specific to this call but does record request metrics.
+     */
     public static String getEucalyptusVersion( ) {
         AtomicReference<String> version = new AtomicReference<String>(  );
+        RequestHandler2 versionHandler = new RequestHandler2( ) {
+          @Override
+          public void afterResponse( final Request<?> request, final Response<?> response ) {
+            String server = response.getHttpResponse().getHeader( "server" );
+            if (server.startsWith( "Eucalyptus/" )) {
+              version.set( server.substring( 11 ) );
+            }
+          }
+        };
         AmazonEC2 client = AmazonEC2Client.builder()
+            .withClientConfiguration( ClientRegistry.configuration( ) )
             .withEndpointConfiguration( new AwsClientBuilder.EndpointConfiguration( EC2_ENDPOINT, "eucalyptus" ) )
             .withCredentials( new AWSStaticCredentialsProvider( new BasicAWSCredentials(ACCESS_KEY, SECRET_KEY) ) )
-            .withRequestHandlers( new RequestHandler2( ) {
-              @Override
-              public void afterResponse( final Request<?> request, final Response<?> response ) {
-                String server = response.getHttpResponse().getHeader( "server" );
-                if (server.startsWith( "Eucalyptus/" )) {
-                  version.set( server.substring( 11 ) );
-                }
-              }
-            } )
+            .withRequestHandlers( ObjectArrays.concat( RequestMetrics.handlers( ), versionHandler ) )
             .build();
-        client.describeRegions();
+        try {
+            client.describeRegions();
+        } finally {
+            client.shutdown();
+        }
         return MoreObjects.firstNonNull( version.get(), "" );
     }
 
@@ -700,17 +740,11 @@ public class N4j {
 
     public static void waitForHealthStatus(final String instanceId, final String expectedStatus)
             throws Exception {
-        final long startTime = System.currentTimeMillis();
-        final long timeout = TimeUnit.MINUTES.toMillis(15);
-        boolean completed = false;
-        while (!completed && (System.currentTimeMillis() - startTime) < timeout) {
-            Thread.sleep(5000);
-            final String healthStatus = getHealthStatus(instanceId);
-            completed = expectedStatus.equals(healthStatus);
-        }
-        assertThat(completed, "Instances health status did not change to "
+        final Waiter.Result result = Waiter.poll("Instance health status " + expectedStatus,
+                TimeUnit.MINUTES.toMillis(15), elapsed -> expectedStatus.equals(getHealthStatus(instanceId)));
+        assertThat(result.isSuccess(), "Instances health status did not change to "
                 + expectedStatus + " within the expected timeout");
-        print("Instance health status changed in " + (System.currentTimeMillis() - startTime) + "ms");
+        print("Instance health status changed in " + result.getElapsedMillis() + "ms");
     }
 
     public static String getHealthStatus(final String instanceId) {
@@ -729,23 +763,10 @@ public class N4j {
    * @param what What are we waiting for?
    * @param callback True if complete, false to wait
    * @param timeout The wait timeout in millis
+   * @see Waiter
    */
   public static void waitForIt(final String what, final Predicate<Long> callback, final long timeout) {
-    final long startTime = System.currentTimeMillis();
-    while (true) {
-      if ((System.currentTimeMillis() - startTime) > timeout) {
-        throw new IllegalStateException(what + " wait timed out");
-      }
-      try {
-        Thread.sleep(5000);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      }
-      if ( !callback.test( System.currentTimeMillis() - startTime ) ) {
-        continue;
-      }
-      break;
-    }
+    Waiter.await(what, timeout, callback);
   }
 
   public static List<?> waitForInstances(final long timeout, final int expectedCount, final String groupName,
@@ -765,21 +786,17 @@ public class N4j {
 
   public static List<?> waitForInstances(final AmazonEC2 ec2, final long timeout, final int expectedCount, final String groupName,
                                          final boolean asString, final Collection<String> ignoreIds) throws Exception {
-        final long startTime = System.currentTimeMillis();
-        boolean completed = false;
-        List<Instance> instances = Collections.emptyList();
-        while (!completed && (System.currentTimeMillis() - startTime) < timeout) {
-            Thread.sleep(5000);
-            instances = getInstancesForGroup(ec2, groupName, Collections.singleton("running"), Function.identity( ) );
-            completed =
-                instances.stream( ).filter( instance -> !ignoreIds.contains( instance.getInstanceId( ) ) ).count( ) ==
+        final AtomicReference<List<Instance>> instances = new AtomicReference<>(Collections.emptyList());
+        final Waiter.Result result = Waiter.poll("Instance count " + expectedCount, timeout, elapsed -> {
+            instances.set(getInstancesForGroup(ec2, groupName, Collections.singleton("running"), Function.identity( ) ));
+            return instances.get( ).stream( ).filter( instance -> !ignoreIds.contains( instance.getInstanceId( ) ) ).count( ) ==
                     expectedCount;
-        }
-        assertThat(completed, "Instances count did not change to " + expectedCount + " within the expected timeout");
-        print("Instance count changed in " + (System.currentTimeMillis() - startTime) + "ms");
+        });
+        assertThat(result.isSuccess(), "Instances count did not change to " + expectedCount + " within the expected timeout");
+        print("Instance count changed in " + result.getElapsedMillis() + "ms");
         return asString ?
-            instances.stream( ).map( Instance::getInstanceId ).collect( Collectors.toList( ) ):
-            instances;
+            instances.get( ).stream( ).map( Instance::getInstanceId ).collect( Collectors.toList( ) ):
+            instances.get( );
   }
 
   public static List<?> getInstancesForGroup(final String groupName, final String status, final boolean asString) {
@@ -858,24 +875,13 @@ public class N4j {
      * Wait for volumes to be attached / detached
      */
     public static void waitForVolumeAttachments(final AmazonEC2 ec2, final long timeout) {
-        final long startTime = System.currentTimeMillis();
-        while (true) {
-            if ((System.currentTimeMillis() - startTime) > timeout) {
-                throw new IllegalStateException("Volume attachment wait timed out");
-            }
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+        waitForIt( "Volume attachment", time -> {
             DescribeVolumesResult result = ec2.describeVolumes(
                 new DescribeVolumesRequest( )
                     .withFilters( new Filter( "attachment.status", Arrays.asList( "attaching", "detaching" ) ) )
             );
-            if ( result.getVolumes( ).isEmpty( ) ) {
-                break;
-            }
-        }
+            return result.getVolumes( ).isEmpty( );
+        }, timeout );
     }
 
     /**
@@ -941,8 +947,12 @@ public class N4j {
     }
 
     public static String findInstanceType(final String... preferredTypes) {
-      final YouTwoClient youTwo = new YouTwoClient( getAdminCredentialsProvider( ) );
-      youTwo.setEndpoint( EC2_ENDPOINT );
+      final AWSCredentialsProvider credentials = getAdminCredentialsProvider( );
+      final YouTwo youTwo = ClientRegistry.client( "ec2", credentials, EC2_ENDPOINT, "youtwo", config -> {
+        final YouTwoClient client = new YouTwoClient( credentials, config );
+        client.setEndpoint( EC2_ENDPOINT );
+        return client;
+      } );
       DescribeInstanceTypesResult result = youTwo.describeInstanceTypes( );
       String type = null;
       out:
@@ -967,7 +977,7 @@ public class N4j {
         final DescribeImagesResult imagesResult = ec2
                 .describeImages(new DescribeImagesRequest().withFilters(
                         new Filter().withName("image-id").withValues(
-                                findImage()),
+                                IMAGE_ID != null ? IMAGE_ID : findImage()),
                         new Filter().withName("virtualization-type").withValues(
                                 "hvm")));
         return (imagesResult.getImages().size() != 0);
@@ -1339,17 +1349,14 @@ public class N4j {
                                         final long timeout,
                                         final String groupName,
                                         final boolean allowEmpty) throws Exception {
-        final long startTime = System.currentTimeMillis();
-        boolean completed = false;
-        String instanceState = null;
-        while (!completed && (System.currentTimeMillis() - startTime) < timeout) {
-            instanceState = getInstanceState(groupName);
-            completed = instanceState == null && allowEmpty || state.equals(instanceState);
-            Thread.sleep(2500);
-        }
-        assertThat(completed, "Instance not found with state " + state + " within the expected timeout");
-        print("Instance found in " + (System.currentTimeMillis() - startTime) + "ms for state: " +
-                state + (instanceState == null ? " (instance terminated before state detected)" : ""));
+        final AtomicReference<String> instanceState = new AtomicReference<>();
+        final Waiter.Result result = Waiter.poll("Instance state " + state, timeout, elapsed -> {
+            instanceState.set(getInstanceState(groupName));
+            return instanceState.get() == null && allowEmpty || state.equals(instanceState.get());
+        });
+        assertThat(result.isSuccess(), "Instance not found with state " + state + " within the expected timeout");
+        print("Instance found in " + result.getElapsedMillis() + "ms for state: " +
+                state + (instanceState.get() == null ? " (instance terminated before state detected)" : ""));
     }
 
     public static void deletePolicy(String policyName) {
@@ -1396,9 +1403,7 @@ public class N4j {
 
     public static void waitForElbInstances(final String elbName, final long timeout, final List<String> instances)
             throws Exception {
-        final long startTime = System.currentTimeMillis();
-        boolean completed = false;
-        while (!completed && (System.currentTimeMillis() - startTime) < timeout) {
+        final Waiter.Result result = Waiter.poll("Load balancer instances " + elbName, timeout, elapsed -> {
             final List<String> elbInstances = new ArrayList<String>();
             final DescribeLoadBalancersResult balancersResult = elb.describeLoadBalancers(new DescribeLoadBalancersRequest().withLoadBalancerNames(elbName));
             for (final LoadBalancerDescription description : balancersResult.getLoadBalancerDescriptions()) {
@@ -1406,11 +1411,10 @@ public class N4j {
                     elbInstances.add(instance.getInstanceId());
                 }
             }
-            completed = elbInstances.containsAll(instances) && instances.containsAll(elbInstances);
-            Thread.sleep(2500);
-        }
-        assertThat(completed, "Instance not found for load balancer " + elbName + " within the expected timeout");
-        print("Instance found in " + (System.currentTimeMillis() - startTime) + "ms for load balancer: " + elbName);
+            return elbInstances.containsAll(instances) && instances.containsAll(elbInstances);
+        });
+        assertThat(result.isSuccess(), "Instance not found for load balancer " + elbName + " within the expected timeout");
+        print("Instance found in " + result.getElapsedMillis() + "ms for load balancer: " + elbName);
     }
 
     public static boolean isProfilePresent(final String profileName, final List<InstanceProfile> profiles) {
@@ -1422,15 +1426,7 @@ public class N4j {
     }
 
     public static void createIAMPolicy(final String accountName, String userName, String policyName, String policyDocument) {
-        AWSCredentialsProvider awsCredentialsProvider = new AWSStaticCredentialsProvider( new BasicAWSCredentials(ACCESS_KEY, SECRET_KEY));
-        final YouAreClient youAre = new YouAreClient(awsCredentialsProvider);
-        youAre.setEndpoint(IAM_ENDPOINT);
-
-        youAre.addRequestHandler(new RequestHandler2() {
-            public void beforeRequest(final Request<?> request) {
-                request.addParameter("DelegateAccount", accountName);
-            }
-        });
+        final YouAre youAre = getDelegateYouAreClient(accountName);
 
         if (policyDocument == null) {
             policyDocument = "{\n" +
@@ -1452,16 +1448,7 @@ public class N4j {
     }
 
     public static void deleteIAMPolicy(final String accountName, String userName, String policyName) {
-        AWSCredentialsProvider awsCredentialsProvider = new AWSStaticCredentialsProvider( new BasicAWSCredentials(ACCESS_KEY, SECRET_KEY));
-        final YouAreClient youAre = new YouAreClient(awsCredentialsProvider);
-        youAre.setEndpoint(IAM_ENDPOINT);
-
-        youAre.addRequestHandler(new RequestHandler2() {
-            public void beforeRequest(final Request<?> request) {
-                request.addParameter("DelegateAccount", accountName);
-            }
-        });
-
+        final YouAre youAre = getDelegateYouAreClient(accountName);
 
         DeleteUserPolicyRequest deleteUserPolicyRequest = new DeleteUserPolicyRequest()
           .withPolicyName(policyName)
@@ -1470,16 +1457,17 @@ public class N4j {
         print("Delete policy: " + policyName);
     }
 
+    /**
+     * Get credentials for the user, the access key is created on first use and cached.
+     *
+     * @see CredentialCache
+     */
     public static AWSCredentials getUserCreds(final String accountName, String userName) {
-        AWSCredentialsProvider awsCredentialsProvider = new AWSStaticCredentialsProvider( new BasicAWSCredentials(ACCESS_KEY, SECRET_KEY));
-        final YouAreClient youAre = new YouAreClient(awsCredentialsProvider);
-        youAre.setEndpoint(IAM_ENDPOINT);
+        return CredentialCache.get(accountName, userName, () -> createUserCreds(accountName, userName));
+    }
 
-        youAre.addRequestHandler(new RequestHandler2() {
-            public void beforeRequest(final Request<?> request) {
-                request.addParameter("DelegateAccount", accountName);
-            }
-        });
+    private static AWSCredentials createUserCreds(final String accountName, String userName) {
+        final YouAre youAre = getDelegateYouAreClient(accountName);
 
         CreateAccessKeyRequest createAccessKeyRequest = new CreateAccessKeyRequest().withUserName(userName);
         CreateAccessKeyResult result = youAre.createAccessKey(createAccessKeyRequest);
@@ -1497,55 +1485,118 @@ public class N4j {
         return new BasicAWSCredentials(accessKeyId, secretKey);
     }
 
-    public static synchronized void synchronizedCreateAccount(String accountName) {
+    static void deleteUserKey(final String accountName, String userName, String accessKeyId) {
+        getDelegateYouAreClient(accountName).deleteAccessKey(new DeleteAccessKeyRequest(userName, accessKeyId));
+        CredentialCache.evictAccessKey(accessKeyId);
+        print("Deleted access key " + accessKeyId + " for user " + userName + " in account " + accountName);
+    }
+
+    /**
+     * @deprecated Account creation no longer requires a lock, use createAccount
+     */
+    @Deprecated
+    public static void synchronizedCreateAccount(String accountName) {
         createAccount(accountName);
     }
     public static String createAccount(String accountName) {
-        int numAccountsBefore = youAre.listAccounts().getAccounts().size();
         CreateAccountRequest createAccountRequest = new CreateAccountRequest().withAccountName(accountName);
         String accountId = youAre.createAccount(createAccountRequest).getAccount().getAccountId();
-        assertThat((numAccountsBefore < youAre.listAccounts().getAccounts().size()),"Failed to create account " + accountName);
+        assertThat(eventually(() -> accountExists(accountName, accountId)), "Failed to create account " + accountName);
         print("Created account: " + accountName + " [" + accountId + "]");
         return accountId;
     }
 
-    public static synchronized void synchronizedDeleteAccount(String accountName) {
+    /**
+     * @deprecated Account deletion no longer requires a lock, use deleteAccount
+     */
+    @Deprecated
+    public static void synchronizedDeleteAccount(String accountName) {
         deleteAccount(accountName);
     }
     public static void deleteAccount(String accountName){
-        int numAccountsBefore = youAre.listAccounts().getAccounts().size();
         DeleteAccountRequest deleteAccountRequest = new DeleteAccountRequest().withAccountName(accountName).withRecursive(Boolean.TRUE);
         youAre.deleteAccount(deleteAccountRequest);
-        assertThat((numAccountsBefore > youAre.listAccounts().getAccounts().size()),"Failed to delete account " + accountName);
+        CredentialCache.evictAccount(accountName);
+        assertThat(eventually(() -> !accountExists(accountName, null)), "Failed to delete account " + accountName);
+        evictDelegateYouAreClient(accountName);
         print("Deleted account: " + accountName);
 
     }
 
-    public static synchronized void synchronizedCreateUser(final String accountName, String userName) {
+    /**
+     * @deprecated User creation no longer requires a lock, use createUser
+     */
+    @Deprecated
+    public static void synchronizedCreateUser(final String accountName, String userName) {
         createUser(accountName, userName);
     }
 
     public static void createUser(final String accountName, String userName){
-        AWSCredentialsProvider awsCredentialsProvider = new AWSStaticCredentialsProvider( new BasicAWSCredentials(ACCESS_KEY, SECRET_KEY));
-        final YouAreClient youAre = new YouAreClient(awsCredentialsProvider);
-        youAre.setEndpoint(IAM_ENDPOINT);
+        final YouAre youAre = getDelegateYouAreClient(accountName);
 
-        youAre.addRequestHandler(new RequestHandler2() {
-            public void beforeRequest(final Request<?> request) {
-                request.addParameter("DelegateAccount", accountName);
-            }
-        });
-
-        int numUsersBefore = youAre.listUsers().getUsers().size();
         CreateUserRequest createUserRequest = new CreateUserRequest()
                 .withUserName(userName)
                 .withPath("/");
         youAre.createUser(createUserRequest);
+        CredentialCache.evict(accountName, userName);
 
-        assertThat((numUsersBefore < youAre.listUsers().getUsers().size()), "Failed to create user " + userName);
+        assertThat(eventually(() -> userExists(youAre, userName)), "Failed to create user " + userName);
         print("Created new user " + userName + " in account " + accountName);
     }
 
+    /**
+     * Check for an account by name using the account admin user.
+     *
+     * @param accountId The expected account id, or null for any
+     * @throws AmazonServiceException For errors other than the account (admin) not found
+     */
+    private static boolean accountExists(final String accountName, final String accountId) {
+        try {
+            final String arn = getDelegateYouAreClient(accountName)
+                .getUser(new GetUserRequest().withUserName("admin")).getUser().getArn();
+            return accountId == null || arn.contains(":" + accountId + ":");
+        } catch (AmazonServiceException e) {
+            if (!"NoSuchEntity".equals(e.getErrorCode())) throw e;
+            return false;
+        }
+    }
+
+    /**
+     * Check for a user by name.
+     *
+     * @throws AmazonServiceException For errors other than the user not found
+     */
+    private static boolean userExists(final YouAre youAre, final String userName) {
+        try {
+            youAre.getUser(new GetUserRequest().withUserName(userName));
+            return true;
+        } catch (AmazonServiceException e) {
+            if (!"NoSuchEntity".equals(e.getErrorCode())) throw e;
+            return false;
+        }
+    }
+
+    /**
+     * Check a condition, retrying a few times with a short backoff to allow
+     * for eventual consistency.
+     */
+    private static boolean eventually(final BooleanSupplier check) {
+        for (int attempt = 0; ; attempt++) {
+            if (check.getAsBoolean()) {
+                return true;
+            }
+            if (attempt >= CONSISTENCY_RETRIES) {
+                return false;
+            }
+            try {
+                Thread.sleep(100L << attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
     public static AWSCredentialsProvider getAdminCredentialsProvider( ) {
       return new AWSStaticCredentialsProvider( new BasicAWSCredentials(ACCESS_KEY, SECRET_KEY));
     }
@@ -1553,28 +1604,13 @@ public class N4j {
     public static Map<String, String> getUserKeys(final String accountName, String userName){
         Map<String, String> keys = new HashMap<>();
 
-        AWSCredentialsProvider awsCredentialsProvider = getAdminCredentialsProvider( );
-        final YouAreClient youAre = new YouAreClient(awsCredentialsProvider);
-        youAre.setEndpoint(IAM_ENDPOINT);
-
-        youAre.addRequestHandler(new RequestHandler2() {
-            public void beforeRequest(final Request<?> request) {
-                request.addParameter("DelegateAccount", accountName);
-            }
-        });
-
-        CreateAccessKeyRequest createAccessKeyRequest = new CreateAccessKeyRequest().withUserName(userName);
-        CreateAccessKeyResult result = youAre.createAccessKey(createAccessKeyRequest);
-        AccessKey accessKey = result.getAccessKey();
-        print("Created new access key for user " + userName);
+        AWSCredentials credentials = getUserCreds(accountName, userName);
 
-        // get accesskey from key gen result request
-        String accessKeyId = accessKey.getAccessKeyId();
-        keys.put("ak", accessKeyId);
+        // get accesskey from cached or generated credentials
+        keys.put("ak", credentials.getAWSAccessKeyId());
 
-        // get secretkey from key gen result request
-        String secretKey = accessKey.getSecretAccessKey();
-        keys.put("sk", secretKey);
+        // get secretkey from cached or generated credentials
+        keys.put("sk", credentials.getAWSSecretKey());
 
         return keys;
     }
@@ -1582,8 +1618,10 @@ public class N4j {
     public static void deleteTestCreds(String accesskey, String remoteIniFile) {
         print("Deleting accesskey " + accesskey);
         youAre.deleteAccessKey(new DeleteAccessKeyRequest("admin", accesskey));
+        CredentialCache.evictAccessKey(accesskey);
         print("Deleting remote file " + remoteIniFile + " from the CLC");
         removeRemoteFile(CLC_IP, USER, PASSWORD, remoteIniFile);
+        DiscoveryCache.invalidate( );
     }
 
     @SafeVarargs
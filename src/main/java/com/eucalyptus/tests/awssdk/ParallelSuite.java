@@ -0,0 +1,222 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suite runner that runs test classes concurrently.
+ *
+ * Nested suites are flattened and the test classes are started in suite
+ * order, each class starts when the resources declared by its TestResources
+ * annotation are available:
+ *
+ *   - exclusive classes (and classes without an annotation) run alone
+ *   - classes that modify cloud properties do not run concurrently
+ *   - classes sharing a named lock do not run concurrently
+ *   - classes run concurrently while their instances fit the capacity
+ *
+ * Request metrics are reported for each test class and for the suite.
+ *
+ * Scheduling is configured via system properties:
+ *
+ *   n4j.suite.threads   - maximum concurrent test classes (default 4)
+ *   n4j.suite.instances - instance capacity for concurrent test classes (default 8)
+ *
+ * Usage:
+ *
+ *   @RunWith(ParallelSuite.class)
+ *   @SuiteClasses({...})
+ */
+public class ParallelSuite extends Suite {
+
+  private static final int THREADS = Integer.getInteger( "n4j.suite.threads", 4 );
+  private static final int INSTANCES = Integer.getInteger( "n4j.suite.instances", 8 );
+
+  private final Map<Class<?>,TestResources> resources;
+  private final ResourceScheduler resourceScheduler = new ResourceScheduler( INSTANCES );
+  private final ThreadLocal<Integer> ticket = new ThreadLocal<>( );
+
+  public ParallelSuite( final Class<?> klass, final RunnerBuilder builder ) throws InitializationError {
+    this( klass, builder, flatten( klass, null, new LinkedHashMap<>( ) ) );
+  }
+
+  private ParallelSuite(
+      final Class<?> klass,
+      final RunnerBuilder builder,
+      final Map<Class<?>,TestResources> resources
+  ) throws InitializationError {
+    super( builder, klass, resources.keySet( ).toArray( new Class<?>[ resources.size( ) ] ) );
+    this.resources = resources;
+    setScheduler( new ParallelScheduler( ) );
+  }
+
+  @Override
+  protected void runChild( final Runner runner, final RunNotifier notifier ) {
+    final Class<?> testClass = runner.getDescription( ).getTestClass( );
+    final TestResources testResources = testClass == null ? null : resources.get( testClass );
+    final Integer order = ticket.get( );
+    resourceScheduler.acquire( order == null ? -1 : order, testResources );
+    final RequestMetrics.Snapshot metrics = RequestMetrics.snapshot( );
+    try {
+      super.runChild( runner, notifier );
+    } finally {
+      resourceScheduler.release( testResources );
+      RequestMetrics.report( "Request metrics for " + runner.getDescription( ).getDisplayName( ), metrics );
+    }
+  }
+
+  @Override
+  public void run( final RunNotifier notifier ) {
+    final RequestMetrics.Snapshot metrics = RequestMetrics.snapshot( );
+    try {
+      super.run( notifier );
+    } finally {
+      RequestMetrics.report( "Request metrics for suite " + getDescription( ).getDisplayName( ), metrics );
+    }
+  }
+
+  /**
+   * Flatten nested suites to test classes with their effective resources.
+   */
+  private static Map<Class<?>,TestResources> flatten(
+      final Class<?> klass,
+      final TestResources suiteResources,
+      final Map<Class<?>,TestResources> classes
+  ) {
+    final SuiteClasses suiteClasses = klass.getAnnotation( SuiteClasses.class );
+    final TestResources declared = klass.getAnnotation( TestResources.class );
+    final TestResources effective = declared != null ? declared : suiteResources;
+    if ( suiteClasses == null ) {
+      if ( !classes.containsKey( klass ) ) {
+        classes.put( klass, effective );
+      }
+    } else {
+      for ( final Class<?> suiteClass : suiteClasses.value( ) ) {
+        flatten( suiteClass, effective, classes );
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * Runs children on a thread pool, tracking the order they were scheduled in.
+   */
+  private final class ParallelScheduler implements RunnerScheduler {
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max( 1, THREADS ),
+        new ThreadFactoryBuilder( ).setNameFormat( "n4j-suite-%d" ).build( ) );
+    private int scheduled = 0;
+
+    @Override
+    public void schedule( final Runnable childStatement ) {
+      final int order = scheduled++;
+      executor.submit( ( ) -> {
+        ticket.set( order );
+        try {
+          childStatement.run( );
+        } finally {
+          ticket.remove( );
+        }
+      } );
+    }
+
+    @Override
+    public void finished( ) {
+      executor.shutdown( );
+      try {
+        while ( !executor.awaitTermination( 1, TimeUnit.MINUTES ) ) {
+          N4j.print( "Waiting for " + resourceScheduler.running( ) + " running test classes" );
+        }
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread( ).interrupt( );
+        executor.shutdownNow( );
+      }
+    }
+  }
+
+  /**
+   * Grants resources to test classes in suite order.
+   */
+  private static final class ResourceScheduler {
+    private final int instanceCapacity;
+    private final Set<String> locks = new HashSet<>( );
+    private int started = 0;
+    private int running = 0;
+    private int instances = 0;
+    private boolean exclusive = false;
+    private boolean properties = false;
+
+    ResourceScheduler( final int instanceCapacity ) {
+      this.instanceCapacity = instanceCapacity;
+    }
+
+    synchronized int running( ) {
+      return running;
+    }
+
+    synchronized void acquire( final int order, final TestResources resources ) {
+      try {
+        while ( ( order >= 0 && order != started ) || !available( resources ) ) {
+          wait( );
+        }
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread( ).interrupt( );
+        throw new IllegalStateException( "Interrupted waiting for test resources" );
+      }
+      started++;
+      running++;
+      if ( resources == null || resources.exclusive( ) ) {
+        exclusive = true;
+      } else {
+        instances += resources.instances( );
+        properties |= resources.properties( );
+        locks.addAll( Arrays.asList( resources.locks( ) ) );
+      }
+      notifyAll( );
+    }
+
+    synchronized void release( final TestResources resources ) {
+      running--;
+      if ( resources == null || resources.exclusive( ) ) {
+        exclusive = false;
+      } else {
+        instances -= resources.instances( );
+        if ( resources.properties( ) ) properties = false;
+        locks.removeAll( Arrays.asList( resources.locks( ) ) );
+      }
+      notifyAll( );
+    }
+
+    private boolean available( final TestResources resources ) {
+      if ( exclusive ) {
+        return false;
+      }
+      if ( resources == null || resources.exclusive( ) ) {
+        return running == 0;
+      }
+      final boolean instancesAvailable = resources.instances( ) == 0 ||
+          instances == 0 ||
+          instances + resources.instances( ) <= instanceCapacity;
+      return instancesAvailable &&
+          !( properties && resources.properties( ) ) &&
+          Collections.disjoint( locks, Arrays.asList( resources.locks( ) ) );
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceClient;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryUtils;
+import com.eucalyptus.tests.load.Latencies;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per operation request latency and outcome metrics for service clients.
+ *
+ * A request handler installed on every client built via the ClientRegistry
+ * records the latency of each request (including retries) by service and
+ * operation, along with counts of errors, throttling errors and retries.
+ * Latencies are recorded in microseconds using Latencies histograms.
+ *
+ * Metrics are cumulative, a snapshot taken at the start of a test can be
+ * used to report the requests made during the test. Reports are output for
+ * each test class and suite run by the ParallelSuite, for load scenarios
+ * and at JVM exit. When test classes run concurrently their requests are
+ * included in each others reports.
+ *
+ * Metrics are configured via system properties:
+ *
+ *   n4j.metrics - enable request metrics (default true)
+ */
+public final class RequestMetrics {
+
+  private static final boolean ENABLED = Boolean.valueOf( System.getProperty( "n4j.metrics", "true" ) );
+  private static final HandlerContextKey<Long> START_NANOS = new HandlerContextKey<>( "n4j-metrics-start" );
+  private static final HandlerContextKey<Integer> ATTEMPTS = new HandlerContextKey<>( "n4j-metrics-attempts" );
+
+  private static final ConcurrentMap<String,Operation> operations = new ConcurrentHashMap<>( );
+  private static final RequestHandler2 handler = new MetricsRequestHandler( );
+
+  static {
+    if ( ENABLED ) {
+      ClientRegistry.beforeShutdown( ( ) -> {
+        final Snapshot snapshot = snapshot( );
+        if ( !snapshot.isEmpty( ) ) N4j.print( snapshot.report( "Request metrics" ) );
+      } );
+    }
+  }
+
+  private RequestMetrics( ) {
+  }
+
+  /**
+   * Install the metrics handler on the given client, if enabled.
+   *
+   * Clients built with a client builder are immutable and are not changed,
+   * such clients should be built with the handlers from this class.
+   *
+   * @return The client
+   * @see #handlers()
+   */
+  public static <T> T instrument( final T client ) {
+    if ( ENABLED && client instanceof AmazonWebServiceClient ) try {
+      ( (AmazonWebServiceClient) client ).addRequestHandler( handler );
+    } catch ( final UnsupportedOperationException e ) {
+      // immutable builder client
+    }
+    return client;
+  }
+
+  /**
+   * Request handlers to install on a client using a client builder, empty
+   * if metrics are not enabled.
+   */
+  public static RequestHandler2[] handlers( ) {
+    return ENABLED ? new RequestHandler2[]{ handler } : new RequestHandler2[ 0 ];
+  }
+
+  /**
+   * Snapshot of the cumulative metrics for all operations.
+   */
+  public static Snapshot snapshot( ) {
+    final Map<String,OperationSnapshot> snapshots = new TreeMap<>( );
+    for ( final Map.Entry<String,Operation> entry : operations.entrySet( ) ) {
+      snapshots.put( entry.getKey( ), entry.getValue( ).snapshot( ) );
+    }
+    return new Snapshot( snapshots );
+  }
+
+  /**
+   * Output a report of the metrics since the given snapshot.
+   *
+   * @param title The report title
+   * @param since The snapshot taken at the start of the reporting period
+   */
+  public static void report( final String title, final Snapshot since ) {
+    if ( !ENABLED ) return;
+    final Snapshot delta = snapshot( ).since( since );
+    if ( !delta.isEmpty( ) ) {
+      N4j.print( delta.report( title ) );
+    }
+  }
+
+  private static Operation operation( final Request<?> request ) {
+    final String requestName = request.getOriginalRequest( ).getClass( ).getSimpleName( );
+    final String operationName = requestName.endsWith( "Request" ) ?
+        requestName.substring( 0, requestName.length( ) - "Request".length( ) ) :
+        requestName;
+    final String service = request.getServiceName( ).replaceFirst( "^Amazon", "" );
+    return operations.computeIfAbsent( service + ":" + operationName, key -> new Operation( ) );
+  }
+
+  private static final class MetricsRequestHandler extends RequestHandler2 {
+    @Override
+    public void beforeRequest( final Request<?> request ) {
+      request.addHandlerContext( START_NANOS, System.nanoTime( ) );
+      request.addHandlerContext( ATTEMPTS, 0 );
+    }
+
+    @Override
+    public void beforeAttempt( final HandlerBeforeAttemptContext context ) {
+      final Request<?> request = context.getRequest( );
+      final Integer attempts = request.getHandlerContext( ATTEMPTS );
+      if ( attempts != null ) {
+        request.addHandlerContext( ATTEMPTS, attempts + 1 );
+        if ( attempts > 0 ) operation( request ).retries.increment( );
+      }
+    }
+
+    @Override
+    public void afterResponse( final Request<?> request, final Response<?> response ) {
+      record( request, null );
+    }
+
+    @Override
+    public void afterError( final Request<?> request, final Response<?> response, final Exception e ) {
+      record( request, e );
+    }
+
+    private void record( final Request<?> request, final Exception e ) {
+      final Long start = request.getHandlerContext( START_NANOS );
+      if ( start == null ) return;
+      final Operation operation = operation( request );
+      operation.latencies.record( System.nanoTime( ) - start );
+      if ( e != null ) {
+        operation.errors.increment( );
+        if ( e instanceof AmazonServiceException && RetryUtils.isThrottlingException( (AmazonServiceException) e ) ) {
+          operation.throttles.increment( );
+        }
+      }
+    }
+  }
+
+  private static final class Operation {
+    private final Latencies latencies = new Latencies( );
+    private final LongAdder errors = new LongAdder( );
+    private final LongAdder throttles = new LongAdder( );
+    private final LongAdder retries = new LongAdder( );
+
+    OperationSnapshot snapshot( ) {
+      return new OperationSnapshot( latencies.histogram( ), errors.sum( ), throttles.sum( ), retries.sum( ) );
+    }
+  }
+
+  private static final class OperationSnapshot {
+    private final Histogram histogram;
+    private final long errors;
+    private final long throttles;
+    private final long retries;
+
+    OperationSnapshot( final Histogram histogram, final long errors, final long throttles, final long retries ) {
+      this.histogram = histogram;
+      this.errors = errors;
+      this.throttles = throttles;
+      this.retries = retries;
+    }
+
+    OperationSnapshot since( final OperationSnapshot start ) {
+      if ( start == null ) return this;
+      final Histogram delta = histogram.copy( );
+      delta.subtract( start.histogram );
+      return new OperationSnapshot( delta, errors - start.errors, throttles - start.throttles, retries - start.retries );
+    }
+  }
+
+  /**
+   * Point in time metrics for all operations.
+   */
+  public static final class Snapshot {
+    private final Map<String,OperationSnapshot> operations;
+
+    private Snapshot( final Map<String,OperationSnapshot> operations ) {
+      this.operations = operations;
+    }
+
+    /**
+     * Metrics for the period since the given snapshot.
+     */
+    public Snapshot since( final Snapshot start ) {
+      final Map<String,OperationSnapshot> delta = new TreeMap<>( );
+      for ( final Map.Entry<String,OperationSnapshot> entry : operations.entrySet( ) ) {
+        final OperationSnapshot operation = entry.getValue( ).since( start.operations.get( entry.getKey( ) ) );
+        if ( operation.histogram.getTotalCount( ) > 0 ) {
+          delta.put( entry.getKey( ), operation );
+        }
+      }
+      return new Snapshot( delta );
+    }
+
+    public boolean isEmpty( ) {
+      return operations.isEmpty( );
+    }
+
+    /**
+     * The operations in this snapshot, as service:operation
+     */
+    public Iterable<String> getOperations( ) {
+      return operations.keySet( );
+    }
+
+    public long getCount( final String operation ) {
+      final OperationSnapshot snapshot = operations.get( operation );
+      return snapshot == null ? 0 : snapshot.histogram.getTotalCount( );
+    }
+
+    /**
+     * Latency in microseconds at the given percentile for the operation.
+     */
+    public long getLatencyMicros( final String operation, final double percentile ) {
+      final OperationSnapshot snapshot = operations.get( operation );
+      return snapshot == null ? 0 : snapshot.histogram.getValueAtPercentile( percentile );
+    }
+
+    public long getErrors( final String operation ) {
+      final OperationSnapshot snapshot = operations.get( operation );
+      return snapshot == null ? 0 : snapshot.errors;
+    }
+
+    public long getThrottles( final String operation ) {
+      final OperationSnapshot snapshot = operations.get( operation );
+      return snapshot == null ? 0 : snapshot.throttles;
+    }
+
+    public long getRetries( final String operation ) {
+      final OperationSnapshot snapshot = operations.get( operation );
+      return snapshot == null ? 0 : snapshot.retries;
+    }
+
+    /**
+     * Latency table for the operations, times in milliseconds.
+     */
+    public String report( final String title ) {
+      final StringBuilder report = new StringBuilder( );
+      report.append( title ).append( '\n' );
+      report.append( String.format( "%-48s %8s %9s %9s %9s %9s %9s %6s %6s %6s%n",
+          "operation", "count", "p50", "p90", "p99", "p99.9", "max", "errors", "thrtl", "retry" ) );
+      for ( final Map.Entry<String,OperationSnapshot> entry : operations.entrySet( ) ) {
+        final Histogram histogram = entry.getValue( ).histogram;
+        report.append( String.format( "%-48s %8d %9.1f %9.1f %9.1f %9.1f %9.1f %6d %6d %6d%n",
+            entry.getKey( ),
+            histogram.getTotalCount( ),
+            histogram.getValueAtPercentile( 50 ) / 1000d,
+            histogram.getValueAtPercentile( 90 ) / 1000d,
+            histogram.getValueAtPercentile( 99 ) / 1000d,
+            histogram.getValueAtPercentile( 99.9 ) / 1000d,
+            histogram.getMaxValue( ) / 1000d,
+            entry.getValue( ).errors,
+            entry.getValue( ).throttles,
+            entry.getValue( ).retries ) );
+      }
+      return report.toString( );
+    }
+  }
+}
@@ -0,0 +1,587 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.DeleteAutoScalingGroupRequest;
+import com.amazonaws.services.autoscaling.model.DeleteLaunchConfigurationRequest;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsResult;
+import com.amazonaws.services.autoscaling.model.DescribeLaunchConfigurationsRequest;
+import com.amazonaws.services.autoscaling.model.DescribeLaunchConfigurationsResult;
+import com.amazonaws.services.autoscaling.model.LaunchConfiguration;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.Address;
+import com.amazonaws.services.ec2.model.BlockDeviceMapping;
+import com.amazonaws.services.ec2.model.DeleteInternetGatewayRequest;
+import com.amazonaws.services.ec2.model.DeleteKeyPairRequest;
+import com.amazonaws.services.ec2.model.DeleteNetworkInterfaceRequest;
+import com.amazonaws.services.ec2.model.DeleteRouteTableRequest;
+import com.amazonaws.services.ec2.model.DeleteSecurityGroupRequest;
+import com.amazonaws.services.ec2.model.DeleteSnapshotRequest;
+import com.amazonaws.services.ec2.model.DeleteSubnetRequest;
+import com.amazonaws.services.ec2.model.DeleteVolumeRequest;
+import com.amazonaws.services.ec2.model.DeleteVpcRequest;
+import com.amazonaws.services.ec2.model.DeregisterImageRequest;
+import com.amazonaws.services.ec2.model.DescribeImagesRequest;
+import com.amazonaws.services.ec2.model.DescribeSnapshotsRequest;
+import com.amazonaws.services.ec2.model.DetachInternetGatewayRequest;
+import com.amazonaws.services.ec2.model.DisassociateRouteTableRequest;
+import com.amazonaws.services.ec2.model.GroupIdentifier;
+import com.amazonaws.services.ec2.model.Image;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceNetworkInterface;
+import com.amazonaws.services.ec2.model.InternetGateway;
+import com.amazonaws.services.ec2.model.InternetGatewayAttachment;
+import com.amazonaws.services.ec2.model.IpPermission;
+import com.amazonaws.services.ec2.model.KeyPairInfo;
+import com.amazonaws.services.ec2.model.NetworkInterface;
+import com.amazonaws.services.ec2.model.ReleaseAddressRequest;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.RevokeSecurityGroupEgressRequest;
+import com.amazonaws.services.ec2.model.RevokeSecurityGroupIngressRequest;
+import com.amazonaws.services.ec2.model.RouteTable;
+import com.amazonaws.services.ec2.model.RouteTableAssociation;
+import com.amazonaws.services.ec2.model.SecurityGroup;
+import com.amazonaws.services.ec2.model.Snapshot;
+import com.amazonaws.services.ec2.model.Subnet;
+import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+import com.amazonaws.services.ec2.model.Volume;
+import com.amazonaws.services.ec2.model.VolumeAttachment;
+import com.amazonaws.services.ec2.model.Vpc;
+import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancing.model.DeleteLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Deletes the cloud resources for an account in dependency order.
+ *
+ * Resources are discovered and a dependency graph built, for example auto
+ * scaling groups are deleted before their launch configurations, instances
+ * are terminated before their volumes are deleted and volumes before their
+ * snapshots, network interfaces before subnets and subnets before VPCs.
+ * Each resource is deleted as soon as the resources it depends on are
+ * gone, independent resources are deleted in parallel on a bounded pool.
+ * Instances, volumes and load balancers are watched until gone without
+ * holding a pool thread.
+ * The default VPC and its resources are not deleted.
+ *
+ * The pool is configured via system properties:
+ *
+ *   n4j.cleanup.threads - maximum concurrent deletes (default 8)
+ *   n4j.cleanup.timeout - time to wait for each resource to be deleted (default 10m)
+ */
+public final class ResourceCleaner {
+
+  private static final int THREADS = Integer.getInteger( "n4j.cleanup.threads", 8 );
+  private static final long TIMEOUT_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.cleanup.timeout", "10m" ), TimeUnit.MINUTES.toMillis( 10 ) );
+  private static final ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max( 1, THREADS ),
+      Threads.factory( "n4j-cleanup-%d" ) );
+
+  private final String name;
+  private final AmazonEC2 ec2;
+  private final AmazonAutoScaling as;
+  private final AmazonElasticLoadBalancing elb;
+  private final Map<String,Node> nodes = new LinkedHashMap<>( );
+
+  /**
+   * Create a cleaner for the account with the given credentials.
+   *
+   * @param name The account name (for logging)
+   * @param credentials The credentials for the account
+   */
+  public ResourceCleaner( final String name, final AWSCredentialsProvider credentials ) {
+    final AWSCredentials keys = credentials.getCredentials( );
+    this.name = name;
+    this.ec2 = N4j.EC2_ENDPOINT == null ? null :
+        N4j.getEc2Client( credentials, N4j.EC2_ENDPOINT );
+    this.as = N4j.AS_ENDPOINT == null ? null :
+        N4j.getAutoScalingClient( keys.getAWSAccessKeyId( ), keys.getAWSSecretKey( ), N4j.AS_ENDPOINT );
+    this.elb = N4j.ELB_ENDPOINT == null ? null :
+        N4j.getElbClient( keys.getAWSAccessKeyId( ), keys.getAWSSecretKey( ), N4j.ELB_ENDPOINT );
+  }
+
+  /**
+   * Discover and delete all resources.
+   *
+   * @return The cleanup report
+   */
+  public Report clean( ) {
+    final long start = System.currentTimeMillis( );
+    final Report report = new Report( name );
+    nodes.clear( );
+    try ( final StateWatcher watcher = new StateWatcher( ec2, null, elb ) ) {
+      discover( watcher );
+      N4j.print( "Cleaning " + nodes.size( ) + " resources for " + name );
+      final Map<Node,CompletableFuture<Void>> futures = new LinkedHashMap<>( );
+      for ( final Node node : nodes.values( ) ) {
+        schedule( node, futures, new LinkedHashSet<>( ), report );
+      }
+      CompletableFuture.allOf( futures.values( ).toArray( new CompletableFuture<?>[ futures.size( ) ] ) ).join( );
+    }
+    report.elapsedMillis = System.currentTimeMillis( ) - start;
+    N4j.print( report.toString( ) );
+    return report;
+  }
+
+  private CompletableFuture<Void> schedule(
+      final Node node,
+      final Map<Node,CompletableFuture<Void>> futures,
+      final Set<Node> path,
+      final Report report
+  ) {
+    final CompletableFuture<Void> existing = futures.get( node );
+    if ( existing != null ) {
+      return existing;
+    }
+    if ( !path.add( node ) ) {
+      throw new IllegalStateException( "Dependency cycle at " + node );
+    }
+    final List<CompletableFuture<Void>> dependencies = new ArrayList<>( );
+    for ( final Node dependency : node.dependencies ) {
+      dependencies.add( schedule( dependency, futures, path, report ) );
+    }
+    path.remove( node );
+    final CompletableFuture<Void> future = CompletableFuture
+        .allOf( dependencies.toArray( new CompletableFuture<?>[ dependencies.size( ) ] ) )
+        .thenComposeAsync( ignored -> execute( node, report ), executor );
+    futures.put( node, future );
+    return future;
+  }
+
+  /**
+   * Delete the resource, the returned future completes when it is gone.
+   */
+  private CompletableFuture<Void> execute( final Node node, final Report report ) {
+    final long start = System.currentTimeMillis( );
+    CompletableFuture<?> gone;
+    try {
+      N4j.print( "Deleting " + node + " for " + name );
+      node.delete.run( );
+      gone = node.gone == null ? CompletableFuture.completedFuture( null ) : node.gone.get( );
+    } catch ( final RuntimeException e ) {
+      gone = new CompletableFuture<>( );
+      gone.completeExceptionally( e );
+    }
+    return gone.handle( ( state, throwable ) -> {
+      report.record( node.type, success( node, throwable ), System.currentTimeMillis( ) - start );
+      return null;
+    } );
+  }
+
+  private boolean success( final Node node, final Throwable throwable ) {
+    final Throwable cause = throwable instanceof CompletionException && throwable.getCause( ) != null ?
+        throwable.getCause( ) :
+        throwable;
+    if ( cause instanceof AmazonServiceException ) {
+      final AmazonServiceException e = (AmazonServiceException) cause;
+      if ( isNotFound( e ) ) return true;
+      N4j.print( "Error deleting " + node + " for " + name + ": " + e.getErrorCode( ) + ": " + e.getErrorMessage( ) );
+      return false;
+    } else if ( cause != null ) {
+      N4j.print( "Error deleting " + node + " for " + name + ": " + cause );
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean isNotFound( final AmazonServiceException e ) {
+    return e.getStatusCode( ) == 404 ||
+        ( e.getErrorCode( ) != null && e.getErrorCode( ).contains( "NotFound" ) );
+  }
+
+  private Node node( final String type, final String id, final Runnable delete ) {
+    return nodes.computeIfAbsent( type + ":" + id, key -> new Node( type, id, delete ) );
+  }
+
+  private Node find( final String type, final String id ) {
+    return id == null ? null : nodes.get( type + ":" + id );
+  }
+
+  private static void dependsOn( final Node node, final Node dependency ) {
+    if ( node != null && dependency != null && node != dependency ) {
+      node.dependencies.add( dependency );
+    }
+  }
+
+  private void dependsOnVpcResources( final Node node, final String vpcId, final String... types ) {
+    if ( vpcId == null ) return;
+    for ( final Node other : new ArrayList<>( nodes.values( ) ) ) {
+      if ( vpcId.equals( other.vpcId ) && Arrays.asList( types ).contains( other.type ) ) {
+        dependsOn( node, other );
+      }
+    }
+  }
+
+  private CompletableFuture<Void> waitFor( final String what, final BooleanSupplier gone ) {
+    return CompletableFuture.runAsync( ( ) -> Waiter.await( what, TIMEOUT_MILLIS, elapsed -> gone.getAsBoolean( ) ), executor );
+  }
+
+  private static CompletableFuture<String> watch(
+      final StateWatcher watcher,
+      final StateWatcher.ResourceType type,
+      final String id,
+      final String... states
+  ) {
+    return watcher.await( type, id, Arrays.asList( states ), TIMEOUT_MILLIS, TimeUnit.MILLISECONDS );
+  }
+
+  private void discover( final StateWatcher watcher ) {
+    if ( as != null ) discoverAutoScaling( );
+    if ( elb != null ) discoverLoadBalancers( watcher );
+    if ( ec2 != null ) discoverEc2( watcher );
+  }
+
+  private void discoverAutoScaling( ) {
+    final List<AutoScalingGroup> groups = new ArrayList<>( );
+    String nextToken = null;
+    do {
+      final DescribeAutoScalingGroupsResult result =
+          as.describeAutoScalingGroups( new DescribeAutoScalingGroupsRequest( ).withNextToken( nextToken ) );
+      groups.addAll( result.getAutoScalingGroups( ) );
+      nextToken = result.getNextToken( );
+    } while ( nextToken != null );
+    final List<LaunchConfiguration> configurations = new ArrayList<>( );
+    nextToken = null;
+    do {
+      final DescribeLaunchConfigurationsResult result =
+          as.describeLaunchConfigurations( new DescribeLaunchConfigurationsRequest( ).withNextToken( nextToken ) );
+      configurations.addAll( result.getLaunchConfigurations( ) );
+      nextToken = result.getNextToken( );
+    } while ( nextToken != null );
+
+    for ( final AutoScalingGroup group : groups ) {
+      final String groupName = group.getAutoScalingGroupName( );
+      final Node node = node( "autoscaling-group", groupName, ( ) -> as.deleteAutoScalingGroup(
+          new DeleteAutoScalingGroupRequest( ).withAutoScalingGroupName( groupName ).withForceDelete( true ) ) );
+      node.gone = ( ) -> waitFor( "Auto scaling group " + groupName + " deletion", ( ) ->
+          as.describeAutoScalingGroups( new DescribeAutoScalingGroupsRequest( ).withAutoScalingGroupNames( groupName ) )
+              .getAutoScalingGroups( ).isEmpty( ) );
+    }
+    for ( final LaunchConfiguration configuration : configurations ) {
+      final String configurationName = configuration.getLaunchConfigurationName( );
+      final Node node = node( "launch-configuration", configurationName, ( ) -> as.deleteLaunchConfiguration(
+          new DeleteLaunchConfigurationRequest( ).withLaunchConfigurationName( configurationName ) ) );
+      for ( final AutoScalingGroup group : groups ) {
+        if ( configurationName.equals( group.getLaunchConfigurationName( ) ) ) {
+          dependsOn( node, find( "autoscaling-group", group.getAutoScalingGroupName( ) ) );
+        }
+      }
+    }
+  }
+
+  private void discoverLoadBalancers( final StateWatcher watcher ) {
+    for ( final LoadBalancerDescription description : elb.describeLoadBalancers( ).getLoadBalancerDescriptions( ) ) {
+      final String loadBalancerName = description.getLoadBalancerName( );
+      final Node node = node( "load-balancer", loadBalancerName, ( ) -> elb.deleteLoadBalancer(
+          new DeleteLoadBalancerRequest( ).withLoadBalancerName( loadBalancerName ) ) );
+      node.gone = ( ) -> watch( watcher, StateWatcher.ResourceType.LOAD_BALANCER, loadBalancerName, StateWatcher.MISSING );
+      node.vpcId = description.getVPCId( );
+    }
+  }
+
+  private void discoverEc2( final StateWatcher watcher ) {
+    final Set<String> defaultVpcs = new LinkedHashSet<>( );
+    final List<Vpc> vpcs = ec2.describeVpcs( ).getVpcs( );
+    for ( final Vpc vpc : vpcs ) {
+      if ( Boolean.TRUE.equals( vpc.getIsDefault( ) ) ) defaultVpcs.add( vpc.getVpcId( ) );
+    }
+
+    // instances
+    final List<Instance> instances = new ArrayList<>( );
+    for ( final Reservation reservation : ec2.describeInstances( ).getReservations( ) ) {
+      for ( final Instance instance : reservation.getInstances( ) ) {
+        if ( !"terminated".equals( instance.getState( ).getName( ) ) ) {
+          instances.add( instance );
+        }
+      }
+    }
+    for ( final Instance instance : instances ) {
+      final String instanceId = instance.getInstanceId( );
+      final Node node = node( "instance", instanceId, ( ) -> ec2.terminateInstances(
+          new TerminateInstancesRequest( ).withInstanceIds( instanceId ) ) );
+      node.gone = ( ) -> watch( watcher, StateWatcher.ResourceType.INSTANCE, instanceId, "terminated" );
+      node.vpcId = instance.getVpcId( );
+      instance.getTags( ).stream( )
+          .filter( tag -> "aws:autoscaling:groupName".equals( tag.getKey( ) ) )
+          .forEach( tag -> dependsOn( node, find( "autoscaling-group", tag.getValue( ) ) ) );
+    }
+
+    // images and snapshots
+    final List<Image> images = ec2.describeImages( new DescribeImagesRequest( ).withOwners( "self" ) ).getImages( );
+    for ( final Image image : images ) {
+      final String imageId = image.getImageId( );
+      node( "image", imageId, ( ) -> ec2.deregisterImage( new DeregisterImageRequest( imageId ) ) );
+    }
+
+    // volumes
+    for ( final Volume volume : ec2.describeVolumes( ).getVolumes( ) ) {
+      final String volumeId = volume.getVolumeId( );
+      final Node node = node( "volume", volumeId, ( ) -> ec2.deleteVolume( new DeleteVolumeRequest( volumeId ) ) );
+      node.gone = ( ) -> watch( watcher, StateWatcher.ResourceType.VOLUME, volumeId, "deleted", StateWatcher.MISSING );
+      for ( final VolumeAttachment attachment : volume.getAttachments( ) ) {
+        dependsOn( node, find( "instance", attachment.getInstanceId( ) ) );
+      }
+    }
+
+    for ( final Snapshot snapshot : ec2.describeSnapshots( new DescribeSnapshotsRequest( ).withOwnerIds( "self" ) ).getSnapshots( ) ) {
+      final String snapshotId = snapshot.getSnapshotId( );
+      final Node node = node( "snapshot", snapshotId, ( ) -> ec2.deleteSnapshot( new DeleteSnapshotRequest( snapshotId ) ) );
+      dependsOn( node, find( "volume", snapshot.getVolumeId( ) ) );
+      for ( final Image image : images ) {
+        for ( final BlockDeviceMapping mapping : image.getBlockDeviceMappings( ) ) {
+          if ( mapping.getEbs( ) != null && snapshotId.equals( mapping.getEbs( ).getSnapshotId( ) ) ) {
+            dependsOn( node, find( "image", image.getImageId( ) ) );
+          }
+        }
+      }
+    }
+
+    // key pairs
+    for ( final KeyPairInfo keyPair : ec2.describeKeyPairs( ).getKeyPairs( ) ) {
+      final String keyName = keyPair.getKeyName( );
+      node( "key-pair", keyName, ( ) -> ec2.deleteKeyPair( new DeleteKeyPairRequest( keyName ) ) );
+    }
+
+    // addresses
+    final List<NetworkInterface> networkInterfaces = ec2.describeNetworkInterfaces( ).getNetworkInterfaces( );
+    for ( final Address address : ec2.describeAddresses( ).getAddresses( ) ) {
+      final String allocationId = address.getAllocationId( );
+      final String publicIp = address.getPublicIp( );
+      final Node node = node( "address", allocationId != null ? allocationId : publicIp, ( ) -> ec2.releaseAddress(
+          allocationId != null ?
+              new ReleaseAddressRequest( ).withAllocationId( allocationId ) :
+              new ReleaseAddressRequest( ).withPublicIp( publicIp ) ) );
+      dependsOn( node, find( "instance", address.getInstanceId( ) ) );
+      if ( address.getNetworkInterfaceId( ) != null ) {
+        node.vpcId = networkInterfaces.stream( )
+            .filter( networkInterface -> address.getNetworkInterfaceId( ).equals( networkInterface.getNetworkInterfaceId( ) ) )
+            .map( NetworkInterface::getVpcId )
+            .findFirst( ).orElse( null );
+      }
+    }
+
+    // network interfaces
+    for ( final NetworkInterface networkInterface : networkInterfaces ) {
+      if ( Boolean.TRUE.equals( networkInterface.getRequesterManaged( ) ) ) continue;
+      if ( defaultVpcs.contains( networkInterface.getVpcId( ) ) ) continue;
+      final String networkInterfaceId = networkInterface.getNetworkInterfaceId( );
+      final Node node = node( "network-interface", networkInterfaceId, ( ) -> ec2.deleteNetworkInterface(
+          new DeleteNetworkInterfaceRequest( ).withNetworkInterfaceId( networkInterfaceId ) ) );
+      node.vpcId = networkInterface.getVpcId( );
+      node.subnetId = networkInterface.getSubnetId( );
+      if ( networkInterface.getAttachment( ) != null ) {
+        dependsOn( node, find( "instance", networkInterface.getAttachment( ).getInstanceId( ) ) );
+      }
+    }
+
+    // security groups, references between groups are revoked first so groups can be deleted in any order
+    final List<SecurityGroup> groups = ec2.describeSecurityGroups( ).getSecurityGroups( );
+    for ( final SecurityGroup group : groups ) {
+      if ( "default".equals( group.getGroupName( ) ) ) continue;
+      final String groupId = group.getGroupId( );
+      final List<IpPermission> groupPermissions = groupPermissions( group.getIpPermissions( ) );
+      final List<IpPermission> groupEgressPermissions = groupPermissions( group.getIpPermissionsEgress( ) );
+      final Node node = node( "security-group", groupId, ( ) -> ec2.deleteSecurityGroup(
+          new DeleteSecurityGroupRequest( ).withGroupId( groupId ) ) );
+      node.vpcId = group.getVpcId( );
+      if ( !groupPermissions.isEmpty( ) || !groupEgressPermissions.isEmpty( ) ) {
+        final Node revoke = node( "security-group-rules", groupId, ( ) -> {
+          if ( !groupPermissions.isEmpty( ) ) ec2.revokeSecurityGroupIngress(
+              new RevokeSecurityGroupIngressRequest( ).withGroupId( groupId ).withIpPermissions( groupPermissions ) );
+          if ( !groupEgressPermissions.isEmpty( ) ) ec2.revokeSecurityGroupEgress(
+              new RevokeSecurityGroupEgressRequest( ).withGroupId( groupId ).withIpPermissions( groupEgressPermissions ) );
+        } );
+        for ( final SecurityGroup other : groups ) {
+          dependsOn( find( "security-group", other.getGroupId( ) ), revoke );
+        }
+      }
+    }
+    for ( final Instance instance : instances ) {
+      for ( final GroupIdentifier group : instance.getSecurityGroups( ) ) {
+        dependsOn( find( "security-group", group.getGroupId( ) ), find( "instance", instance.getInstanceId( ) ) );
+      }
+      for ( final InstanceNetworkInterface networkInterface : instance.getNetworkInterfaces( ) ) {
+        dependsOn( find( "network-interface", networkInterface.getNetworkInterfaceId( ) ),
+            find( "instance", instance.getInstanceId( ) ) );
+      }
+    }
+    for ( final NetworkInterface networkInterface : networkInterfaces ) {
+      for ( final GroupIdentifier group : networkInterface.getGroups( ) ) {
+        dependsOn( find( "security-group", group.getGroupId( ) ),
+            find( "network-interface", networkInterface.getNetworkInterfaceId( ) ) );
+      }
+    }
+    if ( elb != null ) {
+      for ( final LoadBalancerDescription description : elb.describeLoadBalancers( ).getLoadBalancerDescriptions( ) ) {
+        for ( final String groupId : description.getSecurityGroups( ) ) {
+          dependsOn( find( "security-group", groupId ), find( "load-balancer", description.getLoadBalancerName( ) ) );
+        }
+      }
+    }
+
+    // vpc resources
+    for ( final Subnet subnet : ec2.describeSubnets( ).getSubnets( ) ) {
+      if ( defaultVpcs.contains( subnet.getVpcId( ) ) ) continue;
+      final String subnetId = subnet.getSubnetId( );
+      final Node node = node( "subnet", subnetId, ( ) -> ec2.deleteSubnet( new DeleteSubnetRequest( subnetId ) ) );
+      node.vpcId = subnet.getVpcId( );
+      for ( final Instance instance : instances ) {
+        if ( subnetId.equals( instance.getSubnetId( ) ) ) dependsOn( node, find( "instance", instance.getInstanceId( ) ) );
+      }
+      for ( final Node other : new ArrayList<>( nodes.values( ) ) ) {
+        if ( subnetId.equals( other.subnetId ) ) dependsOn( node, other );
+      }
+      dependsOnVpcResources( node, subnet.getVpcId( ), "load-balancer" );
+    }
+    for ( final RouteTable routeTable : ec2.describeRouteTables( ).getRouteTables( ) ) {
+      if ( defaultVpcs.contains( routeTable.getVpcId( ) ) ) continue;
+      if ( routeTable.getAssociations( ).stream( ).anyMatch( association -> Boolean.TRUE.equals( association.getMain( ) ) ) ) continue;
+      final String routeTableId = routeTable.getRouteTableId( );
+      final List<RouteTableAssociation> associations = routeTable.getAssociations( );
+      node( "route-table", routeTableId, ( ) -> {
+        for ( final RouteTableAssociation association : associations ) {
+          ec2.disassociateRouteTable( new DisassociateRouteTableRequest( )
+              .withAssociationId( association.getRouteTableAssociationId( ) ) );
+        }
+        ec2.deleteRouteTable( new DeleteRouteTableRequest( ).withRouteTableId( routeTableId ) );
+      } ).vpcId = routeTable.getVpcId( );
+    }
+    for ( final InternetGateway gateway : ec2.describeInternetGateways( ).getInternetGateways( ) ) {
+      final List<String> vpcIds = gateway.getAttachments( ).stream( )
+          .map( InternetGatewayAttachment::getVpcId )
+          .collect( Collectors.toList( ) );
+      if ( vpcIds.stream( ).anyMatch( defaultVpcs::contains ) ) continue;
+      final String gatewayId = gateway.getInternetGatewayId( );
+      final Node node = node( "internet-gateway", gatewayId, ( ) -> {
+        for ( final String vpcId : vpcIds ) {
+          ec2.detachInternetGateway( new DetachInternetGatewayRequest( )
+              .withInternetGatewayId( gatewayId ).withVpcId( vpcId ) );
+        }
+        ec2.deleteInternetGateway( new DeleteInternetGatewayRequest( ).withInternetGatewayId( gatewayId ) );
+      } );
+      for ( final String vpcId : vpcIds ) {
+        dependsOnVpcResources( node, vpcId, "address", "instance", "load-balancer" );
+      }
+      node.vpcId = vpcIds.isEmpty( ) ? null : vpcIds.get( 0 );
+    }
+    for ( final Vpc vpc : vpcs ) {
+      if ( defaultVpcs.contains( vpc.getVpcId( ) ) ) continue;
+      final String vpcId = vpc.getVpcId( );
+      final Node node = node( "vpc", vpcId, ( ) -> ec2.deleteVpc( new DeleteVpcRequest( vpcId ) ) );
+      dependsOnVpcResources( node, vpcId, "subnet", "route-table", "internet-gateway", "security-group" );
+    }
+  }
+
+  private static List<IpPermission> groupPermissions( final List<IpPermission> permissions ) {
+    return permissions.stream( )
+        .filter( permission -> !permission.getUserIdGroupPairs( ).isEmpty( ) )
+        .collect( Collectors.toList( ) );
+  }
+
+  private static final class Node {
+    private final String type;
+    private final String id;
+    private final Runnable delete;
+    private final Set<Node> dependencies = new LinkedHashSet<>( );
+    private Supplier<CompletableFuture<?>> gone;
+    private String vpcId;
+    private String subnetId;
+
+    Node( final String type, final String id, final Runnable delete ) {
+      this.type = type;
+      this.id = id;
+      this.delete = delete;
+    }
+
+    @Override
+    public String toString( ) {
+      return type + " " + id;
+    }
+  }
+
+  /**
+   * Counts and timings of deleted resources by type.
+   */
+  public static final class Report {
+    private final String name;
+    private final Map<String,TypeStats> stats = Collections.synchronizedMap( new TreeMap<>( ) );
+    private volatile long elapsedMillis;
+
+    Report( final String name ) {
+      this.name = name;
+    }
+
+    void record( final String type, final boolean success, final long millis ) {
+      final TypeStats typeStats = stats.computeIfAbsent( type, key -> new TypeStats( ) );
+      typeStats.count.incrementAndGet( );
+      if ( !success ) typeStats.failures.incrementAndGet( );
+      typeStats.millis.addAndGet( millis );
+      typeStats.maxMillis.accumulateAndGet( millis, Math::max );
+    }
+
+    public int getDeleted( ) {
+      synchronized ( stats ) {
+        return stats.values( ).stream( ).mapToInt( typeStats -> typeStats.count.get( ) - typeStats.failures.get( ) ).sum( );
+      }
+    }
+
+    public int getFailures( ) {
+      synchronized ( stats ) {
+        return stats.values( ).stream( ).mapToInt( typeStats -> typeStats.failures.get( ) ).sum( );
+      }
+    }
+
+    public long getElapsedMillis( ) {
+      return elapsedMillis;
+    }
+
+    @Override
+    public String toString( ) {
+      final StringBuilder builder = new StringBuilder( );
+      builder.append( "Cleanup of " ).append( name ).append( " completed in " ).append( elapsedMillis ).append( "ms" );
+      synchronized ( stats ) {
+        for ( final Map.Entry<String,TypeStats> entry : stats.entrySet( ) ) {
+          final TypeStats typeStats = entry.getValue( );
+          builder.append( "\n  " ).append( entry.getKey( ) )
+              .append( ": " ).append( typeStats.count.get( ) )
+              .append( " (" ).append( typeStats.failures.get( ) ).append( " failed)" )
+              .append( ", total " ).append( typeStats.millis.get( ) ).append( "ms" )
+              .append( ", max " ).append( typeStats.maxMillis.get( ) ).append( "ms" );
+        }
+      }
+      return builder.toString( );
+    }
+  }
+
+  private static final class TypeStats {
+    private final AtomicInteger count = new AtomicInteger( );
+    private final AtomicInteger failures = new AtomicInteger( );
+    private final AtomicLong millis = new AtomicLong( );
+    private final AtomicLong maxMillis = new AtomicLong( );
+  }
+}
@@ -3,7 +3,9 @@ package com.eucalyptus.tests.awssdk;
 import static org.junit.Assert.assertTrue;
 import static com.eucalyptus.tests.awssdk.N4j.assertThat;
 import static com.eucalyptus.tests.awssdk.N4j.eucaUUID;
-import static com.eucalyptus.tests.awssdk.N4j.initS3ClientWithNewAccount;
+import static com.eucalyptus.tests.awssdk.N4j.S3_ENDPOINT;
+import static com.eucalyptus.tests.awssdk.N4j.getS3Client;
+import static com.eucalyptus.tests.awssdk.N4j.minimalInit;
 import static com.eucalyptus.tests.awssdk.N4j.print;
 import static com.eucalyptus.tests.awssdk.N4j.testInfo;
 
@@ -55,6 +57,7 @@ public class S3BucketACLTests {
   private static List<Runnable> cleanupTasks = null;
   private static AmazonS3 s3 = null;
   private static String account = null;
+  private static AccountPool.Lease lease = null;
   private static Owner owner = null;
   private static String ownerName = null;
   private static String ownerId = null;
@@ -63,8 +66,10 @@ public class S3BucketACLTests {
   public static void init() throws Exception {
     print("### PRE SUITE SETUP - " + S3BucketACLTests.class.getSimpleName());
     try {
-      account = S3BucketACLTests.class.getSimpleName().toLowerCase();
-      s3 = initS3ClientWithNewAccount(account, "admin");
+      minimalInit();
+      lease = AccountPool.lease(S3BucketACLTests.class);
+      account = lease.getAccountName();
+      s3 = getS3Client(lease.getCredentials(), S3_ENDPOINT);
     } catch (Exception e) {
       try {
         teardown();
@@ -81,7 +86,9 @@ public class S3BucketACLTests {
   @AfterClass
   public static void teardown() throws Exception {
     print("### POST SUITE CLEANUP - " + S3BucketACLTests.class.getSimpleName());
-    N4j.deleteAccount(account);
+    if (lease != null) {
+      lease.release();
+    }
     s3 = null;
   }
 
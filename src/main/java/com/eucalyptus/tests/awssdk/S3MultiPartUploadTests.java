@@ -71,17 +71,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -119,6 +115,8 @@ import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.model.UploadPartResult;
 import com.amazonaws.util.BinaryUtils;
 import com.amazonaws.util.Md5Utils;
+import com.eucalyptus.tests.load.RangedDownloader;
+import com.eucalyptus.tests.load.SeededContent;
 import com.google.common.collect.Lists;
 
 /**
@@ -222,11 +220,9 @@ public class S3MultiPartUploadTests {
   @Test
   public void basicMultiPartUpload() throws Exception {
     testInfo(this.getClass().getSimpleName() + " - basicMultiPartUpload");
-    final File fileToPut = new File(eucaUUID());
-    FileOutputStream fos = new FileOutputStream(fileToPut);
-
     try {
       final String key = eucaUUID();
+      final SeededContent content = SeededContent.forKey(key);
       List<PartETag> partETags = Lists.newArrayList();
       long partSize = randomBytes.length;
       int numberOfParts = 2 + new Random().nextInt(14); // 2-15 parts
@@ -241,25 +237,9 @@ public class S3MultiPartUploadTests {
             + ", part number " + partNumber);
         partETags.add(s3.uploadPart(
             new UploadPartRequest().withBucketName(bucketName).withKey(key).withUploadId(initiateMpuResult.getUploadId()).withPartNumber(partNumber)
-                .withInputStream(new ByteArrayInputStream(randomBytes)).withPartSize(partSize)).getPartETag());
-
-        // Write the bytes to a byte array output stream
-        fos.write(randomBytes);
+                .withInputStream(content.stream((partNumber - 1) * partSize, partSize)).withPartSize(partSize)).getPartETag());
       }
 
-      fos.close();
-      cleanupTasks.add(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            print(account + ": Deleting file " + fileToPut.toPath());
-            Files.deleteIfExists(fileToPut.toPath());
-          } catch (IOException e) {
-            print("Unable to delete file " + fileToPut.toPath() + " due to " + e);
-          }
-        }
-      });
-
       // Complete mpu
       print(account + ": Completing multipart upload for object " + key + ", upload ID " + initiateMpuResult.getUploadId());
       s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, initiateMpuResult.getUploadId(), partETags));
@@ -271,24 +251,16 @@ public class S3MultiPartUploadTests {
         }
       });
 
-      // Compute md5 of uploaded object
-      String mpuMd5 = BinaryUtils.toHex(Md5Utils.computeMD5Hash(new FileInputStream(fileToPut)));
-
-      // Get the final object to compute the md5
+      // Get the final object to verify the content
       print(account + ": Downloading object " + key);
       S3Object s3Obj = s3.getObject(new GetObjectRequest(bucketName, key));
-      String getMd5 = BinaryUtils.toHex(Md5Utils.computeMD5Hash(s3Obj.getObjectContent()));
 
       assertTrue("Expected objectsize to be " + (partSize * numberOfParts) + " bytes but got a file of size "
           + s3Obj.getObjectMetadata().getContentLength() + " bytes", s3Obj.getObjectMetadata().getContentLength() == (partSize * numberOfParts));
-      assertTrue("Expected md5sum to be " + mpuMd5 + " but got " + getMd5, mpuMd5.equals(getMd5));
+      content.verify(s3Obj.getObjectContent(), 0, partSize * numberOfParts);
     } catch (AmazonServiceException ase) {
       printException(ase);
       assertThat(false, "Failed to run basicMultiPartUpload");
-    } finally {
-      if (fos != null) {
-        fos.close();
-      }
     }
   }
 
@@ -737,6 +709,7 @@ public class S3MultiPartUploadTests {
     testInfo(this.getClass().getSimpleName() + " - getWithRange");
     try {
       final String key = eucaUUID();
+      final SeededContent content = SeededContent.forKey(key);
       List<PartETag> partETags = Lists.newArrayList();
       long partSize = randomBytes.length;
 
@@ -750,7 +723,7 @@ public class S3MultiPartUploadTests {
             + ", part number " + partNumber);
         partETags.add(s3.uploadPart(
             new UploadPartRequest().withBucketName(bucketName).withKey(key).withUploadId(initiateMpuResult.getUploadId()).withPartNumber(partNumber)
-                .withInputStream(new ByteArrayInputStream(randomBytes)).withPartSize(partSize)).getPartETag());
+                .withInputStream(content.stream((partNumber - 1) * partSize, partSize)).withPartSize(partSize)).getPartETag());
       }
 
       // Complete mpu
@@ -765,51 +738,63 @@ public class S3MultiPartUploadTests {
       });
 
       // Get the final object to verify
-      final File fileToVerify = new File(eucaUUID());
-      print(account + ": Downloading object " + key + " to file " + fileToVerify.getName());
-      s3.getObject(new GetObjectRequest(bucketName, key), fileToVerify);
-      cleanupTasks.add(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            print(account + ": Deleting file " + fileToVerify.getName());
-            fileToVerify.delete();
-          } catch (Exception e) {
-          }
-        }
-      });
-      assertTrue("Expected objectsize to be " + (partSize * 4) + " bytes but got a file of size " + fileToVerify.length() + " bytes",
-          fileToVerify.length() == (partSize * 4));
+      print(account + ": Downloading object " + key);
+      S3Object s3Obj = s3.getObject(new GetObjectRequest(bucketName, key));
+      assertTrue("Expected objectsize to be " + (partSize * 4) + " bytes but got a file of size " + s3Obj.getObjectMetadata().getContentLength() + " bytes",
+          s3Obj.getObjectMetadata().getContentLength() == (partSize * 4));
+      content.verify(s3Obj.getObjectContent(), 0, partSize * 4);
 
       // Verify get for first 100 bytes
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, 0, 100);
+      verifyGetWithRange(account, s3, bucketName, key, content, 0, 100);
 
       // Verify get for first 100 bytes of second part
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, (int) partSize, 100);
+      verifyGetWithRange(account, s3, bucketName, key, content, (int) partSize, 100);
 
       // Verify get for first 100 bytes of third part
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, (int) (partSize * 2), 100);
+      verifyGetWithRange(account, s3, bucketName, key, content, (int) (partSize * 2), 100);
 
       // Verify get for first 100 bytes of third part
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, (int) (partSize * 3), 100);
+      verifyGetWithRange(account, s3, bucketName, key, content, (int) (partSize * 3), 100);
 
       // Verify get for 100 bytes between first and second part
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, (int) (partSize - 58), 100);
+      verifyGetWithRange(account, s3, bucketName, key, content, (int) (partSize - 58), 100);
 
       // Verify get for 100 bytes between second and third part
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, (int) ((2 * partSize) - 47), 100);
+      verifyGetWithRange(account, s3, bucketName, key, content, (int) ((2 * partSize) - 47), 100);
 
       // Verify get for last 100 bytes of first part
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, (int) (partSize - 100), 100);
+      verifyGetWithRange(account, s3, bucketName, key, content, (int) (partSize - 100), 100);
 
       // Verify get for last 100 bytes of second part
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, (int) ((2 * partSize) - 100), 100);
+      verifyGetWithRange(account, s3, bucketName, key, content, (int) ((2 * partSize) - 100), 100);
 
       // Verify get for partSize bytes starting from the last 100 bytes of first part
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, (int) (partSize - 100), (int) partSize);
+      verifyGetWithRange(account, s3, bucketName, key, content, (int) (partSize - 100), (int) partSize);
 
       // Verify get for two times the partSize bytes starting from the last 100 bytes of first part
-      verifyGetWithRange(account, s3, bucketName, key, fileToVerify, (int) (partSize - 100), (int) (2 * partSize));
+      verifyGetWithRange(account, s3, bucketName, key, content, (int) (partSize - 100), (int) (2 * partSize));
+
+      // Verify parallel ranged gets with ranges that cross part boundaries
+      new RangedDownloader(s3).rangeSize(partSize - 100).parallelism(4)
+          .download(bucketName, key, partSize * 4, RangedDownloader.Sink.verify(content));
+
+      // Verify parallel ranged gets written to a file
+      final File fileToVerify = new File(eucaUUID());
+      cleanupTasks.add(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            print(account + ": Deleting file " + fileToVerify.getName());
+            fileToVerify.delete();
+          } catch (Exception e) {
+          }
+        }
+      });
+      print(account + ": Downloading object " + key + " to file " + fileToVerify.getName() + " using ranged gets");
+      new RangedDownloader(s3).rangeSize(partSize / 3).parallelism(4).download(bucketName, key, fileToVerify);
+      assertTrue("Expected file size to be " + (partSize * 4) + " bytes but got " + fileToVerify.length() + " bytes",
+          fileToVerify.length() == (partSize * 4));
+      content.verify(new FileInputStream(fileToVerify), 0, partSize * 4);
 
     } catch (AmazonServiceException ase) {
       printException(ase);
@@ -817,42 +802,15 @@ public class S3MultiPartUploadTests {
     }
   }
 
-  private void verifyGetWithRange(String ownerName, AmazonS3 s3, String bucket, String key, File fileToVerify, int offset, int length)
-      throws IOException, NoSuchAlgorithmException {
-    BufferedInputStream bis = new BufferedInputStream(new FileInputStream(fileToVerify));
-    S3Object s3Object = null;
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    try {
-      byte[] sourceBuffer = new byte[length];
-      bis.skip(offset);
-      bis.read(sourceBuffer, 0, length);
-      String sourceMd5 = BinaryUtils.toHex(Md5Utils.computeMD5Hash(sourceBuffer));
-
-      print(ownerName + ": Getting object " + key + " with range " + offset + "-" + (offset + length - 1));
-      s3Object = s3.getObject(new GetObjectRequest(bucket, key).withRange(offset, offset + length - 1));
-      ObjectMetadata objectMetadata = s3Object.getObjectMetadata();
-
-      assertTrue("Expected " + length + " bytes but got " + objectMetadata.getContentLength() + " bytes", objectMetadata.getContentLength() == length);
+  private void verifyGetWithRange(String ownerName, AmazonS3 s3, String bucket, String key, SeededContent content, int offset, int length)
+      throws IOException {
+    print(ownerName + ": Getting object " + key + " with range " + offset + "-" + (offset + length - 1));
+    S3Object s3Object = s3.getObject(new GetObjectRequest(bucket, key).withRange(offset, offset + length - 1));
+    ObjectMetadata objectMetadata = s3Object.getObjectMetadata();
 
-      byte[] readBuffer = new byte[1024 * 10];
-      int bytesRead;
-      while ((bytesRead = s3Object.getObjectContent().read(readBuffer)) > -1) {
-        baos.write(readBuffer, 0, bytesRead);
-      }
-      byte[] getBuffer = baos.toByteArray();
-      String getMd5 = BinaryUtils.toHex(Md5Utils.computeMD5Hash(getBuffer));
+    assertTrue("Expected " + length + " bytes but got " + objectMetadata.getContentLength() + " bytes", objectMetadata.getContentLength() == length);
 
-      assertTrue("Expected md5 to be " + sourceMd5 + " but got " + getMd5, sourceMd5.equals(getMd5));
-      assertTrue("Mismatch in source and fetched data", Arrays.equals(sourceBuffer, getBuffer));
-    } finally {
-      bis.close();
-      try {
-        s3Object.getObjectContent().close();
-      } catch (Exception e) {
-      }
-      baos.close();
-      baos = null;
-    }
+    content.verify(s3Object.getObjectContent(), offset, length);
   }
 
   @Test
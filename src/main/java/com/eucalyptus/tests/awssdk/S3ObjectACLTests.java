@@ -2,7 +2,9 @@ package com.eucalyptus.tests.awssdk;
 
 import static com.eucalyptus.tests.awssdk.N4j.assertThat;
 import static com.eucalyptus.tests.awssdk.N4j.eucaUUID;
-import static com.eucalyptus.tests.awssdk.N4j.initS3ClientWithNewAccount;
+import static com.eucalyptus.tests.awssdk.N4j.S3_ENDPOINT;
+import static com.eucalyptus.tests.awssdk.N4j.getS3Client;
+import static com.eucalyptus.tests.awssdk.N4j.minimalInit;
 import static com.eucalyptus.tests.awssdk.N4j.print;
 import static com.eucalyptus.tests.awssdk.N4j.testInfo;
 import static org.junit.Assert.assertTrue;
@@ -63,6 +65,7 @@ public class S3ObjectACLTests {
   private static String md5_orig = null;
   private static AmazonS3 s3 = null;
   private static String account = null;
+  private static AccountPool.Lease lease = null;
   private static Owner owner = null;
   private static String ownerName = null;
   private static String ownerId = null;
@@ -71,8 +74,10 @@ public class S3ObjectACLTests {
   public static void init() throws Exception {
     print("### PRE SUITE SETUP - " + S3ObjectACLTests.class.getSimpleName());
     try {
-      account = S3ObjectACLTests.class.getSimpleName().toLowerCase();
-      s3 = initS3ClientWithNewAccount(account, "admin");
+      minimalInit();
+      lease = AccountPool.lease(S3ObjectACLTests.class);
+      account = lease.getAccountName();
+      s3 = getS3Client(lease.getCredentials(), S3_ENDPOINT);
     } catch (Exception e) {
       try {
         teardown();
@@ -113,7 +118,9 @@ public class S3ObjectACLTests {
         print("Unable to run clean up task: " + e);
       }
     }
-    N4j.deleteAccount(account);
+    if (lease != null) {
+      lease.release();
+    }
     s3 = null;
   }
 
@@ -0,0 +1,337 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeSnapshotsRequest;
+import com.amazonaws.services.ec2.model.DescribeVolumesRequest;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.Snapshot;
+import com.amazonaws.services.ec2.model.Volume;
+import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersResult;
+import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerDescription;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Watches resource states for many concurrent waiters.
+ *
+ * Waiters register a resource id and target states and receive a future
+ * that completes with the observed state. On each tick the watcher makes
+ * one describe request per resource type for all registered ids, so
+ * request volume depends on the tick rate rather than the number of
+ * waiting threads.
+ *
+ * Stacks are described by the registered name or id, a stack id continues
+ * to describe as DELETE_COMPLETE after deletion but a stack name does not.
+ * Load balancers have no state, an existing load balancer is "active".
+ *
+ * A registration completes with a null state if the resource is not found
+ * for longer than the missing grace period, or as soon as it is not found
+ * if the target states include MISSING, and completes exceptionally with
+ * a TimeoutException if the target state is not seen before the deadline.
+ *
+ * Timing is configured via system properties:
+ *
+ *   n4j.watcher.tick          - interval between describes (default 2s)
+ *   n4j.watcher.missing-grace - time before a missing resource completes a registration (default 30s)
+ */
+public final class StateWatcher implements AutoCloseable {
+
+  public enum ResourceType {
+    INSTANCE,
+    VOLUME,
+    SNAPSHOT,
+    STACK,
+    LOAD_BALANCER,
+  }
+
+  private static final long DEFAULT_TICK_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.watcher.tick", "2s" ), TimeUnit.SECONDS.toMillis( 2 ) );
+  private static final long MISSING_GRACE_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.watcher.missing-grace", "30s" ), TimeUnit.SECONDS.toMillis( 30 ) );
+  private static final int BATCH_SIZE = 100;
+
+  /**
+   * Target state for a resource that is no longer found, e.g. when waiting
+   * for a resource to be deleted.
+   */
+  public static final String MISSING = "missing";
+
+  private final AmazonEC2 ec2;
+  private final AmazonCloudFormation cf;
+  private final AmazonElasticLoadBalancing elb;
+  private final Queue<Registration> registrations = new ConcurrentLinkedQueue<>( );
+  private final ScheduledExecutorService executor;
+  private final AtomicLong describes = new AtomicLong( );
+
+  public StateWatcher( final AmazonEC2 ec2 ) {
+    this( ec2, null );
+  }
+
+  public StateWatcher( final AmazonEC2 ec2, final AmazonCloudFormation cf ) {
+    this( ec2, cf, null );
+  }
+
+  public StateWatcher( final AmazonEC2 ec2, final AmazonCloudFormation cf, final AmazonElasticLoadBalancing elb ) {
+    this( ec2, cf, elb, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS );
+  }
+
+  public StateWatcher(
+      final AmazonEC2 ec2,
+      final AmazonCloudFormation cf,
+      final long tick,
+      final TimeUnit unit
+  ) {
+    this( ec2, cf, null, tick, unit );
+  }
+
+  /**
+   * Create a watcher using the given clients.
+   *
+   * @param ec2 The client for instances, volumes and snapshots, may be null
+   * @param cf The client for stacks, may be null
+   * @param elb The client for load balancers, may be null
+   * @param tick The interval between describes
+   * @param unit The tick unit
+   */
+  public StateWatcher(
+      final AmazonEC2 ec2,
+      final AmazonCloudFormation cf,
+      final AmazonElasticLoadBalancing elb,
+      final long tick,
+      final TimeUnit unit
+  ) {
+    this.ec2 = ec2;
+    this.cf = cf;
+    this.elb = elb;
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "n4j-state-watcher-%d" ).build( ) );
+    this.executor.scheduleWithFixedDelay( this::tick, tick, tick, unit );
+  }
+
+  /**
+   * Wait for a resource to reach one of the target states.
+   *
+   * @param type The resource type
+   * @param id The instance, volume, snapshot or stack id (or stack or load balancer name)
+   * @param targetStates The states that complete the wait, MISSING to complete when not found
+   * @param timeout The wait timeout
+   * @param unit The timeout unit
+   * @return Future for the observed state, null if the resource was not found
+   */
+  public CompletableFuture<String> await(
+      final ResourceType type,
+      final String id,
+      final Collection<String> targetStates,
+      final long timeout,
+      final TimeUnit unit
+  ) {
+    if ( client( type ) == null ) {
+      throw new IllegalArgumentException( "No client for " + type );
+    }
+    final Registration registration = new Registration( type, id, targetStates, unit.toMillis( timeout ) );
+    registrations.add( registration );
+    return registration.future;
+  }
+
+  /**
+   * Number of describe requests made by this watcher.
+   */
+  public long getDescribeCount( ) {
+    return describes.get( );
+  }
+
+  /**
+   * Stop watching, pending registrations are cancelled.
+   */
+  @Override
+  public void close( ) {
+    executor.shutdownNow( );
+    Registration registration;
+    while ( ( registration = registrations.poll( ) ) != null ) {
+      registration.future.completeExceptionally( new CancellationException( "Watcher closed" ) );
+    }
+  }
+
+  private Object client( final ResourceType type ) {
+    switch ( type ) {
+      case STACK:
+        return cf;
+      case LOAD_BALANCER:
+        return elb;
+      default:
+        return ec2;
+    }
+  }
+
+  private void tick( ) {
+    if ( registrations.isEmpty( ) ) {
+      return;
+    }
+    final Map<ResourceType,Set<String>> idsByType = new HashMap<>( );
+    for ( final Registration registration : registrations ) {
+      idsByType.computeIfAbsent( registration.type, type -> new LinkedHashSet<>( ) ).add( registration.id );
+    }
+    final Map<ResourceType,Map<String,String>> statesByType = new HashMap<>( );
+    for ( final Map.Entry<ResourceType,Set<String>> entry : idsByType.entrySet( ) ) {
+      try {
+        statesByType.put( entry.getKey( ), describe( entry.getKey( ), entry.getValue( ) ) );
+      } catch ( final RuntimeException e ) {
+        N4j.print( "Error describing " + entry.getKey( ) + " states, will retry: " + e );
+      }
+    }
+    final long now = System.currentTimeMillis( );
+    registrations.removeIf( registration -> {
+      final Map<String,String> states = statesByType.get( registration.type );
+      return states != null ?
+          registration.update( states.get( registration.id ), now ) :
+          registration.expire( now );
+    } );
+  }
+
+  private Map<String,String> describe( final ResourceType type, final Set<String> ids ) {
+    final Map<String,String> states = new HashMap<>( );
+    if ( type == ResourceType.STACK ) {
+      for ( final String id : ids ) {
+        describes.incrementAndGet( );
+        try {
+          for ( final Stack stack : cf.describeStacks( new DescribeStacksRequest( ).withStackName( id ) ).getStacks( ) ) {
+            states.put( id, stack.getStackStatus( ) );
+          }
+        } catch ( final AmazonServiceException e ) {
+          if ( e.getErrorMessage( ) == null || !e.getErrorMessage( ).contains( "does not exist" ) ) throw e;
+        }
+      }
+      return states;
+    }
+    if ( type == ResourceType.LOAD_BALANCER ) {
+      // described without names, an unknown name fails the whole request
+      String marker = null;
+      do {
+        describes.incrementAndGet( );
+        final DescribeLoadBalancersResult result =
+            elb.describeLoadBalancers( new DescribeLoadBalancersRequest( ).withMarker( marker ) );
+        for ( final LoadBalancerDescription description : result.getLoadBalancerDescriptions( ) ) {
+          if ( ids.contains( description.getLoadBalancerName( ) ) ) {
+            states.put( description.getLoadBalancerName( ), "active" );
+          }
+        }
+        marker = result.getNextMarker( );
+      } while ( marker != null );
+      return states;
+    }
+    for ( final List<String> batch : Lists.partition( new ArrayList<>( ids ), BATCH_SIZE ) ) {
+      describes.incrementAndGet( );
+      switch ( type ) {
+        case INSTANCE:
+          for ( final Reservation reservation : ec2.describeInstances( new DescribeInstancesRequest( )
+              .withFilters( new Filter( "instance-id", batch ) ) ).getReservations( ) ) {
+            for ( final Instance instance : reservation.getInstances( ) ) {
+              states.put( instance.getInstanceId( ), instance.getState( ).getName( ) );
+            }
+          }
+          break;
+        case VOLUME:
+          for ( final Volume volume : ec2.describeVolumes( new DescribeVolumesRequest( )
+              .withFilters( new Filter( "volume-id", batch ) ) ).getVolumes( ) ) {
+            states.put( volume.getVolumeId( ), volume.getState( ) );
+          }
+          break;
+        case SNAPSHOT:
+          for ( final Snapshot snapshot : ec2.describeSnapshots( new DescribeSnapshotsRequest( )
+              .withFilters( new Filter( "snapshot-id", batch ) ) ).getSnapshots( ) ) {
+            states.put( snapshot.getSnapshotId( ), snapshot.getState( ) );
+          }
+          break;
+      }
+    }
+    return states;
+  }
+
+  private static final class Registration {
+    private final ResourceType type;
+    private final String id;
+    private final Set<String> targetStates;
+    private final long registered;
+    private final long deadline;
+    private final CompletableFuture<String> future = new CompletableFuture<>( );
+    private volatile String lastState;
+
+    Registration(
+        final ResourceType type,
+        final String id,
+        final Collection<String> targetStates,
+        final long timeoutMillis
+    ) {
+      this.type = type;
+      this.id = id;
+      this.targetStates = targetStates.stream( ).collect( Collectors.toSet( ) );
+      this.registered = System.currentTimeMillis( );
+      this.deadline = registered + timeoutMillis;
+    }
+
+    /**
+     * Update with the described state.
+     *
+     * @return True if the registration is complete
+     */
+    boolean update( final String state, final long now ) {
+      if ( future.isDone( ) ) {
+        return true;
+      }
+      lastState = state;
+      if ( state != null && targetStates.contains( state ) ) {
+        future.complete( state );
+        return true;
+      }
+      if ( state == null && ( targetStates.contains( MISSING ) || ( now - registered ) > MISSING_GRACE_MILLIS ) ) {
+        future.complete( null );
+        return true;
+      }
+      return expire( now );
+    }
+
+    /**
+     * Fail the registration if the deadline has passed.
+     *
+     * @return True if the registration is complete
+     */
+    boolean expire( final long now ) {
+      if ( future.isDone( ) ) {
+        return true;
+      }
+      if ( now > deadline ) {
+        future.completeExceptionally( new TimeoutException(
+            type + " " + id + " did not reach " + targetStates + ", last state " + lastState ) );
+        return true;
+      }
+      return false;
+    }
+  }
+}
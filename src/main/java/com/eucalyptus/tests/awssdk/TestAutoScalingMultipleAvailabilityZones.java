@@ -73,8 +73,6 @@ public class TestAutoScalingMultipleAvailabilityZones {
 
 	@AfterClass
 	public static void cleanup( ) {
-		if ( as != null ) as.shutdown( );
-		if ( ec2 != null ) ec2.shutdown( );
 		N4j.deleteAccount( testAcct );
 	}
 
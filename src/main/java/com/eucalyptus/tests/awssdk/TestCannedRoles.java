@@ -53,7 +53,6 @@ import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import static com.eucalyptus.tests.awssdk.N4j.*;
 
@@ -204,9 +203,10 @@ public class TestCannedRoles {
                     .withRoleName("ResourceAdministrator")
                     .withPolicyDocument(assumeRolePolicy));
 
-            Map<String,String> accessKeys = getUserKeys("eucalyptus","admin");
-            final String accessKey = accessKeys.get("ak");
-            final String secretKey = accessKeys.get("sk");
+            // use a key for this test only, the cached admin key is shared
+            final AccessKey adminKey = youAre.createAccessKey(new CreateAccessKeyRequest().withUserName("admin")).getAccessKey();
+            final String accessKey = adminKey.getAccessKeyId();
+            final String secretKey = adminKey.getSecretAccessKey();
             cleanupTasks.add(new Runnable() {
                 @Override
                 public void run() {
@@ -103,7 +103,6 @@ class TestEC2Api {
 
   @AfterClass
   static void cleanup( ) {
-    if ( ec2Client ) ec2Client.shutdown( )
     N4j.deleteAccount( testAcct )
   }
 
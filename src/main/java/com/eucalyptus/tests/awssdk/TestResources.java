@@ -0,0 +1,40 @@
+package com.eucalyptus.tests.awssdk;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Cloud resources used by a test class, for scheduling by ParallelSuite.
+ *
+ * Test classes without this annotation are run exclusively. When used on a
+ * suite the annotation applies to member classes that are not annotated.
+ *
+ * @see ParallelSuite
+ */
+@Retention( RetentionPolicy.RUNTIME )
+@Target( ElementType.TYPE )
+public @interface TestResources {
+
+  /**
+   * Number of instances the test runs concurrently.
+   */
+  int instances( ) default 0;
+
+  /**
+   * True if the test modifies cloud properties.
+   */
+  boolean properties( ) default false;
+
+  /**
+   * True if the test must not run concurrently with any other test.
+   */
+  boolean exclusive( ) default false;
+
+  /**
+   * Named resources used by the test, tests with a common lock do not run
+   * concurrently.
+   */
+  String[] locks( ) default { };
+}
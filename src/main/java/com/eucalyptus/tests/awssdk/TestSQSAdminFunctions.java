@@ -29,10 +29,10 @@ public class TestSQSAdminFunctions {
     try {
       getCloudInfoAndSqs();
       account = "sqs-account-admf-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-admf-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -75,7 +75,7 @@ public class TestSQSAdminFunctions {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -84,7 +84,7 @@ public class TestSQSAdminFunctions {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
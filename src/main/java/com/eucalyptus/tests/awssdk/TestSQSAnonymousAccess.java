@@ -35,6 +35,7 @@ import static com.eucalyptus.tests.awssdk.N4j.*;
 /**
  * Created by ethomas on 10/4/16.
  */
+@TestResources(properties = true)
 public class TestSQSAnonymousAccess {
 
   private static String account;
@@ -52,7 +53,7 @@ public class TestSQSAnonymousAccess {
       authorizationExpiryMs = 0;
       restoreAuthorizationCache = disableAuthorizationCache();
       account = "sqs-account-iam-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       anonymousSQSClient = new AmazonSQSClient(new AnonymousAWSCredentials());
       anonymousSQSClient.setEndpoint(SQS_ENDPOINT);
@@ -75,7 +76,7 @@ public class TestSQSAnonymousAccess {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if ( restoreAuthorizationCache != null ) {
       restoreAuthorizationCache.run( );
@@ -43,7 +43,7 @@ public class TestSQSAttributeValuesInMessages {
     try {
       getCloudInfoAndSqs();
       account = "sqs-account-avim-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       AWSCredentials creds = getUserCreds(account, "admin");
       accountSQSClient = new AmazonSQSClient(
         new BasicAWSCredentials(creds.getAWSAccessKeyId(), creds.getAWSSecretKey())
@@ -55,7 +55,7 @@ public class TestSQSAttributeValuesInMessages {
       accountIAMClient.setEndpoint(IAM_ENDPOINT);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-avim-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -76,7 +76,7 @@ public class TestSQSAttributeValuesInMessages {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -85,7 +85,7 @@ public class TestSQSAttributeValuesInMessages {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
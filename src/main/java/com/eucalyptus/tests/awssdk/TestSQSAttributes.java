@@ -41,10 +41,10 @@ public class TestSQSAttributes {
     try {
       getCloudInfoAndSqs();
       account = "sqs-account-attr-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-attr-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -65,7 +65,7 @@ public class TestSQSAttributes {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -74,7 +74,7 @@ public class TestSQSAttributes {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
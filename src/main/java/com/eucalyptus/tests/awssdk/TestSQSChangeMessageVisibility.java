@@ -40,10 +40,10 @@ public class TestSQSChangeMessageVisibility {
       getCloudInfoAndSqs();
       MAX_VISIBILITY_TIMEOUT = getLocalConfigInt("MAX_VISIBILITY_TIMEOUT");
       account = "sqs-account-cmv-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-cmv-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -64,7 +64,7 @@ public class TestSQSChangeMessageVisibility {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -73,7 +73,7 @@ public class TestSQSChangeMessageVisibility {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
@@ -56,10 +56,10 @@ public class TestSQSChangeMessageVisibilityBatch {
       MAX_BATCH_ID_LENGTH = getLocalConfigInt("MAX_BATCH_ID_LENGTH");
       MAX_RECEIVE_MESSAGE_MAX_NUMBER_OF_MESSAGES = getLocalConfigInt("MAX_RECEIVE_MESSAGE_MAX_NUMBER_OF_MESSAGES");
       account = "sqs-account-cmvb-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-cmvb-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -80,7 +80,7 @@ public class TestSQSChangeMessageVisibilityBatch {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -89,7 +89,7 @@ public class TestSQSChangeMessageVisibilityBatch {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
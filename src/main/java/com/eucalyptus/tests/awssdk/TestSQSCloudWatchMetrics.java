@@ -51,7 +51,7 @@ public class TestSQSCloudWatchMetrics {
     try {
       getCloudInfoAndSqs();
       account = "sqs-account-cw-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       AWSCredentials creds = getUserCreds(account, "admin");
       accountSQSClient = new AmazonSQSClient(
         new BasicAWSCredentials(creds.getAWSAccessKeyId(), creds.getAWSSecretKey())
@@ -80,7 +80,7 @@ public class TestSQSCloudWatchMetrics {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
   }
 
@@ -60,10 +60,10 @@ public class TestSQSCreateQueue {
       MAX_MAX_RECEIVE_COUNT = getLocalConfigInt("MAX_MAX_RECEIVE_COUNT");
       region = defaultIfNullOrJustWhitespace(getConfigProperty(LOCAL_EUCTL_FILE, "region.region_name"), "eucalyptus");
       account = "sqs-account-cwm-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-cwm-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -84,7 +84,7 @@ public class TestSQSCreateQueue {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -93,7 +93,7 @@ public class TestSQSCreateQueue {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
@@ -31,6 +31,7 @@ import static com.eucalyptus.tests.awssdk.N4j.*;
 /**
  * Created by ethomas on 10/4/16.
  */
+@TestResources(properties = true)
 public class TestSQSCrossAccountStackPolicies {
 
   private static String account;
@@ -51,12 +52,12 @@ public class TestSQSCrossAccountStackPolicies {
       authorizationExpiryMs = 0;
       restoreAuthorizationCache = disableAuthorizationCache();
       account = "sqs-account-casp-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-casp-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
-      synchronizedCreateUser(otherAccount, "user");
+      createUser(otherAccount, "user");
       otherAccountUserSQSClient = getSqsClientWithNewAccount(otherAccount, "user");
       String otherQueueUrl = otherAccountSQSClient.createQueue("placeholder").getQueueUrl();
       List<String> otherPathParts = Lists.newArrayList(Splitter.on('/').omitEmptyStrings().split(new URL(otherQueueUrl).getPath()));
@@ -80,7 +81,7 @@ public class TestSQSCrossAccountStackPolicies {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -89,7 +90,7 @@ public class TestSQSCrossAccountStackPolicies {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
     if ( restoreAuthorizationCache != null ) {
       restoreAuthorizationCache.run( );
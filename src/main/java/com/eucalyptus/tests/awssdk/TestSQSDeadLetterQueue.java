@@ -15,7 +15,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static com.eucalyptus.tests.awssdk.N4j.*;
-import static com.eucalyptus.tests.awssdk.N4j.synchronizedDeleteAccount;
+import static com.eucalyptus.tests.awssdk.N4j.deleteAccount;
 
 /**
  * Created by ethomas on 10/6/16.
@@ -34,10 +34,10 @@ public class TestSQSDeadLetterQueue {
     try {
       getCloudInfoAndSqs();
       account = "sqs-account-dlq-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-dlq-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -58,7 +58,7 @@ public class TestSQSDeadLetterQueue {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -67,7 +67,7 @@ public class TestSQSDeadLetterQueue {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
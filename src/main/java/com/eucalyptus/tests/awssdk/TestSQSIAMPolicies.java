@@ -32,6 +32,7 @@ import static com.eucalyptus.tests.awssdk.N4j.*;
 /**
  * Created by ethomas on 10/4/16.
  */
+@TestResources(properties = true)
 public class TestSQSIAMPolicies {
 
   private static String account;
@@ -52,16 +53,16 @@ public class TestSQSIAMPolicies {
       authorizationExpiryMs = 0;
       restoreAuthorizationCache = disableAuthorizationCache();
       account = "sqs-account-iam-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       AWSCredentials accountCredentials = getUserCreds(account, "admin");
-      synchronizedCreateUser(account, "user");
+      createUser(account, "user");
       accountUserSQSClient = getSqsClientWithNewAccount(account, "user");
       otherAccount = "sqs-account-iam-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
       AWSCredentials otherAccountCredentials = getUserCreds(otherAccount, "admin");
-      synchronizedCreateUser(otherAccount, "user");
+      createUser(otherAccount, "user");
       otherAccountUserSQSClient = getSqsClientWithNewAccount(otherAccount, "user");
     } catch (Exception e) {
       try {
@@ -82,7 +83,7 @@ public class TestSQSIAMPolicies {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -91,7 +92,7 @@ public class TestSQSIAMPolicies {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
     if ( restoreAuthorizationCache != null ) {
       restoreAuthorizationCache.run( );
@@ -2,7 +2,6 @@ package com.eucalyptus.tests.awssdk;
 
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.CreateQueueRequest;
-import com.amazonaws.services.sqs.model.ListQueuesResult;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
 import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
@@ -25,7 +24,7 @@ import static com.eucalyptus.tests.awssdk.N4j.*;
  */
 public class TestSQSLongPolling {
 
-  private static String account;
+  private static AccountPool.Lease lease;
 
   private static AmazonSQS accountSQSClient;
 
@@ -37,9 +36,9 @@ public class TestSQSLongPolling {
 
     try {
       getCloudInfoAndSqs();
-      account = "sqs-account-lp-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
-      accountSQSClient = getSqsClientWithNewAccount(account, "admin");
+      lease = AccountPool.lease(TestSQSLongPolling.class);
+      accountSQSClient = getSqsClient(
+          lease.getCredentials().getAWSAccessKeyId(), lease.getCredentials().getAWSSecretKey(), SQS_ENDPOINT);
       pool = Executors.newFixedThreadPool(3);
     } catch (Exception e) {
       try {
@@ -53,17 +52,11 @@ public class TestSQSLongPolling {
   @AfterClass
   public static void teardown() {
     print("### POST SUITE CLEANUP - " + TestSQSLongPolling.class.getSimpleName());
-    if (account != null) {
-      if (accountSQSClient != null) {
-        ListQueuesResult listQueuesResult = accountSQSClient.listQueues();
-        if (listQueuesResult != null) {
-          listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
-        }
-      }
-      synchronizedDeleteAccount(account);
-      if (pool != null) {
-        pool.shutdown();
-      }
+    if (lease != null) {
+      lease.release();
+    }
+    if (pool != null) {
+      pool.shutdown();
     }
   }
 
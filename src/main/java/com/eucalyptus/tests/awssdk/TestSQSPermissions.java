@@ -24,8 +24,8 @@ import java.util.Set;
 
 import static com.eucalyptus.tests.awssdk.N4j.LOCAL_EUCTL_FILE;
 import static com.eucalyptus.tests.awssdk.N4j.assertThat;
-import static com.eucalyptus.tests.awssdk.N4j.synchronizedCreateAccount;
-import static com.eucalyptus.tests.awssdk.N4j.synchronizedDeleteAccount;
+import static com.eucalyptus.tests.awssdk.N4j.createAccount;
+import static com.eucalyptus.tests.awssdk.N4j.deleteAccount;
 import static com.eucalyptus.tests.awssdk.N4j.getCloudInfoAndSqs;
 import static com.eucalyptus.tests.awssdk.N4j.getConfigProperty;
 import static com.eucalyptus.tests.awssdk.N4j.getSqsClientWithNewAccount;
@@ -53,10 +53,10 @@ public class TestSQSPermissions {
       getCloudInfoAndSqs();
       MAX_LABEL_LENGTH_CHARS = getLocalConfigInt("MAX_LABEL_LENGTH_CHARS");
       account = "sqs-account-per-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-per-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -77,7 +77,7 @@ public class TestSQSPermissions {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -86,7 +86,7 @@ public class TestSQSPermissions {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
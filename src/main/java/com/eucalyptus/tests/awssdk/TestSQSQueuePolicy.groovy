@@ -39,6 +39,8 @@ import static com.eucalyptus.tests.awssdk.N4j.youAre
  *   https://eucalyptus.atlassian.net/browse/EUCA-12869
  *   https://eucalyptus.atlassian.net/browse/EUCA-12897
  */
+// resource names use the shared N4j.NAME_PREFIX
+@TestResources( exclusive = true )
 class TestSQSQueuePolicy {
 
   @BeforeClass
@@ -51,6 +51,7 @@ public class TestSQSQueueUrlBinding {
 
   private static AmazonSQS accountSQSClient;
   private static AmazonSQS otherAccountSQSClient;
+  private static AmazonSQS accountHandlerSQSClient;
 
   @BeforeClass
   public static void init() throws Exception {
@@ -59,10 +60,11 @@ public class TestSQSQueueUrlBinding {
     try {
       getCloudInfoAndSqs();
       account = "sqs-account-qub-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
+      accountHandlerSQSClient = getUnsharedSqsClient(account, "admin");
       otherAccount = "sqs-account-qub-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -76,6 +78,9 @@ public class TestSQSQueueUrlBinding {
   @AfterClass
   public static void teardown() {
     print("### POST SUITE CLEANUP - " + TestSQSQueueUrlBinding.class.getSimpleName());
+    if (accountHandlerSQSClient != null) {
+      accountHandlerSQSClient.shutdown();
+    }
     if (account != null) {
       if (accountSQSClient != null) {
         ListQueuesResult listQueuesResult = accountSQSClient.listQueues();
@@ -83,7 +88,7 @@ public class TestSQSQueueUrlBinding {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -92,7 +97,7 @@ public class TestSQSQueueUrlBinding {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
@@ -109,7 +114,7 @@ public class TestSQSQueueUrlBinding {
     assertThat(accountSQSClient.listQueues("queue_name_test_binding_delete_queue").getQueueUrls().size() == 2, "We should have two queues");
 
     // delete a queue using the Request Parameter, then the original way
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl1) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl1) {
 
       @Override
       public Object doOperation() {
@@ -132,7 +137,7 @@ public class TestSQSQueueUrlBinding {
     final String accountId = pathParts.get(0);
     // now try add permission with a queue
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         AddPermissionRequest addPermissionRequest = new AddPermissionRequest();
@@ -172,7 +177,7 @@ public class TestSQSQueueUrlBinding {
     // Make sure we have a policy now
     assertThat(getPolicy(accountSQSClient, queueUrl) != null, "We have a policy after we add a permission");
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         RemovePermissionRequest removePermissionRequest = new RemovePermissionRequest();
@@ -199,7 +204,7 @@ public class TestSQSQueueUrlBinding {
     accountSQSClient.sendMessage(queueUrl, "Hello");
     assertThat(messageTotals(accountSQSClient, queueUrl) == 1, "There is 1 message");
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         SendMessageRequest sendMessageRequest = new SendMessageRequest();
@@ -225,7 +230,7 @@ public class TestSQSQueueUrlBinding {
     accountSQSClient.sendMessageBatch(sendMessageBatchRequest);
     assertThat(messageTotals(accountSQSClient, queueUrl) == 1, "There is 1 message");
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         SendMessageBatchRequest sendMessageBatchRequest = new SendMessageBatchRequest();
@@ -274,7 +279,7 @@ public class TestSQSQueueUrlBinding {
     startTime = System.currentTimeMillis();
     while (!receivedMessage && System.currentTimeMillis() - startTime < 120000L) {
       ReceiveMessageResult receiveMessageResult = (ReceiveMessageResult)
-        new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+        new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
           @Override
           public Object doOperation() {
             return getSqsClient().receiveMessage(new ReceiveMessageRequest());
@@ -333,7 +338,7 @@ public class TestSQSQueueUrlBinding {
     assertThat(getNumMessages(accountSQSClient, queueUrl) == 0
       && getNumMessagesNotVisible(accountSQSClient, queueUrl) == 1, "Message should be 'invisible'");
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         ChangeMessageVisibilityRequest changeMessageVisibilityRequest = new ChangeMessageVisibilityRequest();
@@ -391,7 +396,7 @@ public class TestSQSQueueUrlBinding {
     assertThat(getNumMessages(accountSQSClient, queueUrl) == 0
       && getNumMessagesNotVisible(accountSQSClient, queueUrl) == 1, "Message should be 'invisible'");
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest = new ChangeMessageVisibilityBatchRequest();
@@ -466,7 +471,7 @@ public class TestSQSQueueUrlBinding {
     final String receiptHandle2 = receivedMessage.getReceiptHandle();
     assertThat(messageTotals(accountSQSClient, queueUrl) == 1, "Should be 1 message");
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         DeleteMessageRequest deleteMessageRequest = new DeleteMessageRequest();
@@ -499,7 +504,7 @@ public class TestSQSQueueUrlBinding {
     assertThat(numSources == NUM_QUEUES, "Should have "+NUM_QUEUES+" queues");
 
     numSources =
-      ((ListDeadLetterSourceQueuesResult) new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+      ((ListDeadLetterSourceQueuesResult) new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         ListDeadLetterSourceQueuesRequest listDeadLetterSourceQueuesRequest = new ListDeadLetterSourceQueuesRequest();
@@ -533,7 +538,7 @@ public class TestSQSQueueUrlBinding {
     }
     assertThat(messageTotals(accountSQSClient, queueUrl) == NUM_MESSAGES, "Should have " + NUM_MESSAGES + " messages");
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
        getSqsClient().purgeQueue(new PurgeQueueRequest());
@@ -603,7 +608,7 @@ public class TestSQSQueueUrlBinding {
     final String receiptHandle2 = receivedMessage.getReceiptHandle();
     assertThat(messageTotals(accountSQSClient, queueUrl) == 1, "Should be 1 message");
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         DeleteMessageBatchRequest deleteMessageBatchRequest = new DeleteMessageBatchRequest();
@@ -628,7 +633,7 @@ public class TestSQSQueueUrlBinding {
     accountSQSClient.setQueueAttributes(queueUrl, ImmutableMap.of("VisibilityTimeout", "60"));
 
     assertThat("60".equals(
-      ((GetQueueAttributesResult) new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+      ((GetQueueAttributesResult) new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
         @Override
         public Object doOperation() {
           GetQueueAttributesRequest getQueueAttributesRequest = new GetQueueAttributesRequest();
@@ -645,7 +650,7 @@ public class TestSQSQueueUrlBinding {
     String queueName = "queue_name_test_binding_set_attribute";
     String queueUrl = accountSQSClient.createQueue(queueName).getQueueUrl();
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl) {
       @Override
       public Object doOperation() {
         SetQueueAttributesRequest setQueueAttributesRequest = new SetQueueAttributesRequest();
@@ -668,7 +673,7 @@ public class TestSQSQueueUrlBinding {
     String queueName2 = "queue_name_test_binding_request_parameter_wins_2";
     String queueUrl2 = accountSQSClient.createQueue(queueName2).getQueueUrl();
 
-    new QueueOperationWithRequestParameter(accountSQSClient, queueUrl1) {
+    new QueueOperationWithRequestParameter(accountHandlerSQSClient, queueUrl1) {
       @Override
       public Object doOperation() {
         // does not set as a request parameter, sets endpoint
@@ -720,6 +725,10 @@ public class TestSQSQueueUrlBinding {
       Integer.parseInt(attributes.get("ApproximateNumberOfMessagesDelayed"));
   }
 
+  /**
+   * Operation using the QueueUrl request parameter, the client must not be
+   * shared as a request handler is added for the operation.
+   */
   public abstract class QueueOperationWithRequestParameter {
     private AmazonSQS sqsClient;
     private String queueUrl;
@@ -25,7 +25,7 @@ public class TestSQSQuotas {
     try {
       getCloudInfoAndSqs();
       account = "sqs-account-quo-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
     } catch (Exception e) {
       try {
@@ -46,7 +46,7 @@ public class TestSQSQuotas {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
   }
 
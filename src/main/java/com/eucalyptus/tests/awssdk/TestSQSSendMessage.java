@@ -1,10 +1,10 @@
 package com.eucalyptus.tests.awssdk;
 
 import com.amazonaws.AmazonServiceException;
-import com.amazonaws.AmazonWebServiceClient;
 import com.amazonaws.Request;
 import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClient;
 import com.amazonaws.services.sqs.model.CreateQueueRequest;
 import com.amazonaws.services.sqs.model.ListQueuesResult;
 import com.amazonaws.services.sqs.model.Message;
@@ -60,10 +60,10 @@ public class TestSQSSendMessage {
       MAX_DELAY_SECONDS = getLocalConfigInt("MAX_DELAY_SECONDS");
       MAX_MAXIMUM_MESSAGE_SIZE = getLocalConfigInt("MAX_MAXIMUM_MESSAGE_SIZE");
       account = "sqs-account-sm-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       otherAccount = "sqs-account-sm-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
     } catch (Exception e) {
       try {
@@ -84,7 +84,7 @@ public class TestSQSSendMessage {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -93,7 +93,7 @@ public class TestSQSSendMessage {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
@@ -284,14 +284,16 @@ public class TestSQSSendMessage {
         request.addParameter("MessageAttribute.2.Value.StringValue", "Value2");
       }
     };
-    ((AmazonWebServiceClient) accountSQSClient).addRequestHandler(sendTwoAttributesWithSameName);
+    AmazonSQSClient handlerSQSClient = getUnsharedSqsClient(account, "admin");
+    handlerSQSClient.addRequestHandler(sendTwoAttributesWithSameName);
     try {
-      accountSQSClient.sendMessage(queueUrl, "Hello");
+      handlerSQSClient.sendMessage(queueUrl, "Hello");
       assertThat(false, "Should fail sending a message with 'MA1' as attribute name twice");
     } catch (AmazonServiceException e) {
       assertThat(e.getStatusCode() == 400, "Correctly fail sending a message with 'MA1' as attribute name twice");
+    } finally {
+      handlerSQSClient.shutdown();
     }
-    ((AmazonWebServiceClient) accountSQSClient).removeRequestHandler(sendTwoAttributesWithSameName);
   }
 
   @Test
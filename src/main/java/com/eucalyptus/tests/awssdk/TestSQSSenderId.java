@@ -60,23 +60,23 @@ public class TestSQSSenderId {
     try {
       getCloudInfoAndSqs();
       account = "sqs-account-sid-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
 
       accountCredentials = getUserCreds(account, "admin");
       accountSQSClient = new AmazonSQSClient(accountCredentials);
       accountSQSClient.setEndpoint(SQS_ENDPOINT);
 
-      synchronizedCreateUser(account, "user1ac1");
-      synchronizedCreateUser(account, "user2ac1");
+      createUser(account, "user1ac1");
+      createUser(account, "user2ac1");
 
       otherAccount = "sqs-account-sid-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountCredentials = getUserCreds(otherAccount, "admin");
       otherAccountSQSClient = new AmazonSQSClient(otherAccountCredentials);
       otherAccountSQSClient.setEndpoint(SQS_ENDPOINT);
 
-      synchronizedCreateUser(otherAccount, "user1ac2");
-      synchronizedCreateUser(otherAccount, "user2ac2");
+      createUser(otherAccount, "user1ac2");
+      createUser(otherAccount, "user2ac2");
 
     } catch (Exception e) {
       try {
@@ -97,7 +97,7 @@ public class TestSQSSenderId {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -106,7 +106,7 @@ public class TestSQSSenderId {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
@@ -25,9 +25,9 @@ import java.util.Collections;
 import java.util.List;
 
 import static com.eucalyptus.tests.awssdk.N4j.assertThat;
-import static com.eucalyptus.tests.awssdk.N4j.synchronizedCreateAccount;
-import static com.eucalyptus.tests.awssdk.N4j.synchronizedCreateUser;
-import static com.eucalyptus.tests.awssdk.N4j.synchronizedDeleteAccount;
+import static com.eucalyptus.tests.awssdk.N4j.createAccount;
+import static com.eucalyptus.tests.awssdk.N4j.createUser;
+import static com.eucalyptus.tests.awssdk.N4j.deleteAccount;
 import static com.eucalyptus.tests.awssdk.N4j.getCloudInfoAndSqs;
 import static com.eucalyptus.tests.awssdk.N4j.getSqsClientWithNewAccount;
 import static com.eucalyptus.tests.awssdk.N4j.getUserCreds;
@@ -61,16 +61,16 @@ public class TestSQSStatusCodesForNonexistentQueues {
     try {
       getCloudInfoAndSqs();
       account = "sqs-account-sc-a-" + System.currentTimeMillis();
-      synchronizedCreateAccount(account);
+      createAccount(account);
       accountSQSClient = getSqsClientWithNewAccount(account, "admin");
       AWSCredentials accountCredentials = getUserCreds(account, "admin");
-      synchronizedCreateUser(account, "user");
+      createUser(account, "user");
       accountUserSQSClient = getSqsClientWithNewAccount(account, "user");
       otherAccount = "sqs-account-sc-b-" + System.currentTimeMillis();
-      synchronizedCreateAccount(otherAccount);
+      createAccount(otherAccount);
       otherAccountSQSClient = getSqsClientWithNewAccount(otherAccount, "admin");
       AWSCredentials otherAccountCredentials = getUserCreds(otherAccount, "admin");
-      synchronizedCreateUser(otherAccount, "user");
+      createUser(otherAccount, "user");
       otherAccountUserSQSClient = getSqsClientWithNewAccount(otherAccount, "user");
 
       String queueName = "queue_name_status_codes_nonexistent_queue";
@@ -108,7 +108,7 @@ public class TestSQSStatusCodesForNonexistentQueues {
           listQueuesResult.getQueueUrls().forEach(accountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(account);
+      deleteAccount(account);
     }
     if (otherAccount != null) {
       if (otherAccountSQSClient != null) {
@@ -117,7 +117,7 @@ public class TestSQSStatusCodesForNonexistentQueues {
           listQueuesResult.getQueueUrls().forEach(otherAccountSQSClient::deleteQueue);
         }
       }
-      synchronizedDeleteAccount(otherAccount);
+      deleteAccount(otherAccount);
     }
   }
 
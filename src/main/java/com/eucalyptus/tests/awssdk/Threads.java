@@ -0,0 +1,77 @@
+package com.eucalyptus.tests.awssdk;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories for load workers and waiters.
+ *
+ * Threads are daemon platform threads unless virtual threads are enabled
+ * and the runtime is Java 21 or later, in which case workers are virtual
+ * threads and blocking calls (requests, waits) do not tie up a platform
+ * thread. Virtual threads are found reflectively so the harness still
+ * builds for and runs on Java 8.
+ *
+ * With virtual threads the number of concurrent requests is limited by the
+ * client connection pool, n4j.client.max-connections may need increasing
+ * for high concurrency scenarios.
+ *
+ * Threads are configured via system properties:
+ *
+ *   n4j.threads - platform or virtual (default platform)
+ */
+public final class Threads {
+
+  private static final boolean VIRTUAL_REQUESTED = "virtual".equals( System.getProperty( "n4j.threads", "platform" ) );
+  private static final Method OF_VIRTUAL = virtualBuilderMethod( );
+
+  static {
+    if ( VIRTUAL_REQUESTED && OF_VIRTUAL == null ) {
+      N4j.print( "Virtual threads not supported by Java " + System.getProperty( "java.version" ) +
+          ", using platform threads" );
+    }
+  }
+
+  private Threads( ) {
+  }
+
+  /**
+   * True if worker threads are virtual threads.
+   */
+  public static boolean isVirtual( ) {
+    return VIRTUAL_REQUESTED && OF_VIRTUAL != null;
+  }
+
+  /**
+   * Factory for daemon worker threads.
+   *
+   * @param nameFormat The thread name format, e.g. n4j-load-%d
+   * @return The factory for virtual or platform threads
+   */
+  public static ThreadFactory factory( final String nameFormat ) {
+    if ( isVirtual( ) ) {
+      final String prefix = nameFormat.contains( "%d" ) ?
+          nameFormat.substring( 0, nameFormat.indexOf( "%d" ) ) :
+          nameFormat;
+      try {
+        final Class<?> builderClass = Class.forName( "java.lang.Thread$Builder" );
+        Object builder = OF_VIRTUAL.invoke( null );
+        builder = builderClass.getMethod( "name", String.class, long.class ).invoke( builder, prefix, 0L );
+        return (ThreadFactory) builderClass.getMethod( "factory" ).invoke( builder );
+      } catch ( final ReflectiveOperationException e ) {
+        throw new IllegalStateException( "Error creating virtual thread factory", e );
+      }
+    }
+    return new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( nameFormat ).build( );
+  }
+
+  private static Method virtualBuilderMethod( ) {
+    try {
+      return Thread.class.getMethod( "ofVirtual" );
+    } catch ( final NoSuchMethodException e ) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package com.eucalyptus.tests.awssdk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Waits for a condition using adaptive backoff.
+ *
+ * The condition is first probed after a short delay and then with
+ * exponentially increasing intervals (with jitter) up to a maximum
+ * interval, until the condition holds or the deadline passes. The time
+ * taken and number of probes for each wait are recorded and a summary is
+ * output at JVM exit. Only the most recent results are kept, the summary
+ * covers all waits.
+ *
+ * The default policy is configured via system properties:
+ *
+ *   n4j.wait.initial-delay - delay before the first probe (default 500ms)
+ *   n4j.wait.interval      - interval after the first probe (default 500ms)
+ *   n4j.wait.multiplier    - interval growth factor (default 2)
+ *   n4j.wait.max-interval  - maximum interval between probes (default 5s)
+ *   n4j.wait.jitter        - random fraction of the interval added or removed (default 0.2)
+ *   n4j.wait.history       - number of recent results kept (default 1000)
+ */
+public final class Waiter {
+
+  private static final Policy DEFAULT_POLICY = new Policy(
+      N4j.parseInterval( System.getProperty( "n4j.wait.initial-delay", "500ms" ), 500L ),
+      N4j.parseInterval( System.getProperty( "n4j.wait.interval", "500ms" ), 500L ),
+      Double.parseDouble( System.getProperty( "n4j.wait.multiplier", "2" ) ),
+      N4j.parseInterval( System.getProperty( "n4j.wait.max-interval", "5s" ), TimeUnit.SECONDS.toMillis( 5 ) ),
+      Double.parseDouble( System.getProperty( "n4j.wait.jitter", "0.2" ) ) );
+
+  private static final int HISTORY = Math.max( 0, Integer.getInteger( "n4j.wait.history", 1000 ) );
+
+  private static final Deque<Result> results = new ArrayDeque<>( );
+  private static final LongAdder waits = new LongAdder( );
+  private static final LongAdder timeouts = new LongAdder( );
+  private static final LongAdder waitMillis = new LongAdder( );
+  private static final LongAdder waitProbes = new LongAdder( );
+
+  static {
+    Runtime.getRuntime( ).addShutdownHook( new Thread( ( ) -> {
+      if ( waits.sum( ) > 0 ) N4j.print( summary( ) );
+    }, "n4j-waiter-summary" ) );
+  }
+
+  private Waiter( ) {
+  }
+
+  /**
+   * The default policy
+   */
+  public static Policy policy( ) {
+    return DEFAULT_POLICY;
+  }
+
+  /**
+   * Wait for a condition using the default policy.
+   *
+   * @param what What are we waiting for?
+   * @param timeout The wait timeout in millis
+   * @param condition True if complete, false to wait, passed the elapsed time in millis
+   * @throws IllegalStateException If the wait times out
+   */
+  public static Result await( final String what, final long timeout, final Predicate<Long> condition ) {
+    return await( what, DEFAULT_POLICY, timeout, condition );
+  }
+
+  /**
+   * Wait for a condition.
+   *
+   * @throws IllegalStateException If the wait times out
+   */
+  public static Result await(
+      final String what,
+      final Policy policy,
+      final long timeout,
+      final Predicate<Long> condition
+  ) {
+    final Result result = poll( what, policy, timeout, condition );
+    if ( !result.isSuccess( ) ) {
+      throw new IllegalStateException( what + " wait timed out" );
+    }
+    return result;
+  }
+
+  /**
+   * Poll a condition using the default policy.
+   *
+   * @return The result, which is unsuccessful if the condition did not hold before the timeout
+   */
+  public static Result poll( final String what, final long timeout, final Predicate<Long> condition ) {
+    return poll( what, DEFAULT_POLICY, timeout, condition );
+  }
+
+  /**
+   * Poll a condition.
+   *
+   * @return The result, which is unsuccessful if the condition did not hold before the timeout
+   */
+  public static Result poll(
+      final String what,
+      final Policy policy,
+      final long timeout,
+      final Predicate<Long> condition
+  ) {
+    final long startTime = System.currentTimeMillis( );
+    final long deadline = startTime + timeout;
+    long interval = policy.interval;
+    long delay = policy.initialDelay;
+    int probes = 0;
+    boolean success = false;
+    while ( true ) {
+      final long remaining = deadline - System.currentTimeMillis( );
+      if ( remaining <= 0 ) break;
+      sleep( what, Math.min( delay, remaining ) );
+      probes++;
+      if ( condition.test( System.currentTimeMillis( ) - startTime ) ) {
+        success = true;
+        break;
+      }
+      delay = policy.jitter( interval );
+      interval = Math.min( policy.maxInterval, (long) ( interval * policy.multiplier ) );
+    }
+    final Result result = new Result( what, success, System.currentTimeMillis( ) - startTime, probes );
+    record( result );
+    N4j.print( result.toString( ) );
+    return result;
+  }
+
+  /**
+   * Results for recent waits.
+   */
+  public static List<Result> results( ) {
+    synchronized ( results ) {
+      return new ArrayList<>( results );
+    }
+  }
+
+  /**
+   * Summary of all waits so far.
+   */
+  public static String summary( ) {
+    return "Waits: " + waits.sum( ) + ", timed out: " + timeouts.sum( ) + ", total wait: " + waitMillis.sum( ) + "ms" +
+        ", probes: " + waitProbes.sum( );
+  }
+
+  private static void record( final Result result ) {
+    waits.increment( );
+    if ( !result.isSuccess( ) ) timeouts.increment( );
+    waitMillis.add( result.getElapsedMillis( ) );
+    waitProbes.add( result.getProbes( ) );
+    synchronized ( results ) {
+      results.addLast( result );
+      while ( results.size( ) > HISTORY ) {
+        results.removeFirst( );
+      }
+    }
+  }
+
+  private static void sleep( final String what, final long millis ) {
+    if ( millis > 0 ) try {
+      Thread.sleep( millis );
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      throw new IllegalStateException( "Interrupted waiting for " + what );
+    }
+  }
+
+  /**
+   * Backoff policy for waits.
+   */
+  public static final class Policy {
+    private final long initialDelay;
+    private final long interval;
+    private final double multiplier;
+    private final long maxInterval;
+    private final double jitter;
+
+    private Policy(
+        final long initialDelay,
+        final long interval,
+        final double multiplier,
+        final long maxInterval,
+        final double jitter
+    ) {
+      this.initialDelay = Math.max( 0, initialDelay );
+      this.interval = Math.max( 1, interval );
+      this.multiplier = Math.max( 1d, multiplier );
+      this.maxInterval = Math.max( this.interval, maxInterval );
+      this.jitter = Math.min( 1d, Math.max( 0d, jitter ) );
+    }
+
+    public Policy withInitialDelay( final long initialDelay, final TimeUnit unit ) {
+      return new Policy( unit.toMillis( initialDelay ), interval, multiplier, maxInterval, jitter );
+    }
+
+    public Policy withInterval( final long interval, final TimeUnit unit ) {
+      return new Policy( initialDelay, unit.toMillis( interval ), multiplier, maxInterval, jitter );
+    }
+
+    public Policy withMultiplier( final double multiplier ) {
+      return new Policy( initialDelay, interval, multiplier, maxInterval, jitter );
+    }
+
+    public Policy withMaxInterval( final long maxInterval, final TimeUnit unit ) {
+      return new Policy( initialDelay, interval, multiplier, unit.toMillis( maxInterval ), jitter );
+    }
+
+    public Policy withJitter( final double jitter ) {
+      return new Policy( initialDelay, interval, multiplier, maxInterval, jitter );
+    }
+
+    private long jitter( final long interval ) {
+      if ( jitter == 0d ) return interval;
+      final double factor = 1d + ( ThreadLocalRandom.current( ).nextDouble( ) * 2d - 1d ) * jitter;
+      return Math.max( 1, (long) ( interval * factor ) );
+    }
+
+    @Override
+    public String toString( ) {
+      return "Policy{initialDelay=" + initialDelay + "ms, interval=" + interval + "ms, multiplier=" + multiplier +
+          ", maxInterval=" + maxInterval + "ms, jitter=" + jitter + "}";
+    }
+  }
+
+  /**
+   * Outcome of a wait.
+   */
+  public static final class Result {
+    private final String what;
+    private final boolean success;
+    private final long elapsedMillis;
+    private final int probes;
+
+    Result( final String what, final boolean success, final long elapsedMillis, final int probes ) {
+      this.what = what;
+      this.success = success;
+      this.elapsedMillis = elapsedMillis;
+      this.probes = probes;
+    }
+
+    public String getWhat( ) {
+      return what;
+    }
+
+    public boolean isSuccess( ) {
+      return success;
+    }
+
+    public long getElapsedMillis( ) {
+      return elapsedMillis;
+    }
+
+    public int getProbes( ) {
+      return probes;
+    }
+
+    @Override
+    public String toString( ) {
+      return what + " wait " + ( success ? "completed" : "timed out" ) + " in " + elapsedMillis + "ms" +
+          " (" + probes + " probes)";
+    }
+  }
+}
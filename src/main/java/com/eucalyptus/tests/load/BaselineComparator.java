@@ -0,0 +1,278 @@
+package com.eucalyptus.tests.load;
+
+import com.eucalyptus.tests.awssdk.N4j;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares load scenario results with a stored baseline.
+ *
+ * Phases are matched by scenario and phase name. A metric regresses when
+ * the change is worse than the tolerance and the difference is significant
+ * at the configured confidence:
+ *
+ *   throughput - rate comparison using the iteration counts (Poisson)
+ *   latency    - Welch's t-test on the mean, gating the percentile checks
+ *   error rate - two proportion z-test
+ *
+ * Metrics with fewer than the minimum number of samples on either side are
+ * reported but never regress.
+ *
+ * Comparison is configured via system properties:
+ *
+ *   n4j.baseline - directory or file with baseline results (no comparison if not set)
+ *   n4j.baseline.throughput-tolerance - relative throughput decrease allowed (default 0.10)
+ *   n4j.baseline.latency-tolerance - relative latency increase allowed (default 0.20)
+ *   n4j.baseline.latency-percentiles - latency metrics checked (default p50,p99)
+ *   n4j.baseline.error-tolerance - absolute error rate increase allowed (default 0.01)
+ *   n4j.baseline.confidence - one sided confidence for significance (default 0.95)
+ *   n4j.baseline.min-samples - minimum samples for a significant result (default 30)
+ *
+ * Result directories can also be compared from the command line:
+ *
+ *   BaselineComparator BASELINE_DIR RESULTS_DIR
+ */
+public final class BaselineComparator {
+
+  private static final String BASELINE = System.getProperty( "n4j.baseline" );
+
+  private final double throughputTolerance =
+      Double.parseDouble( System.getProperty( "n4j.baseline.throughput-tolerance", "0.10" ) );
+  private final double latencyTolerance =
+      Double.parseDouble( System.getProperty( "n4j.baseline.latency-tolerance", "0.20" ) );
+  private final String[] latencyPercentiles =
+      System.getProperty( "n4j.baseline.latency-percentiles", "p50,p99" ).split( "\\s*,\\s*" );
+  private final double errorTolerance =
+      Double.parseDouble( System.getProperty( "n4j.baseline.error-tolerance", "0.01" ) );
+  private final double z =
+      quantile( Double.parseDouble( System.getProperty( "n4j.baseline.confidence", "0.95" ) ) );
+  private final long minSamples =
+      Long.parseLong( System.getProperty( "n4j.baseline.min-samples", "30" ) );
+
+  /**
+   * True if a baseline is configured.
+   */
+  public static boolean isConfigured( ) {
+    return BASELINE != null && !BASELINE.isEmpty( );
+  }
+
+  /**
+   * Check the results for a scenario against the configured baseline.
+   *
+   * @throws AssertionError If there is a significant regression or the
+   *                        baseline or current results cannot be read
+   */
+  public static void check( final String scenario ) {
+    if ( !isConfigured( ) ) return;
+    try {
+      final Map<String,JsonNode> baseline = readResults( new File( BASELINE ) );
+      final Map<String,JsonNode> current = BenchmarkResults.read( BenchmarkResults.directory( ) );
+      if ( !current.containsKey( scenario ) ) {
+        throw new AssertionError( "No results for load scenario " + scenario + " in " + BenchmarkResults.directory( ) );
+      }
+      if ( !baseline.containsKey( scenario ) ) {
+        N4j.print( "No baseline results for load scenario " + scenario );
+        return;
+      }
+      final Comparison comparison = new BaselineComparator( ).compare( baseline.get( scenario ), current.get( scenario ) );
+      N4j.print( comparison.toString( ) );
+      comparison.assertNoRegressions( );
+    } catch ( final IOException e ) {
+      throw new AssertionError( "Error reading results for baseline comparison: " + e, e );
+    }
+  }
+
+  /**
+   * Compare all scenarios in the results directory with the baseline directory.
+   */
+  public static void main( final String[] args ) throws IOException {
+    if ( args.length != 2 ) {
+      System.err.println( "Usage: BaselineComparator BASELINE_DIR RESULTS_DIR" );
+      System.exit( 2 );
+    }
+    final BaselineComparator comparator = new BaselineComparator( );
+    final Map<String,JsonNode> baseline = readResults( new File( args[0] ) );
+    final Map<String,JsonNode> current = readResults( new File( args[1] ) );
+    boolean regressed = false;
+    for ( final Map.Entry<String,JsonNode> entry : current.entrySet( ) ) {
+      final JsonNode baselineScenario = baseline.get( entry.getKey( ) );
+      if ( baselineScenario == null ) {
+        System.out.println( "No baseline results for load scenario " + entry.getKey( ) );
+        continue;
+      }
+      final Comparison comparison = comparator.compare( baselineScenario, entry.getValue( ) );
+      System.out.println( comparison );
+      regressed |= !comparison.getRegressions( ).isEmpty( );
+    }
+    System.exit( regressed ? 1 : 0 );
+  }
+
+  /**
+   * Compare the results for a scenario.
+   *
+   * @param baseline The baseline scenario results
+   * @param current The current scenario results
+   */
+  public Comparison compare( final JsonNode baseline, final JsonNode current ) {
+    final Comparison comparison = new Comparison( current.get( "scenario" ).asText( ) );
+    for ( final JsonNode phase : current.get( "phases" ) ) {
+      final String name = phase.get( "phase" ).asText( );
+      final JsonNode baselinePhase = findPhase( baseline, name );
+      if ( baselinePhase == null ) continue;
+      compareThroughput( comparison, name, baselinePhase, phase );
+      compareLatency( comparison, name, baselinePhase, phase );
+      compareErrorRate( comparison, name, baselinePhase, phase );
+    }
+    return comparison;
+  }
+
+  private void compareThroughput(
+      final Comparison comparison,
+      final String phase,
+      final JsonNode baseline,
+      final JsonNode current
+  ) {
+    final long n1 = baseline.get( "iterations" ).asLong( );
+    final long n2 = current.get( "iterations" ).asLong( );
+    final double t1 = baseline.get( "elapsedMillis" ).asDouble( ) / 1000d;
+    final double t2 = current.get( "elapsedMillis" ).asDouble( ) / 1000d;
+    if ( t1 <= 0 || t2 <= 0 ) return;
+    final double r1 = n1 / t1;
+    final double r2 = n2 / t2;
+    final double error = Math.sqrt( n1 / ( t1 * t1 ) + n2 / ( t2 * t2 ) );
+    final double score = error == 0 ? 0 : ( r1 - r2 ) / error;
+    final boolean significant = n1 >= minSamples && n2 >= minSamples && score > z;
+    comparison.add( phase, "throughput", r1, r2, significant && r2 < r1 * ( 1 - throughputTolerance ) );
+  }
+
+  private void compareLatency(
+      final Comparison comparison,
+      final String phase,
+      final JsonNode baseline,
+      final JsonNode current
+  ) {
+    final JsonNode l1 = baseline.get( "latency" );
+    final JsonNode l2 = current.get( "latency" );
+    final long n1 = l1.get( "count" ).asLong( );
+    final long n2 = l2.get( "count" ).asLong( );
+    final double m1 = l1.get( "mean" ).asDouble( );
+    final double m2 = l2.get( "mean" ).asDouble( );
+    final double s1 = l1.get( "stddev" ).asDouble( );
+    final double s2 = l2.get( "stddev" ).asDouble( );
+    boolean significant = false;
+    if ( n1 >= minSamples && n2 >= minSamples ) {
+      final double error = Math.sqrt( s1 * s1 / n1 + s2 * s2 / n2 );
+      significant = error == 0 ? m2 > m1 : ( m2 - m1 ) / error > z;
+    }
+    comparison.add( phase, "latency mean", m1, m2, significant && m2 > m1 * ( 1 + latencyTolerance ) );
+    for ( final String percentile : latencyPercentiles ) {
+      if ( !l1.has( percentile ) || !l2.has( percentile ) ) continue;
+      final double p1 = l1.get( percentile ).asDouble( );
+      final double p2 = l2.get( percentile ).asDouble( );
+      comparison.add( phase, "latency " + percentile, p1, p2, significant && p2 > p1 * ( 1 + latencyTolerance ) );
+    }
+  }
+
+  private void compareErrorRate(
+      final Comparison comparison,
+      final String phase,
+      final JsonNode baseline,
+      final JsonNode current
+  ) {
+    final long n1 = baseline.get( "iterations" ).asLong( ) + baseline.get( "failures" ).asLong( );
+    final long n2 = current.get( "iterations" ).asLong( ) + current.get( "failures" ).asLong( );
+    final double e1 = baseline.get( "errorRate" ).asDouble( );
+    final double e2 = current.get( "errorRate" ).asDouble( );
+    boolean significant = false;
+    if ( n1 >= minSamples && n2 >= minSamples ) {
+      final double pooled = ( e1 * n1 + e2 * n2 ) / ( n1 + n2 );
+      final double error = Math.sqrt( pooled * ( 1 - pooled ) * ( 1d / n1 + 1d / n2 ) );
+      significant = error == 0 ? e2 > e1 : ( e2 - e1 ) / error > z;
+    }
+    comparison.add( phase, "error rate", e1, e2, significant && e2 - e1 > errorTolerance );
+  }
+
+  private static JsonNode findPhase( final JsonNode scenario, final String name ) {
+    for ( final JsonNode phase : scenario.get( "phases" ) ) {
+      if ( name.equals( phase.get( "phase" ).asText( ) ) ) return phase;
+    }
+    return null;
+  }
+
+  private static Map<String,JsonNode> readResults( final File location ) throws IOException {
+    if ( !location.exists( ) ) {
+      throw new FileNotFoundException( "Results not found: " + location );
+    } else if ( location.isDirectory( ) ) {
+      return BenchmarkResults.read( location );
+    } else {
+      final File directory = location.getAbsoluteFile( ).getParentFile( );
+      final Map<String,JsonNode> results = BenchmarkResults.read( directory );
+      results.values( ).removeIf( node -> !location.getName( ).equals(
+          BenchmarkResults.fileName( node.get( "scenario" ).asText( ) ) + ".json" ) );
+      return results;
+    }
+  }
+
+  /**
+   * Standard normal quantile (Abramowitz and Stegun 26.2.23), for p in (0.5,1)
+   */
+  private static double quantile( final double p ) {
+    if ( p <= 0.5 || p >= 1 ) throw new IllegalArgumentException( "Invalid confidence: " + p );
+    final double t = Math.sqrt( -2 * Math.log( 1 - p ) );
+    return t - ( 2.515517 + 0.802853 * t + 0.010328 * t * t ) /
+        ( 1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t );
+  }
+
+  /**
+   * Result of comparing a scenario with its baseline.
+   */
+  public static final class Comparison {
+    private final String scenario;
+    private final List<String> lines = new ArrayList<>( );
+    private final List<String> regressions = new ArrayList<>( );
+
+    private Comparison( final String scenario ) {
+      this.scenario = scenario;
+    }
+
+    private void add( final String phase, final String metric, final double baseline, final double current, final boolean regressed ) {
+      final double change = baseline == 0 ? 0 : ( current - baseline ) / baseline * 100d;
+      final String line = String.format( "%-24s %-16s %12.3f %12.3f %+8.1f%% %s",
+          phase, metric, baseline, current, change, regressed ? "REGRESSION" : "" );
+      lines.add( line );
+      if ( regressed ) regressions.add( phase + " " + metric + " " + baseline + " -> " + current );
+    }
+
+    public String getScenario( ) {
+      return scenario;
+    }
+
+    public List<String> getRegressions( ) {
+      return Collections.unmodifiableList( regressions );
+    }
+
+    public void assertNoRegressions( ) {
+      if ( !regressions.isEmpty( ) ) {
+        throw new AssertionError( "Load scenario " + scenario + " regressed from baseline: " + regressions );
+      }
+    }
+
+    @Override
+    public String toString( ) {
+      final StringBuilder report = new StringBuilder( );
+      report.append( "Baseline comparison for load scenario " ).append( scenario ).append( '\n' );
+      report.append( String.format( "%-24s %-16s %12s %12s %9s%n", "phase", "metric", "baseline", "current", "change" ) );
+      for ( final String line : lines ) {
+        report.append( line ).append( '\n' );
+      }
+      return report.toString( );
+    }
+  }
+}
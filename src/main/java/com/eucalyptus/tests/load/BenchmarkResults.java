@@ -0,0 +1,278 @@
+package com.eucalyptus.tests.load;
+
+import com.eucalyptus.tests.awssdk.N4j;
+import com.eucalyptus.tests.awssdk.RequestMetrics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes load scenario results as JSON and CSV files.
+ *
+ * Each scenario writes SCENARIO.json and SCENARIO.csv with throughput,
+ * latency percentiles and error rates for each phase, request metrics for
+ * each service operation and metadata for the environment the scenario
+ * ran in.
+ *
+ * The output location is configured via system property:
+ *
+ *   n4j.results.dir - directory for result files (default build/n4j-results)
+ */
+public final class BenchmarkResults {
+
+  private static final String DIRECTORY = System.getProperty( "n4j.results.dir", "build/n4j-results" );
+  private static final ObjectMapper mapper = new ObjectMapper( ).enable( SerializationFeature.INDENT_OUTPUT );
+  private static final String CSV_HEADER =
+      "scenario,type,name,mode,threads,iterations,failures,elapsed_ms,throughput,error_rate," +
+      "count,mean_ms,stddev_ms,p50_ms,p90_ms,p99_ms,p99.9_ms,max_ms,errors,throttles,retries";
+
+  private BenchmarkResults( ) {
+  }
+
+  /**
+   * The directory for result files.
+   */
+  public static File directory( ) {
+    return new File( DIRECTORY );
+  }
+
+  /**
+   * Write the results for a scenario.
+   *
+   * When running a shard of a distributed scenario the results are written
+   * for the shard, the coordinator writes the results for the scenario.
+   *
+   * @param scenario The scenario
+   * @param metrics Request metrics for the scenario
+   */
+  public static void write( final LoadScenario scenario, final RequestMetrics.Snapshot metrics ) {
+    final List<LoadScenario.Result> results = scenario.results( );
+    if ( results.isEmpty( ) ) return;
+    final List<ObjectNode> phases = new ArrayList<>( );
+    for ( final LoadScenario.Result result : results ) {
+      phases.add( phase( result ) );
+    }
+    write( scenario.getName( ), phases, metrics, LoadShard.isEnabled( ) ? LoadShard.index( ) : null );
+  }
+
+  /**
+   * Write the results for a scenario from phase results.
+   *
+   * @param scenario The scenario name
+   * @param phases The phase results (see phase)
+   * @param metrics Request metrics for the scenario, may be null
+   * @param shard The shard for the results or null for the whole scenario
+   */
+  static void write(
+      final String scenario,
+      final List<ObjectNode> phases,
+      final RequestMetrics.Snapshot metrics,
+      final Integer shard
+  ) {
+    final File directory = directory( );
+    final String baseName = fileName( scenario ) + ( shard == null ? "" : ".shard-" + shard );
+    try {
+      Files.createDirectories( directory.toPath( ) );
+      final ObjectNode json = toJson( scenario, phases, metrics, shard );
+      mapper.writeValue( new File( directory, baseName + ".json" ), json );
+      try ( final PrintWriter out = new PrintWriter(
+          Files.newBufferedWriter( new File( directory, baseName + ".csv" ).toPath( ), StandardCharsets.UTF_8 ) ) ) {
+        out.println( CSV_HEADER );
+        for ( final String row : toCsv( json ) ) {
+          out.println( row );
+        }
+      }
+      N4j.print( "Wrote results for load scenario " + scenario + " to " + directory );
+    } catch ( final IOException e ) {
+      N4j.print( "Error writing results for load scenario " + scenario + ": " + e );
+    }
+  }
+
+  /**
+   * Read all JSON results for whole scenarios in a directory.
+   *
+   * @return The results by scenario name
+   */
+  public static Map<String,JsonNode> read( final File directory ) throws IOException {
+    final Map<String,JsonNode> results = new TreeMap<>( );
+    final File[] files = directory.listFiles( ( dir, name ) -> name.endsWith( ".json" ) );
+    if ( files != null ) for ( final File file : files ) {
+      final JsonNode node = mapper.readTree( file );
+      if ( node.has( "scenario" ) && node.has( "phases" ) && !node.has( "shard" ) ) {
+        results.put( node.get( "scenario" ).asText( ), node );
+      }
+    }
+    return results;
+  }
+
+  /**
+   * The results file name for a scenario, without extension.
+   */
+  static String fileName( final String scenario ) {
+    return scenario.replaceAll( "[^A-Za-z0-9._-]", "_" );
+  }
+
+  /**
+   * Results for a phase.
+   */
+  static ObjectNode phase( final LoadScenario.Result result ) {
+    return phase(
+        result.getPhase( ),
+        result.isOpenLoop( ),
+        result.getThreads( ),
+        result.getIterations( ),
+        result.getFailedWorkers( ),
+        result.getElapsedMillis( ),
+        result.getLateStarts( ),
+        result.getQueuedStarts( ),
+        result.getCounts( ),
+        result.getLatencies( ).histogram( ) );
+  }
+
+  /**
+   * Results for a phase.
+   *
+   * @param histogram Latencies in microseconds
+   */
+  static ObjectNode phase(
+      final String name,
+      final boolean openLoop,
+      final int threads,
+      final int iterations,
+      final int failures,
+      final long elapsedMillis,
+      final int lateStarts,
+      final int queuedStarts,
+      final Map<String,Integer> counts,
+      final Histogram histogram
+  ) {
+    final ObjectNode phase = mapper.createObjectNode( );
+    final int attempts = iterations + failures;
+    phase.put( "phase", name );
+    phase.put( "mode", openLoop ? "open" : "closed" );
+    phase.put( "threads", threads );
+    phase.put( "iterations", iterations );
+    phase.put( "failures", failures );
+    phase.put( "elapsedMillis", elapsedMillis );
+    phase.put( "throughput", elapsedMillis == 0 ? 0d : iterations * 1000d / elapsedMillis );
+    phase.put( "errorRate", attempts == 0 ? 0d : failures / (double) attempts );
+    if ( openLoop ) {
+      phase.put( "lateStarts", lateStarts );
+      phase.put( "queuedStarts", queuedStarts );
+    }
+    final ObjectNode latency = phase.putObject( "latency" );
+    latency.put( "count", histogram.getTotalCount( ) );
+    latency.put( "mean", histogram.getMean( ) / 1000d );
+    latency.put( "stddev", histogram.getStdDeviation( ) / 1000d );
+    latency.put( "p50", histogram.getValueAtPercentile( 50 ) / 1000d );
+    latency.put( "p90", histogram.getValueAtPercentile( 90 ) / 1000d );
+    latency.put( "p99", histogram.getValueAtPercentile( 99 ) / 1000d );
+    latency.put( "p99.9", histogram.getValueAtPercentile( 99.9 ) / 1000d );
+    latency.put( "max", histogram.getMaxValue( ) / 1000d );
+    final ObjectNode countsNode = phase.putObject( "counts" );
+    counts.forEach( countsNode::put );
+    return phase;
+  }
+
+  private static ObjectNode toJson(
+      final String scenario,
+      final List<ObjectNode> phases,
+      final RequestMetrics.Snapshot metrics,
+      final Integer shard
+  ) {
+    final ObjectNode json = mapper.createObjectNode( );
+    json.put( "scenario", scenario );
+    if ( shard != null ) json.put( "shard", shard );
+    json.put( "timestamp", Instant.now( ).toString( ) );
+    json.set( "environment", environment( ) );
+    json.putArray( "phases" ).addAll( phases );
+    final ArrayNode operations = json.putArray( "operations" );
+    if ( metrics != null ) for ( final String name : metrics.getOperations( ) ) {
+      final ObjectNode operation = operations.addObject( );
+      operation.put( "operation", name );
+      operation.put( "count", metrics.getCount( name ) );
+      operation.put( "errors", metrics.getErrors( name ) );
+      operation.put( "throttles", metrics.getThrottles( name ) );
+      operation.put( "retries", metrics.getRetries( name ) );
+      operation.put( "p50", metrics.getLatencyMicros( name, 50 ) / 1000d );
+      operation.put( "p90", metrics.getLatencyMicros( name, 90 ) / 1000d );
+      operation.put( "p99", metrics.getLatencyMicros( name, 99 ) / 1000d );
+      operation.put( "p99.9", metrics.getLatencyMicros( name, 99.9 ) / 1000d );
+      operation.put( "max", metrics.getLatencyMicros( name, 100 ) / 1000d );
+    }
+    return json;
+  }
+
+  private static ObjectNode environment( ) {
+    final ObjectNode environment = mapper.createObjectNode( );
+    environment.put( "eucalyptusVersion", N4j.EUCALYPTUS_VERSION );
+    environment.put( "clc", System.getProperty( "clcip" ) );
+    environment.put( "javaVersion", System.getProperty( "java.version" ) );
+    environment.put( "os", System.getProperty( "os.name" ) + " " + System.getProperty( "os.version" ) );
+    environment.put( "processors", Runtime.getRuntime( ).availableProcessors( ) );
+    try {
+      environment.put( "host", InetAddress.getLocalHost( ).getHostName( ) );
+    } catch ( final IOException e ) {
+      environment.putNull( "host" );
+    }
+    final ObjectNode properties = environment.putObject( "properties" );
+    new TreeMap<>( System.getProperties( ) ).forEach( ( key, value ) -> {
+      if ( String.valueOf( key ).startsWith( "n4j." ) ) properties.put( String.valueOf( key ), String.valueOf( value ) );
+    } );
+    return environment;
+  }
+
+  private static List<String> toCsv( final JsonNode json ) {
+    final String scenario = json.get( "scenario" ).asText( );
+    final List<String> rows = new ArrayList<>( );
+    for ( final JsonNode phase : json.get( "phases" ) ) {
+      final JsonNode latency = phase.get( "latency" );
+      rows.add( csv( scenario, "phase", phase.get( "phase" ).asText( ), phase.get( "mode" ).asText( ),
+          phase.get( "threads" ), phase.get( "iterations" ), phase.get( "failures" ), phase.get( "elapsedMillis" ),
+          phase.get( "throughput" ), phase.get( "errorRate" ),
+          latency.get( "count" ), latency.get( "mean" ), latency.get( "stddev" ), latency.get( "p50" ),
+          latency.get( "p90" ), latency.get( "p99" ), latency.get( "p99.9" ), latency.get( "max" ),
+          null, null, null ) );
+    }
+    for ( final JsonNode operation : json.get( "operations" ) ) {
+      rows.add( csv( scenario, "operation", operation.get( "operation" ).asText( ), null,
+          null, null, null, null, null, null,
+          operation.get( "count" ), null, null, operation.get( "p50" ),
+          operation.get( "p90" ), operation.get( "p99" ), operation.get( "p99.9" ), operation.get( "max" ),
+          operation.get( "errors" ), operation.get( "throttles" ), operation.get( "retries" ) ) );
+    }
+    return rows;
+  }
+
+  private static String csv( final Object... values ) {
+    final StringBuilder row = new StringBuilder( );
+    for ( final Iterator<Object> it = Arrays.asList( values ).iterator( ); it.hasNext( ); ) {
+      final Object value = it.next( );
+      if ( value != null ) {
+        final String text = value instanceof JsonNode ? ( (JsonNode) value ).asText( ) : String.valueOf( value );
+        row.append( text.contains( "," ) || text.contains( "\"" ) ?
+            "\"" + text.replace( "\"", "\"\"" ) + "\"" :
+            text );
+      }
+      if ( it.hasNext( ) ) row.append( ',' );
+    }
+    return row.toString( );
+  }
+}
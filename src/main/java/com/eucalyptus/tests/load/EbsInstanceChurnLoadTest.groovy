@@ -13,7 +13,6 @@ import com.amazonaws.services.ec2.model.DeregisterImageRequest
 import com.amazonaws.services.ec2.model.DescribeAvailabilityZonesResult
 import com.amazonaws.services.ec2.model.DescribeImagesRequest
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest
-import com.amazonaws.services.ec2.model.DescribeSnapshotsRequest
 import com.amazonaws.services.ec2.model.EbsBlockDevice
 import com.amazonaws.services.ec2.model.EbsInstanceBlockDeviceSpecification
 import com.amazonaws.services.ec2.model.Filter
@@ -22,10 +21,11 @@ import com.amazonaws.services.ec2.model.InstanceBlockDeviceMappingSpecification
 import com.amazonaws.services.ec2.model.ModifyInstanceAttributeRequest
 import com.amazonaws.services.ec2.model.Placement
 import com.amazonaws.services.ec2.model.RegisterImageRequest
-import com.amazonaws.services.ec2.model.Reservation
 import com.amazonaws.services.ec2.model.RunInstancesRequest
 import com.amazonaws.services.ec2.model.TerminateInstancesRequest
 import com.eucalyptus.tests.awssdk.N4j
+import com.eucalyptus.tests.awssdk.RequestMetrics
+import com.eucalyptus.tests.awssdk.StateWatcher
 import com.github.sjones4.youcan.youtwo.YouTwo
 import com.github.sjones4.youcan.youtwo.YouTwoClient
 import org.junit.AfterClass
@@ -34,12 +34,14 @@ import org.junit.BeforeClass
 import org.junit.Test
 
 import java.nio.charset.StandardCharsets
-import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ThreadLocalRandom
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.atomic.AtomicInteger
 
 import static com.eucalyptus.tests.awssdk.N4j.ACCESS_KEY
 import static com.eucalyptus.tests.awssdk.N4j.SECRET_KEY
+import static com.eucalyptus.tests.awssdk.StateWatcher.ResourceType.INSTANCE
+import static com.eucalyptus.tests.awssdk.StateWatcher.ResourceType.SNAPSHOT
 import static org.junit.Assert.assertNotNull
 import static org.junit.Assert.assertTrue
 import static org.junit.Assert.fail
@@ -75,7 +77,7 @@ class EbsInstanceChurnLoadTest {
         socketTimeout: TimeUnit.MINUTES.toMillis( 2 )
     ) )
     ec2.setEndpoint( N4j.EC2_ENDPOINT )
-    ec2
+    RequestMetrics.instrument( ec2 )
   }
 
   @Test
@@ -104,10 +106,8 @@ class EbsInstanceChurnLoadTest {
     final String namePrefix = UUID.randomUUID().toString().substring(0, 13) + "-"
     N4j.print( "Using resource prefix for test: " + namePrefix )
 
-    final long startTime = System.currentTimeMillis( )
-    final List<Runnable> cleanupTasks = new ArrayList<>( )
-    try {
-      cleanupTasks.add{
+    LoadScenario.named( 'ebs-instance-churn' ).withCloseable { LoadScenario scenario ->
+      scenario.cleanup{
         N4j.print( "Terminating all pending/running instances for test account" )
         ec2.with{
           List<String> instanceIds = describeInstances( new DescribeInstancesRequest(
@@ -130,7 +130,7 @@ class EbsInstanceChurnLoadTest {
           }
         }
       }
-      cleanupTasks.add {
+      scenario.cleanup {
         N4j.print("Deregistering all ebs images for test account")
         ec2.with {
           describeImages( new DescribeImagesRequest(
@@ -148,7 +148,7 @@ class EbsInstanceChurnLoadTest {
           }
         }
       }
-      cleanupTasks.add {
+      scenario.cleanup {
         N4j.print("Deleting all snapshots for test account")
         ec2.with {
           describeSnapshots( ).with {
@@ -159,7 +159,7 @@ class EbsInstanceChurnLoadTest {
           }
         }
       }
-      cleanupTasks.add {
+      scenario.cleanup {
         N4j.print("Deleting all volumes for test account")
         ec2.with {
           describeVolumes( ).with {
@@ -176,207 +176,133 @@ class EbsInstanceChurnLoadTest {
         head --bytes=104857600 /dev/urandom > random-100m.dat
         '''.stripIndent()
 
-      final AtomicInteger launchedCount = new AtomicInteger(0)
-      final AtomicInteger runningCount = new AtomicInteger(0)
+
       final int threads = 5
       final int iterations = 5
-      N4j.print( "Churning ${iterations} ebs instances using ${threads} threads" )
-      final CountDownLatch latch = new CountDownLatch( threads )
-      ( 1..threads ).each { Integer thread ->
-        Thread.start {
-          Random random = Random.newInstance()
-          String lastRegisteredImageId = null
-          String currentImageId = imageId
-          ec2.with {
-            try {
-              (1..iterations).each { Integer count ->
-                String cleanupImageId = null
-                if ( count % 10 == 0 ) {
-                  N4j.print( "[${thread}] Reverting to original image ${imageId} for next instance" )
-                  cleanupImageId = currentImageId
-                  currentImageId = imageId
-                } else if ( lastRegisteredImageId ) {
-                  N4j.print( "[${thread}] Using latest registered image ${lastRegisteredImageId} for next instance" )
-                  cleanupImageId = currentImageId
-                  currentImageId = lastRegisteredImageId
-                }
-                if ( cleanupImageId && cleanupImageId != imageId ) {
-                  N4j.print( "[${thread}] Deregistering image ${cleanupImageId}" )
-                  List<String> snapshotIds = describeImages(new DescribeImagesRequest(imageIds: [cleanupImageId])).with {
-                    images?.getAt(0)?.blockDeviceMappings?.findAll{ it?.ebs?.snapshotId }*.ebs?.snapshotId
-                  }
-                  deregisterImage(new DeregisterImageRequest(imageId: cleanupImageId))
-                  N4j.print( "[${thread}] Deleting snapshots ${snapshotIds} for image ${cleanupImageId}" )
-                  snapshotIds.each { snapshotId ->
-                    deleteSnapshot( new DeleteSnapshotRequest( snapshotId: snapshotId ) )
-                  }
-                }
+      final StateWatcher watcher = new StateWatcher( ec2 )
+      scenario.cleanup{ watcher.close( ) }
+      final Map<Integer,Map<String,String>> workerImages = new ConcurrentHashMap<>( )
+      final LoadScenario.Phase churn = scenario.phase( 'ebs-churn' ).threads( threads ).iterations( iterations )
+      final LoadScenario.Result result = churn.run{ LoadScenario.Iteration iteration ->
+        final Map<String,String> imageState = workerImages.computeIfAbsent( iteration.worker ){ [ current: imageId ] }
+        ec2.with {
+          String cleanupImageId = null
+          if ( iteration.number % 10 == 0 ) {
+            iteration.print( "Reverting to original image ${imageId} for next instance" )
+            cleanupImageId = imageState.current
+            imageState.current = imageId
+          } else if ( imageState.last ) {
+            iteration.print( "Using latest registered image ${imageState.last} for next instance" )
+            cleanupImageId = imageState.current
+            imageState.current = imageState.last
+          }
+          if ( cleanupImageId && cleanupImageId != imageId ) {
+            iteration.print( "Deregistering image ${cleanupImageId}" )
+            List<String> snapshotIds = describeImages(new DescribeImagesRequest(imageIds: [cleanupImageId])).with {
+              images?.getAt(0)?.blockDeviceMappings?.findAll{ it?.ebs?.snapshotId }*.ebs?.snapshotId
+            }
+            deregisterImage(new DeregisterImageRequest(imageId: cleanupImageId))
+            iteration.print( "Deleting snapshots ${snapshotIds} for image ${cleanupImageId}" )
+            snapshotIds.each { snapshotId ->
+              deleteSnapshot( new DeleteSnapshotRequest( snapshotId: snapshotId ) )
+            }
+          }
 
-                String availabilityZone = availabilityZones.get( random.nextInt() % availabilityZones.size( ) )
-                N4j.print( "[${thread}] Running ebs instance ${count}/${iterations} in zone ${availabilityZone}" )
-                String instanceId = null
-                runInstances( new RunInstancesRequest(
-                    minCount: 1,
-                    maxCount: 1,
-                    imageId: currentImageId,
-                    placement: new Placement(
-                        availabilityZone: availabilityZone
-                    ),
-                    clientToken: "${namePrefix}${thread}-${count}",
-                    userData: Base64.encoder.encodeToString( userDataText.getBytes( StandardCharsets.UTF_8 ) )
-                ) ).with {
-                  reservation?.instances?.each{ Instance instance ->
-                    instanceId = instance.instanceId
-                  }
-                }
-                launchedCount.incrementAndGet( )
+          String availabilityZone = availabilityZones.get( ThreadLocalRandom.current( ).nextInt( availabilityZones.size( ) ) )
+          iteration.print( "Running ebs instance ${iteration} in zone ${availabilityZone}" )
+          String instanceId = null
+          runInstances( new RunInstancesRequest(
+              minCount: 1,
+              maxCount: 1,
+              imageId: imageState.current,
+              placement: new Placement(
+                  availabilityZone: availabilityZone
+              ),
+              clientToken: "${namePrefix}${iteration.worker}-${iteration.number}",
+              userData: Base64.encoder.encodeToString( userDataText.getBytes( StandardCharsets.UTF_8 ) )
+          ) ).with {
+            reservation?.instances?.each{ Instance instance ->
+              instanceId = instance.instanceId
+            }
+          }
+          iteration.count( 'launched' )
 
-                N4j.print("[${thread}] Waiting for instance ${count}/${iterations} ${instanceId} to be running")
-                N4j.waitForIt( "Instance launch", {
-                  String instanceState = describeInstances( new DescribeInstancesRequest(
-                      filters: [
-                          new Filter( name: 'instance-state-name', values: [ 'pending', 'running' ] ),
-                          new Filter( name: 'instance-id', values: [ instanceId ] ),
-                      ]
-                  ) ).with {
-                    String resState = null
-                    reservations?.each{ Reservation reservation ->
-                      reservation?.instances?.each { Instance instance ->
-                        if ( instance.instanceId == instanceId ) {
-                          resState = instance?.state?.name
-                        }
-                      }
-                    }
-                    resState
-                  }
-                  if ( instanceState == 'running' ) {
-                    runningCount.incrementAndGet()
-                    true
-                  } else if ( instanceState == 'pending' ) {
-                    false
-                  } else if ( instanceState == null && iter < 5 ) {
-                    N4j.print( "[${thread}] Null instance state ${count}/${iterations} ${instanceId}, treating as pending" )
-                    false
-                  } else if ( instanceState == null ) {
-                    N4j.print( "[${thread}] Null instance state ${count}/${iterations} ${instanceId}, treating as running (will attempt terminate)" )
-                    true
-                  } else {
-                    fail( "[${thread}] Unexpected instance ${count}/${iterations} ${instanceId} state ${instanceState}"  )
-                  }
-                }, TimeUnit.MINUTES.toMillis(15) )
+          iteration.print( "Waiting for instance ${iteration} ${instanceId} to be running" )
+          String runningState = watcher.await( INSTANCE, instanceId,
+              [ 'running', 'stopping', 'stopped', 'shutting-down', 'terminated' ], 15, TimeUnit.MINUTES ).get( )
+          if ( runningState == 'running' ) {
+            iteration.count( 'running' )
+          } else if ( runningState == null ) {
+            iteration.print( "Null instance state ${iteration} ${instanceId}, treating as running (will attempt terminate)" )
+          } else {
+            fail( "[${iteration.worker}] Unexpected instance ${iteration} ${instanceId} state ${runningState}"  )
+          }
 
-                N4j.print( "[${thread}] Getting volume for instance ${count}/${iterations} ${instanceId}" )
-                String volumeId = describeInstances( new DescribeInstancesRequest( instanceIds: [instanceId] )).with {
-                  reservations?.getAt(0)?.instances?.getAt(0)?.blockDeviceMappings?.find{ it?.ebs?.volumeId }?.ebs?.volumeId
-                }
+          iteration.print( "Getting volume for instance ${iteration} ${instanceId}" )
+          String volumeId = describeInstances( new DescribeInstancesRequest( instanceIds: [instanceId] )).with {
+            reservations?.getAt(0)?.instances?.getAt(0)?.blockDeviceMappings?.find{ it?.ebs?.volumeId }?.ebs?.volumeId
+          }
 
-                N4j.print( "[${thread}] Modifying volume ${volumeId} delete on terminate for instance ${count}/${iterations} ${instanceId}" )
-                modifyInstanceAttribute(new ModifyInstanceAttributeRequest(
-                    instanceId: instanceId,
-                    blockDeviceMappings: [
-                        new InstanceBlockDeviceMappingSpecification(
-                            deviceName: '/dev/sda',
-                            ebs: new EbsInstanceBlockDeviceSpecification(
-                                deleteOnTermination: false,
-                                volumeId: volumeId
-                            )
-                        )
-                    ]
-                ))
+          iteration.print( "Modifying volume ${volumeId} delete on terminate for instance ${iteration} ${instanceId}" )
+          modifyInstanceAttribute(new ModifyInstanceAttributeRequest(
+              instanceId: instanceId,
+              blockDeviceMappings: [
+                  new InstanceBlockDeviceMappingSpecification(
+                      deviceName: '/dev/sda',
+                      ebs: new EbsInstanceBlockDeviceSpecification(
+                          deleteOnTermination: false,
+                          volumeId: volumeId
+                      )
+                  )
+              ]
+          ))
 
-                N4j.print( "[${thread}] Terminating instance ${count}/${iterations} ${instanceId}" )
-                terminateInstances( new TerminateInstancesRequest(
-                    instanceIds: [ instanceId ]
-                ) )
+          iteration.print( "Terminating instance ${iteration} ${instanceId}" )
+          terminateInstances( new TerminateInstancesRequest(
+              instanceIds: [ instanceId ]
+          ) )
 
-                N4j.print( "[${thread}] Waiting for instance ${count}/${iterations} ${instanceId} to be terminated" )
-                N4j.waitForIt( "Instance terminate", {
-                  String instanceState = describeInstances( new DescribeInstancesRequest(
-                      filters: [
-                          new Filter( name: 'instance-state-name', values: [ 'shutting-down', 'terminated' ] ),
-                          new Filter( name: 'instance-id', values: [ instanceId ] ),
-                      ]
-                  ) ).with {
-                    String resState = null
-                    reservations?.each{ Reservation reservation ->
-                      reservation?.instances?.each { Instance instance ->
-                        if ( instance.instanceId == instanceId ) {
-                          resState = instance?.state?.name
-                        }
-                      }
-                    }
-                    resState
-                  }
-                  if ( instanceState == 'terminated' ) {
-                    true
-                  } else if ( instanceState == 'shutting-down' ) {
-                    false
-                  } else if ( instanceState == null ) {
-                    N4j.print( "[${thread}] Null instance state ${count}/${iterations} ${instanceId}, treating as terminated" )
-                    true
-                  } else {
-                    N4j.print( "[${thread}] Unexpected instance ${count}/${iterations} ${instanceId} state ${instanceState}"  )
-                    false
-                  }
-                }, TimeUnit.MINUTES.toMillis(3) )
+          iteration.print( "Waiting for instance ${iteration} ${instanceId} to be terminated" )
+          String terminatedState = watcher.await( INSTANCE, instanceId, [ 'terminated' ], 3, TimeUnit.MINUTES ).get( )
+          if ( terminatedState == null ) {
+            iteration.print( "Null instance state ${iteration} ${instanceId}, treating as terminated" )
+          }
 
-                N4j.print( "[${thread}] Creating snapshot for volume ${volumeId} ${count}/${iterations}" )
-                String snapshotId = createSnapshot( new CreateSnapshotRequest( volumeId: volumeId ) ).with {
-                  snapshot?.snapshotId
-                }
-                N4j.print( "[${thread}] Waiting for snapshot ${snapshotId} creation from volume ${volumeId} ${count}/${iterations}" )
-                N4j.waitForIt( "Snapshot ${snapshotId} creation", {
-                  describeSnapshots( new DescribeSnapshotsRequest( snapshotIds: [snapshotId] ) ).with {
-                    'completed' == snapshots?.getAt(0)?.state
-                  }
-                }, TimeUnit.MINUTES.toMillis(20) )
+          iteration.print( "Creating snapshot for volume ${volumeId} ${iteration}" )
+          String snapshotId = createSnapshot( new CreateSnapshotRequest( volumeId: volumeId ) ).with {
+            snapshot?.snapshotId
+          }
+          iteration.print( "Waiting for snapshot ${snapshotId} creation from volume ${volumeId} ${iteration}" )
+          watcher.await( SNAPSHOT, snapshotId, [ 'completed' ], 20, TimeUnit.MINUTES ).get( )
 
-                N4j.print("[${thread}] Deleting volume ${volumeId} ${count}/${iterations}")
-                deleteVolume(new DeleteVolumeRequest(volumeId: volumeId))
+          iteration.print( "Deleting volume ${volumeId} ${iteration}" )
+          deleteVolume(new DeleteVolumeRequest(volumeId: volumeId))
 
-                N4j.print( "[${thread}] Registering image for snapshot ${snapshotId} ${count}/${iterations}" )
-                lastRegisteredImageId = registerImage( new RegisterImageRequest(
-                    name: "ebs-churn-${snapshotId}",
-                    architecture: 'x86_64',
-                    virtualizationType: 'hvm',
-                    rootDeviceName: '/dev/sda1',
-                    blockDeviceMappings: [
-                        new BlockDeviceMapping(
-                            deviceName: '/dev/sda1',
-                            ebs: new EbsBlockDevice(
-                                snapshotId: snapshotId
-                            )
-                        )
-                    ]
-                ) ).with { registered ->
-                  registered.imageId
-                }
-                N4j.print( "[${thread}] Registered image id ${lastRegisteredImageId} ${count}/${iterations}" )
-              }
-            } finally {
-              latch.countDown( )
-            }
+          iteration.print( "Registering image for snapshot ${snapshotId} ${iteration}" )
+          imageState.last = registerImage( new RegisterImageRequest(
+              name: "ebs-churn-${snapshotId}",
+              architecture: 'x86_64',
+              virtualizationType: 'hvm',
+              rootDeviceName: '/dev/sda1',
+              blockDeviceMappings: [
+                  new BlockDeviceMapping(
+                      deviceName: '/dev/sda1',
+                      ebs: new EbsBlockDevice(
+                          snapshotId: snapshotId
+                      )
+                  )
+              ]
+          ) ).with { registered ->
+            registered.imageId
           }
+          iteration.print( "Registered image id ${imageState.last} ${iteration}" )
         }
       }
-      latch.await( )
 
-      N4j.print( "Test complete in ${System.currentTimeMillis()-startTime}ms [running/launched/target:${runningCount.get()}/${launchedCount.get()}/${threads*iterations}]" )
-      Assert.assertEquals( 'Launched instance count matches running', launchedCount.get(), runningCount.get() )
-      Assert.assertEquals( 'Target instance count matches running', (threads*iterations), runningCount.get() )
-    } finally {
-      N4j.print( "Running cleanup tasks" )
-      final long cleanupStart = System.currentTimeMillis( )
-      cleanupTasks.reverseEach { Runnable cleanupTask ->
-        try {
-          cleanupTask.run()
-        } catch ( AmazonServiceException e ) {
-          N4j.print( "${e.serviceName}/${e.errorCode}: ${e.errorMessage}" )
-        } catch ( Exception e ) {
-          e.printStackTrace( )
-        }
-      }
-      N4j.print( "Completed cleanup tasks in ${System.currentTimeMillis()-cleanupStart}ms" )
+      N4j.print( "Instance and snapshot state describes: ${watcher.describeCount}" )
+      N4j.print( "Instances running/launched/target: ${result.getCount('running')}/${result.getCount('launched')}/${result.getThreads( )*iterations}" )
+      Assert.assertEquals( 'Launched instance count matches running', result.getCount('launched'), result.getCount('running') )
+      Assert.assertEquals( 'Target instance count matches running', (result.getThreads( )*iterations), result.getCount('running') )
     }
   }
 }
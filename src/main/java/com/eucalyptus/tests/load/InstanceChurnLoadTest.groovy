@@ -13,10 +13,12 @@ import com.amazonaws.services.ec2.model.DescribeInstancesRequest
 import com.amazonaws.services.ec2.model.Filter
 import com.amazonaws.services.ec2.model.Instance
 import com.amazonaws.services.ec2.model.Placement
-import com.amazonaws.services.ec2.model.Reservation
 import com.amazonaws.services.ec2.model.RunInstancesRequest
 import com.amazonaws.services.ec2.model.TerminateInstancesRequest
+import com.eucalyptus.tests.awssdk.AccountPool
 import com.eucalyptus.tests.awssdk.N4j
+import com.eucalyptus.tests.awssdk.RequestMetrics
+import com.eucalyptus.tests.awssdk.StateWatcher
 import com.github.sjones4.youcan.youserv.YouServ
 import com.github.sjones4.youcan.youserv.YouServClient
 import com.github.sjones4.youcan.youserv.model.DescribeServicesRequest
@@ -31,13 +33,12 @@ import org.junit.Assert
 import org.junit.BeforeClass
 import org.junit.Test
 
-import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.atomic.AtomicInteger
 
 import static com.eucalyptus.tests.awssdk.N4j.ACCESS_KEY
 import static com.eucalyptus.tests.awssdk.N4j.SECRET_KEY
 import static com.eucalyptus.tests.awssdk.N4j.SERVICES_ENDPOINT
+import static com.eucalyptus.tests.awssdk.StateWatcher.ResourceType.INSTANCE
 import static org.junit.Assert.assertNotNull
 import static org.junit.Assert.assertTrue
 import static org.junit.Assert.fail
@@ -46,6 +47,7 @@ import static org.junit.Assert.fail
  *
  */
 class InstanceChurnLoadTest {
+  private static AccountPool.Lease testAcctLease
   private static String testAcct
   private static AWSCredentialsProvider testAcctAdminCredentials
   private static AWSCredentialsProvider cloudAdminCredentials
@@ -55,9 +57,9 @@ class InstanceChurnLoadTest {
   static void init( ){
     N4j.testInfo( InstanceChurnLoadTest.simpleName )
     N4j.getCloudInfo( )
-    testAcct = "${N4j.NAME_PREFIX}instance-churn-load"
-    N4j.createAccount( testAcct )
-    testAcctAdminCredentials = new AWSStaticCredentialsProvider( N4j.getUserCreds( testAcct, 'admin' ) )
+    testAcctLease = AccountPool.lease( InstanceChurnLoadTest )
+    testAcct = testAcctLease.accountName
+    testAcctAdminCredentials = testAcctLease.credentialsProvider
     ec2Client = getEC2Client( testAcctAdminCredentials )
     cloudAdminCredentials = new AWSStaticCredentialsProvider( new BasicAWSCredentials(ACCESS_KEY, SECRET_KEY) )
   }
@@ -65,7 +67,7 @@ class InstanceChurnLoadTest {
   @AfterClass
   static void cleanup( ) {
     if ( ec2Client ) ec2Client.shutdown( )
-    N4j.deleteAccount( testAcct )
+    testAcctLease?.release( )
   }
 
   private static YouTwo getEC2Client( final AWSCredentialsProvider credentials ) {
@@ -73,13 +75,13 @@ class InstanceChurnLoadTest {
         socketTimeout: TimeUnit.MINUTES.toMillis( 2 )
     ) )
     ec2.setEndpoint( N4j.EC2_ENDPOINT )
-    ec2
+    RequestMetrics.instrument( ec2 )
   }
 
   private static YouServ bootstrapClient( ) {
     YouServClient youServ = new YouServClient( new BasicAWSCredentials( ACCESS_KEY, SECRET_KEY ) )
     youServ.setEndpoint( SERVICES_ENDPOINT )
-    youServ
+    RequestMetrics.instrument( youServ )
   }
 
   private int getNodeControllerCount(String availabiltyZone) {
@@ -181,10 +183,8 @@ class InstanceChurnLoadTest {
         maxCount: 1
     ]
 
-    final long startTime = System.currentTimeMillis( )
-    final List<Runnable> cleanupTasks = new ArrayList<>( )
-    try {
-      cleanupTasks.add{
+    LoadScenario.named( 'instance-churn' ).withCloseable { LoadScenario scenario ->
+      scenario.cleanup{
         N4j.print( "Terminating all pending/running instances for test account" )
         ec2.with{
           List<String> instanceIds = describeInstances( new DescribeInstancesRequest(
@@ -209,151 +209,89 @@ class InstanceChurnLoadTest {
       }
 
       final int warmupInstanceCount = getNodeControllerCount(availabilityZone)
-      N4j.print( "Running ${warmupInstanceCount} instances for warmup" )
-      final List<String> warmupInstanceIds = ( 1..warmupInstanceCount ).collect{ instanceNum ->
-        Map<String, Object> parameters = [:]
-        parameters << runParameters
-        parameters << [ clientToken: "${namePrefix}warmup-${instanceNum}" ]
-        ec2.runInstances( new RunInstancesRequest( parameters ) ).with {
-          reservation?.instances?.getAt(0)?.instanceId
+      scenario.phase( 'warmup' ).run{ LoadScenario.Iteration iteration ->
+        N4j.print( "Running ${warmupInstanceCount} instances for warmup" )
+        final List<String> warmupInstanceIds = ( 1..warmupInstanceCount ).collect{ instanceNum ->
+          Map<String, Object> parameters = [:]
+          parameters << runParameters
+          parameters << [ clientToken: "${namePrefix}warmup-${instanceNum}" ]
+          ec2.runInstances( new RunInstancesRequest( parameters ) ).with {
+            reservation?.instances?.getAt(0)?.instanceId
+          }
         }
+        N4j.waitForInstances( ec2, TimeUnit.MINUTES.toMillis( 5 ) )
+        N4j.terminateInstances( ec2, warmupInstanceIds )
+        N4j.waitForInstances( ec2, TimeUnit.MINUTES.toMillis( 3 ) )
       }
-      N4j.waitForInstances( ec2, TimeUnit.MINUTES.toMillis( 5 ) )
-      N4j.terminateInstances( ec2, warmupInstanceIds )
-      N4j.waitForInstances( ec2, TimeUnit.MINUTES.toMillis( 3 ) )
 
-      final AtomicInteger launchedCount = new AtomicInteger(0)
-      final AtomicInteger runningCount = new AtomicInteger(0)
       final int threads = availability > 25 ? 25 : availability
       final int iterations = 80
-      N4j.print( "Churning ${iterations} instances using ${threads} threads" )
-      final CountDownLatch latch = new CountDownLatch( threads )
-      ( 1..threads ).each { Integer thread ->
-        Thread.start {
-          ec2.with {
+      final StateWatcher watcher = new StateWatcher( ec2 )
+      scenario.cleanup{ watcher.close( ) }
+      final LoadScenario.Phase churn = scenario.phase( 'churn' ).threads( threads ).iterations( iterations )
+      final LoadScenario.Result result = churn.run{ LoadScenario.Iteration iteration ->
+        ec2.with {
+          String instanceId
+          Map<String, Object> parameters = [:]
+          parameters << runParameters
+          parameters << [ clientToken: "${namePrefix}${iteration.worker}-${iteration.number}" ]
+          iteration.print( "Running instance ${iteration}" )
+          for ( int i=0; i<12; i++ ) {
             try {
-              (1..iterations).each { Integer count ->
-                N4j.print( "[${thread}] Running instance ${count}" )
-                String instanceId
-                Map<String, Object> parameters = [:]
-                parameters << runParameters
-                parameters << [ clientToken: "${namePrefix}${thread}-${count}" ]
-                for ( int i=0; i<12; i++ ) {
-                  try {
-                    runInstances(new RunInstancesRequest(parameters)).with {
-                      reservation?.instances?.each { Instance instance ->
-                        instanceId = instance.instanceId
-                      }
-                    }
-                    break
-                  } catch ( AmazonServiceException e ) {
-                    if ( 'ServiceUnavailable' == e.errorCode && e.statusCode == 503 && e.message.contains('resource')) {
-                      N4j.print("[${thread}] Service unavailable (${e.message}), will retry instance ${count} launch in 5s")
-                      N4j.sleep( 5 )
-                    } else {
-                      N4j.print("[${thread}] Error running instance ${count}: ${e}")
-                      throw e
-                    }
-                  }
+              runInstances(new RunInstancesRequest(parameters)).with {
+                reservation?.instances?.each { Instance instance ->
+                  instanceId = instance.instanceId
                 }
-                launchedCount.incrementAndGet( )
+              }
+              break
+            } catch ( AmazonServiceException e ) {
+              if ( 'ServiceUnavailable' == e.errorCode && e.statusCode == 503 && e.message.contains('resource')) {
+                iteration.print( "Service unavailable (${e.message}), will retry instance ${iteration} launch in 5s" )
+                N4j.sleep( 5 )
+              } else {
+                iteration.print( "Error running instance ${iteration}: ${e}" )
+                throw e
+              }
+            }
+          }
+          iteration.count( 'launched' )
 
-                (1..120).find { Integer iter ->
-                  sleep( 5000 )
-                  N4j.print( "[${thread}] Waiting for instance ${count} ${instanceId} to be running (${5*iter}s)" )
-                  String instanceState = describeInstances( new DescribeInstancesRequest(
-                      filters: [
-                          new Filter( name: 'instance-state-name', values: [ 'pending', 'running' ] ),
-                          new Filter( name: 'instance-id', values: [ instanceId ] ),
-                      ]
-                  ) ).with {
-                    String resState = null
-                    reservations?.each{ Reservation reservation ->
-                      reservation?.instances?.each { Instance instance ->
-                        if ( instance.instanceId == instanceId ) {
-                          resState = instance?.state?.name
-                        }
-                      }
-                    }
-                    resState
-                  }
-                  if ( instanceState == 'running' ) {
-                    runningCount.incrementAndGet()
-                    instanceState
-                  } else if ( instanceState == 'pending' ) {
-                    null
-                  } else if ( instanceState == null && iter < 5 ) {
-                    N4j.print( "[${thread}] Null instance state ${count} ${instanceId}, treating as pending" )
-                    null
-                  } else if ( instanceState == null ) {
-                    N4j.print( "[${thread}] Null instance state ${count} ${instanceId}, treating as running (will attempt terminate)" )
-                    'running'
-                  } else {
-                    fail( "Unexpected instance ${count} ${instanceId} state ${instanceState}"  )
-                  }
-                }
+          iteration.print( "Waiting for instance ${iteration} ${instanceId} to be running" )
+          String runningState = watcher.await( INSTANCE, instanceId,
+              [ 'running', 'stopping', 'stopped', 'shutting-down', 'terminated' ], 10, TimeUnit.MINUTES
+          ).exceptionally{ Throwable t ->
+            iteration.print( "Error waiting for instance ${iteration} ${instanceId}: ${t.message}" )
+            'unknown'
+          }.get( )
+          if ( runningState == 'running' ) {
+            iteration.count( 'running' )
+          } else if ( runningState == null ) {
+            iteration.print( "Null instance state ${iteration} ${instanceId}, treating as running (will attempt terminate)" )
+          } else if ( runningState != 'unknown' ) {
+            fail( "Unexpected instance ${iteration} ${instanceId} state ${runningState}"  )
+          }
 
-                N4j.print( "[${thread}] Terminating instance ${count} ${instanceId}" )
-                terminateInstances( new TerminateInstancesRequest(
-                    instanceIds: [ instanceId ]
-                ) )
+          iteration.print( "Terminating instance ${iteration} ${instanceId}" )
+          terminateInstances( new TerminateInstancesRequest(
+              instanceIds: [ instanceId ]
+          ) )
 
-                (1..120).find { Integer iter ->
-                  sleep( 5000 )
-                  N4j.print( "[${thread}] Waiting for instance ${count} ${instanceId} to be terminated (${5*iter}s)" )
-                  String instanceState = describeInstances( new DescribeInstancesRequest(
-                      filters: [
-                          new Filter( name: 'instance-state-name', values: [ 'shutting-down', 'terminated' ] ),
-                          new Filter( name: 'instance-id', values: [ instanceId ] ),
-                      ]
-                  ) ).with {
-                    String resState = null
-                    reservations?.each{ Reservation reservation ->
-                      reservation?.instances?.each { Instance instance ->
-                        if ( instance.instanceId == instanceId ) {
-                          resState = instance?.state?.name
-                        }
-                      }
-                    }
-                    resState
-                  }
-                  if ( instanceState == 'terminated' ) {
-                    instanceState
-                  } else if ( instanceState == 'shutting-down' ) {
-                    null
-                  } else if ( instanceState == null ) {
-                    N4j.print( "[${thread}] Null instance state ${count} ${instanceId}, treating as terminated" )
-                    'terminated'
-                  } else {
-                    N4j.print( "Unexpected instance ${count} ${instanceId} state ${instanceState}"  )
-                    instanceState // try to continue?
-                  }
-                }
-              }
-            } finally {
-              latch.countDown( )
-            }
+          iteration.print( "Waiting for instance ${iteration} ${instanceId} to be terminated" )
+          String terminatedState = watcher.await( INSTANCE, instanceId, [ 'terminated' ], 10, TimeUnit.MINUTES
+          ).exceptionally{ Throwable t ->
+            iteration.print( "Error waiting for instance ${iteration} ${instanceId}: ${t.message}" )
+            'unknown'
+          }.get( )
+          if ( terminatedState == null ) {
+            iteration.print( "Null instance state ${iteration} ${instanceId}, treating as terminated" )
           }
         }
       }
-      latch.await( )
 
-      N4j.print( "Test complete in ${System.currentTimeMillis()-startTime}ms [running/launched/target:${runningCount.get()}/${launchedCount.get()}/${threads*iterations}]" )
-      Assert.assertEquals( 'Launched instance count matches running', launchedCount.get(), runningCount.get() )
-      Assert.assertEquals( 'Target instance count matches running', (threads*iterations), runningCount.get() )
-    } finally {
-      N4j.print( "Running cleanup tasks" )
-      final long cleanupStart = System.currentTimeMillis( )
-      cleanupTasks.reverseEach { Runnable cleanupTask ->
-        try {
-          cleanupTask.run()
-        } catch ( AmazonServiceException e ) {
-          N4j.print( "${e.serviceName}/${e.errorCode}: ${e.errorMessage}" )
-        } catch ( Exception e ) {
-          e.printStackTrace( )
-        }
-      }
-      N4j.print( "Completed cleanup tasks in ${System.currentTimeMillis()-cleanupStart}ms" )
+      N4j.print( "Instance state describes: ${watcher.describeCount}" )
+      N4j.print( "Instances running/launched/target: ${result.getCount('running')}/${result.getCount('launched')}/${result.getThreads( )*iterations}" )
+      Assert.assertEquals( 'Launched instance count matches running', result.getCount('launched'), result.getCount('running') )
+      Assert.assertEquals( 'Target instance count matches running', (result.getThreads( )*iterations), result.getCount('running') )
     }
   }
 }
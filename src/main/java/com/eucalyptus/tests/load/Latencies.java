@@ -0,0 +1,75 @@
+package com.eucalyptus.tests.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records operation latencies for percentile reporting.
+ *
+ * Latencies are recorded in microseconds using an HdrHistogram recorder so
+ * recording does not block concurrent workers.
+ */
+public final class Latencies {
+
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final Recorder recorder = new Recorder( SIGNIFICANT_DIGITS );
+  private final Histogram total = new Histogram( SIGNIFICANT_DIGITS );
+  private Histogram interval;
+
+  /**
+   * Record a latency.
+   *
+   * @param nanos The latency in nanoseconds
+   */
+  public void record( final long nanos ) {
+    recorder.recordValue( Math.max( 0, TimeUnit.NANOSECONDS.toMicros( nanos ) ) );
+  }
+
+  /**
+   * Histogram of the latencies recorded so far, in microseconds.
+   */
+  public synchronized Histogram histogram( ) {
+    interval = recorder.getIntervalHistogram( interval );
+    total.add( interval );
+    return total.copy( );
+  }
+
+  public long getCount( ) {
+    return histogram( ).getTotalCount( );
+  }
+
+  /**
+   * The latency at the given percentile.
+   *
+   * @param percentile The percentile, e.g. 99.9
+   * @param unit The unit for the result
+   * @return The latency or 0 if there are no values
+   */
+  public long percentile( final double percentile, final TimeUnit unit ) {
+    return unit.convert( histogram( ).getValueAtPercentile( percentile ), TimeUnit.MICROSECONDS );
+  }
+
+  public long max( final TimeUnit unit ) {
+    return unit.convert( histogram( ).getMaxValue( ), TimeUnit.MICROSECONDS );
+  }
+
+  public long mean( final TimeUnit unit ) {
+    return unit.convert( (long) histogram( ).getMean( ), TimeUnit.MICROSECONDS );
+  }
+
+  @Override
+  public String toString( ) {
+    final Histogram histogram = histogram( );
+    return String.format( "latency ms [count:%d mean:%.1f p50:%.1f p90:%.1f p99:%.1f p99.9:%.1f max:%.1f]",
+        histogram.getTotalCount( ),
+        histogram.getMean( ) / 1000d,
+        histogram.getValueAtPercentile( 50 ) / 1000d,
+        histogram.getValueAtPercentile( 90 ) / 1000d,
+        histogram.getValueAtPercentile( 99 ) / 1000d,
+        histogram.getValueAtPercentile( 99.9 ) / 1000d,
+        histogram.getMaxValue( ) / 1000d );
+  }
+}
@@ -27,6 +27,7 @@ import com.amazonaws.services.elasticloadbalancing.model.Instance
 import com.amazonaws.services.elasticloadbalancing.model.Listener
 import com.amazonaws.services.elasticloadbalancing.model.RegisterInstancesWithLoadBalancerRequest
 import com.eucalyptus.tests.awssdk.N4j
+import com.eucalyptus.tests.awssdk.RequestMetrics
 import com.github.sjones4.youcan.youprop.YouProp
 import com.github.sjones4.youcan.youprop.YouPropClient
 import com.github.sjones4.youcan.youprop.model.DescribePropertiesRequest
@@ -47,9 +48,7 @@ import javax.naming.directory.Attributes
 import javax.naming.directory.DirContext
 import javax.naming.directory.InitialDirContext
 import java.nio.charset.StandardCharsets
-import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.atomic.AtomicInteger
 
 import static com.eucalyptus.tests.awssdk.N4j.ACCESS_KEY
 import static com.eucalyptus.tests.awssdk.N4j.SECRET_KEY
@@ -83,7 +82,7 @@ class LoadBalancerChurnLoadTest {
         socketTimeout: TimeUnit.MINUTES.toMillis( 2 )
     ) )
     ec2.setEndpoint( N4j.EC2_ENDPOINT )
-    ec2
+    RequestMetrics.instrument( ec2 )
   }
 
   private static AmazonElasticLoadBalancing getELBClient( final AWSCredentialsProvider credentials ) {
@@ -91,19 +90,19 @@ class LoadBalancerChurnLoadTest {
         socketTimeout: TimeUnit.MINUTES.toMillis( 2 )
     )  )
     elb.setEndpoint( N4j.ELB_ENDPOINT )
-    elb
+    RequestMetrics.instrument( elb )
   }
 
   private YouProp getPropertiesClient(final AWSCredentialsProvider credentials ) {
     YouPropClient youProp = new YouPropClient( credentials )
     youProp.setEndpoint( N4j.PROPERTIES_ENDPOINT )
-    youProp
+    RequestMetrics.instrument( youProp )
   }
 
   private YouServ getServicesClient(final AWSCredentialsProvider credentials ) {
     YouServClient youServ = new YouServClient( credentials )
     youServ.setEndpoint( N4j.SERVICES_ENDPOINT )
-    youServ
+    RequestMetrics.instrument( youServ )
   }
 
   private Set<String> getDnsHosts( final YouServ youServ ) {
@@ -184,9 +183,7 @@ class LoadBalancerChurnLoadTest {
     final String namePrefix = UUID.randomUUID().toString().substring(0, 13) + "-"
     N4j.print( "Using resource prefix for test: " + namePrefix )
 
-    final long startTime = System.currentTimeMillis( )
-    final List<Runnable> cleanupTasks = [] as List<Runnable>
-    try {
+    LoadScenario.named( 'loadbalancer-churn' ).withCloseable { LoadScenario scenario ->
       // test running an instance with an HTTP service
       N4j.print("Launching target instance")
       String instancePublicIp = null
@@ -250,7 +247,7 @@ class LoadBalancerChurnLoadTest {
         }
 
         N4j.print("Instance running with identifier ${instanceId}")
-        cleanupTasks.add {
+        scenario.cleanup {
           N4j.print("Terminating instance ${instanceId}")
           terminateInstances(new TerminateInstancesRequest(instanceIds: [instanceId]))
 
@@ -294,154 +291,127 @@ class LoadBalancerChurnLoadTest {
 
       final int elbIterations = 10
       final int elbThreads = Math.min( 20, Math.min( availability - 1, addressCount -1 ) )
-      final CountDownLatch latch = new CountDownLatch( elbThreads )
-      final AtomicInteger successCount = new AtomicInteger(0)
-      N4j.print( "Churning ${elbIterations} load balancers on ${elbThreads} thread(s)" )
-      ( 1..elbThreads ).each { Integer thread ->
-        Thread.start {
+      final AmazonElasticLoadBalancing elb = getELBClient( testAcctAdminCredentials )
+      scenario.cleanup{ elb.shutdown( ) }
+      final LoadScenario.Phase churn = scenario.phase( 'churn' ).threads( elbThreads ).iterations( elbIterations )
+      churn.run{ LoadScenario.Iteration iteration ->
+        elb.with {
+          String loadBalancerName = "${namePrefix}balancer-${iteration.worker}-${iteration.number}"
+          iteration.print("Creating load balancer ${iteration}: ${loadBalancerName}")
+          for( int i=0; i<12; i++ ) {
+            try {
+              createLoadBalancer(new CreateLoadBalancerRequest(
+                  loadBalancerName: loadBalancerName,
+                  listeners: [new Listener(
+                      loadBalancerPort: 9999,
+                      protocol: 'HTTP',
+                      instancePort: 9999,
+                      instanceProtocol: 'HTTP'
+                  )],
+                  availabilityZones: [availabilityZone]
+              ))
+              break
+            } catch( e ) {
+              if ( e.message.contains( 'Not enough resources' ) ) {
+                iteration.print("Insufficient resources, will retry in 5s creating load balancer ${iteration}: ${loadBalancerName}")
+                sleep 5000
+              } else {
+                throw e
+              }
+            }
+          }
+
           try {
-            getELBClient(testAcctAdminCredentials).with {
-              ( 1..elbIterations ).each { Integer count ->
-                String loadBalancerName = "${namePrefix}balancer-${thread}-${count}"
-                N4j.print("[${thread}] Creating load balancer ${count}/${elbIterations}: ${loadBalancerName}")
-                for( int i=0; i<12; i++ ) {
-                  try {
-                    createLoadBalancer(new CreateLoadBalancerRequest(
-                        loadBalancerName: loadBalancerName,
-                        listeners: [new Listener(
-                            loadBalancerPort: 9999,
-                            protocol: 'HTTP',
-                            instancePort: 9999,
-                            instanceProtocol: 'HTTP'
-                        )],
-                        availabilityZones: [availabilityZone]
-                    ))
-                    break
-                  } catch( e ) {
-                    if ( e.message.contains( 'Not enough resources' ) ) {
-                      N4j.print("[${thread}] Insufficient resources, will retry in 5s creating load balancer ${count}/${elbIterations}: ${loadBalancerName}")
-                      sleep 5000
-                    } else {
-                      throw e
-                    }
-                  }
-                }
+            String balancerHost = describeLoadBalancers(new DescribeLoadBalancersRequest(loadBalancerNames: [loadBalancerName])).with {
+              loadBalancerDescriptions.get(0).with {
+                DNSName
+              }
+            }
 
-                try {
-                  String balancerHost = describeLoadBalancers(new DescribeLoadBalancersRequest(loadBalancerNames: [loadBalancerName])).with {
-                    loadBalancerDescriptions.get(0).with {
-                      DNSName
-                    }
-                  }
-
-                  N4j.print("[${thread}] Configuring health checks for load balancer ${loadBalancerName}/${balancerHost}")
-                  configureHealthCheck( new ConfigureHealthCheckRequest(
-                      loadBalancerName: loadBalancerName,
-                      healthCheck: new HealthCheck(
-                          target: 'HTTP:9999/',
-                          healthyThreshold: 2,
-                          unhealthyThreshold: 6,
-                          interval: 10,
-                          timeout: 5
-                      )
-                  ))
-
-                  N4j.print("[${thread}] Registering instance ${instanceId} with load balancer ${loadBalancerName}/${balancerHost}")
-                  registerInstancesWithLoadBalancer(new RegisterInstancesWithLoadBalancerRequest(
-                      loadBalancerName: loadBalancerName,
-                      instances: [new Instance(instanceId)]
-                  ))
-
-                  N4j.print("[${thread}] Waiting for load balancer ${count}/${elbIterations} instance ${instanceId} to be healthy")
-                  (1..60).find {
-                    sleep 15000
-                    N4j.print("[${thread}] Waiting for load balancer ${count}/${elbIterations} instance ${instanceId} to be healthy, waited ${it * 15}s")
-                    describeInstanceHealth(new DescribeInstanceHealthRequest(
-                        loadBalancerName: loadBalancerName,
-                        instances: [new Instance(instanceId)]
-                    )).with {
-                      'InService' == instanceStates?.getAt(0)?.state
-                    }
-                  }
-
-                  String instanceUrl = "http://${instancePublicIp}:9999/"
-                  N4j.print("[${thread}] Accessing instance ${instanceId} ${instanceUrl}")
-                  String instanceResponse = new URL(instanceUrl).
-                      getText(connectTimeout: 10000, readTimeout: 10000, useCaches: false, allowUserInteraction: false)
-                  Assert.assertTrue("[${thread}] Expected instance ${instanceId} response Hello, but was: ${instanceResponse}", 'Hello' == instanceResponse)
-                  N4j.print("[${thread}] Response from instance ${instanceId} verified")
-
-                  N4j.print("[${thread}] Resolving load balancer ${count}/${elbIterations} host ${balancerHost}")
-                  String balancerIp = null
-                  (1..12).find {
-                    if (it > 1) sleep 5000
-                    balancerIp = lookup(balancerHost, dnsHosts)
-                  }
-                  Assert.assertNotNull("[${thread}] Expected ip for load balancer ${count}/${elbIterations}", balancerIp)
-                  N4j.print("[${thread}] Resolved load balancer ${count}/${elbIterations} host ${balancerHost} to ${balancerIp}")
-                  String balancerUrl = "http://${balancerIp}:9999/"
-                  N4j.print("[${thread}] Accessing instance ${instanceId} via load balancer ${count}/${elbIterations} ${balancerUrl}")
-                  for ( int i=0; i<12; i++ ) {
-                    try {
-                      String balancerResponse = new URL(balancerUrl).
-                          getText(connectTimeout: 10000, readTimeout: 10000, useCaches: false, allowUserInteraction: false)
-                      Assert.assertTrue("[${thread}] Expected balancer ${count}/${elbIterations} response Hello, but was: ${balancerResponse}", 'Hello' == balancerResponse)
-                      N4j.print("[${thread}] Response from load balancer ${count}/${elbIterations} host ${balancerHost} verified")
-                      break
-                    } catch ( e ) {
-                      if ( e.message.contains( '503' ) ) { // check for 503 http status code and retry
-                        N4j.print("[${thread}] Service unavailable, will retry in 5s accessing instance ${instanceId} via load balancer ${count}/${elbIterations} ${balancerUrl}")
-                        sleep 5000
-                      } else if ( e.message.contains('Connection refused' ) ) { // retry
-                        N4j.print("[${thread}] Connection refused, will retry in 5s accessing instance ${instanceId} via load balancer ${count}/${elbIterations} ${balancerUrl}")
-                        sleep 5000
-                      } else {
-                        throw e
-                      }
-                    }
-                  }
-                } finally {
-                  N4j.print("[${thread}] Deleting load balancer ${count}/${elbIterations} ${loadBalancerName}")
-                  for ( int i=0; i<12; i++ ) {
-                    try {
-                      deleteLoadBalancer(new DeleteLoadBalancerRequest(loadBalancerName: loadBalancerName))
-                      break
-                    } catch ( e ) {
-                      if ( e.message.contains( 'Failed to delete' ) ) {
-                        N4j.print("[${thread}] Delete failed, will retry in 5s deleting load balancer ${count}/${elbIterations} ${loadBalancerName}")
-                        sleep 5000
-                      } else {
-                        throw e
-                      }
-                    }
-                  }
-                }
+            iteration.print("Configuring health checks for load balancer ${loadBalancerName}/${balancerHost}")
+            configureHealthCheck( new ConfigureHealthCheckRequest(
+                loadBalancerName: loadBalancerName,
+                healthCheck: new HealthCheck(
+                    target: 'HTTP:9999/',
+                    healthyThreshold: 2,
+                    unhealthyThreshold: 6,
+                    interval: 10,
+                    timeout: 5
+                )
+            ))
+
+            iteration.print("Registering instance ${instanceId} with load balancer ${loadBalancerName}/${balancerHost}")
+            registerInstancesWithLoadBalancer(new RegisterInstancesWithLoadBalancerRequest(
+                loadBalancerName: loadBalancerName,
+                instances: [new Instance(instanceId)]
+            ))
+
+            iteration.print("Waiting for load balancer ${iteration} instance ${instanceId} to be healthy")
+            (1..60).find {
+              sleep 15000
+              iteration.print("Waiting for load balancer ${iteration} instance ${instanceId} to be healthy, waited ${it * 15}s")
+              describeInstanceHealth(new DescribeInstanceHealthRequest(
+                  loadBalancerName: loadBalancerName,
+                  instances: [new Instance(instanceId)]
+              )).with {
+                'InService' == instanceStates?.getAt(0)?.state
               }
             }
 
-            successCount.incrementAndGet( )
+            String instanceUrl = "http://${instancePublicIp}:9999/"
+            iteration.print("Accessing instance ${instanceId} ${instanceUrl}")
+            String instanceResponse = new URL(instanceUrl).
+                getText(connectTimeout: 10000, readTimeout: 10000, useCaches: false, allowUserInteraction: false)
+            Assert.assertTrue("Expected instance ${instanceId} response Hello, but was: ${instanceResponse}", 'Hello' == instanceResponse)
+            iteration.print("Response from instance ${instanceId} verified")
+
+            iteration.print("Resolving load balancer ${iteration} host ${balancerHost}")
+            String balancerIp = null
+            (1..12).find {
+              if (it > 1) sleep 5000
+              balancerIp = lookup(balancerHost, dnsHosts)
+            }
+            Assert.assertNotNull("Expected ip for load balancer ${iteration}", balancerIp)
+            iteration.print("Resolved load balancer ${iteration} host ${balancerHost} to ${balancerIp}")
+            String balancerUrl = "http://${balancerIp}:9999/"
+            iteration.print("Accessing instance ${instanceId} via load balancer ${iteration} ${balancerUrl}")
+            for ( int i=0; i<12; i++ ) {
+              try {
+                String balancerResponse = new URL(balancerUrl).
+                    getText(connectTimeout: 10000, readTimeout: 10000, useCaches: false, allowUserInteraction: false)
+                Assert.assertTrue("Expected balancer ${iteration} response Hello, but was: ${balancerResponse}", 'Hello' == balancerResponse)
+                iteration.print("Response from load balancer ${iteration} host ${balancerHost} verified")
+                break
+              } catch ( e ) {
+                if ( e.message.contains( '503' ) ) { // check for 503 http status code and retry
+                  iteration.print("Service unavailable, will retry in 5s accessing instance ${instanceId} via load balancer ${iteration} ${balancerUrl}")
+                  sleep 5000
+                } else if ( e.message.contains('Connection refused' ) ) { // retry
+                  iteration.print("Connection refused, will retry in 5s accessing instance ${instanceId} via load balancer ${iteration} ${balancerUrl}")
+                  sleep 5000
+                } else {
+                  throw e
+                }
+              }
+            }
           } finally {
-            latch.countDown( )
-            N4j.print("[${thread}] Thread completed")
+            iteration.print("Deleting load balancer ${iteration} ${loadBalancerName}")
+            for ( int i=0; i<12; i++ ) {
+              try {
+                deleteLoadBalancer(new DeleteLoadBalancerRequest(loadBalancerName: loadBalancerName))
+                break
+              } catch ( e ) {
+                if ( e.message.contains( 'Failed to delete' ) ) {
+                  iteration.print("Delete failed, will retry in 5s deleting load balancer ${iteration} ${loadBalancerName}")
+                  sleep 5000
+                } else {
+                  throw e
+                }
+              }
+            }
           }
         }
       }
-      latch.await( )
-      Assert.assertEquals( "All threads successful", elbThreads, successCount.get( ) )
-
-      N4j.print( "Test complete in ${System.currentTimeMillis()-startTime}ms" )
-    } finally {
-      // Attempt to clean up anything we created
-      N4j.print( "Running cleanup tasks" )
-      final long cleanupStart = System.currentTimeMillis( )
-      cleanupTasks.reverseEach { Runnable cleanupTask ->
-        try {
-          cleanupTask.run()
-        } catch ( Exception e ) {
-          e.printStackTrace( )
-        }
-      }
-      N4j.print( "Completed cleanup tasks in ${System.currentTimeMillis()-cleanupStart}ms" )
     }
   }
 }
@@ -0,0 +1,380 @@
+package com.eucalyptus.tests.load;
+
+import com.eucalyptus.tests.awssdk.N4j;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+/**
+ * Coordinator for distributed load generation.
+ *
+ * Shards of a load test (see LoadShard) connect to the coordinator, each
+ * phase is started when all shards are ready and the latency histograms
+ * and counts streamed by the shards are merged. Merged progress is output
+ * while phases run and the merged results for each scenario are written
+ * and compared with the baseline when all shards have disconnected.
+ *
+ * Shards can run on other hosts or can be launched by the coordinator as
+ * local processes, e.g. to run 4 local shards:
+ *
+ *   ./gradlew -Dclcip=CLC_IP_ADDR -Dn4j.load.workers=4 \
+ *     -Dn4j.load.test=com.eucalyptus.tests.load.ObjectChurnLoadTest loadCoordinator
+ *
+ * Remote shards are run as regular tests with the shard properties set,
+ * e.g. -Dn4j.load.coordinator=HOST:7390 -Dn4j.load.shard=1 -Dn4j.load.shards=4
+ *
+ * The coordinator is configured via system properties:
+ *
+ *   n4j.load.port    - port to listen on (default 7390)
+ *   n4j.load.workers - number of shards (default 1)
+ *   n4j.load.test    - test class to run in local shard processes (no local shards if not set)
+ *
+ * Local shard output is written to the results directory as shard-N.log
+ */
+public final class LoadCoordinator {
+
+  private static final int PORT = Integer.getInteger( "n4j.load.port", 7390 );
+  private static final int WORKERS = Math.max( 1, Integer.getInteger( "n4j.load.workers", 1 ) );
+  private static final String TEST = System.getProperty( "n4j.load.test" );
+  private static final Set<String> FORWARDED_PROPERTIES =
+      new TreeSet<>( Arrays.asList( "clcip", "user", "password", "endpoints", "inifile", "cache" ) );
+
+  private final int shards;
+  private final ObjectMapper mapper = new ObjectMapper( );
+  private final Map<Integer,PrintWriter> writers = new ConcurrentHashMap<>( );
+  private final Set<Integer> closed = ConcurrentHashMap.newKeySet( );
+  private final Map<String,PhaseState> phases = new LinkedHashMap<>( );
+
+  LoadCoordinator( final int shards ) {
+    this.shards = shards;
+  }
+
+  public static void main( final String[] args ) throws Exception {
+    System.exit( new LoadCoordinator( WORKERS ).run( ) ? 0 : 1 );
+  }
+
+  /**
+   * Coordinate shards until all have disconnected.
+   *
+   * @return True if all local shards passed and there were no regressions
+   */
+  boolean run( ) throws IOException, InterruptedException {
+    final List<Process> processes = new ArrayList<>( );
+    final List<Thread> handlers = new ArrayList<>( );
+    final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "n4j-load-coordinator-reporter" ).build( ) );
+    try ( final ServerSocket server = new ServerSocket( PORT ) ) {
+      N4j.print( "Load coordinator listening on port " + server.getLocalPort( ) + " for " + shards + " shard(s)" );
+      if ( TEST != null && !TEST.isEmpty( ) ) {
+        processes.addAll( launch( server.getLocalPort( ) ) );
+      }
+      reporter.scheduleWithFixedDelay( this::progress,
+          LoadShard.REPORT_INTERVAL_MILLIS, LoadShard.REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS );
+      server.setSoTimeout( (int) Math.min( Integer.MAX_VALUE, LoadShard.TIMEOUT_MILLIS ) );
+      for ( int i = 0; i < shards; i++ ) {
+        final Socket socket;
+        try {
+          socket = server.accept( );
+        } catch ( final SocketTimeoutException e ) {
+          N4j.print( "Timed out waiting for shards, " + i + " of " + shards + " connected" );
+          abandonUnconnected( );
+          break;
+        }
+        final Thread handler = new Thread( ( ) -> handle( socket ), "n4j-load-coordinator-" + i );
+        handler.setDaemon( true );
+        handler.start( );
+        handlers.add( handler );
+      }
+      for ( final Thread handler : handlers ) {
+        handler.join( );
+      }
+    } finally {
+      reporter.shutdownNow( );
+    }
+    boolean success = true;
+    for ( final Process process : processes ) {
+      if ( process.waitFor( ) != 0 ) success = false;
+    }
+    if ( !success ) N4j.print( "One or more local shards failed, see shard logs in " + BenchmarkResults.directory( ) );
+    return report( ) && success;
+  }
+
+  private List<Process> launch( final int port ) throws IOException {
+    final File directory = BenchmarkResults.directory( );
+    Files.createDirectories( directory.toPath( ) );
+    final List<Process> processes = new ArrayList<>( );
+    for ( int i = 0; i < shards; i++ ) {
+      final List<String> command = new ArrayList<>( );
+      command.add( Paths.get( System.getProperty( "java.home" ), "bin", "java" ).toString( ) );
+      command.add( "-cp" );
+      command.add( System.getProperty( "java.class.path" ) );
+      for ( final String name : new TreeSet<>( System.getProperties( ).stringPropertyNames( ) ) ) {
+        if ( FORWARDED_PROPERTIES.contains( name ) ||
+            ( name.startsWith( "n4j." ) && !name.startsWith( "n4j.load.shard" ) && !name.equals( "n4j.load.coordinator" ) ) ) {
+          command.add( "-D" + name + "=" + System.getProperty( name ) );
+        }
+      }
+      command.add( "-Dn4j.load.coordinator=localhost:" + port );
+      command.add( "-Dn4j.load.shard=" + i );
+      command.add( "-Dn4j.load.shards=" + shards );
+      command.add( "org.junit.runner.JUnitCore" );
+      command.add( TEST );
+      final File log = new File( directory, "shard-" + i + ".log" );
+      N4j.print( "Starting shard " + i + " running " + TEST + ", output to " + log );
+      processes.add( new ProcessBuilder( command ).redirectErrorStream( true ).redirectOutput( log ).start( ) );
+    }
+    Runtime.getRuntime( ).addShutdownHook( new Thread( ( ) -> processes.forEach( Process::destroy ),
+        "n4j-load-coordinator-shutdown" ) );
+    return processes;
+  }
+
+  private void handle( final Socket socket ) {
+    int shard = -1;
+    try ( final Socket s = socket;
+          final BufferedReader in = new BufferedReader( new InputStreamReader( s.getInputStream( ), StandardCharsets.UTF_8 ) );
+          final PrintWriter out = new PrintWriter( new OutputStreamWriter( s.getOutputStream( ), StandardCharsets.UTF_8 ) ) ) {
+      String line;
+      while ( ( line = in.readLine( ) ) != null ) {
+        final JsonNode message = mapper.readTree( line );
+        switch ( message.path( "type" ).asText( ) ) {
+          case "hello":
+            shard = message.get( "shard" ).asInt( );
+            writers.put( shard, out );
+            N4j.print( "Shard " + shard + " connected from " + s.getRemoteSocketAddress( ) );
+            if ( message.get( "shards" ).asInt( ) != shards ) {
+              N4j.print( "WARNING: shard " + shard + " configured for " + message.get( "shards" ).asInt( ) +
+                  " shards, coordinator expects " + shards );
+            }
+            break;
+          case "ready":
+            ready( message );
+            break;
+          case "progress":
+            progress( message );
+            break;
+          case "result":
+            result( message );
+            break;
+          default:
+            N4j.print( "Ignoring unknown message from shard " + shard + ": " + line );
+        }
+      }
+    } catch ( final IOException e ) {
+      N4j.print( "Error reading from shard " + shard + ": " + e );
+    } finally {
+      if ( shard >= 0 ) {
+        N4j.print( "Shard " + shard + " disconnected" );
+        writers.remove( shard );
+        closed( shard );
+      }
+    }
+  }
+
+  private synchronized PhaseState phase( final JsonNode message ) {
+    final String scenario = message.get( "scenario" ).asText( );
+    final String phase = message.get( "phase" ).asText( );
+    return phases.computeIfAbsent( LoadShard.key( scenario, phase ), key -> new PhaseState( scenario, phase ) );
+  }
+
+  private synchronized void ready( final JsonNode message ) {
+    final PhaseState state = phase( message );
+    state.ready.add( message.get( "shard" ).asInt( ) );
+    maybeStart( state );
+  }
+
+  private synchronized void progress( final JsonNode message ) {
+    phase( message ).progress.put( message.get( "shard" ).asInt( ), message );
+  }
+
+  private synchronized void result( final JsonNode message ) {
+    final PhaseState state = phase( message );
+    final int shard = message.get( "shard" ).asInt( );
+    state.progress.remove( shard );
+    state.results.put( shard, message );
+    maybeComplete( state );
+  }
+
+  private synchronized void closed( final int shard ) {
+    closed.add( shard );
+    for ( final PhaseState state : phases.values( ) ) {
+      maybeStart( state );
+      maybeComplete( state );
+    }
+  }
+
+  private synchronized void abandonUnconnected( ) {
+    for ( int i = 0; i < shards; i++ ) {
+      if ( !writers.containsKey( i ) ) closed.add( i );
+    }
+    for ( final PhaseState state : phases.values( ) ) {
+      maybeStart( state );
+    }
+  }
+
+  private void maybeStart( final PhaseState state ) {
+    if ( state.started ) return;
+    for ( int i = 0; i < shards; i++ ) {
+      if ( !state.ready.contains( i ) && !closed.contains( i ) ) return;
+    }
+    state.started = true;
+    state.startMillis = System.currentTimeMillis( );
+    N4j.print( "Starting " + state.key( ) + " on " + state.ready.size( ) + " shard(s)" );
+    final ObjectNode start = mapper.createObjectNode( );
+    start.put( "type", "start" );
+    start.put( "scenario", state.scenario );
+    start.put( "phase", state.phase );
+    for ( final Integer shard : state.ready ) {
+      final PrintWriter out = writers.get( shard );
+      if ( out != null ) {
+        out.println( start.toString( ) );
+        out.flush( );
+      }
+    }
+  }
+
+  private void maybeComplete( final PhaseState state ) {
+    if ( !state.started || state.merged != null ) return;
+    for ( final Integer shard : state.ready ) {
+      if ( !state.results.containsKey( shard ) && !closed.contains( shard ) ) return;
+    }
+    state.merged = merge( state.phase, state.results.values( ) );
+    N4j.print( summary( "Load scenario " + state.scenario + " phase " + state.phase + " merged from " +
+        state.results.size( ) + " of " + state.ready.size( ) + " shard(s)", state.merged ) );
+  }
+
+  private synchronized void progress( ) {
+    for ( final PhaseState state : phases.values( ) ) {
+      if ( !state.started || state.merged != null || state.progress.isEmpty( ) ) continue;
+      final List<JsonNode> snapshots = new ArrayList<>( state.results.values( ) );
+      snapshots.addAll( state.progress.values( ) );
+      N4j.print( summary( "Progress " + state.key( ) + " " + snapshots.size( ) + " shard(s) " +
+          ( System.currentTimeMillis( ) - state.startMillis ) + "ms", merge( state.phase, snapshots ) ) );
+    }
+  }
+
+  private synchronized boolean report( ) {
+    final Map<String,List<ObjectNode>> scenarios = new LinkedHashMap<>( );
+    for ( final PhaseState state : phases.values( ) ) {
+      final ObjectNode merged = state.merged != null ? state.merged : merge( state.phase, state.results.values( ) );
+      scenarios.computeIfAbsent( state.scenario, key -> new ArrayList<>( ) ).add( merged );
+    }
+    boolean success = true;
+    for ( final Map.Entry<String,List<ObjectNode>> entry : scenarios.entrySet( ) ) {
+      BenchmarkResults.write( entry.getKey( ), entry.getValue( ), null, null );
+      try {
+        BaselineComparator.check( entry.getKey( ) );
+      } catch ( final AssertionError e ) {
+        N4j.print( e.getMessage( ) );
+        success = false;
+      }
+    }
+    return success;
+  }
+
+  /**
+   * Merge shard results, elapsed time is the longest for any shard.
+   */
+  private static ObjectNode merge( final String phase, final Collection<JsonNode> results ) {
+    final Histogram histogram = new Histogram( 3 );
+    final Map<String,Integer> counts = new TreeMap<>( );
+    boolean openLoop = false;
+    int threads = 0;
+    int iterations = 0;
+    int failures = 0;
+    int lateStarts = 0;
+    int queuedStarts = 0;
+    long elapsedMillis = 0;
+    for ( final JsonNode result : results ) {
+      openLoop |= result.get( "openLoop" ).asBoolean( );
+      threads += result.get( "threads" ).asInt( );
+      iterations += result.get( "iterations" ).asInt( );
+      failures += result.get( "failures" ).asInt( );
+      lateStarts += result.get( "lateStarts" ).asInt( );
+      queuedStarts += result.get( "queuedStarts" ).asInt( );
+      elapsedMillis = Math.max( elapsedMillis, result.get( "elapsedMillis" ).asLong( ) );
+      result.get( "counts" ).fields( ).forEachRemaining( field ->
+          counts.merge( field.getKey( ), field.getValue( ).asInt( ), Integer::sum ) );
+      histogram.add( decode( result.get( "histogram" ).asText( ) ) );
+    }
+    return BenchmarkResults.phase( phase, openLoop, threads, iterations, failures, elapsedMillis,
+        lateStarts, queuedStarts, counts, histogram );
+  }
+
+  private static Histogram decode( final String encoded ) {
+    try {
+      return Histogram.decodeFromCompressedByteBuffer( ByteBuffer.wrap( Base64.getDecoder( ).decode( encoded ) ), 0 );
+    } catch ( final DataFormatException e ) {
+      throw new IllegalStateException( "Invalid histogram from shard", e );
+    }
+  }
+
+  private static String summary( final String title, final JsonNode phase ) {
+    final JsonNode latency = phase.get( "latency" );
+    return String.format(
+        "%s [threads:%d failed:%d iterations:%d (%.2f/s)] latency ms [count:%d mean:%.1f p50:%.1f p90:%.1f p99:%.1f p99.9:%.1f max:%.1f] %s",
+        title,
+        phase.get( "threads" ).asInt( ),
+        phase.get( "failures" ).asInt( ),
+        phase.get( "iterations" ).asInt( ),
+        phase.get( "throughput" ).asDouble( ),
+        latency.get( "count" ).asLong( ),
+        latency.get( "mean" ).asDouble( ),
+        latency.get( "p50" ).asDouble( ),
+        latency.get( "p90" ).asDouble( ),
+        latency.get( "p99" ).asDouble( ),
+        latency.get( "p99.9" ).asDouble( ),
+        latency.get( "max" ).asDouble( ),
+        phase.get( "counts" ) );
+  }
+
+  private static final class PhaseState {
+    private final String scenario;
+    private final String phase;
+    private final Set<Integer> ready = new TreeSet<>( );
+    private final Map<Integer,JsonNode> progress = new TreeMap<>( );
+    private final Map<Integer,JsonNode> results = new TreeMap<>( );
+    private boolean started;
+    private long startMillis;
+    private ObjectNode merged;
+
+    PhaseState( final String scenario, final String phase ) {
+      this.scenario = scenario;
+      this.phase = phase;
+    }
+
+    String key( ) {
+      return LoadShard.key( scenario, phase );
+    }
+  }
+}
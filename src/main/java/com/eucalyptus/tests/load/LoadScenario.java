@@ -0,0 +1,944 @@
+package com.eucalyptus.tests.load;
+
+import com.amazonaws.AmazonServiceException;
+import com.eucalyptus.tests.awssdk.N4j;
+import com.eucalyptus.tests.awssdk.RequestMetrics;
+import com.eucalyptus.tests.awssdk.Threads;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a load workload on a pool of workers.
+ *
+ * A scenario has one or more phases, each phase runs a workload on a number
+ * of worker threads until an iteration or duration budget is used. Workers
+ * can run warmup iterations, the measurement starts when all workers have
+ * completed their warmup. Failures on worker threads are collected and
+ * rethrown when the phase completes. Cleanup tasks registered with the
+ * scenario are run in reverse order when it is closed.
+ *
+ * Phases are closed-loop unless given a rate profile, open-loop phases start
+ * iterations at the target rate regardless of how long earlier iterations
+ * take (see Phase). Phases can also run async workloads, where each
+ * iteration returns a CompletionStage and many iterations are in flight
+ * without a thread for each.
+ *
+ * Results are written when the scenario is closed and compared with the
+ * baseline results if configured (see BenchmarkResults, BaselineComparator)
+ *
+ * Usage:
+ *
+ *   try ( LoadScenario scenario = LoadScenario.named( "object-churn" ) ) {
+ *     scenario.cleanup( ( ) -> ... );
+ *     scenario.phase( "put-get-delete" ).threads( 10 ).iterations( 5 ).run( iteration -> ... );
+ *   }
+ */
+public final class LoadScenario implements AutoCloseable {
+
+  private final String name;
+  private final long startTime = System.currentTimeMillis( );
+  private final RequestMetrics.Snapshot metrics = RequestMetrics.snapshot( );
+  private final List<Runnable> cleanupTasks = Collections.synchronizedList( new ArrayList<>( ) );
+  private final List<Result> results = Collections.synchronizedList( new ArrayList<>( ) );
+
+  private LoadScenario( final String name ) {
+    this.name = name;
+  }
+
+  public static LoadScenario named( final String name ) {
+    N4j.print( "Starting load scenario " + name );
+    return new LoadScenario( name );
+  }
+
+  public String getName( ) {
+    return name;
+  }
+
+  /**
+   * Register a task to run when the scenario is closed.
+   */
+  public LoadScenario cleanup( final Runnable task ) {
+    cleanupTasks.add( task );
+    return this;
+  }
+
+  /**
+   * Create a phase for this scenario.
+   */
+  public Phase phase( final String name ) {
+    return new Phase( this, name );
+  }
+
+  /**
+   * Results for phases run so far.
+   */
+  public List<Result> results( ) {
+    synchronized ( results ) {
+      return new ArrayList<>( results );
+    }
+  }
+
+  /**
+   * Run cleanup tasks in reverse order of registration and write results.
+   */
+  @Override
+  public void close( ) {
+    N4j.print( "Running cleanup tasks" );
+    final long cleanupStart = System.currentTimeMillis( );
+    final List<Runnable> tasks;
+    synchronized ( cleanupTasks ) {
+      tasks = new ArrayList<>( cleanupTasks );
+      cleanupTasks.clear( );
+    }
+    Collections.reverse( tasks );
+    for ( final Runnable task : tasks ) {
+      try {
+        task.run( );
+      } catch ( final AmazonServiceException e ) {
+        N4j.print( e.getServiceName( ) + "/" + e.getErrorCode( ) + ": " + e.getErrorMessage( ) );
+      } catch ( final Exception e ) {
+        e.printStackTrace( );
+      }
+    }
+    N4j.print( "Completed cleanup tasks in " + ( System.currentTimeMillis( ) - cleanupStart ) + "ms" );
+    N4j.print( "Load scenario " + name + " complete in " + ( System.currentTimeMillis( ) - startTime ) + "ms" );
+    RequestMetrics.report( "Request metrics for load scenario " + name, metrics );
+    BenchmarkResults.write( this, RequestMetrics.snapshot( ).since( metrics ) );
+    if ( !LoadShard.isEnabled( ) ) BaselineComparator.check( name );
+  }
+
+  /**
+   * Work performed for each iteration.
+   */
+  public interface Workload {
+    void run( Iteration iteration ) throws Exception;
+  }
+
+  /**
+   * Work performed for each iteration of an async phase.
+   *
+   * The returned stage completes when the iteration is complete, for example
+   * a pipeline of requests made using async clients (see AsyncClients)
+   */
+  public interface AsyncWorkload {
+    CompletionStage<?> run( Iteration iteration ) throws Exception;
+  }
+
+  /**
+   * Phase configuration.
+   *
+   * Phases are closed-loop by default, each worker runs its iterations one
+   * after another and the budget is per worker. A phase with a rate profile
+   * is open-loop, iterations are started on a schedule independent of the
+   * completion of earlier iterations, the threads limit concurrent
+   * iterations and the iteration budget is for the phase. Open-loop latency
+   * is measured from the scheduled start so time spent waiting behind slow
+   * iterations is included.
+   *
+   * The rate for any open-loop capable phase can be set via a system
+   * property:
+   *
+   *   n4j.load.SCENARIO.PHASE.rate - ops/sec, e.g. n4j.load.object-churn.get.rate=20
+   *   n4j.load.schedule-tolerance  - lateness before an operation start is flagged (default 50ms)
+   *
+   * Async phases (see runAsync) use the threads as the limit for iterations
+   * in flight, iterations are started and their completions handled on a
+   * small pool of threads:
+   *
+   *   n4j.load.async-threads - threads for each async phase (default available processors)
+   *
+   * Workers for other phases are virtual threads when enabled (see Threads)
+   *
+   * When running as a shard of a distributed scenario (see LoadShard) the
+   * threads, rate and open-loop iteration budget are this shards share and
+   * the phase starts when all shards are ready.
+   */
+  public static final class Phase {
+    private static final long SCHEDULE_TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(
+        N4j.parseInterval( System.getProperty( "n4j.load.schedule-tolerance", "50ms" ), 50L ) );
+    private static final int ASYNC_THREADS =
+        Integer.getInteger( "n4j.load.async-threads", Runtime.getRuntime( ).availableProcessors( ) );
+
+    private final LoadScenario scenario;
+    private final String name;
+    private final List<Stage> stages = new ArrayList<>( );
+    private int threads = 1;
+    private int iterations = 0;
+    private long durationMillis = 0;
+    private int warmupIterations = 0;
+    private boolean failFast = false;
+    private boolean sharded = false;
+    private int workerOffset = 0;
+    private int shardedIterations = -1;
+    private double rateFactor = 1d;
+
+    private Phase( final LoadScenario scenario, final String name ) {
+      this.scenario = scenario;
+      this.name = name;
+    }
+
+    /**
+     * Number of workers, for open-loop and async phases this is the maximum concurrency.
+     */
+    public Phase threads( final int threads ) {
+      this.threads = Math.max( 1, threads );
+      return this;
+    }
+
+    /**
+     * Iterations for each worker (for the phase if open-loop), excluding warmup.
+     */
+    public Phase iterations( final int iterations ) {
+      this.iterations = Math.max( 0, iterations );
+      return this;
+    }
+
+    /**
+     * Measurement duration for the phase.
+     */
+    public Phase duration( final long duration, final TimeUnit unit ) {
+      this.durationMillis = unit.toMillis( duration );
+      return this;
+    }
+
+    /**
+     * Iterations for each worker before measurement starts.
+     */
+    public Phase warmup( final int iterations ) {
+      this.warmupIterations = Math.max( 0, iterations );
+      return this;
+    }
+
+    /**
+     * Stop all workers when any worker fails.
+     */
+    public Phase failFast( final boolean failFast ) {
+      this.failFast = failFast;
+      return this;
+    }
+
+    /**
+     * Run open-loop at a constant rate until the iteration or duration budget is used.
+     *
+     * @param opsPerSecond The target rate
+     */
+    public Phase rate( final double opsPerSecond ) {
+      stages.clear( );
+      stages.add( new Stage( opsPerSecond, opsPerSecond, 0 ) );
+      return this;
+    }
+
+    /**
+     * Add an open-loop stage with the rate changing linearly over the duration.
+     */
+    public Phase ramp( final double fromOpsPerSecond, final double toOpsPerSecond, final long duration, final TimeUnit unit ) {
+      stages.add( new Stage( fromOpsPerSecond, toOpsPerSecond, unit.toMillis( duration ) ) );
+      return this;
+    }
+
+    /**
+     * Add an open-loop stage with a constant rate for the duration.
+     */
+    public Phase hold( final double opsPerSecond, final long duration, final TimeUnit unit ) {
+      return ramp( opsPerSecond, opsPerSecond, duration, unit );
+    }
+
+    /**
+     * Run the workload, rethrowing any worker failure when all workers complete.
+     *
+     * @return The phase result
+     */
+    public Result run( final Workload workload ) {
+      return execute( false, ( budget, executor, worker, result, failures, stop ) -> {
+        if ( result.isOpenLoop( ) ) {
+          runOpenLoop( workload, budget, executor, worker, result, failures, stop );
+        } else {
+          runClosedLoop( workload, budget, executor, worker, result, failures, stop );
+        }
+      } );
+    }
+
+    /**
+     * Run the async workload, rethrowing any iteration failure when all iterations complete.
+     *
+     * The threads for the phase limit the iterations in flight, completions
+     * are handled on a small pool of threads so an iteration must not block.
+     *
+     * @return The phase result
+     */
+    public Result runAsync( final AsyncWorkload workload ) {
+      return execute( true, ( budget, executor, worker, result, failures, stop ) -> {
+        if ( result.isOpenLoop( ) ) {
+          runOpenLoopAsync( workload, budget, executor, result, failures, stop );
+        } else {
+          runClosedLoopAsync( workload, budget, executor, result, failures, stop );
+        }
+      } );
+    }
+
+    private Result execute( final boolean async, final Runner runner ) {
+      final String rateProperty = System.getProperty( "n4j.load." + scenario.name + "." + name + ".rate" );
+      if ( stages.isEmpty( ) && rateProperty != null ) {
+        rate( Double.parseDouble( rateProperty ) );
+      }
+      if ( LoadShard.isEnabled( ) && !sharded ) {
+        sharded = true;
+        workerOffset = LoadShard.offset( threads );
+        threads = LoadShard.share( threads );
+        if ( !stages.isEmpty( ) && iterations > 0 ) {
+          iterations = LoadShard.share( iterations );
+          shardedIterations = iterations;
+        }
+        rateFactor = 1d / LoadShard.count( );
+      }
+      final boolean openLoop = !stages.isEmpty( );
+      final int budget = iterations == 0 && durationMillis == 0 && scheduleMillis( ) == 0 ? 1 : iterations;
+      N4j.print( "Running " + scenario.name + " phase " + name + ( openLoop ? " open-loop " + stages : "" ) +
+          ( async ?
+              " with up to " + threads + " iteration(s) in flight" :
+              " on " + threads + ( Threads.isVirtual( ) ? " virtual" : "" ) + " thread(s)" ) +
+          ( budget > 0 ? ", " + budget + " iteration(s)" : "" ) +
+          ( durationMillis > 0 ? ", " + durationMillis + "ms" : "" ) +
+          ( warmupIterations > 0 ? ", " + warmupIterations + " warmup iteration(s)" : "" ) +
+          ( sharded ? " as shard " + LoadShard.index( ) + " of " + LoadShard.count( ) : "" ) );
+      if ( sharded ) LoadShard.awaitStart( scenario.name, name );
+      final Result result = new Result( scenario.name, name, threads, openLoop );
+      if ( sharded && ( threads == 0 || shardedIterations == 0 ) ) {
+        N4j.print( "Skipping " + scenario.name + " phase " + name + ", no share for shard " + LoadShard.index( ) );
+        scenario.results.add( result );
+        LoadShard.complete( result );
+        return result;
+      }
+      if ( sharded ) LoadShard.track( result );
+      final List<Throwable> failures = Collections.synchronizedList( new ArrayList<>( ) );
+      final AtomicBoolean stop = new AtomicBoolean( false );
+      final AtomicInteger workers = new AtomicInteger( );
+      final ThreadLocal<Integer> worker = ThreadLocal.withInitial( ( ) -> workerOffset + workers.incrementAndGet( ) );
+      final String nameFormat = "n4j-load-" + scenario.name + "-" + name + "-%d";
+      final ExecutorService executor = async ?
+          Executors.newFixedThreadPool( Math.min( threads, ASYNC_THREADS ), new ThreadFactoryBuilder( )
+              .setDaemon( true )
+              .setNameFormat( nameFormat )
+              .build( ) ) :
+          Executors.newFixedThreadPool( threads, Threads.factory( nameFormat ) );
+      try {
+        runner.run( budget, executor, worker, result, failures, stop );
+        executor.shutdown( );
+        while ( !executor.awaitTermination( 1, TimeUnit.MINUTES ) ) {
+          N4j.print( "Waiting for " + scenario.name + " phase " + name + " workers" );
+        }
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread( ).interrupt( );
+        stop.set( true );
+        executor.shutdownNow( );
+        throw new IllegalStateException( "Interrupted running phase " + name );
+      }
+      result.elapsedMillis = System.currentTimeMillis( ) - result.startMillis;
+      scenario.results.add( result );
+      if ( sharded ) LoadShard.complete( result );
+      N4j.print( result.toString( ) );
+      if ( openLoop && !result.isScheduleMet( ) ) {
+        N4j.print( "WARNING: load scenario " + scenario.name + " phase " + name + " did not keep up with the schedule, " +
+            result.getLateStarts( ) + " late starts (max " + result.getMaxScheduleLagMillis( ) + "ms) and " +
+            result.getQueuedStarts( ) + " starts waiting for " + ( async ? "an in flight slot" : "a thread" ) );
+      }
+      synchronized ( failures ) {
+        if ( !failures.isEmpty( ) ) {
+          final Throwable first = failures.get( 0 );
+          for ( final Throwable failure : failures.subList( 1, failures.size( ) ) ) {
+            first.addSuppressed( failure );
+          }
+          if ( first instanceof Error ) throw (Error) first;
+          if ( first instanceof RuntimeException ) throw (RuntimeException) first;
+          throw new IllegalStateException( "Phase " + name + " failed", first );
+        }
+      }
+      return result;
+    }
+
+    private void runClosedLoop(
+        final Workload workload,
+        final int budget,
+        final ExecutorService executor,
+        final ThreadLocal<Integer> worker,
+        final Result result,
+        final List<Throwable> failures,
+        final AtomicBoolean stop
+    ) throws InterruptedException {
+      final Phaser warmup = new Phaser( threads + 1 ) {
+        @Override
+        protected boolean onAdvance( final int phase, final int registeredParties ) {
+          result.startMillis = System.currentTimeMillis( );
+          return true;
+        }
+      };
+      for ( int i = 0; i < threads; i++ ) {
+        executor.submit( ( ) -> {
+          final int workerNumber = worker.get( );
+          boolean warm = false;
+          try {
+            for ( int n = 1; n <= warmupIterations && !stop.get( ); n++ ) {
+              workload.run( new Iteration( scenario, result, workerNumber, n, warmupIterations, true ) );
+            }
+            warm = true;
+            warmup.arriveAndAwaitAdvance( );
+            for ( int n = 1; !stop.get( ); n++ ) {
+              if ( budget > 0 && n > budget ) break;
+              if ( durationMillis > 0 && System.currentTimeMillis( ) - result.startMillis >= durationMillis ) break;
+              final long start = System.nanoTime( );
+              workload.run( new Iteration( scenario, result, workerNumber, n, budget, false ) );
+              result.latencies.record( System.nanoTime( ) - start );
+              result.iterations.incrementAndGet( );
+            }
+            result.completedWorkers.incrementAndGet( );
+          } catch ( final Throwable t ) {
+            fail( workerNumber, t, result, failures, stop );
+            if ( !warm ) warmup.arriveAndDeregister( );
+          }
+          return null;
+        } );
+      }
+      warmup.arriveAndAwaitAdvance( );
+    }
+
+    private void runOpenLoop(
+        final Workload workload,
+        final int budget,
+        final ExecutorService executor,
+        final ThreadLocal<Integer> worker,
+        final Result result,
+        final List<Throwable> failures,
+        final AtomicBoolean stop
+    ) throws InterruptedException {
+      if ( warmupIterations > 0 ) {
+        final CountDownLatch warmupLatch = new CountDownLatch( threads );
+        for ( int i = 0; i < threads; i++ ) {
+          executor.submit( ( ) -> {
+            final int workerNumber = worker.get( );
+            try {
+              for ( int n = 1; n <= warmupIterations && !stop.get( ); n++ ) {
+                workload.run( new Iteration( scenario, result, workerNumber, n, warmupIterations, true ) );
+              }
+            } catch ( final Throwable t ) {
+              fail( workerNumber, t, result, failures, stop );
+            } finally {
+              warmupLatch.countDown( );
+            }
+            return null;
+          } );
+        }
+        warmupLatch.await( );
+      }
+
+      final AtomicInteger inFlight = new AtomicInteger( );
+      schedule( budget, result, stop, ( number, intendedNanos ) -> {
+        if ( inFlight.incrementAndGet( ) > threads ) {
+          result.queuedStarts.incrementAndGet( );
+        }
+        executor.submit( ( ) -> {
+          final int workerNumber = worker.get( );
+          try {
+            if ( !stop.get( ) ) {
+              workload.run( new Iteration( scenario, result, workerNumber, number, budget, false ) );
+              result.latencies.record( System.nanoTime( ) - intendedNanos );
+              result.iterations.incrementAndGet( );
+            }
+          } catch ( final Throwable t ) {
+            fail( workerNumber, t, result, failures, stop );
+          } finally {
+            inFlight.decrementAndGet( );
+          }
+          return null;
+        } );
+      } );
+    }
+
+    private void runClosedLoopAsync(
+        final AsyncWorkload workload,
+        final int budget,
+        final ExecutorService executor,
+        final Result result,
+        final List<Throwable> failures,
+        final AtomicBoolean stop
+    ) throws InterruptedException {
+      final List<CompletableFuture<Boolean>> warmup = warmupAsync( workload, executor, result, failures, stop );
+      result.startMillis = System.currentTimeMillis( );
+      final List<CompletableFuture<Boolean>> workers = new ArrayList<>( );
+      for ( int i = 0; i < threads; i++ ) {
+        if ( warmup.get( i ).getNow( false ) ) {
+          final CompletableFuture<Boolean> done = new CompletableFuture<>( );
+          iterateAsync( workload, executor, workerOffset + i + 1, 1, budget, false, result, failures, stop, done );
+          workers.add( done );
+        }
+      }
+      awaitAll( workers );
+    }
+
+    private void runOpenLoopAsync(
+        final AsyncWorkload workload,
+        final int budget,
+        final ExecutorService executor,
+        final Result result,
+        final List<Throwable> failures,
+        final AtomicBoolean stop
+    ) throws InterruptedException {
+      warmupAsync( workload, executor, result, failures, stop );
+      final Semaphore inFlight = new Semaphore( threads );
+      schedule( budget, result, stop, ( number, intendedNanos ) -> {
+        if ( !inFlight.tryAcquire( ) ) {
+          result.queuedStarts.incrementAndGet( );
+          inFlight.acquire( );
+        }
+        final int workerNumber = workerOffset + ( number - 1 ) % threads + 1;
+        start( workload, new Iteration( scenario, result, workerNumber, number, budget, false ) )
+            .whenCompleteAsync( ( value, t ) -> {
+              try {
+                if ( t != null ) {
+                  fail( workerNumber, unwrap( t ), result, failures, stop );
+                } else {
+                  result.latencies.record( System.nanoTime( ) - intendedNanos );
+                  result.iterations.incrementAndGet( );
+                }
+              } finally {
+                inFlight.release( );
+              }
+            }, executor );
+      } );
+      inFlight.acquire( threads );
+    }
+
+    /**
+     * Run warmup iterations for each async worker, the futures complete with false if the worker failed.
+     */
+    private List<CompletableFuture<Boolean>> warmupAsync(
+        final AsyncWorkload workload,
+        final ExecutorService executor,
+        final Result result,
+        final List<Throwable> failures,
+        final AtomicBoolean stop
+    ) throws InterruptedException {
+      final List<CompletableFuture<Boolean>> workers = new ArrayList<>( );
+      for ( int i = 0; i < threads; i++ ) {
+        final CompletableFuture<Boolean> done = new CompletableFuture<>( );
+        iterateAsync( workload, executor, workerOffset + i + 1, 1, warmupIterations, true, result, failures, stop, done );
+        workers.add( done );
+      }
+      awaitAll( workers );
+      return workers;
+    }
+
+    /**
+     * Start the given iteration for an async worker, each completion starts the next iteration.
+     */
+    private void iterateAsync(
+        final AsyncWorkload workload,
+        final ExecutorService executor,
+        final int workerNumber,
+        final int number,
+        final int budget,
+        final boolean warmup,
+        final Result result,
+        final List<Throwable> failures,
+        final AtomicBoolean stop,
+        final CompletableFuture<Boolean> done
+    ) {
+      if ( stop.get( ) || ( warmup ?
+          number > budget :
+          ( budget > 0 && number > budget ) ||
+              ( durationMillis > 0 && System.currentTimeMillis( ) - result.startMillis >= durationMillis ) ) ) {
+        if ( !warmup ) result.completedWorkers.incrementAndGet( );
+        done.complete( true );
+        return;
+      }
+      final long startNanos = System.nanoTime( );
+      start( workload, new Iteration( scenario, result, workerNumber, number, budget, warmup ) )
+          .whenCompleteAsync( ( value, t ) -> {
+            if ( t != null ) {
+              fail( workerNumber, unwrap( t ), result, failures, stop );
+              done.complete( false );
+            } else {
+              if ( !warmup ) {
+                result.latencies.record( System.nanoTime( ) - startNanos );
+                result.iterations.incrementAndGet( );
+              }
+              iterateAsync( workload, executor, workerNumber, number + 1, budget, warmup, result, failures, stop, done );
+            }
+          }, executor );
+    }
+
+    private static CompletableFuture<?> start( final AsyncWorkload workload, final Iteration iteration ) {
+      try {
+        final CompletionStage<?> stage = workload.run( iteration );
+        return stage == null ? CompletableFuture.completedFuture( null ) : stage.toCompletableFuture( );
+      } catch ( final Throwable t ) {
+        final CompletableFuture<?> failed = new CompletableFuture<>( );
+        failed.completeExceptionally( t );
+        return failed;
+      }
+    }
+
+    private static Throwable unwrap( final Throwable t ) {
+      return t instanceof CompletionException && t.getCause( ) != null ? t.getCause( ) : t;
+    }
+
+    private static void awaitAll( final List<? extends CompletableFuture<?>> futures ) throws InterruptedException {
+      try {
+        CompletableFuture.allOf( futures.toArray( new CompletableFuture<?>[ 0 ] ) ).get( );
+      } catch ( final ExecutionException e ) {
+        // failures are recorded by the workers
+      }
+    }
+
+    /**
+     * Start iterations at the times given by the rate profile until the budget is used.
+     */
+    private void schedule(
+        final int budget,
+        final Result result,
+        final AtomicBoolean stop,
+        final Start start
+    ) throws InterruptedException {
+      final long scheduleMillis = scheduleMillis( );
+      final long endMillis = durationMillis > 0 ? durationMillis : scheduleMillis > 0 ? scheduleMillis : Long.MAX_VALUE;
+      result.startMillis = System.currentTimeMillis( );
+      final long startNanos = System.nanoTime( );
+      long offsetNanos = 0;
+      for ( int n = 1; !stop.get( ); n++ ) {
+        if ( budget > 0 && n > budget ) break;
+        final double rate = rateAt( TimeUnit.NANOSECONDS.toMillis( offsetNanos ) ) * rateFactor;
+        if ( rate <= 0d ) {
+          // nothing scheduled at this point in the profile, move on to where the rate is positive
+          offsetNanos += TimeUnit.MILLISECONDS.toNanos( 10 );
+          n--;
+          if ( TimeUnit.NANOSECONDS.toMillis( offsetNanos ) >= endMillis ) break;
+          continue;
+        }
+        if ( n > 1 ) offsetNanos += (long) ( TimeUnit.SECONDS.toNanos( 1 ) / rate );
+        if ( TimeUnit.NANOSECONDS.toMillis( offsetNanos ) >= endMillis ) break;
+        final long intendedNanos = startNanos + offsetNanos;
+        final long waitNanos = intendedNanos - System.nanoTime( );
+        if ( waitNanos > 0 ) TimeUnit.NANOSECONDS.sleep( waitNanos );
+        result.recordScheduleLag( System.nanoTime( ) - intendedNanos, SCHEDULE_TOLERANCE_NANOS );
+        start.start( n, intendedNanos );
+      }
+    }
+
+    private void fail(
+        final int workerNumber,
+        final Throwable t,
+        final Result result,
+        final List<Throwable> failures,
+        final AtomicBoolean stop
+    ) {
+      N4j.print( "[" + workerNumber + "] Failed: " + t );
+      result.failedWorkers.incrementAndGet( );
+      failures.add( t );
+      if ( failFast ) stop.set( true );
+    }
+
+    private long scheduleMillis( ) {
+      long total = 0;
+      for ( final Stage stage : stages ) {
+        if ( stage.durationMillis == 0 ) return 0;
+        total += stage.durationMillis;
+      }
+      return total;
+    }
+
+    private double rateAt( final long offsetMillis ) {
+      long stageStart = 0;
+      for ( final Stage stage : stages ) {
+        if ( stage.durationMillis == 0 || offsetMillis < stageStart + stage.durationMillis ) {
+          return stage.rateAt( offsetMillis - stageStart );
+        }
+        stageStart += stage.durationMillis;
+      }
+      return 0d;
+    }
+  }
+
+  private interface Runner {
+    void run(
+        int budget,
+        ExecutorService executor,
+        ThreadLocal<Integer> worker,
+        Result result,
+        List<Throwable> failures,
+        AtomicBoolean stop
+    ) throws InterruptedException;
+  }
+
+  private interface Start {
+    void start( int number, long intendedNanos ) throws InterruptedException;
+  }
+
+  /**
+   * Open-loop rate profile stage, a duration of 0 is unbounded.
+   */
+  private static final class Stage {
+    private final double fromRate;
+    private final double toRate;
+    private final long durationMillis;
+
+    Stage( final double fromRate, final double toRate, final long durationMillis ) {
+      this.fromRate = Math.max( 0d, fromRate );
+      this.toRate = Math.max( 0d, toRate );
+      this.durationMillis = Math.max( 0, durationMillis );
+    }
+
+    double rateAt( final long offsetMillis ) {
+      return durationMillis == 0 ?
+          fromRate :
+          fromRate + ( toRate - fromRate ) * Math.min( 1d, offsetMillis / (double) durationMillis );
+    }
+
+    @Override
+    public String toString( ) {
+      return fromRate == toRate ?
+          fromRate + "/s" + ( durationMillis > 0 ? " for " + durationMillis + "ms" : "" ) :
+          fromRate + "/s to " + toRate + "/s over " + durationMillis + "ms";
+    }
+  }
+
+  /**
+   * An iteration of a workload on a worker.
+   */
+  public static final class Iteration {
+    private final LoadScenario scenario;
+    private final Result result;
+    private final int worker;
+    private final int number;
+    private final int iterations;
+    private final boolean warmup;
+
+    Iteration(
+        final LoadScenario scenario,
+        final Result result,
+        final int worker,
+        final int number,
+        final int iterations,
+        final boolean warmup
+    ) {
+      this.scenario = scenario;
+      this.result = result;
+      this.worker = worker;
+      this.number = number;
+      this.iterations = iterations;
+      this.warmup = warmup;
+    }
+
+    /**
+     * The worker number, from 1
+     */
+    public int getWorker( ) {
+      return worker;
+    }
+
+    /**
+     * The iteration number for the worker, from 1
+     */
+    public int getNumber( ) {
+      return number;
+    }
+
+    /**
+     * The iteration budget for the worker, 0 if duration limited
+     */
+    public int getIterations( ) {
+      return iterations;
+    }
+
+    public boolean isWarmup( ) {
+      return warmup;
+    }
+
+    /**
+     * Increment a named counter for the phase, ignored during warmup.
+     */
+    public void count( final String counter ) {
+      if ( !warmup ) result.counter( counter ).incrementAndGet( );
+    }
+
+    /**
+     * Register a task to run when the scenario is closed.
+     */
+    public void cleanup( final Runnable task ) {
+      scenario.cleanup( task );
+    }
+
+    /**
+     * Output a message prefixed with the worker number.
+     */
+    public void print( final String message ) {
+      N4j.print( "[" + worker + "] " + message );
+    }
+
+    @Override
+    public String toString( ) {
+      return ( warmup ? "warmup " : "" ) + number + ( iterations > 0 ? "/" + iterations : "" );
+    }
+  }
+
+  /**
+   * Outcome of a phase.
+   */
+  public static final class Result {
+    private final String scenario;
+    private final String phase;
+    private final int threads;
+    private final boolean openLoop;
+    private final AtomicInteger iterations = new AtomicInteger( );
+    private final AtomicInteger completedWorkers = new AtomicInteger( );
+    private final AtomicInteger failedWorkers = new AtomicInteger( );
+    private final AtomicInteger lateStarts = new AtomicInteger( );
+    private final AtomicInteger queuedStarts = new AtomicInteger( );
+    private final AtomicLong maxScheduleLagNanos = new AtomicLong( );
+    private final Map<String,AtomicInteger> counters = new ConcurrentHashMap<>( );
+    private final Latencies latencies = new Latencies( );
+    private volatile long startMillis = System.currentTimeMillis( );
+    private volatile long elapsedMillis;
+
+    Result( final String scenario, final String phase, final int threads, final boolean openLoop ) {
+      this.scenario = scenario;
+      this.phase = phase;
+      this.threads = threads;
+      this.openLoop = openLoop;
+    }
+
+    private void recordScheduleLag( final long lagNanos, final long toleranceNanos ) {
+      maxScheduleLagNanos.accumulateAndGet( lagNanos, Math::max );
+      if ( lagNanos > toleranceNanos ) lateStarts.incrementAndGet( );
+    }
+
+    private AtomicInteger counter( final String name ) {
+      return counters.computeIfAbsent( name, key -> new AtomicInteger( ) );
+    }
+
+    public String getScenario( ) {
+      return scenario;
+    }
+
+    public String getPhase( ) {
+      return phase;
+    }
+
+    public int getThreads( ) {
+      return threads;
+    }
+
+    /**
+     * Measured iterations completed by all workers.
+     */
+    public int getIterations( ) {
+      return iterations.get( );
+    }
+
+    public boolean isOpenLoop( ) {
+      return openLoop;
+    }
+
+    /**
+     * Workers that completed their budget, not used for open-loop phases.
+     */
+    public int getCompletedWorkers( ) {
+      return completedWorkers.get( );
+    }
+
+    /**
+     * Workers that failed, for open-loop phases the number of failed iterations.
+     */
+    public int getFailedWorkers( ) {
+      return failedWorkers.get( );
+    }
+
+    /**
+     * Latencies for measured iterations, from the scheduled start for open-loop phases.
+     */
+    public Latencies getLatencies( ) {
+      return latencies;
+    }
+
+    /**
+     * Open-loop iterations started later than the schedule tolerance.
+     */
+    public int getLateStarts( ) {
+      return lateStarts.get( );
+    }
+
+    /**
+     * Open-loop iterations scheduled when all threads were busy.
+     */
+    public int getQueuedStarts( ) {
+      return queuedStarts.get( );
+    }
+
+    public long getMaxScheduleLagMillis( ) {
+      return TimeUnit.NANOSECONDS.toMillis( maxScheduleLagNanos.get( ) );
+    }
+
+    /**
+     * True if the harness started all open-loop iterations on schedule.
+     */
+    public boolean isScheduleMet( ) {
+      return lateStarts.get( ) == 0 && queuedStarts.get( ) == 0;
+    }
+
+    public int getCount( final String counter ) {
+      final AtomicInteger count = counters.get( counter );
+      return count == null ? 0 : count.get( );
+    }
+
+    public Map<String,Integer> getCounts( ) {
+      final Map<String,Integer> counts = new TreeMap<>( );
+      counters.forEach( ( key, value ) -> counts.put( key, value.get( ) ) );
+      return counts;
+    }
+
+    long getStartMillis( ) {
+      return startMillis;
+    }
+
+    /**
+     * Measurement time, excluding warmup.
+     */
+    public long getElapsedMillis( ) {
+      return elapsedMillis;
+    }
+
+    public double getIterationsPerSecond( ) {
+      return elapsedMillis == 0 ? 0d : iterations.get( ) * 1000d / elapsedMillis;
+    }
+
+    @Override
+    public String toString( ) {
+      return openLoop ?
+          String.format(
+              "Load scenario %s phase %s complete in %dms [threads:%d failed:%d iterations:%d (%.2f/s) late:%d queued:%d] %s%s",
+              scenario, phase, elapsedMillis, threads, failedWorkers.get( ), iterations.get( ), getIterationsPerSecond( ),
+              lateStarts.get( ), queuedStarts.get( ), latencies, counters.isEmpty( ) ? "" : " " + getCounts( ) ) :
+          String.format(
+              "Load scenario %s phase %s complete in %dms [threads:%d completed:%d failed:%d iterations:%d (%.2f/s)] %s%s",
+              scenario, phase, elapsedMillis, threads, completedWorkers.get( ), failedWorkers.get( ), iterations.get( ),
+              getIterationsPerSecond( ), latencies, counters.isEmpty( ) ? "" : " " + getCounts( ) );
+    }
+  }
+}
@@ -0,0 +1,240 @@
+package com.eucalyptus.tests.load;
+
+import com.eucalyptus.tests.awssdk.N4j;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Worker side of distributed load generation.
+ *
+ * When a coordinator is configured this JVM runs one shard of each load
+ * phase. The threads (and the rate and iteration budget for open-loop
+ * phases) are split between the shards, each phase starts when all shards
+ * are ready and latency histograms are streamed to the coordinator while
+ * the phase runs. The coordinator merges the shard results into the report
+ * for the scenario (see LoadCoordinator).
+ *
+ * Shards are configured via system properties:
+ *
+ *   n4j.load.coordinator         - coordinator host:port (not distributed if not set)
+ *   n4j.load.shard               - index of this shard, from 0
+ *   n4j.load.shards              - number of shards
+ *   n4j.load.coordinator-timeout - time to wait for all shards to be ready for a phase (default 30m)
+ *   n4j.load.report-interval     - interval for streaming progress to the coordinator (default 5s)
+ */
+final class LoadShard {
+
+  private static final String COORDINATOR = System.getProperty( "n4j.load.coordinator" );
+  private static final int SHARD = Integer.getInteger( "n4j.load.shard", 0 );
+  private static final int SHARDS = Math.max( 1, Integer.getInteger( "n4j.load.shards", 1 ) );
+  static final long TIMEOUT_MILLIS = N4j.parseInterval(
+      System.getProperty( "n4j.load.coordinator-timeout", "30m" ), TimeUnit.MINUTES.toMillis( 30 ) );
+  static final long REPORT_INTERVAL_MILLIS = N4j.parseInterval(
+      System.getProperty( "n4j.load.report-interval", "5s" ), TimeUnit.SECONDS.toMillis( 5 ) );
+
+  private static final ObjectMapper mapper = new ObjectMapper( );
+  private static final Map<String,CompletableFuture<Void>> starts = new ConcurrentHashMap<>( );
+  private static final Set<LoadScenario.Result> active = ConcurrentHashMap.newKeySet( );
+  private static PrintWriter out;
+
+  private LoadShard( ) {
+  }
+
+  static boolean isEnabled( ) {
+    return COORDINATOR != null && !COORDINATOR.isEmpty( );
+  }
+
+  static int index( ) {
+    return SHARD;
+  }
+
+  static int count( ) {
+    return SHARDS;
+  }
+
+  /**
+   * This shards share of the total, 0 if the total is less than the number
+   * of shards and this shard gets none.
+   */
+  static int share( final int total ) {
+    return total / SHARDS + ( SHARD < total % SHARDS ? 1 : 0 );
+  }
+
+  /**
+   * The total for shards before this one, used to number workers uniquely.
+   *
+   * Uses the same split as share so the shares and offsets cover the total
+   * without overlap.
+   */
+  static int offset( final int total ) {
+    return SHARD * ( total / SHARDS ) + Math.min( SHARD, total % SHARDS );
+  }
+
+  /**
+   * Wait until all shards are ready to run the phase.
+   */
+  static void awaitStart( final String scenario, final String phase ) {
+    final String key = key( scenario, phase );
+    final CompletableFuture<Void> start = starts.computeIfAbsent( key, k -> new CompletableFuture<>( ) );
+    N4j.print( "Waiting for shards to start " + key );
+    send( message( "ready", scenario, phase ) );
+    try {
+      start.get( TIMEOUT_MILLIS, TimeUnit.MILLISECONDS );
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      throw new IllegalStateException( "Interrupted waiting for shards to start " + key );
+    } catch ( final ExecutionException e ) {
+      throw new IllegalStateException( "Error waiting for shards to start " + key, e.getCause( ) );
+    } catch ( final TimeoutException e ) {
+      throw new IllegalStateException( "Timed out waiting for shards to start " + key );
+    } finally {
+      starts.remove( key );
+    }
+  }
+
+  /**
+   * Stream progress for the phase result until complete.
+   */
+  static void track( final LoadScenario.Result result ) {
+    active.add( result );
+  }
+
+  /**
+   * Send the final result for the phase.
+   */
+  static void complete( final LoadScenario.Result result ) {
+    active.remove( result );
+    send( result( "result", result, result.getElapsedMillis( ) ) );
+  }
+
+  static String key( final String scenario, final String phase ) {
+    return scenario + "/" + phase;
+  }
+
+  static String encode( final Histogram histogram ) {
+    final ByteBuffer buffer = ByteBuffer.allocate( histogram.getNeededByteBufferCapacity( ) );
+    final int length = histogram.encodeIntoCompressedByteBuffer( buffer );
+    return Base64.getEncoder( ).encodeToString( Arrays.copyOf( buffer.array( ), length ) );
+  }
+
+  private static ObjectNode message( final String type, final String scenario, final String phase ) {
+    final ObjectNode message = mapper.createObjectNode( );
+    message.put( "type", type );
+    message.put( "shard", SHARD );
+    message.put( "scenario", scenario );
+    message.put( "phase", phase );
+    return message;
+  }
+
+  private static ObjectNode result( final String type, final LoadScenario.Result result, final long elapsedMillis ) {
+    final ObjectNode message = message( type, result.getScenario( ), result.getPhase( ) );
+    message.put( "openLoop", result.isOpenLoop( ) );
+    message.put( "threads", result.getThreads( ) );
+    message.put( "iterations", result.getIterations( ) );
+    message.put( "failures", result.getFailedWorkers( ) );
+    message.put( "elapsedMillis", elapsedMillis );
+    message.put( "lateStarts", result.getLateStarts( ) );
+    message.put( "queuedStarts", result.getQueuedStarts( ) );
+    final ObjectNode counts = message.putObject( "counts" );
+    result.getCounts( ).forEach( counts::put );
+    message.put( "histogram", encode( result.getLatencies( ).histogram( ) ) );
+    return message;
+  }
+
+  private static void progress( ) {
+    try {
+      for ( final LoadScenario.Result result : active ) {
+        send( result( "progress", result, System.currentTimeMillis( ) - result.getStartMillis( ) ) );
+      }
+    } catch ( final RuntimeException e ) {
+      N4j.print( "Error sending progress to load coordinator " + COORDINATOR + ": " + e );
+    }
+  }
+
+  private static synchronized void send( final JsonNode message ) {
+    try {
+      final PrintWriter writer = connection( );
+      writer.println( mapper.writeValueAsString( message ) );
+      writer.flush( );
+      if ( writer.checkError( ) ) {
+        N4j.print( "Error sending " + message.get( "type" ).asText( ) + " to load coordinator " + COORDINATOR );
+      }
+    } catch ( final IOException e ) {
+      throw new IllegalStateException( "Error connecting to load coordinator " + COORDINATOR, e );
+    }
+  }
+
+  private static synchronized PrintWriter connection( ) throws IOException {
+    if ( out == null ) {
+      final int portIndex = COORDINATOR.lastIndexOf( ':' );
+      final Socket socket = new Socket( );
+      socket.connect( new InetSocketAddress(
+          COORDINATOR.substring( 0, portIndex ),
+          Integer.parseInt( COORDINATOR.substring( portIndex + 1 ) ) ), 30_000 );
+      out = new PrintWriter( new OutputStreamWriter( socket.getOutputStream( ), StandardCharsets.UTF_8 ) );
+      final ObjectNode hello = mapper.createObjectNode( );
+      hello.put( "type", "hello" );
+      hello.put( "shard", SHARD );
+      hello.put( "shards", SHARDS );
+      out.println( mapper.writeValueAsString( hello ) );
+      out.flush( );
+      N4j.print( "Connected to load coordinator " + COORDINATOR + " as shard " + SHARD + " of " + SHARDS );
+
+      final Thread reader = new ThreadFactoryBuilder( )
+          .setDaemon( true )
+          .setNameFormat( "n4j-load-shard-reader" )
+          .build( )
+          .newThread( ( ) -> read( socket ) );
+      reader.start( );
+      final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "n4j-load-shard-reporter" ).build( ) );
+      reporter.scheduleWithFixedDelay( LoadShard::progress,
+          REPORT_INTERVAL_MILLIS, REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS );
+    }
+    return out;
+  }
+
+  private static void read( final Socket socket ) {
+    try ( final BufferedReader in = new BufferedReader(
+        new InputStreamReader( socket.getInputStream( ), StandardCharsets.UTF_8 ) ) ) {
+      String line;
+      while ( ( line = in.readLine( ) ) != null ) {
+        final JsonNode message = mapper.readTree( line );
+        if ( "start".equals( message.path( "type" ).asText( ) ) ) {
+          starts.computeIfAbsent(
+              key( message.get( "scenario" ).asText( ), message.get( "phase" ).asText( ) ),
+              k -> new CompletableFuture<>( ) ).complete( null );
+        }
+      }
+      N4j.print( "Load coordinator " + COORDINATOR + " closed connection" );
+    } catch ( final IOException e ) {
+      N4j.print( "Error reading from load coordinator " + COORDINATOR + ": " + e );
+    }
+    final IllegalStateException closed = new IllegalStateException( "Load coordinator connection closed" );
+    starts.values( ).forEach( start -> start.completeExceptionally( closed ) );
+  }
+}
@@ -0,0 +1,290 @@
+package com.eucalyptus.tests.load;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.eucalyptus.tests.awssdk.N4j;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads objects as multipart uploads with parts uploaded in parallel.
+ *
+ * The object is split into parts of a fixed size (the last part may be
+ * smaller) and up to the parallelism parts are in flight at once. Part
+ * content is opened when the part is uploaded, so no more than one stream
+ * per part in flight is open. A failed part is retried with a doubling
+ * delay, if a part fails on all attempts the upload is aborted.
+ *
+ * Defaults are configured via system properties:
+ *
+ *   n4j.mpu.part-size   - part size in bytes (default 16777216, 16MiB)
+ *   n4j.mpu.parallelism - maximum parts in flight (default 8)
+ *   n4j.mpu.retries     - retries for each part (default 3)
+ *   n4j.mpu.retry-delay - delay before the first retry of a part (default 1s)
+ *
+ * Usage:
+ *
+ *   MultipartUploader.Result result = new MultipartUploader( s3 ).parallelism( 16 )
+ *       .upload( bucket, key, size, content::stream );
+ */
+public final class MultipartUploader {
+
+  private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+  private static final int MAX_PARTS = 10_000;
+  private static final long PART_SIZE = Long.getLong( "n4j.mpu.part-size", 16L * 1024 * 1024 );
+  private static final int PARALLELISM = Integer.getInteger( "n4j.mpu.parallelism", 8 );
+  private static final int RETRIES = Integer.getInteger( "n4j.mpu.retries", 3 );
+  private static final long RETRY_DELAY_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.mpu.retry-delay", "1s" ), TimeUnit.SECONDS.toMillis( 1 ) );
+
+  private final AmazonS3 s3;
+  private long partSize = PART_SIZE;
+  private int parallelism = PARALLELISM;
+  private int retries = RETRIES;
+
+  public MultipartUploader( final AmazonS3 s3 ) {
+    this.s3 = s3;
+  }
+
+  /**
+   * Size for all but the last part, the minimum is 5MiB.
+   */
+  public MultipartUploader partSize( final long partSize ) {
+    if ( partSize < MIN_PART_SIZE ) throw new IllegalArgumentException( "Part size below minimum: " + partSize );
+    this.partSize = partSize;
+    return this;
+  }
+
+  /**
+   * Maximum number of parts in flight.
+   */
+  public MultipartUploader parallelism( final int parallelism ) {
+    if ( parallelism < 1 ) throw new IllegalArgumentException( "Invalid parallelism: " + parallelism );
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Number of times a failed part is retried before the upload fails.
+   */
+  public MultipartUploader retries( final int retries ) {
+    if ( retries < 0 ) throw new IllegalArgumentException( "Invalid retries: " + retries );
+    this.retries = retries;
+    return this;
+  }
+
+  /**
+   * Content for a range of the object.
+   */
+  @FunctionalInterface
+  public interface Content {
+    /**
+     * Open a stream for the range, the stream should support mark/reset
+     * so the client does not buffer the part for retries.
+     */
+    InputStream open( long offset, long length );
+  }
+
+  /**
+   * Upload an object, aborting the upload on failure.
+   *
+   * @param bucket The bucket for the object
+   * @param key The key for the object
+   * @param size The size of the object in bytes
+   * @param content The object content
+   * @return The upload result
+   * @throws AmazonClientException If a part fails on all attempts or the upload cannot be completed
+   */
+  public Result upload( final String bucket, final String key, final long size, final Content content ) {
+    final long effectivePartSize = Math.max( partSize, ( size + MAX_PARTS - 1 ) / MAX_PARTS );
+    final int parts = (int) Math.max( 1, ( size + effectivePartSize - 1 ) / effectivePartSize );
+    final Result result = new Result( bucket, key, size, parts, Math.min( parallelism, parts ) );
+    final String uploadId = s3.initiateMultipartUpload( new InitiateMultipartUploadRequest( bucket, key ) ).getUploadId( );
+    N4j.print( "Uploading object " + key + " length " + size + " as " + parts + " part(s) with up to " +
+        result.getParallelism( ) + " in flight, upload ID " + uploadId );
+    final long start = System.nanoTime( );
+    final ExecutorService executor = Executors.newFixedThreadPool( result.getParallelism( ), new ThreadFactoryBuilder( )
+        .setDaemon( true )
+        .setNameFormat( "n4j-mpu-%d" )
+        .build( ) );
+    boolean complete = false;
+    try {
+      final ExecutorCompletionService<PartETag> completion = new ExecutorCompletionService<>( executor );
+      for ( int partNumber = 1; partNumber <= parts; partNumber++ ) {
+        final int number = partNumber;
+        final long offset = ( partNumber - 1 ) * effectivePartSize;
+        final long length = Math.min( effectivePartSize, size - offset );
+        completion.submit( ( ) -> uploadPart( bucket, key, uploadId, number, offset, length, content, result ) );
+      }
+      final List<PartETag> etags = new ArrayList<>( parts );
+      for ( int i = 0; i < parts; i++ ) {
+        etags.add( completion.take( ).get( ) );
+      }
+      etags.sort( Comparator.comparingInt( PartETag::getPartNumber ) );
+      final CompleteMultipartUploadResult completeResult =
+          s3.completeMultipartUpload( new CompleteMultipartUploadRequest( bucket, key, uploadId, etags ) );
+      complete = true;
+      result.complete( completeResult.getETag( ), System.nanoTime( ) - start );
+      N4j.print( result.toString( ) );
+      return result;
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      throw new AmazonClientException( "Interrupted uploading object " + key, e );
+    } catch ( final ExecutionException e ) {
+      final Throwable cause = e.getCause( );
+      if ( cause instanceof AmazonClientException ) throw (AmazonClientException) cause;
+      throw new AmazonClientException( "Error uploading object " + key + ": " + cause, cause );
+    } finally {
+      executor.shutdownNow( );
+      if ( !complete ) {
+        abort( bucket, key, uploadId );
+      }
+    }
+  }
+
+  private PartETag uploadPart(
+      final String bucket,
+      final String key,
+      final String uploadId,
+      final int partNumber,
+      final long offset,
+      final long length,
+      final Content content,
+      final Result result
+  ) throws InterruptedException {
+    long retryDelay = RETRY_DELAY_MILLIS;
+    for ( int attempt = 0; ; attempt++ ) {
+      final long partStart = System.nanoTime( );
+      try ( final InputStream in = content.open( offset, length ) ) {
+        final PartETag etag = s3.uploadPart( new UploadPartRequest( )
+            .withBucketName( bucket )
+            .withKey( key )
+            .withUploadId( uploadId )
+            .withPartNumber( partNumber )
+            .withPartSize( length )
+            .withInputStream( in ) ).getPartETag( );
+        result.partLatencies.record( System.nanoTime( ) - partStart );
+        return etag;
+      } catch ( final AmazonClientException | IOException e ) {
+        if ( attempt >= retries || Thread.currentThread( ).isInterrupted( ) ) {
+          N4j.print( "Part " + partNumber + " of object " + key + " failed after " + ( attempt + 1 ) + " attempt(s): " + e );
+          throw e instanceof AmazonClientException ?
+              (AmazonClientException) e :
+              new AmazonClientException( "Error reading part " + partNumber + " content", e );
+        }
+        result.retries.incrementAndGet( );
+        N4j.print( "Retrying part " + partNumber + " of object " + key + " in " + retryDelay + "ms: " + e );
+        Thread.sleep( retryDelay );
+        retryDelay *= 2;
+      }
+    }
+  }
+
+  private void abort( final String bucket, final String key, final String uploadId ) {
+    try {
+      N4j.print( "Aborting multipart upload for object " + key + ", upload ID " + uploadId );
+      s3.abortMultipartUpload( new AbortMultipartUploadRequest( bucket, key, uploadId ) );
+    } catch ( final RuntimeException e ) {
+      N4j.print( "Error aborting multipart upload for object " + key + ", upload ID " + uploadId + ": " + e );
+    }
+  }
+
+  /**
+   * Outcome of an upload.
+   */
+  public static final class Result {
+    private final String bucket;
+    private final String key;
+    private final long size;
+    private final int parts;
+    private final int parallelism;
+    private final Latencies partLatencies = new Latencies( );
+    private final AtomicInteger retries = new AtomicInteger( );
+    private volatile String etag;
+    private volatile long elapsedNanos;
+
+    private Result( final String bucket, final String key, final long size, final int parts, final int parallelism ) {
+      this.bucket = bucket;
+      this.key = key;
+      this.size = size;
+      this.parts = parts;
+      this.parallelism = parallelism;
+    }
+
+    private void complete( final String etag, final long elapsedNanos ) {
+      this.etag = etag;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getBucket( ) {
+      return bucket;
+    }
+
+    public String getKey( ) {
+      return key;
+    }
+
+    public long getSize( ) {
+      return size;
+    }
+
+    public int getParts( ) {
+      return parts;
+    }
+
+    public int getParallelism( ) {
+      return parallelism;
+    }
+
+    /**
+     * Latencies for successful part uploads.
+     */
+    public Latencies getPartLatencies( ) {
+      return partLatencies;
+    }
+
+    public int getRetries( ) {
+      return retries.get( );
+    }
+
+    public String getETag( ) {
+      return etag;
+    }
+
+    public long getElapsedMillis( ) {
+      return TimeUnit.NANOSECONDS.toMillis( elapsedNanos );
+    }
+
+    /**
+     * Aggregate throughput from the start of the first part to completion.
+     */
+    public double getMebibytesPerSecond( ) {
+      return elapsedNanos == 0 ? 0d : ( size / ( 1024d * 1024d ) ) / ( elapsedNanos / 1_000_000_000d );
+    }
+
+    @Override
+    public String toString( ) {
+      return String.format(
+          "Multipart upload %s/%s complete in %dms [size:%d parts:%d parallelism:%d retries:%d (%.2fMiB/s)] part %s",
+          bucket, key, getElapsedMillis( ), size, parts, parallelism, retries.get( ), getMebibytesPerSecond( ),
+          partLatencies );
+    }
+  }
+}
@@ -8,26 +8,35 @@ import com.amazonaws.services.s3.AmazonS3
 import com.amazonaws.services.s3.AmazonS3Client
 import com.amazonaws.services.s3.model.ObjectMetadata
 import com.amazonaws.services.s3.model.PutObjectRequest
+import com.eucalyptus.tests.awssdk.AccountPool
+import com.eucalyptus.tests.awssdk.ClientRegistry
 import com.eucalyptus.tests.awssdk.N4j
-import com.google.common.collect.Iterators
-import com.google.common.io.ByteSource
 import com.google.common.io.ByteStreams
 import org.junit.AfterClass
-import org.junit.Assert
 import org.junit.BeforeClass
 import org.junit.Test
 
-import java.util.concurrent.CountDownLatch
-import java.util.concurrent.TimeUnit
-import java.util.concurrent.atomic.AtomicInteger
-
 import static com.eucalyptus.tests.awssdk.N4j.ACCESS_KEY
 import static com.eucalyptus.tests.awssdk.N4j.SECRET_KEY
 
 /**
+ * Object put/get/delete churn for a range of object sizes.
+ *
+ * Object content is seeded from the key so downloads can be verified as
+ * they stream. Large objects are uploaded as parallel multipart uploads
+ * (see MultipartUploader) and downloaded as parallel ranged gets (see
+ * RangedDownloader), configured via system properties:
  *
+ *   n4j.load.verify               - verify downloaded object content (default true)
+ *   n4j.load.multipart-threshold  - object size in bytes to use multipart upload (default 1048576000, 1000MiB)
+ *   n4j.load.ranged-get-threshold - object size in bytes to use ranged gets (default 1048576000, 1000MiB)
  */
 class ObjectChurnLoadTest {
+  private static final boolean VERIFY = Boolean.valueOf( System.getProperty( 'n4j.load.verify', 'true' ) )
+  private static final long MULTIPART_THRESHOLD = Long.getLong( 'n4j.load.multipart-threshold', 1024L * 1024 * 1000 )
+  private static final long RANGED_GET_THRESHOLD = Long.getLong( 'n4j.load.ranged-get-threshold', 1024L * 1024 * 1000 )
+
+  private static AccountPool.Lease testAcctLease
   private static String testAcct
   private static AWSCredentialsProvider testAcctAdminCredentials
   private static AWSCredentialsProvider cloudAdminCredentials
@@ -37,25 +46,68 @@ class ObjectChurnLoadTest {
   static void init( ){
     N4j.testInfo( ObjectChurnLoadTest.simpleName )
     N4j.getCloudInfo( )
-    testAcct = "${N4j.NAME_PREFIX}object-churn-load"
-    N4j.createAccount( testAcct )
-    testAcctAdminCredentials = new AWSStaticCredentialsProvider( N4j.getUserCreds( testAcct, 'admin' ) )
+    testAcctLease = AccountPool.lease( ObjectChurnLoadTest )
+    testAcct = testAcctLease.accountName
+    testAcctAdminCredentials = testAcctLease.credentialsProvider
     s3Client = getS3Client( testAcctAdminCredentials )
     cloudAdminCredentials = new AWSStaticCredentialsProvider( new BasicAWSCredentials(ACCESS_KEY, SECRET_KEY) )
   }
 
   @AfterClass
   static void cleanup( ) {
-    if ( s3Client ) s3Client.shutdown( )
-    N4j.deleteAccount( testAcct )
+    testAcctLease?.release( )
   }
 
+  /**
+   * Shared client using the SDK default signer, not the V2 signer of
+   * N4j.getS3Client
+   */
   private static AmazonS3 getS3Client(final AWSCredentialsProvider credentials ) {
-    final AmazonS3Client s3 = new AmazonS3Client( credentials, new ClientConfiguration(
-        socketTimeout: TimeUnit.MINUTES.toMillis( 2 )
-    )  )
-    s3.setEndpoint( N4j.S3_ENDPOINT )
-    s3
+    ClientRegistry.client( 's3', credentials, N4j.S3_ENDPOINT, null ) { ClientConfiguration config ->
+      final AmazonS3Client s3 = new AmazonS3Client( credentials, config )
+      s3.setEndpoint( N4j.S3_ENDPOINT )
+      s3
+    }
+  }
+
+  private static InputStream content( final Payload payload, final String key, final long offset, final long length ) {
+    VERIFY ? SeededContent.forKey( key ).stream( offset, length ) : payload.stream( length )
+  }
+
+  private static void uploadObject(
+      final AmazonS3 s3,
+      final Payload payload,
+      final String bucket,
+      final String key,
+      final long size
+  ) {
+    if ( size >= MULTIPART_THRESHOLD ) {
+      new MultipartUploader( s3 ).upload( bucket, key, size, { long offset, long length ->
+        content( payload, key, offset, length )
+      } as MultipartUploader.Content )
+    } else {
+      s3.putObject( new PutObjectRequest(
+          bucket,
+          key,
+          content( payload, key, 0, size ),
+          new ObjectMetadata( contentLength: size )
+      ) )
+    }
+  }
+
+  private static void drainObject( final AmazonS3 s3, final String bucket, final String key, final long size ) {
+    if ( size >= RANGED_GET_THRESHOLD ) {
+      new RangedDownloader( s3 ).download( bucket, key, size, VERIFY ?
+          RangedDownloader.Sink.verify( SeededContent.forKey( key ) ) :
+          RangedDownloader.Sink.discard( ) )
+      return
+    }
+    final InputStream content = s3.getObject( bucket, key ).getObjectContent( )
+    if ( VERIFY ) {
+      SeededContent.forKey( key ).verify( content, 0, size )
+    } else {
+      ByteStreams.copy( content, ByteStreams.nullOutputStream( ) )
+    }
   }
 
   @Test
@@ -63,121 +115,65 @@ class ObjectChurnLoadTest {
     final String namePrefix = UUID.randomUUID().toString().substring(0, 13) + "-"
     N4j.print( "Using resource prefix for test: " + namePrefix )
 
-    final long startTime = System.currentTimeMillis( )
-    final List<Runnable> cleanupTasks = [] as List<Runnable>
-    try {
+    LoadScenario.named( 'object-churn' ).withCloseable { LoadScenario scenario ->
       String bucketName = "${namePrefix}bucket"
       N4j.print( "Creating bucket ${bucketName}" )
       s3Client.with {
         createBucket(bucketName)
-        cleanupTasks.add {
+        scenario.cleanup {
           N4j.print("Deleting bucket ${bucketName}")
           deleteBucket(bucketName)
         }
       }
 
-      final byte[] data = new byte[ 1024 * 1024 /*    1MiB */ ]
-      final ByteSource byteSource = ByteSource.wrap( data )
+      final Payload payload = Payload.zeros( 1024 * 1024 /*    1MiB */ )
       final List<List<Number>> churnOpts = [
           // object size,                #obj, #threads up, #down
-          [ 1024 * 1024 * 10    /*    10MiB */, 75, 15, 30 ],
-          [ 1024 * 1024 * 100   /*   100MiB */, 25, 10, 20 ],
-          [ 1024 * 1024 * 1000  /*  1000MiB */, 10,  5,  5 ],
-          [ 1024 * 1024 * 10000 /* 10000MiB */,  5,  5,  5 ],
+          [ 1024L * 1024 * 10    /*    10MiB */, 75, 15, 30 ],
+          [ 1024L * 1024 * 100   /*   100MiB */, 25, 10, 20 ],
+          [ 1024L * 1024 * 1000  /*  1000MiB */, 10,  5,  5 ],
+          [ 1024L * 1024 * 10000 /* 10000MiB */,  5,  5,  5 ],
       ]
       churnOpts.each { long size, int objects, int uploadThreads, int downloadThreads ->
         final int threads = uploadThreads
         final int iterations = ( objects / threads ) as Integer
 
-        N4j.print("Churning ${iterations} object put/get/delete(s) on ${threads} threads")
-        final CountDownLatch latch = new CountDownLatch(threads)
-        final AtomicInteger successCount = new AtomicInteger(0)
-        (1..threads).each { Integer thread ->
-          Thread.start {
-            try {
-              getS3Client( testAcctAdminCredentials ).with {
-                for (int i = 0; i < iterations; i++) {
-                  String key = "${namePrefix}object-${thread}-${i}"
-                  N4j.print("[${thread}] putting object ${key} length ${size} ${i+1}/${iterations}")
-                  putObject(new PutObjectRequest(
-                      bucketName,
-                      key,
-                      ByteSource.concat( Iterators.limit( Iterators.cycle( byteSource ), (size / data.length) as Integer ) ).openStream( ),
-                      new ObjectMetadata(contentLength: size)
-                  ))
-
-                  N4j.print("[${thread}] getting object ${key} ${i+1}/${iterations}")
-                  ByteStreams.copy(getObject(bucketName, key).getObjectContent(), ByteStreams.nullOutputStream())
-
-                  N4j.print("[${thread}] deleting object ${key} ${i+1}/${iterations}")
-                  deleteObject(bucketName, key)
-                }
-                shutdown()
-                successCount.incrementAndGet()
-              }
-            } finally {
-              latch.countDown()
-            }
+        final LoadScenario.Phase churn = scenario.phase( "put-get-delete-${size}" ).threads( threads ).iterations( iterations )
+        churn.run{ LoadScenario.Iteration iteration ->
+          getS3Client( testAcctAdminCredentials ).with {
+            String key = "${namePrefix}object-${iteration.worker}-${iteration.number}"
+            iteration.print( "putting object ${key} length ${size} ${iteration}" )
+            uploadObject( delegate as AmazonS3, payload, bucketName, key, size )
+
+            iteration.print( "getting object ${key} ${iteration}" )
+            drainObject( delegate as AmazonS3, bucketName, key, size )
+
+            iteration.print( "deleting object ${key} ${iteration}" )
+            deleteObject(bucketName, key)
           }
         }
-        latch.await()
-        Assert.assertEquals( "Threads completed", threads, successCount.get( ) )
 
         int downloadCount = ( (objects * 10) / downloadThreads ) as Integer
-        N4j.print("Performing ${downloadCount} object gets on ${downloadThreads} threads")
         final String key = "${namePrefix}object"
         N4j.print("Putting object ${key} length ${size}")
         getS3Client( testAcctAdminCredentials ).with {
-          putObject(new PutObjectRequest(
-              bucketName,
-              key,
-              ByteSource.concat( Iterators.limit( Iterators.cycle( byteSource ), (size / data.length) as Integer ) ).openStream( ),
-              new ObjectMetadata(contentLength: size)
-          ))
+          uploadObject( delegate as AmazonS3, payload, bucketName, key, size )
         }
-        final CountDownLatch downLatch = new CountDownLatch(downloadThreads)
-        final AtomicInteger downSuccessCount = new AtomicInteger(0)
-        (1..downloadThreads).each { Integer thread ->
-          Thread.start {
-            try {
-              getS3Client( testAcctAdminCredentials ).with {
-                for (int i = 0; i < downloadCount; i++) {
-                  N4j.print("[${thread}] getting object ${key} ${i+1}/${downloadCount}")
-                  try {
-                    ByteStreams.copy(getObject(bucketName, key).getObjectContent(), ByteStreams.nullOutputStream())
-                  } catch( e ) {
-                    N4j.print( "[${thread}] Error getting object  ${key} ${i+1}/${downloadCount}: ${e}" )
-                    Assert.fail( "error" )
-                  }
-                }
-                downSuccessCount.incrementAndGet()
-              }
-            } finally {
-              downLatch.countDown()
+        try {
+          final LoadScenario.Phase download = scenario.phase( "get-${size}" ).threads( downloadThreads ).iterations( downloadCount )
+          download.run{ LoadScenario.Iteration iteration ->
+            getS3Client( testAcctAdminCredentials ).with {
+              iteration.print( "getting object ${key} ${iteration}" )
+              drainObject( delegate as AmazonS3, bucketName, key, size )
             }
           }
-        }
-        downLatch.await()
-        getS3Client( testAcctAdminCredentials ).with {
-          N4j.print( "Deleting object ${key}" )
-          deleteObject( bucketName, key )
-        }
-        Assert.assertEquals( "Download threads completed", downloadThreads, downSuccessCount.get( ) )
-      }
-
-      N4j.print( "Test complete in ${System.currentTimeMillis()-startTime}ms" )
-    } finally {
-      // Attempt to clean up anything we created
-      N4j.print( "Running cleanup tasks" )
-      final long cleanupStart = System.currentTimeMillis( )
-      cleanupTasks.reverseEach { Runnable cleanupTask ->
-        try {
-          cleanupTask.run()
-        } catch ( Exception e ) {
-          e.printStackTrace( )
+        } finally {
+          getS3Client( testAcctAdminCredentials ).with {
+            N4j.print( "Deleting object ${key}" )
+            deleteObject( bucketName, key )
+          }
         }
       }
-      N4j.print( "Completed cleanup tasks in ${System.currentTimeMillis()-cleanupStart}ms" )
     }
   }
 }
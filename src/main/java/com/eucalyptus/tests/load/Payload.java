@@ -0,0 +1,120 @@
+package com.eucalyptus.tests.load;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Object payloads of any length that repeat a single block of content.
+ *
+ * The block is held once in a direct buffer and shared by all streams so
+ * opening and reading a payload does not allocate or copy per block.
+ * Streams support mark and reset for any read limit so clients can retry
+ * without buffering the content.
+ */
+public final class Payload {
+
+  private final ByteBuffer block;
+
+  private Payload( final ByteBuffer block ) {
+    this.block = block;
+  }
+
+  /**
+   * Create a payload repeating the given content.
+   *
+   * @param block The content to repeat, copied
+   * @return The payload
+   */
+  public static Payload of( final byte[] block ) {
+    if ( block.length == 0 ) throw new IllegalArgumentException( "Empty payload block" );
+    final ByteBuffer buffer = ByteBuffer.allocateDirect( block.length );
+    buffer.put( block ).flip( );
+    return new Payload( buffer.asReadOnlyBuffer( ) );
+  }
+
+  /**
+   * Create a payload of zeros.
+   *
+   * @param blockSize The size of the shared block
+   */
+  public static Payload zeros( final int blockSize ) {
+    return of( new byte[ blockSize ] );
+  }
+
+  public int getBlockSize( ) {
+    return block.capacity( );
+  }
+
+  /**
+   * Open a stream for a payload of the given length.
+   *
+   * @param length The length of the payload in bytes
+   * @return The stream, closing is optional
+   */
+  public InputStream stream( final long length ) {
+    if ( length < 0 ) throw new IllegalArgumentException( "Invalid payload length " + length );
+    return new PayloadInputStream( block.duplicate( ), length );
+  }
+
+  private static final class PayloadInputStream extends InputStream {
+    private final ByteBuffer block;
+    private final long length;
+    private long position;
+    private long mark;
+
+    private PayloadInputStream( final ByteBuffer block, final long length ) {
+      this.block = block;
+      this.length = length;
+    }
+
+    @Override
+    public int read( ) {
+      if ( position >= length ) return -1;
+      return block.get( (int) ( position++ % block.capacity( ) ) ) & 0xFF;
+    }
+
+    @Override
+    public int read( final byte[] bytes, final int offset, final int count ) {
+      if ( offset < 0 || count < 0 || count > bytes.length - offset ) throw new IndexOutOfBoundsException( );
+      if ( count == 0 ) return 0;
+      if ( position >= length ) return -1;
+      int read = 0;
+      while ( read < count && position < length ) {
+        final int blockOffset = (int) ( position % block.capacity( ) );
+        final int chunk = (int) Math.min( Math.min( count - read, block.capacity( ) - blockOffset ), length - position );
+        block.position( blockOffset );
+        block.get( bytes, offset + read, chunk );
+        read += chunk;
+        position += chunk;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip( final long count ) {
+      final long skipped = Math.max( 0, Math.min( count, length - position ) );
+      position += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available( ) {
+      return (int) Math.min( Integer.MAX_VALUE, length - position );
+    }
+
+    @Override
+    public boolean markSupported( ) {
+      return true;
+    }
+
+    @Override
+    public void mark( final int readLimit ) {
+      mark = position;
+    }
+
+    @Override
+    public void reset( ) {
+      position = mark;
+    }
+  }
+}
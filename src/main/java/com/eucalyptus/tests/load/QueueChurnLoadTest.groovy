@@ -0,0 +1,80 @@
+package com.eucalyptus.tests.load
+
+import com.amazonaws.auth.AWSCredentialsProvider
+import com.amazonaws.handlers.AsyncHandler
+import com.amazonaws.services.sqs.AmazonSQSAsync
+import com.amazonaws.services.sqs.model.CreateQueueRequest
+import com.amazonaws.services.sqs.model.DeleteMessageRequest
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest
+import com.amazonaws.services.sqs.model.ReceiveMessageResult
+import com.amazonaws.services.sqs.model.SendMessageRequest
+import com.eucalyptus.tests.awssdk.AccountPool
+import com.eucalyptus.tests.awssdk.AsyncClients
+import com.eucalyptus.tests.awssdk.N4j
+import org.junit.AfterClass
+import org.junit.BeforeClass
+import org.junit.Test
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Message churn using async clients, many iterations are in flight on few threads.
+ */
+class QueueChurnLoadTest {
+  private static AccountPool.Lease testAcctLease
+  private static AWSCredentialsProvider testAcctAdminCredentials
+  private static AmazonSQSAsync sqsClient
+
+  @BeforeClass
+  static void init( ){
+    N4j.testInfo( QueueChurnLoadTest.simpleName )
+    N4j.getCloudInfoAndSqs( )
+    testAcctLease = AccountPool.lease( QueueChurnLoadTest )
+    testAcctAdminCredentials = testAcctLease.credentialsProvider
+    sqsClient = N4j.getSqsAsyncClient( testAcctAdminCredentials, N4j.SQS_ENDPOINT )
+  }
+
+  @AfterClass
+  static void cleanup( ) {
+    testAcctLease?.release( )
+  }
+
+  @Test
+  void test( ) {
+    final String namePrefix = UUID.randomUUID().toString().substring(0, 13) + "-"
+    N4j.print( "Using resource prefix for test: " + namePrefix )
+
+    LoadScenario.named( 'queue-churn' ).withCloseable { LoadScenario scenario ->
+      final String queueName = "${namePrefix}queue"
+      N4j.print( "Creating queue ${queueName}" )
+      final String queueUrl = sqsClient.createQueue( new CreateQueueRequest( queueName ) ).queueUrl
+      scenario.cleanup {
+        N4j.print( "Deleting queue ${queueName}" )
+        sqsClient.deleteQueue( queueUrl )
+      }
+
+      final LoadScenario.Phase churn = scenario.phase( 'send-receive-delete' ).threads( 500 ).iterations( 20 ).warmup( 1 )
+      churn.runAsync{ LoadScenario.Iteration iteration ->
+        AsyncClients.future{ AsyncHandler handler ->
+          sqsClient.sendMessageAsync( new SendMessageRequest( queueUrl, "message ${iteration}" as String ), handler )
+        }.thenCompose{ sent ->
+          AsyncClients.future{ AsyncHandler handler ->
+            sqsClient.receiveMessageAsync( new ReceiveMessageRequest( queueUrl )
+                .withMaxNumberOfMessages( 1 )
+                .withWaitTimeSeconds( 5 ), handler )
+          }
+        }.thenCompose{ ReceiveMessageResult received ->
+          if ( received.messages.isEmpty( ) ) {
+            iteration.count( 'empty-receive' )
+            CompletableFuture.completedFuture( null )
+          } else {
+            iteration.count( 'received' )
+            AsyncClients.future{ AsyncHandler handler ->
+              sqsClient.deleteMessageAsync( new DeleteMessageRequest( queueUrl, received.messages[0].receiptHandle ), handler )
+            }
+          }
+        }
+      }
+    }
+  }
+}
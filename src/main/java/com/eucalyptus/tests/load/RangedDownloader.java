@@ -0,0 +1,302 @@
+package com.eucalyptus.tests.load;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.eucalyptus.tests.awssdk.N4j;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads objects as byte ranges fetched in parallel.
+ *
+ * The object is split into ranges of a fixed size (the last range may be
+ * smaller) and up to the parallelism ranges are fetched at once. Each
+ * range is streamed to a sink at its offset, e.g. a preallocated file
+ * using positional writes or a verifier for seeded content. The download
+ * fails if any range fails or is short.
+ *
+ * Defaults are configured via system properties:
+ *
+ *   n4j.ranged-get.range-size  - range size in bytes (default 16777216, 16MiB)
+ *   n4j.ranged-get.parallelism - maximum ranges in flight (default 8)
+ *
+ * Usage:
+ *
+ *   RangedDownloader.Result result = new RangedDownloader( s3 ).parallelism( 16 )
+ *       .download( bucket, key, RangedDownloader.Sink.verify( content ) );
+ */
+public final class RangedDownloader {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long RANGE_SIZE = Long.getLong( "n4j.ranged-get.range-size", 16L * 1024 * 1024 );
+  private static final int PARALLELISM = Integer.getInteger( "n4j.ranged-get.parallelism", 8 );
+
+  private final AmazonS3 s3;
+  private long rangeSize = RANGE_SIZE;
+  private int parallelism = PARALLELISM;
+
+  public RangedDownloader( final AmazonS3 s3 ) {
+    this.s3 = s3;
+  }
+
+  /**
+   * Size for all but the last range.
+   */
+  public RangedDownloader rangeSize( final long rangeSize ) {
+    if ( rangeSize < 1 ) throw new IllegalArgumentException( "Invalid range size: " + rangeSize );
+    this.rangeSize = rangeSize;
+    return this;
+  }
+
+  /**
+   * Maximum number of ranges in flight.
+   */
+  public RangedDownloader parallelism( final int parallelism ) {
+    if ( parallelism < 1 ) throw new IllegalArgumentException( "Invalid parallelism: " + parallelism );
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Destination for the content of each range, called concurrently for
+   * different ranges.
+   */
+  @FunctionalInterface
+  public interface Sink {
+    /**
+     * Consume the content for a range.
+     *
+     * @param offset The offset of the range in the object
+     * @param length The length of the range in bytes
+     * @param in The range content
+     * @throws IOException If the content is invalid or cannot be written
+     */
+    void write( long offset, long length, InputStream in ) throws IOException;
+
+    /**
+     * Sink that reads and discards content.
+     */
+    static Sink discard( ) {
+      return ( offset, length, in ) -> {
+        final long read = ByteStreams.copy( in, ByteStreams.nullOutputStream( ) );
+        if ( read != length ) throw new IOException( "Expected " + length + " bytes at offset " + offset + " but got " + read );
+      };
+    }
+
+    /**
+     * Sink that verifies content against seeded content.
+     */
+    static Sink verify( final SeededContent content ) {
+      return ( offset, length, in ) -> content.verify( in, offset, length );
+    }
+
+    /**
+     * Sink that writes content to a channel at the range offset.
+     *
+     * Positional writes do not change the channel position so ranges can
+     * be written concurrently.
+     */
+    static Sink channel( final FileChannel channel ) {
+      return ( offset, length, in ) -> {
+        final byte[] buffer = new byte[ BUFFER_SIZE ];
+        final ByteBuffer byteBuffer = ByteBuffer.wrap( buffer );
+        long position = offset;
+        int read;
+        while ( ( read = in.read( buffer ) ) != -1 ) {
+          if ( position + read > offset + length ) {
+            throw new IOException( "Expected " + length + " bytes at offset " + offset + " but got more" );
+          }
+          byteBuffer.clear( ).limit( read );
+          while ( byteBuffer.hasRemaining( ) ) {
+            position += channel.write( byteBuffer, position );
+          }
+        }
+        if ( position != offset + length ) {
+          throw new IOException( "Expected " + length + " bytes at offset " + offset + " but got " + ( position - offset ) );
+        }
+      };
+    }
+  }
+
+  /**
+   * Download an object to a file, the file is preallocated to the object
+   * size and ranges are written in place.
+   *
+   * @param bucket The bucket for the object
+   * @param key The key for the object
+   * @param file The file to write, created or replaced
+   * @return The download result
+   */
+  public Result download( final String bucket, final String key, final File file ) throws IOException {
+    final long size = s3.getObjectMetadata( bucket, key ).getContentLength( );
+    try ( final RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" ) ) {
+      randomAccessFile.setLength( size );
+      return download( bucket, key, size, Sink.channel( randomAccessFile.getChannel( ) ) );
+    }
+  }
+
+  /**
+   * Download an object, the object size is found using a HEAD request.
+   *
+   * @see #download(String, String, long, Sink)
+   */
+  public Result download( final String bucket, final String key, final Sink sink ) {
+    return download( bucket, key, s3.getObjectMetadata( bucket, key ).getContentLength( ), sink );
+  }
+
+  /**
+   * Download an object.
+   *
+   * @param bucket The bucket for the object
+   * @param key The key for the object
+   * @param size The size of the object in bytes
+   * @param sink The destination for the object content
+   * @return The download result
+   * @throws AmazonClientException If a range fails or the sink rejects the content
+   */
+  public Result download( final String bucket, final String key, final long size, final Sink sink ) {
+    final int ranges = (int) Math.max( 1, ( size + rangeSize - 1 ) / rangeSize );
+    final Result result = new Result( bucket, key, size, ranges, Math.min( parallelism, ranges ) );
+    N4j.print( "Downloading object " + key + " length " + size + " as " + ranges + " range(s) with up to " +
+        result.getParallelism( ) + " in flight" );
+    final long start = System.nanoTime( );
+    final ExecutorService executor = Executors.newFixedThreadPool( result.getParallelism( ), new ThreadFactoryBuilder( )
+        .setDaemon( true )
+        .setNameFormat( "n4j-ranged-get-%d" )
+        .build( ) );
+    try {
+      final ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>( executor );
+      for ( int range = 0; range < ranges; range++ ) {
+        final long offset = range * rangeSize;
+        final long length = Math.min( rangeSize, size - offset );
+        completion.submit( ( ) -> {
+          downloadRange( bucket, key, offset, length, sink, result );
+          return null;
+        } );
+      }
+      for ( int i = 0; i < ranges; i++ ) {
+        completion.take( ).get( );
+      }
+      result.complete( System.nanoTime( ) - start );
+      N4j.print( result.toString( ) );
+      return result;
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      throw new AmazonClientException( "Interrupted downloading object " + key, e );
+    } catch ( final ExecutionException e ) {
+      final Throwable cause = e.getCause( );
+      if ( cause instanceof AmazonClientException ) throw (AmazonClientException) cause;
+      throw new AmazonClientException( "Error downloading object " + key + ": " + cause, cause );
+    } finally {
+      executor.shutdownNow( );
+    }
+  }
+
+  private void downloadRange(
+      final String bucket,
+      final String key,
+      final long offset,
+      final long length,
+      final Sink sink,
+      final Result result
+  ) throws IOException {
+    final long rangeStart = System.nanoTime( );
+    if ( length == 0 ) {
+      sink.write( offset, length, new ByteArrayInputStream( new byte[ 0 ] ) );
+    } else {
+      try ( final S3Object object = s3.getObject( new GetObjectRequest( bucket, key ).withRange( offset, offset + length - 1 ) ) ) {
+        final long contentLength = object.getObjectMetadata( ).getContentLength( );
+        if ( contentLength != length ) {
+          throw new IOException( "Expected " + length + " bytes at offset " + offset + " but content length is " + contentLength );
+        }
+        sink.write( offset, length, object.getObjectContent( ) );
+      }
+    }
+    result.rangeLatencies.record( System.nanoTime( ) - rangeStart );
+  }
+
+  /**
+   * Outcome of a download.
+   */
+  public static final class Result {
+    private final String bucket;
+    private final String key;
+    private final long size;
+    private final int ranges;
+    private final int parallelism;
+    private final Latencies rangeLatencies = new Latencies( );
+    private volatile long elapsedNanos;
+
+    private Result( final String bucket, final String key, final long size, final int ranges, final int parallelism ) {
+      this.bucket = bucket;
+      this.key = key;
+      this.size = size;
+      this.ranges = ranges;
+      this.parallelism = parallelism;
+    }
+
+    private void complete( final long elapsedNanos ) {
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getBucket( ) {
+      return bucket;
+    }
+
+    public String getKey( ) {
+      return key;
+    }
+
+    public long getSize( ) {
+      return size;
+    }
+
+    public int getRanges( ) {
+      return ranges;
+    }
+
+    public int getParallelism( ) {
+      return parallelism;
+    }
+
+    /**
+     * Latencies for range gets, including writing to the sink.
+     */
+    public Latencies getRangeLatencies( ) {
+      return rangeLatencies;
+    }
+
+    public long getElapsedMillis( ) {
+      return TimeUnit.NANOSECONDS.toMillis( elapsedNanos );
+    }
+
+    /**
+     * Aggregate throughput from the start of the first range to completion.
+     */
+    public double getMebibytesPerSecond( ) {
+      return elapsedNanos == 0 ? 0d : ( size / ( 1024d * 1024d ) ) / ( elapsedNanos / 1_000_000_000d );
+    }
+
+    @Override
+    public String toString( ) {
+      return String.format(
+          "Ranged download %s/%s complete in %dms [size:%d ranges:%d parallelism:%d (%.2fMiB/s)] range %s",
+          bucket, key, getElapsedMillis( ), size, ranges, parallelism, getMebibytesPerSecond( ), rangeLatencies );
+    }
+  }
+}
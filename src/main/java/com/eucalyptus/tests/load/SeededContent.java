@@ -0,0 +1,254 @@
+package com.eucalyptus.tests.load;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Pseudo-random object content that is regenerated from a seed.
+ *
+ * Each 8 byte word of content is a hash of the seed and the word position
+ * so any range of an object can be generated or verified independently,
+ * e.g. for ranged gets or multipart upload parts. Nothing is stored and
+ * streams do not allocate per read.
+ */
+public final class SeededContent {
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  private final long seed;
+
+  public SeededContent( final long seed ) {
+    this.seed = seed;
+  }
+
+  /**
+   * Content seeded from an object key, so the content can be verified by
+   * any client that knows the key.
+   */
+  public static SeededContent forKey( final String key ) {
+    return new SeededContent( key.hashCode( ) );
+  }
+
+  public long getSeed( ) {
+    return seed;
+  }
+
+  /**
+   * Generate content into the given array.
+   *
+   * @param offset The offset of the content in the object
+   * @param bytes The array to fill
+   * @param index The index in the array to start at
+   * @param length The number of bytes to generate
+   */
+  public void fill( final long offset, final byte[] bytes, final int index, final int length ) {
+    long position = offset;
+    int current = index;
+    final int end = index + length;
+    while ( current < end && ( position & 7 ) != 0 ) {
+      bytes[ current++ ] = at( position++ );
+    }
+    long wordIndex = position >>> 3;
+    for ( ; current + 8 <= end; current += 8 ) {
+      final long word = word( wordIndex++ );
+      bytes[ current ] = (byte) word;
+      bytes[ current + 1 ] = (byte) ( word >>> 8 );
+      bytes[ current + 2 ] = (byte) ( word >>> 16 );
+      bytes[ current + 3 ] = (byte) ( word >>> 24 );
+      bytes[ current + 4 ] = (byte) ( word >>> 32 );
+      bytes[ current + 5 ] = (byte) ( word >>> 40 );
+      bytes[ current + 6 ] = (byte) ( word >>> 48 );
+      bytes[ current + 7 ] = (byte) ( word >>> 56 );
+    }
+    position = wordIndex << 3;
+    while ( current < end ) {
+      bytes[ current++ ] = at( position++ );
+    }
+  }
+
+  /**
+   * Open a stream for a range of the content.
+   *
+   * The stream supports mark and reset for any read limit.
+   *
+   * @param offset The offset of the content in the object
+   * @param length The length of the range in bytes
+   */
+  public InputStream stream( final long offset, final long length ) {
+    if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Invalid range " + offset + "/" + length );
+    return new ContentInputStream( offset, length );
+  }
+
+  /**
+   * Open a verifier for a range of the content.
+   *
+   * Writing content that does not match fails with an IOException
+   * identifying the offset of the first mismatch, closing fails if less
+   * than the expected length was written.
+   *
+   * @param offset The offset of the content in the object
+   * @param length The expected length of the range in bytes
+   */
+  public Verifier verifier( final long offset, final long length ) {
+    if ( offset < 0 || length < 0 ) throw new IllegalArgumentException( "Invalid range " + offset + "/" + length );
+    return new Verifier( offset, length );
+  }
+
+  /**
+   * Verify a stream of content, the stream is closed.
+   *
+   * @param in The content, e.g. a (ranged) get object stream
+   * @param offset The offset of the content in the object
+   * @param length The expected length in bytes
+   * @throws IOException If the content does not match or on error reading
+   */
+  public void verify( final InputStream in, final long offset, final long length ) throws IOException {
+    try ( final InputStream content = in;
+          final Verifier verifier = verifier( offset, length ) ) {
+      ByteStreams.copy( content, verifier );
+    }
+  }
+
+  private byte at( final long position ) {
+    return (byte) ( word( position >>> 3 ) >>> ( ( position & 7 ) << 3 ) );
+  }
+
+  /**
+   * SplitMix64 of the seeded word position
+   */
+  private long word( final long index ) {
+    long z = seed + ( index + 1 ) * GOLDEN_GAMMA;
+    z = ( z ^ ( z >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+    z = ( z ^ ( z >>> 27 ) ) * 0x94D049BB133111EBL;
+    return z ^ ( z >>> 31 );
+  }
+
+  public final class Verifier extends OutputStream {
+    private final long offset;
+    private final long length;
+    private long position;
+
+    private Verifier( final long offset, final long length ) {
+      this.offset = offset;
+      this.length = length;
+      this.position = offset;
+    }
+
+    /**
+     * The number of bytes verified so far.
+     */
+    public long getVerified( ) {
+      return position - offset;
+    }
+
+    @Override
+    public void write( final int b ) throws IOException {
+      checkRemaining( 1 );
+      if ( at( position ) != (byte) b ) throw mismatch( position );
+      position++;
+    }
+
+    @Override
+    public void write( final byte[] bytes, final int index, final int count ) throws IOException {
+      if ( index < 0 || count < 0 || count > bytes.length - index ) throw new IndexOutOfBoundsException( );
+      checkRemaining( count );
+      int current = index;
+      final int end = index + count;
+      while ( current < end && ( position & 7 ) != 0 ) {
+        write( bytes[ current++ ] );
+      }
+      for ( ; current + 8 <= end; current += 8 ) {
+        final long value = ( bytes[ current ] & 0xFFL ) |
+            ( bytes[ current + 1 ] & 0xFFL ) << 8 |
+            ( bytes[ current + 2 ] & 0xFFL ) << 16 |
+            ( bytes[ current + 3 ] & 0xFFL ) << 24 |
+            ( bytes[ current + 4 ] & 0xFFL ) << 32 |
+            ( bytes[ current + 5 ] & 0xFFL ) << 40 |
+            ( bytes[ current + 6 ] & 0xFFL ) << 48 |
+            ( bytes[ current + 7 ] & 0xFFL ) << 56;
+        final long word = word( position >>> 3 );
+        if ( value != word ) throw mismatch( position + ( Long.numberOfTrailingZeros( value ^ word ) >>> 3 ) );
+        position += 8;
+      }
+      while ( current < end ) {
+        write( bytes[ current++ ] );
+      }
+    }
+
+    @Override
+    public void close( ) throws IOException {
+      if ( getVerified( ) != length ) {
+        throw new IOException( "Expected " + length + " bytes at offset " + offset + " but got " + getVerified( ) );
+      }
+    }
+
+    private void checkRemaining( final int count ) throws IOException {
+      if ( count > offset + length - position ) {
+        throw new IOException( "Expected " + length + " bytes at offset " + offset + " but got more" );
+      }
+    }
+
+    private IOException mismatch( final long at ) {
+      return new IOException( "Content mismatch at offset " + at + " for seed " + seed );
+    }
+  }
+
+  private final class ContentInputStream extends InputStream {
+    private final long end;
+    private long position;
+    private long mark;
+
+    private ContentInputStream( final long offset, final long length ) {
+      this.end = offset + length;
+      this.position = offset;
+      this.mark = offset;
+    }
+
+    @Override
+    public int read( ) {
+      if ( position >= end ) return -1;
+      return at( position++ ) & 0xFF;
+    }
+
+    @Override
+    public int read( final byte[] bytes, final int index, final int count ) {
+      if ( index < 0 || count < 0 || count > bytes.length - index ) throw new IndexOutOfBoundsException( );
+      if ( count == 0 ) return 0;
+      if ( position >= end ) return -1;
+      final int read = (int) Math.min( count, end - position );
+      fill( position, bytes, index, read );
+      position += read;
+      return read;
+    }
+
+    @Override
+    public long skip( final long count ) {
+      final long skipped = Math.max( 0, Math.min( count, end - position ) );
+      position += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available( ) {
+      return (int) Math.min( Integer.MAX_VALUE, end - position );
+    }
+
+    @Override
+    public boolean markSupported( ) {
+      return true;
+    }
+
+    @Override
+    public void mark( final int readLimit ) {
+      mark = position;
+    }
+
+    @Override
+    public void reset( ) {
+      position = mark;
+    }
+  }
+}
@@ -7,19 +7,18 @@ import com.amazonaws.auth.BasicAWSCredentials
 import com.amazonaws.services.cloudformation.AmazonCloudFormationClient
 import com.amazonaws.services.cloudformation.model.CreateStackRequest
 import com.amazonaws.services.cloudformation.model.DeleteStackRequest
-import com.amazonaws.services.cloudformation.model.DescribeStacksRequest
 import com.eucalyptus.tests.awssdk.N4j
+import com.eucalyptus.tests.awssdk.RequestMetrics
+import com.eucalyptus.tests.awssdk.StateWatcher
 import org.junit.AfterClass
-import org.junit.Assert
 import org.junit.BeforeClass
 import org.junit.Test
 
-import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.atomic.AtomicInteger
 
 import static com.eucalyptus.tests.awssdk.N4j.ACCESS_KEY
 import static com.eucalyptus.tests.awssdk.N4j.SECRET_KEY
+import static com.eucalyptus.tests.awssdk.StateWatcher.ResourceType.STACK
 import static org.junit.Assert.fail
 
 /**
@@ -260,7 +259,7 @@ class StackChurnLoadTest {
         socketTimeout: TimeUnit.MINUTES.toMillis( 2 )
     ) )
     cf.setEndpoint(N4j.CF_ENDPOINT )
-    cf
+    RequestMetrics.instrument( cf )
   }
 
   @Test
@@ -268,94 +267,47 @@ class StackChurnLoadTest {
     final String namePrefix = "x-${UUID.randomUUID().toString().substring(0, 13)}-"
     N4j.print( "Using resource prefix for test: " + namePrefix )
 
-    final long startTime = System.currentTimeMillis( )
-    final List<List<Runnable>> allCleanupTasks = new ArrayList<>( )
-    try {
+    LoadScenario.named( 'stack-churn' ).withCloseable { LoadScenario scenario ->
       final int threads = 20
       final int stacks  = 25
-      N4j.print( "Creating ${stacks} stacks in ${threads} threads" )
-      final AtomicInteger successCount = new AtomicInteger(0)
-      final CountDownLatch latch = new CountDownLatch( threads )
-      ( 1..threads ).each { Integer thread ->
-        final List<Runnable> cleanupTasks = [] as List<Runnable>
-        allCleanupTasks << cleanupTasks
-        Thread.start {
-          try {
-            final AmazonCloudFormationClient cf = getCloudFormationClient( testAcctAdminCredentials )
-            ( 1..stacks ).each { Integer stack ->
-              String stackName = "${namePrefix}stack-${thread}-${stack}"
-              N4j.print( "[${thread}] Creating stack ${stackName} ${stack}/${stacks}" )
-              cf.createStack(new CreateStackRequest(stackName: stackName, templateBody: TEMPLATE))
-              (1..100).find { Integer iter ->
-                sleep(10000)
-                N4j.print("[${thread}] Waiting for stack ${stackName} ${stack}/${stacks} to be created (${5 * iter}s)")
-                String stackStatus = cf.describeStacks(new DescribeStacksRequest(stackName: stackName)).with { res ->
-                  res?.stacks?.getAt(0)?.stackStatus
-                }
-                if (stackStatus == 'CREATE_COMPLETE') {
-                  stackStatus
-                } else if (stackStatus == 'CREATE_IN_PROGRESS') {
-                  null
-                } else {
-                  fail("[${thread}] Unexpected stack ${stackName} staus ${stackStatus}")
-                }
-              }
+      final AmazonCloudFormationClient cf = getCloudFormationClient( testAcctAdminCredentials )
+      scenario.cleanup{ cf.shutdown( ) }
+      final StateWatcher watcher = new StateWatcher( null, cf )
+      scenario.cleanup{ watcher.close( ) }
+      final LoadScenario.Phase churn = scenario.phase( 'churn' ).threads( threads ).iterations( stacks )
+      churn.run{ LoadScenario.Iteration iteration ->
+        String stackName = "${namePrefix}stack-${iteration.worker}-${iteration.number}"
+        iteration.print( "Creating stack ${stackName} ${iteration}" )
+        String stackId = cf.createStack(new CreateStackRequest(stackName: stackName, templateBody: TEMPLATE)).stackId
 
-              N4j.print("[${thread}] Deleting stack ${stackName} ${stack}/${stacks}")
-              cf.deleteStack(new DeleteStackRequest(stackName: stackName))
-              (1..100).find { Integer iter ->
-                sleep(10000)
-                N4j.print("[${thread}] Waiting for stack ${stackName} ${stack}/${stacks} to be deleted (${5 * iter}s)")
-                String stackStatus = cf.describeStacks(new DescribeStacksRequest(stackName: stackName)).with { res ->
-                  res?.stacks?.getAt(0)?.stackStatus
-                }
-                if (stackStatus == null || stackStatus == 'DELETE_COMPLETE') {
-                  'DELETE_COMPLETE'
-                } else if (stackStatus == 'DELETE_IN_PROGRESS') {
-                  null
-                } else if (stackStatus == 'CREATE_COMPLETE') {
-                  N4j.print("[${thread}] Stack delete not in progress, retrying")
-                  cf.deleteStack(new DeleteStackRequest(stackName: stackName))
-                  null
-                } else {
-                  fail("[${thread}] Unexpected stack ${stackName} status ${stackStatus} for ${stack}/${stacks}")
-                }
-              }
-            }
-
-            successCount.incrementAndGet( )
-          } finally {
-            latch.countDown( )
-            N4j.print("[${thread}] Thread completed")
-          }
+        iteration.print( "Waiting for stack ${stackName} ${iteration} to be created" )
+        String createState = watcher.await( STACK, stackId,
+            [ 'CREATE_COMPLETE', 'CREATE_FAILED', 'ROLLBACK_IN_PROGRESS', 'ROLLBACK_FAILED', 'ROLLBACK_COMPLETE' ], 20, TimeUnit.MINUTES
+        ).exceptionally{ Throwable t ->
+          iteration.print( "Error waiting for stack ${stackName} ${iteration}: ${t.message}" )
+          'unknown'
+        }.get( )
+        if ( createState != 'CREATE_COMPLETE' ) {
+          fail("[${iteration.worker}] Unexpected stack ${stackName} status ${createState} for ${iteration}")
         }
-      }
-      latch.await( )
-      Assert.assertEquals( "All threads successful", threads, successCount.get( ) )
 
-      N4j.print( "Test complete in ${System.currentTimeMillis()-startTime}ms" )
-    } finally {
-      // Attempt to clean up anything we created
-      N4j.print( "Running cleanup tasks" )
-      final long cleanupStart = System.currentTimeMillis( )
-      final CountDownLatch cleanupLatch = new CountDownLatch( allCleanupTasks.size( ) )
-      allCleanupTasks.each { List<Runnable> cleanupTasks ->
-        Thread.start {
-          try {
-            cleanupTasks.reverseEach { Runnable cleanupTask ->
-              try {
-                cleanupTask.run()
-              } catch ( Exception e ) {
-                e.printStackTrace( )
-              }
-            }
-          } finally {
-            cleanupLatch.countDown( )
-          }
+        String deleteState = 'DELETE_FAILED'
+        for ( int attempt = 0; attempt < 3 && deleteState == 'DELETE_FAILED'; attempt++ ) {
+          iteration.print( "Deleting stack ${stackName} ${iteration}" )
+          cf.deleteStack(new DeleteStackRequest(stackName: stackId))
+          iteration.print( "Waiting for stack ${stackName} ${iteration} to be deleted" )
+          deleteState = watcher.await( STACK, stackId,
+              [ 'DELETE_COMPLETE', 'DELETE_FAILED', StateWatcher.MISSING ], 20, TimeUnit.MINUTES
+          ).exceptionally{ Throwable t ->
+            iteration.print( "Error waiting for stack ${stackName} ${iteration}: ${t.message}" )
+            'unknown'
+          }.get( ) ?: 'DELETE_COMPLETE'
+        }
+        if ( deleteState != 'DELETE_COMPLETE' ) {
+          fail("[${iteration.worker}] Unexpected stack ${stackName} status ${deleteState} for ${iteration}")
         }
       }
-      cleanupLatch.await( )
-      N4j.print( "Completed cleanup tasks in ${System.currentTimeMillis()-cleanupStart}ms" )
+      N4j.print( "Stack state describes: ${watcher.describeCount}" )
     }
   }
 }
@@ -0,0 +1,310 @@
+package com.eucalyptus.tests.local;
+
+import com.eucalyptus.tests.awssdk.N4j;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * In-process stand-in for the cloud services used by the harness.
+ *
+ * Serves the subset of the EC2, S3, SQS, IAM and Eucalyptus properties and
+ * services APIs that discovery, account pooling and the load tests use, so
+ * harness overhead (client creation, signing, waiters, payloads) can be
+ * measured without a cloud. Requests are authenticated by access key,
+ * signatures are not verified. State is held in memory for the life of the
+ * JVM, except for object content which is stored in a temporary directory
+ * under the data directory that is deleted when the local cloud stops.
+ *
+ * Latency and failures can be injected for all requests, failures use the
+ * error format of the service so SDK retries behave as for a real cloud.
+ *
+ * The local cloud is configured via system properties:
+ *
+ *   n4j.local-cloud                - use the local cloud for discovery (default false)
+ *   n4j.local-cloud.port           - port to listen on (default 0, any free port)
+ *   n4j.local-cloud.latency        - latency added to each request (default 0)
+ *   n4j.local-cloud.jitter         - maximum random latency added to each request (default 0)
+ *   n4j.local-cloud.failure-rate   - fraction of requests that fail (default 0)
+ *   n4j.local-cloud.failure-code   - error code for failed requests (default ServiceUnavailable)
+ *   n4j.local-cloud.instance-delay - time instances are pending or shutting-down (default 1s)
+ *   n4j.local-cloud.version        - Eucalyptus version reported (default 5.0.0)
+ *   n4j.local-cloud.data-dir       - directory for object content (default java.io.tmpdir)
+ *
+ * The local cloud can also be run standalone:
+ *
+ *   LocalCloud [PORT]
+ */
+public final class LocalCloud {
+
+  private static final boolean ENABLED = Boolean.valueOf( System.getProperty( "n4j.local-cloud", "false" ) );
+  private static final int PORT = Integer.getInteger( "n4j.local-cloud.port", 0 );
+  private static final long LATENCY_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.local-cloud.latency", "0" ), 0L );
+  private static final long JITTER_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.local-cloud.jitter", "0" ), 0L );
+  private static final double FAILURE_RATE =
+      Double.parseDouble( System.getProperty( "n4j.local-cloud.failure-rate", "0" ) );
+  private static final String FAILURE_CODE = System.getProperty( "n4j.local-cloud.failure-code", "ServiceUnavailable" );
+  private static final long INSTANCE_DELAY_MILLIS =
+      N4j.parseInterval( System.getProperty( "n4j.local-cloud.instance-delay", "1s" ), TimeUnit.SECONDS.toMillis( 1 ) );
+  private static final String VERSION = System.getProperty( "n4j.local-cloud.version", "5.0.0" );
+  private static final String DATA_DIR = System.getProperty( "n4j.local-cloud.data-dir", System.getProperty( "java.io.tmpdir" ) );
+
+  private static LocalCloud instance;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final String baseUrl;
+  private final Path dataDirectory;
+  private final LocalAccounts accounts = new LocalAccounts( );
+  private final Map<String,LocalService> services = new LinkedHashMap<>( );
+
+  private LocalCloud( final int port ) throws IOException {
+    dataDirectory = Files.createTempDirectory( Paths.get( DATA_DIR ), "n4j-local-cloud-" );
+    Runtime.getRuntime( ).addShutdownHook( new Thread( this::deleteData, "n4j-local-cloud-cleanup" ) );
+    server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress( ), port ), 1024 );
+    executor = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder( ).setDaemon( true ).setNameFormat( "n4j-local-cloud-%d" ).build( ) );
+    baseUrl = "http://" + server.getAddress( ).getAddress( ).getHostAddress( ) + ":" + server.getAddress( ).getPort( );
+
+    final LocalQuery query = new LocalQuery( );
+    services.put( "compute", new LocalEc2( endpoint( "compute" ), INSTANCE_DELAY_MILLIS ) );
+    services.put( "objectstorage", new LocalS3( dataDirectory ) );
+    services.put( "simplequeue", new LocalSqs( endpoint( "simplequeue" ) ) );
+    services.put( "Euare", new LocalIam( accounts ) );
+    services.put( "Tokens", query );
+    services.put( "AutoScaling", query );
+    services.put( "LoadBalancing", query );
+    services.put( "CloudFormation", query );
+    services.put( "CloudWatch", query );
+    final Map<String,String> serviceTypes = new LinkedHashMap<>( );
+    for ( final String service : services.keySet( ) ) {
+      serviceTypes.put( service.toLowerCase( ), endpoint( service ) );
+    }
+    serviceTypes.put( "properties", endpoint( "Properties" ) );
+    final LocalEuca euca = new LocalEuca( serviceTypes );
+    services.put( "Properties", euca );
+    services.put( "Empyrean", euca );
+
+    server.createContext( "/", this::handle );
+    server.setExecutor( executor );
+    server.start( );
+  }
+
+  /**
+   * True if the local cloud should be used instead of discovering a cloud.
+   */
+  public static boolean isEnabled( ) {
+    return ENABLED;
+  }
+
+  /**
+   * Get the local cloud for this JVM, starting it on first use.
+   */
+  public static synchronized LocalCloud get( ) throws IOException {
+    if ( instance == null ) {
+      instance = new LocalCloud( PORT );
+      N4j.print( "Started local cloud at " + instance.baseUrl );
+    }
+    return instance;
+  }
+
+  /**
+   * The endpoint for a service, e.g. compute or objectstorage
+   */
+  public String endpoint( final String service ) {
+    return baseUrl + "/services/" + service;
+  }
+
+  public int getPort( ) {
+    return server.getAddress( ).getPort( );
+  }
+
+  /**
+   * Point N4j at the local cloud using the system account admin credentials.
+   */
+  public void applyEndpoints( ) {
+    N4j.EC2_ENDPOINT = endpoint( "compute" );
+    N4j.AS_ENDPOINT = endpoint( "AutoScaling" );
+    N4j.ELB_ENDPOINT = endpoint( "LoadBalancing" );
+    N4j.CF_ENDPOINT = endpoint( "CloudFormation" );
+    N4j.CW_ENDPOINT = endpoint( "CloudWatch" );
+    N4j.IAM_ENDPOINT = endpoint( "Euare" );
+    N4j.S3_ENDPOINT = endpoint( "objectstorage" );
+    N4j.SQS_ENDPOINT = endpoint( "simplequeue" );
+    N4j.TOKENS_ENDPOINT = endpoint( "Tokens" );
+    N4j.SERVICES_ENDPOINT = endpoint( "Empyrean" );
+    N4j.PROPERTIES_ENDPOINT = endpoint( "Properties" );
+    N4j.ACCESS_KEY = LocalAccounts.ADMIN_ACCESS_KEY;
+    N4j.SECRET_KEY = LocalAccounts.ADMIN_SECRET_KEY;
+    N4j.ACCOUNT_ID = LocalAccounts.SYSTEM_ACCOUNT_ID;
+  }
+
+  public void stop( ) {
+    server.stop( 0 );
+    executor.shutdownNow( );
+    deleteData( );
+    synchronized ( LocalCloud.class ) {
+      if ( instance == this ) instance = null;
+    }
+  }
+
+  public static void main( final String[] args ) throws Exception {
+    final LocalCloud cloud = new LocalCloud( args.length > 0 ? Integer.parseInt( args[0] ) : PORT );
+    System.out.println( "Local cloud listening at " + cloud.baseUrl );
+    for ( final String service : cloud.services.keySet( ) ) {
+      System.out.println( String.format( "  %-15s %s", service, cloud.endpoint( service ) ) );
+    }
+    System.out.println( "Access key " + LocalAccounts.ADMIN_ACCESS_KEY );
+    System.out.println( "Secret key " + LocalAccounts.ADMIN_SECRET_KEY );
+    Thread.currentThread( ).join( );
+  }
+
+  private void handle( final HttpExchange exchange ) {
+    try {
+      final LocalRequest request = LocalRequest.read( exchange );
+      final LocalService service = services.get( request.getService( ) );
+      final LocalResponse response;
+      if ( service == null ) {
+        response = new LocalResponse( 404, ( "No service at " + exchange.getRequestURI( ).getPath( ) )
+            .getBytes( StandardCharsets.UTF_8 ) ).header( "Content-Type", "text/plain" );
+      } else {
+        response = dispatch( service, request );
+      }
+      send( exchange, request, response );
+    } catch ( final IOException e ) {
+      N4j.print( "Error handling local cloud request " + exchange.getRequestURI( ) + ": " + e );
+    } finally {
+      exchange.close( );
+    }
+  }
+
+  private LocalResponse dispatch( final LocalService service, final LocalRequest request ) {
+    try {
+      delay( );
+      if ( FAILURE_RATE > 0 && ThreadLocalRandom.current( ).nextDouble( ) < FAILURE_RATE ) {
+        throw new LocalFault( failureStatus( FAILURE_CODE ), FAILURE_CODE, "Injected failure" );
+      }
+      authenticate( request );
+      return service.handle( request );
+    } catch ( final LocalFault fault ) {
+      return service.error( request, fault );
+    } catch ( final RuntimeException e ) {
+      N4j.print( "Error in local cloud " + request.getService( ) + " request: " + e );
+      return service.error( request, new LocalFault( 500, "InternalError", String.valueOf( e ) ) );
+    }
+  }
+
+  /**
+   * Resolve the user for the request, the system account can act as another
+   * account using the DelegateAccount parameter.
+   */
+  private void authenticate( final LocalRequest request ) {
+    final LocalAccounts.AccessKey key = accounts.key( request.accessKeyId( ) );
+    if ( key == null ) {
+      throw new LocalFault( 403,
+          "objectstorage".equals( request.getService( ) ) ? "InvalidAccessKeyId" : "InvalidClientTokenId",
+          "The security token included in the request is invalid" );
+    }
+    final String delegate = request.param( "DelegateAccount" );
+    if ( delegate != null && key.getUser( ).getAccount( ).isSystem( ) ) {
+      request.setUser( accounts.lookup( delegate ).getUser( "admin" ) );
+    } else {
+      request.setUser( key.getUser( ) );
+    }
+  }
+
+  private void deleteData( ) {
+    if ( !Files.isDirectory( dataDirectory ) ) return;
+    try ( final Stream<Path> paths = Files.walk( dataDirectory ) ) {
+      paths.sorted( Comparator.reverseOrder( ) ).forEach( path -> path.toFile( ).delete( ) );
+    } catch ( final IOException e ) {
+      N4j.print( "Error deleting local cloud data " + dataDirectory + ": " + e );
+    }
+  }
+
+  private static void delay( ) {
+    final long delay = LATENCY_MILLIS + ( JITTER_MILLIS > 0 ? ThreadLocalRandom.current( ).nextLong( JITTER_MILLIS + 1 ) : 0 );
+    if ( delay > 0 ) {
+      try {
+        Thread.sleep( delay );
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread( ).interrupt( );
+      }
+    }
+  }
+
+  private static int failureStatus( final String code ) {
+    switch ( code ) {
+      case "InternalError":
+      case "InternalFailure":
+        return 500;
+      case "ServiceUnavailable":
+      case "SlowDown":
+      case "RequestLimitExceeded":
+        return 503;
+      default:
+        return 400;
+    }
+  }
+
+  private static void send(
+      final HttpExchange exchange,
+      final LocalRequest request,
+      final LocalResponse response
+  ) throws IOException {
+    // the connection is only kept alive if the request body was read to the end
+    ByteStreams.exhaust( exchange.getRequestBody( ) );
+    response.getHeaders( ).forEach( ( name, value ) -> exchange.getResponseHeaders( ).set( name, value ) );
+    exchange.getResponseHeaders( ).set( "Server", "Eucalyptus/" + VERSION );
+    exchange.getResponseHeaders( ).set( "x-amz-request-id", request.getRequestId( ) );
+    exchange.getResponseHeaders( ).set( "x-amzn-RequestId", request.getRequestId( ) );
+    final byte[] body = response.getBody( );
+    final FileChannel content = response.getContent( );
+    if ( content != null ) {
+      try ( final FileChannel in = content ) {
+        if ( response.getContentLength( ) == 0 || "HEAD".equals( request.getMethod( ) ) ) {
+          exchange.sendResponseHeaders( response.getStatus( ), -1 );
+        } else {
+          exchange.sendResponseHeaders( response.getStatus( ), response.getContentLength( ) );
+          try ( final OutputStream out = exchange.getResponseBody( ) ) {
+            final WritableByteChannel channel = Channels.newChannel( out );
+            final long end = response.getContentOffset( ) + response.getContentLength( );
+            for ( long position = response.getContentOffset( ); position < end; ) {
+              position += in.transferTo( position, end - position, channel );
+            }
+          }
+        }
+      }
+    } else if ( body == null || body.length == 0 || "HEAD".equals( request.getMethod( ) ) ) {
+      exchange.sendResponseHeaders( response.getStatus( ), -1 );
+    } else {
+      exchange.sendResponseHeaders( response.getStatus( ), body.length );
+      try ( final OutputStream out = exchange.getResponseBody( ) ) {
+        out.write( body );
+      }
+    }
+  }
+}
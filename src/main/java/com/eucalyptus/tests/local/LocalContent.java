@@ -0,0 +1,132 @@
+package com.eucalyptus.tests.local;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Object or part content stored in a file.
+ *
+ * Content is written once and deleted when no longer referenced by an
+ * object or upload. Readers open a channel so content deleted while it
+ * is being read remains readable.
+ */
+final class LocalContent {
+
+  private final Path file;
+  private final long length;
+  private final byte[] md5;
+
+  private LocalContent( final Path file, final long length, final byte[] md5 ) {
+    this.file = file;
+    this.length = length;
+    this.md5 = md5;
+  }
+
+  /**
+   * Store content from a stream, the stream is read to the end.
+   *
+   * @param directory The directory for the content file
+   * @param in The content
+   */
+  static LocalContent write( final Path directory, final InputStream in ) {
+    final Path file = newFile( directory );
+    boolean stored = false;
+    try {
+      final MessageDigest digest = MessageDigest.getInstance( "MD5" );
+      final long length = Files.copy( new DigestInputStream( in, digest ), file, StandardCopyOption.REPLACE_EXISTING );
+      stored = true;
+      return new LocalContent( file, length, digest.digest( ) );
+    } catch ( final IOException e ) {
+      throw new UncheckedIOException( e );
+    } catch ( final NoSuchAlgorithmException e ) {
+      throw new IllegalStateException( e );
+    } finally {
+      if ( !stored ) deleteQuietly( file );
+    }
+  }
+
+  /**
+   * Store the concatenation of the given content.
+   *
+   * @param directory The directory for the content file
+   * @param parts The content to concatenate
+   * @param md5 The MD5 for the concatenated content, not computed
+   */
+  static LocalContent concat( final Path directory, final List<LocalContent> parts, final byte[] md5 ) {
+    final Path file = newFile( directory );
+    long length = 0;
+    try ( final FileChannel out = FileChannel.open( file, StandardOpenOption.WRITE ) ) {
+      for ( final LocalContent part : parts ) {
+        try ( final FileChannel in = part.open( ) ) {
+          for ( long position = 0; position < part.length; ) {
+            position += in.transferTo( position, part.length - position, out );
+          }
+        }
+        length += part.length;
+      }
+      return new LocalContent( file, length, md5 );
+    } catch ( final IOException e ) {
+      deleteQuietly( file );
+      throw new UncheckedIOException( e );
+    }
+  }
+
+  /**
+   * Store a copy of this content.
+   */
+  LocalContent copy( final Path directory ) {
+    final Path copy = newFile( directory );
+    try {
+      Files.copy( file, copy, StandardCopyOption.REPLACE_EXISTING );
+      return new LocalContent( copy, length, md5 );
+    } catch ( final IOException e ) {
+      deleteQuietly( copy );
+      throw new UncheckedIOException( e );
+    }
+  }
+
+  long getLength( ) {
+    return length;
+  }
+
+  byte[] getMd5( ) {
+    return md5.clone( );
+  }
+
+  /**
+   * Open the content for reading, the caller must close the channel.
+   */
+  FileChannel open( ) throws IOException {
+    return FileChannel.open( file, StandardOpenOption.READ );
+  }
+
+  void delete( ) {
+    deleteQuietly( file );
+  }
+
+  private static Path newFile( final Path directory ) {
+    try {
+      return Files.createTempFile( directory, "content-", ".dat" );
+    } catch ( final IOException e ) {
+      throw new UncheckedIOException( e );
+    }
+  }
+
+  private static void deleteQuietly( final Path file ) {
+    try {
+      Files.deleteIfExists( file );
+    } catch ( final IOException e ) {
+      // left for directory cleanup
+    }
+  }
+}
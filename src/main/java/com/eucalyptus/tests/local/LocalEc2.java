@@ -0,0 +1,390 @@
+package com.eucalyptus.tests.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Local EC2 service.
+ *
+ * There is a single public image, a single availability zone and instances
+ * that are pending and shutting-down for the configured instance delay.
+ * Describe actions for resources that are not modelled (volumes, key pairs,
+ * addresses, etc) return an empty result.
+ */
+final class LocalEc2 extends LocalService {
+
+  static final String IMAGE_ID = "emi-00000001";
+  static final String ZONE = "local-1a";
+  static final String REGION = "eucalyptus";
+
+  private static final String[][] INSTANCE_TYPES = {
+      // name, cpu, memory, disk
+      { "t2.micro", "1", "1024", "10" },
+      { "t2.small", "1", "2048", "20" },
+      { "m1.small", "1", "256", "5" },
+      { "m1.large", "2", "512", "10" },
+  };
+
+  private final String endpoint;
+  private final long instanceDelayMillis;
+  private final ConcurrentMap<String,Instance> instances = new ConcurrentHashMap<>( );
+  private final AtomicInteger ids = new AtomicInteger( );
+
+  LocalEc2( final String endpoint, final long instanceDelayMillis ) {
+    super( "http://ec2.amazonaws.com/doc/2016-11-15/" );
+    this.endpoint = endpoint;
+    this.instanceDelayMillis = instanceDelayMillis;
+  }
+
+  @Override
+  LocalResponse handle( final LocalRequest request ) {
+    final String action = request.required( "Action" );
+    switch ( action ) {
+      case "DescribeAvailabilityZones":
+        return LocalResponse.xml( response( request, action )
+            .start( "availabilityZoneInfo" )
+            .start( "item" )
+            .value( "zoneName", ZONE )
+            .value( "zoneState", "available" )
+            .value( "regionName", REGION )
+            .start( "messageSet" ).end( )
+            .end( ) );
+      case "DescribeRegions":
+        return LocalResponse.xml( response( request, action )
+            .start( "regionInfo" )
+            .start( "item" )
+            .value( "regionName", REGION )
+            .value( "regionEndpoint", endpoint )
+            .end( ) );
+      case "DescribeImages":
+        return describeImages( request, action );
+      case "DescribeInstanceTypes": {
+        final Xml xml = response( request, action ).start( "instanceTypeDetails" );
+        for ( final String[] type : INSTANCE_TYPES ) {
+          xml.start( "item" )
+              .value( "name", type[0] )
+              .value( "cpu", type[1] )
+              .value( "memory", type[2] )
+              .value( "disk", type[3] )
+              .end( );
+        }
+        return LocalResponse.xml( xml );
+      }
+      case "RunInstances":
+        return runInstances( request, action );
+      case "DescribeInstances":
+        return describeInstances( request, action );
+      case "TerminateInstances":
+        return terminateInstances( request, action );
+      case "CreateTags":
+      case "DeleteTags":
+        return LocalResponse.xml( response( request, action ).value( "return", true ) );
+      default:
+        if ( isDescribe( action ) ) {
+          return LocalResponse.xml( response( request, action ) );
+        }
+        throw LocalFault.unsupported( action );
+    }
+  }
+
+  @Override
+  LocalResponse error( final LocalRequest request, final LocalFault fault ) {
+    return ec2Error( request, fault );
+  }
+
+  /**
+   * Error response in the EC2 format, also used for Eucalyptus services.
+   */
+  static LocalResponse ec2Error( final LocalRequest request, final LocalFault fault ) {
+    return LocalResponse.xml( fault.getStatus( ), new Xml( )
+        .start( "Response" )
+        .start( "Errors" )
+        .start( "Error" )
+        .value( "Code", fault.getCode( ) )
+        .value( "Message", fault.getMessage( ) )
+        .end( )
+        .end( )
+        .value( "RequestID", request.getRequestId( ) ) );
+  }
+
+  /**
+   * Start an EC2 format response, ACTIONResponse with a requestId.
+   */
+  static Xml ec2Response( final String namespace, final LocalRequest request, final String action ) {
+    return new Xml( ).start( action + "Response", namespace ).value( "requestId", request.getRequestId( ) );
+  }
+
+  private Xml response( final LocalRequest request, final String action ) {
+    return ec2Response( getNamespace( ), request, action );
+  }
+
+  private LocalResponse describeImages( final LocalRequest request, final String action ) {
+    final Map<String,String> image = new LinkedHashMap<>( );
+    image.put( "image-id", IMAGE_ID );
+    image.put( "image-type", "machine" );
+    image.put( "root-device-type", "instance-store" );
+    image.put( "is-public", "true" );
+    image.put( "virtualization-type", "hvm" );
+    image.put( "architecture", "x86_64" );
+    image.put( "state", "available" );
+    final List<String> imageIds = request.list( "ImageId" );
+    final List<String> owners = request.list( "Owner" );
+    final boolean matched = matches( request.filters( ), image ) &&
+        ( imageIds.isEmpty( ) || imageIds.contains( IMAGE_ID ) ) &&
+        ( owners.isEmpty( ) || owners.contains( LocalAccounts.SYSTEM_ACCOUNT_ID ) ||
+            ( owners.contains( "self" ) && request.getAccount( ).isSystem( ) ) );
+    final Xml xml = response( request, action ).start( "imagesSet" );
+    if ( matched ) {
+      xml.start( "item" )
+          .value( "imageId", IMAGE_ID )
+          .value( "imageLocation", "local/local-image.img.manifest.xml" )
+          .value( "imageState", "available" )
+          .value( "imageOwnerId", LocalAccounts.SYSTEM_ACCOUNT_ID )
+          .value( "isPublic", true )
+          .value( "architecture", "x86_64" )
+          .value( "platform", "linux" )
+          .value( "imageType", "machine" )
+          .value( "name", "local-image" )
+          .value( "rootDeviceType", "instance-store" )
+          .value( "virtualizationType", "hvm" )
+          .value( "hypervisor", "xen" )
+          .end( );
+    }
+    return LocalResponse.xml( xml );
+  }
+
+  private LocalResponse runInstances( final LocalRequest request, final String action ) {
+    final String imageId = request.required( "ImageId" );
+    if ( !IMAGE_ID.equals( imageId ) ) {
+      throw new LocalFault( 400, "InvalidAMIID.NotFound", "Image not found: " + imageId );
+    }
+    final String zone = request.param( "Placement.AvailabilityZone", ZONE );
+    if ( !ZONE.equals( zone ) ) {
+      throw new LocalFault( 400, "InvalidParameterValue", "Availability zone not found: " + zone );
+    }
+    final int minCount = request.intParam( "MinCount", 1 );
+    final int maxCount = request.intParam( "MaxCount", minCount );
+    if ( minCount < 1 || maxCount < minCount ) {
+      throw LocalFault.invalidParameter( "Invalid instance count " + minCount + "-" + maxCount );
+    }
+    final String reservationId = "r-" + id( );
+    final List<Instance> launched = new ArrayList<>( );
+    for ( int i = 0; i < maxCount; i++ ) {
+      final Instance instance = new Instance(
+          "i-" + id( ),
+          reservationId,
+          request.getAccount( ).getId( ),
+          imageId,
+          request.param( "InstanceType", "m1.small" ),
+          request.param( "KeyName" ),
+          request.param( "ClientToken" ),
+          i );
+      instances.put( instance.id, instance );
+      launched.add( instance );
+    }
+    final Xml xml = response( request, action )
+        .value( "reservationId", reservationId )
+        .value( "ownerId", request.getAccount( ).getId( ) )
+        .start( "groupSet" ).end( )
+        .start( "instancesSet" );
+    final long now = System.currentTimeMillis( );
+    launched.forEach( instance -> instance( xml, instance, now ) );
+    return LocalResponse.xml( xml );
+  }
+
+  private LocalResponse describeInstances( final LocalRequest request, final String action ) {
+    final long now = System.currentTimeMillis( );
+    instances.values( ).removeIf( instance -> instance.isExpired( now ) );
+    final Map<String,List<String>> filters = request.filters( );
+    final Map<String,List<Instance>> reservations = new LinkedHashMap<>( );
+    for ( final Instance instance : owned( request, request.list( "InstanceId" ) ) ) {
+      final Map<String,String> attributes = new LinkedHashMap<>( );
+      attributes.put( "instance-id", instance.id );
+      attributes.put( "instance-state-name", instance.state( now )[1] );
+      attributes.put( "image-id", instance.imageId );
+      attributes.put( "instance-type", instance.type );
+      attributes.put( "availability-zone", ZONE );
+      attributes.put( "reservation-id", instance.reservationId );
+      if ( instance.keyName != null ) attributes.put( "key-name", instance.keyName );
+      if ( instance.clientToken != null ) attributes.put( "client-token", instance.clientToken );
+      if ( matches( filters, attributes ) ) {
+        reservations.computeIfAbsent( instance.reservationId, id -> new ArrayList<>( ) ).add( instance );
+      }
+    }
+    final Xml xml = response( request, action ).start( "reservationSet" );
+    for ( final List<Instance> reservation : reservations.values( ) ) {
+      xml.start( "item" )
+          .value( "reservationId", reservation.get( 0 ).reservationId )
+          .value( "ownerId", reservation.get( 0 ).ownerId )
+          .start( "groupSet" ).end( )
+          .start( "instancesSet" );
+      reservation.forEach( instance -> instance( xml, instance, now ) );
+      xml.end( ).end( );
+    }
+    return LocalResponse.xml( xml );
+  }
+
+  private LocalResponse terminateInstances( final LocalRequest request, final String action ) {
+    final List<String> instanceIds = request.list( "InstanceId" );
+    if ( instanceIds.isEmpty( ) ) throw LocalFault.missingParameter( "InstanceId" );
+    final long now = System.currentTimeMillis( );
+    final Xml xml = response( request, action ).start( "instancesSet" );
+    for ( final Instance instance : owned( request, instanceIds ) ) {
+      final String[] previous = instance.state( now );
+      instance.terminate( now );
+      final String[] current = instance.state( now );
+      xml.start( "item" )
+          .value( "instanceId", instance.id )
+          .start( "currentState" ).value( "code", current[0] ).value( "name", current[1] ).end( )
+          .start( "previousState" ).value( "code", previous[0] ).value( "name", previous[1] ).end( )
+          .end( );
+    }
+    return LocalResponse.xml( xml );
+  }
+
+  /**
+   * Instances for the account, all requested instances must exist.
+   */
+  private Collection<Instance> owned( final LocalRequest request, final List<String> instanceIds ) {
+    final String accountId = request.getAccount( ).getId( );
+    final List<Instance> owned = instances.values( ).stream( )
+        .filter( instance -> instance.ownerId.equals( accountId ) )
+        .filter( instance -> instanceIds.isEmpty( ) || instanceIds.contains( instance.id ) )
+        .sorted( ( i1, i2 ) -> Long.compare( i1.launched, i2.launched ) )
+        .collect( Collectors.toList( ) );
+    if ( owned.size( ) < instanceIds.size( ) ) {
+      final List<String> missing = new ArrayList<>( instanceIds );
+      owned.forEach( instance -> missing.remove( instance.id ) );
+      throw new LocalFault( 400, "InvalidInstanceID.NotFound", "Instance not found: " + missing );
+    }
+    return owned;
+  }
+
+  private void instance( final Xml xml, final Instance instance, final long now ) {
+    final String[] state = instance.state( now );
+    xml.start( "item" )
+        .value( "instanceId", instance.id )
+        .value( "imageId", instance.imageId )
+        .start( "instanceState" ).value( "code", state[0] ).value( "name", state[1] ).end( )
+        .value( "privateDnsName", "ip-" + instance.privateIp.replace( '.', '-' ) + ".local" )
+        .value( "dnsName", "running".equals( state[1] ) ? "euca-" + instance.publicIp.replace( '.', '-' ) + ".local" : "" )
+        .value( "keyName", instance.keyName )
+        .value( "amiLaunchIndex", instance.launchIndex )
+        .value( "instanceType", instance.type )
+        .value( "launchTime", new Date( instance.launched ) )
+        .start( "placement" ).value( "availabilityZone", ZONE ).value( "tenancy", "default" ).end( )
+        .start( "monitoring" ).value( "state", "disabled" ).end( )
+        .value( "privateIpAddress", instance.privateIp )
+        .value( "ipAddress", "running".equals( state[1] ) ? instance.publicIp : null )
+        .start( "groupSet" ).end( )
+        .value( "architecture", "x86_64" )
+        .value( "rootDeviceType", "instance-store" )
+        .value( "virtualizationType", "hvm" )
+        .value( "clientToken", instance.clientToken )
+        .value( "hypervisor", "xen" )
+        .value( "ebsOptimized", false )
+        .end( );
+  }
+
+  private String id( ) {
+    return String.format( "%08x", ids.incrementAndGet( ) );
+  }
+
+  /**
+   * Match EC2 filters against attribute values, an attribute without a value never matches.
+   */
+  private static boolean matches( final Map<String,List<String>> filters, final Map<String,String> attributes ) {
+    for ( final Map.Entry<String,List<String>> filter : filters.entrySet( ) ) {
+      final String value = attributes.get( filter.getKey( ) );
+      if ( value == null ) return false;
+      boolean matched = false;
+      for ( final String pattern : filter.getValue( ) ) {
+        matched |= value.matches( globToRegex( pattern ) );
+      }
+      if ( !matched ) return false;
+    }
+    return true;
+  }
+
+  private static String globToRegex( final String glob ) {
+    final StringBuilder regex = new StringBuilder( );
+    for ( final char c : glob.toCharArray( ) ) {
+      if ( c == '*' ) regex.append( ".*" );
+      else if ( c == '?' ) regex.append( '.' );
+      else regex.append( Pattern.quote( String.valueOf( c ) ) );
+    }
+    return regex.toString( );
+  }
+
+  private final class Instance {
+    private final String id;
+    private final String reservationId;
+    private final String ownerId;
+    private final String imageId;
+    private final String type;
+    private final String keyName;
+    private final String clientToken;
+    private final int launchIndex;
+    private final String privateIp;
+    private final String publicIp;
+    private final long launched = System.currentTimeMillis( );
+    private volatile long terminated;
+
+    private Instance(
+        final String id,
+        final String reservationId,
+        final String ownerId,
+        final String imageId,
+        final String type,
+        final String keyName,
+        final String clientToken,
+        final int launchIndex
+    ) {
+      final int address = ids.get( );
+      this.id = id;
+      this.reservationId = reservationId;
+      this.ownerId = ownerId;
+      this.imageId = imageId;
+      this.type = type;
+      this.keyName = keyName;
+      this.clientToken = clientToken;
+      this.launchIndex = launchIndex;
+      this.privateIp = "10." + ( ( address >> 16 ) & 0xff ) + "." + ( ( address >> 8 ) & 0xff ) + "." + ( address & 0xff );
+      this.publicIp = "172.16." + ( ( address >> 8 ) & 0xff ) + "." + ( address & 0xff );
+    }
+
+    /**
+     * The state code and name at the given time.
+     */
+    private String[] state( final long now ) {
+      if ( terminated > 0 ) {
+        return now - terminated < instanceDelayMillis ?
+            new String[]{ "32", "shutting-down" } :
+            new String[]{ "48", "terminated" };
+      }
+      return now - launched < instanceDelayMillis ?
+          new String[]{ "0", "pending" } :
+          new String[]{ "16", "running" };
+    }
+
+    private synchronized void terminate( final long now ) {
+      if ( terminated == 0 ) terminated = now;
+    }
+
+    /**
+     * Terminated instances are visible for a minute after termination completes.
+     */
+    private boolean isExpired( final long now ) {
+      return terminated > 0 && now - terminated > instanceDelayMillis + 60_000L;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.eucalyptus.tests.local;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Local Eucalyptus properties and services (Empyrean) services.
+ *
+ * Properties are held in memory, any property can be modified. Services
+ * are described as enabled with the local cloud endpoints. Both services
+ * require the system account.
+ */
+final class LocalEuca extends LocalService {
+
+  private static final String NAMESPACE = "http://msgs.eucalyptus.com/4.4.0";
+
+  private final Map<String,String> properties = new ConcurrentSkipListMap<>( );
+  private final Map<String,String> services;
+
+  /**
+   * @param services Service URIs by service type
+   */
+  LocalEuca( final Map<String,String> services ) {
+    super( NAMESPACE );
+    this.services = new TreeMap<>( services );
+    properties.put( "authentication.authorization_expiry", "5s" );
+    properties.put( "authentication.credential_download_generate_certificate", "Limited" );
+    properties.put( "bootstrap.notifications.batch_delay_seconds", "60" );
+    properties.put( "cloud.vmstate.instance_timeout", "720" );
+    properties.put( "services.simplequeue.max_message_size", "262144" );
+  }
+
+  @Override
+  LocalResponse handle( final LocalRequest request ) {
+    if ( !request.getAccount( ).isSystem( ) ) {
+      throw new LocalFault( 403, "AccessDenied", "Not authorized" );
+    }
+    final String action = request.required( "Action" );
+    switch ( action ) {
+      case "DescribeProperties": {
+        final List<String> names = request.list( "Property" );
+        final Xml xml = LocalEc2.ec2Response( NAMESPACE, request, action ).start( "properties" );
+        properties.forEach( ( name, value ) -> {
+          if ( names.isEmpty( ) || names.contains( name ) ) {
+            xml.start( "item" )
+                .value( "name", name )
+                .value( "value", value )
+                .value( "description", name )
+                .end( );
+          }
+        } );
+        return LocalResponse.xml( xml );
+      }
+      case "ModifyPropertyValue": {
+        final String name = request.required( "Name" );
+        final String value = request.param( "Value", "" );
+        final String oldValue = properties.put( name, value );
+        return LocalResponse.xml( LocalEc2.ec2Response( NAMESPACE, request, action )
+            .value( "name", name )
+            .value( "value", value )
+            .value( "oldValue", oldValue == null ? "" : oldValue ) );
+      }
+      case "DescribeServices": {
+        final List<String> types = request.filters( ).get( "service-type" );
+        final Xml xml = LocalEc2.ec2Response( NAMESPACE, request, action ).start( "serviceStatuses" );
+        services.forEach( ( type, uri ) -> {
+          if ( types == null || types.contains( type ) ) {
+            xml.start( "item" )
+                .start( "serviceId" )
+                .value( "type", type )
+                .value( "partition", type )
+                .value( "name", "local-" + type )
+                .value( "fullName", "arn:euca:eucalyptus:::" + type + "/local-" + type + "/" )
+                .value( "uri", uri )
+                .end( )
+                .value( "localState", "ENABLED" )
+                .value( "localEpoch", 0 )
+                .end( );
+          }
+        } );
+        return LocalResponse.xml( xml );
+      }
+      default:
+        throw LocalFault.unsupported( action );
+    }
+  }
+
+  @Override
+  LocalResponse error( final LocalRequest request, final LocalFault fault ) {
+    return LocalEc2.ec2Error( request, fault );
+  }
+}
@@ -0,0 +1,37 @@
+package com.eucalyptus.tests.local;
+
+/**
+ * Service error, rendered in the format of the service that raised it.
+ */
+final class LocalFault extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  private final int status;
+  private final String code;
+
+  LocalFault( final int status, final String code, final String message ) {
+    super( message );
+    this.status = status;
+    this.code = code;
+  }
+
+  static LocalFault invalidParameter( final String message ) {
+    return new LocalFault( 400, "InvalidParameterValue", message );
+  }
+
+  static LocalFault missingParameter( final String name ) {
+    return new LocalFault( 400, "MissingParameter", "Missing required parameter " + name );
+  }
+
+  static LocalFault unsupported( final String action ) {
+    return new LocalFault( 400, "InvalidAction", "Action not supported by local cloud: " + action );
+  }
+
+  int getStatus( ) {
+    return status;
+  }
+
+  String getCode( ) {
+    return code;
+  }
+}
@@ -0,0 +1,129 @@
+package com.eucalyptus.tests.local;
+
+/**
+ * Local IAM (Euare) service.
+ *
+ * Supports the account, user and access key actions used by the harness.
+ * Policies are accepted but not evaluated, all authenticated requests are
+ * allowed.
+ */
+final class LocalIam extends LocalService {
+
+  private final LocalAccounts accounts;
+
+  LocalIam( final LocalAccounts accounts ) {
+    super( "https://iam.amazonaws.com/doc/2010-05-08/" );
+    this.accounts = accounts;
+  }
+
+  @Override
+  LocalResponse handle( final LocalRequest request ) {
+    final String action = request.required( "Action" );
+    switch ( action ) {
+      case "CreateAccount": {
+        requireSystem( request );
+        final LocalAccounts.Account account = accounts.create( request.required( "AccountName" ) );
+        return done( request, account( result( action ), "Account", account ) );
+      }
+      case "DeleteAccount":
+        requireSystem( request );
+        accounts.delete( request.required( "AccountName" ) );
+        return ok( request, action );
+      case "ListAccounts": {
+        requireSystem( request );
+        final Xml xml = result( action ).start( "Accounts" );
+        accounts.list( ).forEach( account -> account( xml, "member", account ) );
+        return done( request, xml.end( ).value( "IsTruncated", false ) );
+      }
+      case "CreateUser": {
+        final LocalAccounts.User user =
+            request.getAccount( ).createUser( request.required( "UserName" ), request.param( "Path" ) );
+        return done( request, user( result( action ), user ) );
+      }
+      case "GetUser":
+        return done( request, user( result( action ), user( request ) ) );
+      case "ListUsers": {
+        final Xml xml = result( action ).start( "Users" );
+        for ( final LocalAccounts.User user : request.getAccount( ).getUsers( ) ) {
+          user( xml, user, "member" );
+        }
+        return done( request, xml.end( ).value( "IsTruncated", false ) );
+      }
+      case "DeleteUser":
+        request.getAccount( ).deleteUser( request.required( "UserName" ) );
+        return ok( request, action );
+      case "CreateAccessKey": {
+        final LocalAccounts.User user = user( request );
+        final LocalAccounts.AccessKey key = accounts.createKey( user );
+        return done( request, result( action )
+            .start( "AccessKey" )
+            .value( "UserName", user.getName( ) )
+            .value( "AccessKeyId", key.getId( ) )
+            .value( "Status", "Active" )
+            .value( "SecretAccessKey", key.getSecret( ) )
+            .value( "CreateDate", key.getCreated( ) )
+            .end( ) );
+      }
+      case "DeleteAccessKey":
+        accounts.deleteKey( user( request ), request.required( "AccessKeyId" ) );
+        return ok( request, action );
+      case "ListAccessKeys": {
+        final LocalAccounts.User user = user( request );
+        final Xml xml = result( action ).start( "AccessKeyMetadata" );
+        for ( final LocalAccounts.AccessKey key : user.getKeys( ) ) {
+          xml.start( "member" )
+              .value( "UserName", user.getName( ) )
+              .value( "AccessKeyId", key.getId( ) )
+              .value( "Status", "Active" )
+              .value( "CreateDate", key.getCreated( ) )
+              .end( );
+        }
+        return done( request, xml.end( ).value( "IsTruncated", false ) );
+      }
+      case "PutUserPolicy":
+      case "DeleteUserPolicy":
+        user( request );
+        return ok( request, action );
+      default:
+        if ( isDescribe( action ) ) {
+          return done( request, result( action ).value( "IsTruncated", false ) );
+        }
+        throw LocalFault.unsupported( action );
+    }
+  }
+
+  private static void requireSystem( final LocalRequest request ) {
+    if ( !request.getAccount( ).isSystem( ) ) {
+      throw new LocalFault( 403, "AccessDenied", "Not authorized to manage accounts" );
+    }
+  }
+
+  /**
+   * The named user or the caller if no user name is given.
+   */
+  private static LocalAccounts.User user( final LocalRequest request ) {
+    final String userName = request.param( "UserName" );
+    return userName == null ? request.getUser( ) : request.getAccount( ).getUser( userName );
+  }
+
+  private static Xml account( final Xml xml, final String element, final LocalAccounts.Account account ) {
+    return xml.start( element )
+        .value( "AccountName", account.getName( ) )
+        .value( "AccountId", account.getId( ) )
+        .end( );
+  }
+
+  private static Xml user( final Xml xml, final LocalAccounts.User user ) {
+    return user( xml, user, "User" );
+  }
+
+  private static Xml user( final Xml xml, final LocalAccounts.User user, final String element ) {
+    return xml.start( element )
+        .value( "Path", user.getPath( ) )
+        .value( "UserName", user.getName( ) )
+        .value( "UserId", user.getId( ) )
+        .value( "Arn", user.getArn( ) )
+        .value( "CreateDate", user.getCreated( ) )
+        .end( );
+  }
+}
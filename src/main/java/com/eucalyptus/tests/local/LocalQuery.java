@@ -0,0 +1,29 @@
+package com.eucalyptus.tests.local;
+
+/**
+ * Placeholder for query services that are not modelled (auto scaling, load
+ * balancing, etc).
+ *
+ * Describe and list actions return an empty result so resource cleanup
+ * and discovery work, other actions fail as unsupported.
+ */
+final class LocalQuery extends LocalService {
+
+  LocalQuery( ) {
+    super( null );
+  }
+
+  @Override
+  LocalResponse handle( final LocalRequest request ) {
+    final String action = request.required( "Action" );
+    if ( "GetCallerIdentity".equals( action ) ) {
+      return done( request, result( action )
+          .value( "Arn", request.getUser( ).getArn( ) )
+          .value( "UserId", request.getUser( ).getId( ) )
+          .value( "Account", request.getAccount( ).getId( ) ) );
+    } else if ( isDescribe( action ) ) {
+      return done( request, result( action ) );
+    }
+    throw LocalFault.unsupported( action );
+  }
+}
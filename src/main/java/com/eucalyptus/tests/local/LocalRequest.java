@@ -0,0 +1,231 @@
+package com.eucalyptus.tests.local;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A request to the local cloud with query and form parameters combined.
+ *
+ * Form bodies are read with the request, other bodies are read on use so
+ * large bodies (e.g. object content) can be streamed.
+ */
+final class LocalRequest {
+
+  private static final Pattern V4_CREDENTIAL = Pattern.compile( "Credential=([^/,\\s]+)/" );
+  private static final Pattern V2_CREDENTIAL = Pattern.compile( "^AWS ([^:\\s]+):" );
+
+  private final String method;
+  private final String service;
+  private final List<String> path;
+  private final Headers headers;
+  private final Map<String,String> params;
+  private final InputStream bodyStream;
+  private byte[] body;
+  private final String requestId = UUID.randomUUID( ).toString( );
+  private LocalAccounts.User user;
+
+  private LocalRequest(
+      final String method,
+      final String service,
+      final List<String> path,
+      final Headers headers,
+      final Map<String,String> params,
+      final InputStream bodyStream,
+      final byte[] body
+  ) {
+    this.method = method;
+    this.service = service;
+    this.path = path;
+    this.headers = headers;
+    this.params = params;
+    this.bodyStream = bodyStream;
+    this.body = body;
+  }
+
+  static LocalRequest read( final HttpExchange exchange ) throws IOException {
+    // path is /services/SERVICE[/RESOURCE...]
+    final String uriPath = exchange.getRequestURI( ).getPath( );
+    final List<String> segments = new ArrayList<>( Arrays.asList( uriPath.replaceFirst( "^/+", "" ).split( "/", -1 ) ) );
+    final String service = segments.size( ) > 1 ? segments.get( 1 ) : "";
+    final List<String> path = segments.size( ) > 2 ?
+        Collections.unmodifiableList( segments.subList( 2, segments.size( ) ) ) :
+        Collections.emptyList( );
+    final Map<String,String> params = new LinkedHashMap<>( );
+    decode( exchange.getRequestURI( ).getRawQuery( ), params );
+    byte[] body = null;
+    final String contentType = exchange.getRequestHeaders( ).getFirst( "Content-Type" );
+    if ( contentType != null && contentType.startsWith( "application/x-www-form-urlencoded" ) ) {
+      body = ByteStreams.toByteArray( exchange.getRequestBody( ) );
+      decode( new String( body, StandardCharsets.UTF_8 ), params );
+    }
+    return new LocalRequest(
+        exchange.getRequestMethod( ), service, path, exchange.getRequestHeaders( ), params, exchange.getRequestBody( ), body );
+  }
+
+  String getMethod( ) {
+    return method;
+  }
+
+  String getService( ) {
+    return service;
+  }
+
+  /**
+   * Path segments after the service name, e.g. bucket and key
+   */
+  List<String> getPath( ) {
+    return path;
+  }
+
+  String getRequestId( ) {
+    return requestId;
+  }
+
+  /**
+   * The request body, read fully on first use.
+   */
+  byte[] getBody( ) {
+    if ( body == null ) {
+      try {
+        body = ByteStreams.toByteArray( bodyStream );
+      } catch ( final IOException e ) {
+        throw new UncheckedIOException( e );
+      }
+    }
+    return body;
+  }
+
+  /**
+   * Stream for the request body, the stream is read once unless the body
+   * was read using getBody.
+   */
+  InputStream getBodyStream( ) {
+    return body == null ? bodyStream : new ByteArrayInputStream( body );
+  }
+
+  String header( final String name ) {
+    return headers.getFirst( name );
+  }
+
+  Map<String,String> headers( final String prefix ) {
+    final Map<String,String> matched = new LinkedHashMap<>( );
+    headers.forEach( ( name, values ) -> {
+      if ( name.toLowerCase( ).startsWith( prefix ) && !values.isEmpty( ) ) {
+        matched.put( name.toLowerCase( ), values.get( 0 ) );
+      }
+    } );
+    return matched;
+  }
+
+  boolean has( final String name ) {
+    return params.containsKey( name );
+  }
+
+  String param( final String name ) {
+    return params.get( name );
+  }
+
+  String param( final String name, final String defaultValue ) {
+    final String value = params.get( name );
+    return value == null ? defaultValue : value;
+  }
+
+  String required( final String name ) {
+    final String value = params.get( name );
+    if ( value == null || value.isEmpty( ) ) throw LocalFault.missingParameter( name );
+    return value;
+  }
+
+  int intParam( final String name, final int defaultValue ) {
+    final String value = params.get( name );
+    try {
+      return value == null ? defaultValue : Integer.parseInt( value );
+    } catch ( final NumberFormatException e ) {
+      throw LocalFault.invalidParameter( "Invalid value for " + name + ": " + value );
+    }
+  }
+
+  /**
+   * Values for indexed parameters PREFIX.1, PREFIX.2, ...
+   */
+  List<String> list( final String prefix ) {
+    final List<String> values = new ArrayList<>( );
+    for ( int i = 1; params.containsKey( prefix + "." + i ); i++ ) {
+      values.add( params.get( prefix + "." + i ) );
+    }
+    return values;
+  }
+
+  /**
+   * EC2 style filters, Filter.N.Name with values Filter.N.Value.M
+   */
+  Map<String,List<String>> filters( ) {
+    final Map<String,List<String>> filters = new LinkedHashMap<>( );
+    for ( int i = 1; params.containsKey( "Filter." + i + ".Name" ); i++ ) {
+      filters.put( params.get( "Filter." + i + ".Name" ), list( "Filter." + i + ".Value" ) );
+    }
+    return filters;
+  }
+
+  /**
+   * The access key id from the request signature, if any.
+   */
+  String accessKeyId( ) {
+    final String authorization = header( "Authorization" );
+    if ( authorization != null ) {
+      Matcher matcher = V4_CREDENTIAL.matcher( authorization );
+      if ( matcher.find( ) ) return matcher.group( 1 );
+      matcher = V2_CREDENTIAL.matcher( authorization );
+      if ( matcher.find( ) ) return matcher.group( 1 );
+    }
+    if ( params.containsKey( "AWSAccessKeyId" ) ) {
+      return params.get( "AWSAccessKeyId" );
+    }
+    final String credential = params.get( "X-Amz-Credential" );
+    return credential == null ? null : credential.split( "/" )[0];
+  }
+
+  /**
+   * The authenticated user, the account admin when delegating.
+   */
+  LocalAccounts.User getUser( ) {
+    return user;
+  }
+
+  void setUser( final LocalAccounts.User user ) {
+    this.user = user;
+  }
+
+  LocalAccounts.Account getAccount( ) {
+    return user.getAccount( );
+  }
+
+  private static void decode( final String encoded, final Map<String,String> params ) throws UnsupportedEncodingException {
+    if ( encoded == null || encoded.isEmpty( ) ) return;
+    for ( final String pair : encoded.split( "&" ) ) {
+      if ( pair.isEmpty( ) ) continue;
+      final int index = pair.indexOf( '=' );
+      final String name = URLDecoder.decode( index < 0 ? pair : pair.substring( 0, index ), "UTF-8" );
+      final String value = index < 0 ? "" : URLDecoder.decode( pair.substring( index + 1 ), "UTF-8" );
+      params.put( name, value );
+    }
+  }
+}
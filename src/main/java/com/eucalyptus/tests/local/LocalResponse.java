@@ -0,0 +1,91 @@
+package com.eucalyptus.tests.local;
+
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A response from the local cloud.
+ */
+final class LocalResponse {
+
+  private final int status;
+  private final Map<String,String> headers = new LinkedHashMap<>( );
+  private final byte[] body;
+  private final FileChannel content;
+  private final long contentOffset;
+  private final long contentLength;
+
+  LocalResponse( final int status, final byte[] body ) {
+    this( status, body, null, 0, 0 );
+  }
+
+  private LocalResponse(
+      final int status,
+      final byte[] body,
+      final FileChannel content,
+      final long contentOffset,
+      final long contentLength
+  ) {
+    this.status = status;
+    this.body = body;
+    this.content = content;
+    this.contentOffset = contentOffset;
+    this.contentLength = contentLength;
+  }
+
+  static LocalResponse xml( final Xml xml ) {
+    return xml( 200, xml );
+  }
+
+  static LocalResponse xml( final int status, final Xml xml ) {
+    return new LocalResponse( status, xml.bytes( ) ).header( "Content-Type", "text/xml;charset=UTF-8" );
+  }
+
+  static LocalResponse empty( final int status ) {
+    return new LocalResponse( status, null );
+  }
+
+  /**
+   * Response with a body streamed from a range of the channel, the channel
+   * is closed when the response is sent.
+   */
+  static LocalResponse content( final int status, final FileChannel content, final long offset, final long length ) {
+    return new LocalResponse( status, null, content, offset, length );
+  }
+
+  LocalResponse header( final String name, final String value ) {
+    if ( value != null ) headers.put( name, value );
+    return this;
+  }
+
+  int getStatus( ) {
+    return status;
+  }
+
+  Map<String,String> getHeaders( ) {
+    return headers;
+  }
+
+  /**
+   * The response body, null for no body.
+   */
+  byte[] getBody( ) {
+    return body;
+  }
+
+  /**
+   * Channel for a streamed body, null if none.
+   */
+  FileChannel getContent( ) {
+    return content;
+  }
+
+  long getContentOffset( ) {
+    return contentOffset;
+  }
+
+  long getContentLength( ) {
+    return contentLength;
+  }
+}
@@ -0,0 +1,710 @@
+package com.eucalyptus.tests.local;
+
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Md5Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local S3 (objectstorage) service with path style addressing.
+ *
+ * Supports bucket and object CRUD, ranged gets, copies, listing (v1, v2,
+ * versions), multi-object delete and multipart uploads. Object and part
+ * content is streamed to files in the data directory so large objects do
+ * not use heap, other state is held in memory. Versioning configuration is
+ * stored but each key has a single (null) version.
+ */
+final class LocalS3 extends LocalService {
+
+  private static final String NAMESPACE = "http://s3.amazonaws.com/doc/2006-03-01/";
+  private static final Pattern RANGE = Pattern.compile( "bytes=(\\d*)-(\\d*)" );
+  private static final Pattern DELETE_OBJECT = Pattern.compile( "<Object>\\s*<Key>(.*?)</Key>" );
+  private static final Pattern PART_NUMBER = Pattern.compile( "<PartNumber>(\\d+)</PartNumber>\\s*<ETag>(.*?)</ETag>" );
+  private static final Pattern VERSIONING_STATUS = Pattern.compile( "<Status>(\\w+)</Status>" );
+  private static final String[] IGNORED_SUBRESOURCES = { "acl", "cors", "lifecycle", "policy", "tagging", "website", "notification" };
+
+  private final ConcurrentMap<String,Bucket> buckets = new ConcurrentHashMap<>( );
+  private final Path directory;
+
+  LocalS3( final Path directory ) {
+    super( NAMESPACE );
+    this.directory = directory;
+  }
+
+  @Override
+  LocalResponse handle( final LocalRequest request ) {
+    final List<String> path = request.getPath( );
+    final String bucketName = path.isEmpty( ) ? "" : path.get( 0 );
+    final String key = path.size( ) > 1 ? String.join( "/", path.subList( 1, path.size( ) ) ) : "";
+    if ( bucketName.isEmpty( ) ) {
+      if ( !"GET".equals( request.getMethod( ) ) ) throw methodNotAllowed( request );
+      return listBuckets( request );
+    } else if ( key.isEmpty( ) ) {
+      return bucket( request, bucketName );
+    } else {
+      return object( request, bucket( request.getAccount( ), bucketName ), key );
+    }
+  }
+
+  @Override
+  LocalResponse error( final LocalRequest request, final LocalFault fault ) {
+    if ( "HEAD".equals( request.getMethod( ) ) ) {
+      return LocalResponse.empty( fault.getStatus( ) );
+    }
+    return LocalResponse.xml( fault.getStatus( ), new Xml( )
+        .start( "Error" )
+        .value( "Code", fault.getCode( ) )
+        .value( "Message", fault.getMessage( ) )
+        .value( "Resource", "/" + String.join( "/", request.getPath( ) ) )
+        .value( "RequestId", request.getRequestId( ) ) );
+  }
+
+  private LocalResponse listBuckets( final LocalRequest request ) {
+    final LocalAccounts.Account account = request.getAccount( );
+    final Xml xml = new Xml( )
+        .start( "ListAllMyBucketsResult", NAMESPACE )
+        .start( "Owner" ).value( "ID", account.getId( ) ).value( "DisplayName", account.getName( ) ).end( )
+        .start( "Buckets" );
+    buckets.values( ).stream( )
+        .filter( bucket -> bucket.owner.getId( ).equals( account.getId( ) ) )
+        .sorted( ( b1, b2 ) -> b1.name.compareTo( b2.name ) )
+        .forEach( bucket -> xml.start( "Bucket" )
+            .value( "Name", bucket.name )
+            .value( "CreationDate", bucket.created )
+            .end( ) );
+    return LocalResponse.xml( xml );
+  }
+
+  private LocalResponse bucket( final LocalRequest request, final String bucketName ) {
+    final String method = request.getMethod( );
+    if ( "PUT".equals( method ) && !request.has( "versioning" ) && !isIgnoredSubresource( request ) ) {
+      final Bucket bucket = new Bucket( bucketName, request.getAccount( ) );
+      final Bucket existing = buckets.putIfAbsent( bucketName, bucket );
+      if ( existing != null ) {
+        throw existing.owner.getId( ).equals( request.getAccount( ).getId( ) ) ?
+            new LocalFault( 409, "BucketAlreadyOwnedByYou", "Bucket already owned by you: " + bucketName ) :
+            new LocalFault( 409, "BucketAlreadyExists", "Bucket already exists: " + bucketName );
+      }
+      return LocalResponse.empty( 200 ).header( "Location", "/" + bucketName );
+    }
+    final Bucket bucket = bucket( request.getAccount( ), bucketName );
+    switch ( method ) {
+      case "HEAD":
+        return LocalResponse.empty( 200 );
+      case "PUT":
+        if ( request.has( "versioning" ) ) {
+          final Matcher matcher = VERSIONING_STATUS.matcher( new String( request.getBody( ), StandardCharsets.UTF_8 ) );
+          if ( matcher.find( ) ) bucket.versioning = matcher.group( 1 );
+        }
+        return LocalResponse.empty( 200 );
+      case "DELETE":
+        if ( isIgnoredSubresource( request ) ) {
+          return LocalResponse.empty( 204 );
+        }
+        synchronized ( bucket ) {
+          if ( !bucket.objects.isEmpty( ) || !bucket.uploads.isEmpty( ) ) {
+            throw new LocalFault( 409, "BucketNotEmpty", "The bucket you tried to delete is not empty" );
+          }
+          buckets.remove( bucketName );
+        }
+        return LocalResponse.empty( 204 );
+      case "POST":
+        if ( request.has( "delete" ) ) return deleteObjects( request, bucket );
+        throw methodNotAllowed( request );
+      case "GET":
+        if ( request.has( "versioning" ) ) {
+          return LocalResponse.xml( new Xml( )
+              .start( "VersioningConfiguration", NAMESPACE )
+              .value( "Status", bucket.versioning ) );
+        } else if ( request.has( "location" ) ) {
+          return LocalResponse.xml( new Xml( ).start( "LocationConstraint", NAMESPACE ) );
+        } else if ( request.has( "acl" ) ) {
+          return LocalResponse.xml( new Xml( )
+              .start( "AccessControlPolicy", NAMESPACE )
+              .start( "Owner" ).value( "ID", bucket.owner.getId( ) ).value( "DisplayName", bucket.owner.getName( ) ).end( )
+              .start( "AccessControlList" )
+              .start( "Grant" )
+              .start( "Grantee" ).value( "ID", bucket.owner.getId( ) ).value( "DisplayName", bucket.owner.getName( ) ).end( )
+              .value( "Permission", "FULL_CONTROL" ) );
+        } else if ( request.has( "uploads" ) ) {
+          return listUploads( request, bucket );
+        } else if ( request.has( "versions" ) ) {
+          return listVersions( request, bucket );
+        } else {
+          return listObjects( request, bucket );
+        }
+      default:
+        throw methodNotAllowed( request );
+    }
+  }
+
+  private LocalResponse object( final LocalRequest request, final Bucket bucket, final String key ) {
+    switch ( request.getMethod( ) ) {
+      case "PUT":
+        if ( request.has( "uploadId" ) ) {
+          return uploadPart( request, bucket, key );
+        } else if ( isIgnoredSubresource( request ) ) {
+          return LocalResponse.empty( 200 );
+        } else if ( request.header( "x-amz-copy-source" ) != null ) {
+          return copyObject( request, bucket, key );
+        } else {
+          final StoredObject object = new StoredObject( key, LocalContent.write( directory, content( request ) ),
+              request.header( "Content-Type" ), request.headers( "x-amz-meta-" ) );
+          delete( bucket.objects.put( key, object ) );
+          return LocalResponse.empty( 200 ).header( "ETag", object.etag );
+        }
+      case "GET":
+        if ( request.has( "uploadId" ) ) return listParts( request, bucket, key );
+        return getObject( request, bucket, key, true );
+      case "HEAD":
+        return getObject( request, bucket, key, false );
+      case "DELETE":
+        if ( request.has( "uploadId" ) ) {
+          upload( bucket, request.param( "uploadId" ) );
+          final Upload upload = bucket.uploads.remove( request.param( "uploadId" ) );
+          if ( upload != null ) upload.parts.values( ).forEach( LocalS3::delete );
+        } else {
+          delete( bucket.objects.remove( key ) );
+        }
+        return LocalResponse.empty( 204 );
+      case "POST":
+        if ( request.has( "uploads" ) ) {
+          final Upload upload = new Upload( key, request.header( "Content-Type" ), request.headers( "x-amz-meta-" ) );
+          bucket.uploads.put( upload.id, upload );
+          return LocalResponse.xml( new Xml( )
+              .start( "InitiateMultipartUploadResult", NAMESPACE )
+              .value( "Bucket", bucket.name )
+              .value( "Key", key )
+              .value( "UploadId", upload.id ) );
+        } else if ( request.has( "uploadId" ) ) {
+          return completeUpload( request, bucket, key );
+        }
+        throw methodNotAllowed( request );
+      default:
+        throw methodNotAllowed( request );
+    }
+  }
+
+  private LocalResponse getObject( final LocalRequest request, final Bucket bucket, final String key, final boolean body ) {
+    final StoredObject object = bucket.objects.get( key );
+    if ( object == null ) {
+      throw new LocalFault( 404, "NoSuchKey", "The specified key does not exist." );
+    }
+    int status = 200;
+    long first = 0;
+    final long size = object.content.getLength( );
+    long last = size - 1;
+    final String range = request.header( "Range" );
+    if ( range != null ) {
+      final Matcher matcher = RANGE.matcher( range );
+      if ( !matcher.matches( ) || ( matcher.group( 1 ).isEmpty( ) && matcher.group( 2 ).isEmpty( ) ) ) {
+        throw new LocalFault( 416, "InvalidRange", "The requested range is not satisfiable" );
+      }
+      if ( matcher.group( 1 ).isEmpty( ) ) {
+        first = Math.max( 0, size - Long.parseLong( matcher.group( 2 ) ) );
+      } else {
+        first = Long.parseLong( matcher.group( 1 ) );
+        if ( !matcher.group( 2 ).isEmpty( ) ) last = Math.min( last, Long.parseLong( matcher.group( 2 ) ) );
+      }
+      if ( first >= size || first > last ) {
+        throw new LocalFault( 416, "InvalidRange", "The requested range is not satisfiable" );
+      }
+      status = 206;
+    }
+    final long length = Math.max( 0, last - first + 1 );
+    final LocalResponse response = ( body ? LocalResponse.content( status, open( object ), first, length ) : LocalResponse.empty( status ) )
+        .header( "Content-Type", object.contentType )
+        .header( "ETag", object.etag )
+        .header( "Last-Modified", httpDate( object.lastModified ) )
+        .header( "Accept-Ranges", "bytes" )
+        .header( "Content-Range", status == 206 ? "bytes " + first + "-" + last + "/" + size : null )
+        .header( "Content-Length", body ? null : String.valueOf( length ) );
+    object.metadata.forEach( response::header );
+    return response;
+  }
+
+  private LocalResponse copyObject( final LocalRequest request, final Bucket bucket, final String key ) {
+    String source = decode( request.header( "x-amz-copy-source" ) );
+    if ( source.contains( "?" ) ) source = source.substring( 0, source.indexOf( '?' ) );
+    if ( source.startsWith( "/" ) ) source = source.substring( 1 );
+    final int index = source.indexOf( '/' );
+    if ( index < 1 ) throw LocalFault.invalidParameter( "Invalid copy source: " + source );
+    final Bucket sourceBucket = bucket( request.getAccount( ), source.substring( 0, index ) );
+    final StoredObject sourceObject = sourceBucket.objects.get( source.substring( index + 1 ) );
+    if ( sourceObject == null ) {
+      throw new LocalFault( 404, "NoSuchKey", "The specified key does not exist." );
+    }
+    final boolean replace = "REPLACE".equals( request.header( "x-amz-metadata-directive" ) );
+    final StoredObject object = new StoredObject( key, sourceObject.content.copy( directory ),
+        replace ? request.header( "Content-Type" ) : sourceObject.contentType,
+        replace ? request.headers( "x-amz-meta-" ) : sourceObject.metadata );
+    delete( bucket.objects.put( key, object ) );
+    return LocalResponse.xml( new Xml( )
+        .start( "CopyObjectResult", NAMESPACE )
+        .value( "LastModified", object.lastModified )
+        .value( "ETag", object.etag ) );
+  }
+
+  private LocalResponse deleteObjects( final LocalRequest request, final Bucket bucket ) {
+    final String body = new String( request.getBody( ), StandardCharsets.UTF_8 );
+    final boolean quiet = body.contains( "<Quiet>true</Quiet>" );
+    final Xml xml = new Xml( ).start( "DeleteResult", NAMESPACE );
+    final Matcher matcher = DELETE_OBJECT.matcher( body );
+    while ( matcher.find( ) ) {
+      final String key = unescape( matcher.group( 1 ) );
+      delete( bucket.objects.remove( key ) );
+      if ( !quiet ) xml.start( "Deleted" ).value( "Key", key ).end( );
+    }
+    return LocalResponse.xml( xml );
+  }
+
+  private LocalResponse listObjects( final LocalRequest request, final Bucket bucket ) {
+    final boolean v2 = "2".equals( request.param( "list-type" ) );
+    final boolean encode = "url".equals( request.param( "encoding-type" ) );
+    final String prefix = request.param( "prefix", "" );
+    final String delimiter = request.param( "delimiter" );
+    final int maxKeys = request.intParam( "max-keys", 1000 );
+    final String marker = v2 ?
+        request.param( "continuation-token", request.param( "start-after", "" ) ) :
+        request.param( "marker", "" );
+    final Listing listing = list( bucket.objects, prefix, delimiter, marker, maxKeys );
+    final Xml xml = new Xml( )
+        .start( "ListBucketResult", NAMESPACE )
+        .value( "Name", bucket.name )
+        .value( "Prefix", encode( prefix, encode ) )
+        .value( "MaxKeys", maxKeys )
+        .value( "Delimiter", encode( delimiter, encode ) )
+        .value( "EncodingType", encode ? "url" : null )
+        .value( "IsTruncated", listing.truncated );
+    if ( v2 ) {
+      xml.value( "KeyCount", listing.objects.size( ) + listing.prefixes.size( ) )
+          .value( "ContinuationToken", request.param( "continuation-token" ) )
+          .value( "NextContinuationToken", listing.truncated ? listing.next : null )
+          .value( "StartAfter", encode( request.param( "start-after" ), encode ) );
+    } else {
+      xml.value( "Marker", encode( marker, encode ) )
+          .value( "NextMarker", listing.truncated && delimiter != null ? encode( listing.next, encode ) : null );
+    }
+    for ( final StoredObject object : listing.objects ) {
+      xml.start( "Contents" )
+          .value( "Key", encode( object.key, encode ) )
+          .value( "LastModified", object.lastModified )
+          .value( "ETag", object.etag )
+          .value( "Size", object.content.getLength( ) )
+          .value( "StorageClass", "STANDARD" );
+      if ( !v2 || "true".equals( request.param( "fetch-owner" ) ) ) owner( xml, bucket );
+      xml.end( );
+    }
+    prefixes( xml, listing, encode );
+    return LocalResponse.xml( xml );
+  }
+
+  private LocalResponse listVersions( final LocalRequest request, final Bucket bucket ) {
+    final boolean encode = "url".equals( request.param( "encoding-type" ) );
+    final String prefix = request.param( "prefix", "" );
+    final String delimiter = request.param( "delimiter" );
+    final int maxKeys = request.intParam( "max-keys", 1000 );
+    final String marker = request.param( "key-marker", "" );
+    final Listing listing = list( bucket.objects, prefix, delimiter, marker, maxKeys );
+    final Xml xml = new Xml( )
+        .start( "ListVersionsResult", NAMESPACE )
+        .value( "Name", bucket.name )
+        .value( "Prefix", encode( prefix, encode ) )
+        .value( "KeyMarker", encode( marker, encode ) )
+        .value( "VersionIdMarker", request.param( "version-id-marker", "" ) )
+        .value( "MaxKeys", maxKeys )
+        .value( "Delimiter", encode( delimiter, encode ) )
+        .value( "EncodingType", encode ? "url" : null )
+        .value( "IsTruncated", listing.truncated )
+        .value( "NextKeyMarker", listing.truncated ? encode( listing.next, encode ) : null )
+        .value( "NextVersionIdMarker", listing.truncated ? "null" : null );
+    for ( final StoredObject object : listing.objects ) {
+      xml.start( "Version" )
+          .value( "Key", encode( object.key, encode ) )
+          .value( "VersionId", "null" )
+          .value( "IsLatest", true )
+          .value( "LastModified", object.lastModified )
+          .value( "ETag", object.etag )
+          .value( "Size", object.content.getLength( ) )
+          .value( "StorageClass", "STANDARD" );
+      owner( xml, bucket );
+      xml.end( );
+    }
+    prefixes( xml, listing, encode );
+    return LocalResponse.xml( xml );
+  }
+
+  private LocalResponse listUploads( final LocalRequest request, final Bucket bucket ) {
+    final Xml xml = new Xml( )
+        .start( "ListMultipartUploadsResult", NAMESPACE )
+        .value( "Bucket", bucket.name )
+        .value( "KeyMarker", request.param( "key-marker", "" ) )
+        .value( "UploadIdMarker", request.param( "upload-id-marker", "" ) )
+        .value( "MaxUploads", request.intParam( "max-uploads", 1000 ) )
+        .value( "IsTruncated", false );
+    for ( final Upload upload : bucket.uploads.values( ) ) {
+      xml.start( "Upload" )
+          .value( "Key", upload.key )
+          .value( "UploadId", upload.id )
+          .start( "Initiator" ).value( "ID", bucket.owner.getId( ) ).value( "DisplayName", bucket.owner.getName( ) ).end( );
+      owner( xml, bucket );
+      xml.value( "StorageClass", "STANDARD" )
+          .value( "Initiated", upload.initiated )
+          .end( );
+    }
+    return LocalResponse.xml( xml );
+  }
+
+  private LocalResponse uploadPart( final LocalRequest request, final Bucket bucket, final String key ) {
+    final Upload upload = upload( bucket, request.param( "uploadId" ) );
+    final int partNumber = request.intParam( "partNumber", 0 );
+    if ( partNumber < 1 || partNumber > 10000 ) {
+      throw LocalFault.invalidParameter( "Part number must be between 1 and 10000" );
+    }
+    final StoredObject part = new StoredObject( key, LocalContent.write( directory, content( request ) ), null, null );
+    delete( upload.parts.put( partNumber, part ) );
+    return LocalResponse.empty( 200 ).header( "ETag", part.etag );
+  }
+
+  private LocalResponse listParts( final LocalRequest request, final Bucket bucket, final String key ) {
+    final Upload upload = upload( bucket, request.param( "uploadId" ) );
+    final int marker = request.intParam( "part-number-marker", 0 );
+    final int maxParts = request.intParam( "max-parts", 1000 );
+    final Xml xml = new Xml( )
+        .start( "ListPartsResult", NAMESPACE )
+        .value( "Bucket", bucket.name )
+        .value( "Key", key )
+        .value( "UploadId", upload.id )
+        .value( "PartNumberMarker", marker )
+        .value( "MaxParts", maxParts );
+    final NavigableMap<Integer,StoredObject> parts = upload.parts.tailMap( marker, false );
+    int count = 0;
+    int next = marker;
+    for ( final Map.Entry<Integer,StoredObject> part : parts.entrySet( ) ) {
+      if ( count++ == maxParts ) break;
+      next = part.getKey( );
+      xml.start( "Part" )
+          .value( "PartNumber", part.getKey( ) )
+          .value( "LastModified", part.getValue( ).lastModified )
+          .value( "ETag", part.getValue( ).etag )
+          .value( "Size", part.getValue( ).content.getLength( ) )
+          .end( );
+    }
+    return LocalResponse.xml( xml
+        .value( "NextPartNumberMarker", next )
+        .value( "IsTruncated", count > maxParts ) );
+  }
+
+  private LocalResponse completeUpload( final LocalRequest request, final Bucket bucket, final String key ) {
+    final Upload upload = upload( bucket, request.param( "uploadId" ) );
+    final List<LocalContent> contents = new ArrayList<>( );
+    final ByteArrayOutputStream digests = new ByteArrayOutputStream( );
+    final Matcher matcher = PART_NUMBER.matcher( new String( request.getBody( ), StandardCharsets.UTF_8 ) );
+    int parts = 0;
+    while ( matcher.find( ) ) {
+      final StoredObject part = upload.parts.get( Integer.parseInt( matcher.group( 1 ) ) );
+      if ( part == null || !part.etag.equals( "\"" + unescape( matcher.group( 2 ) ).replace( "\"", "" ) + "\"" ) ) {
+        throw new LocalFault( 400, "InvalidPart", "Part not found or ETag mismatch: " + matcher.group( 1 ) );
+      }
+      contents.add( part.content );
+      final byte[] digest = part.content.getMd5( );
+      digests.write( digest, 0, digest.length );
+      parts++;
+    }
+    if ( parts == 0 ) {
+      throw new LocalFault( 400, "MalformedXML", "No parts specified" );
+    }
+    final byte[] md5 = Md5Utils.computeMD5Hash( digests.toByteArray( ) );
+    final String etag = "\"" + BinaryUtils.toHex( md5 ) + "-" + parts + "\"";
+    final StoredObject object = new StoredObject(
+        key, LocalContent.concat( directory, contents, md5 ), upload.contentType, upload.metadata, etag );
+    delete( bucket.objects.put( key, object ) );
+    if ( bucket.uploads.remove( upload.id ) != null ) upload.parts.values( ).forEach( LocalS3::delete );
+    return LocalResponse.xml( new Xml( )
+        .start( "CompleteMultipartUploadResult", NAMESPACE )
+        .value( "Location", "/" + bucket.name + "/" + key )
+        .value( "Bucket", bucket.name )
+        .value( "Key", key )
+        .value( "ETag", etag ) );
+  }
+
+  private Bucket bucket( final LocalAccounts.Account account, final String bucketName ) {
+    final Bucket bucket = buckets.get( bucketName );
+    if ( bucket == null ) {
+      throw new LocalFault( 404, "NoSuchBucket", "The specified bucket does not exist" );
+    }
+    if ( !bucket.owner.getId( ).equals( account.getId( ) ) ) {
+      throw new LocalFault( 403, "AccessDenied", "Access Denied" );
+    }
+    return bucket;
+  }
+
+  /**
+   * The object content for the request, decoding aws-chunked bodies as sent
+   * by V4 streaming signing.
+   */
+  private static InputStream content( final LocalRequest request ) {
+    final String contentSha256 = request.header( "x-amz-content-sha256" );
+    return contentSha256 != null && contentSha256.startsWith( "STREAMING-" ) ?
+        new ChunkedInputStream( request.getBodyStream( ) ) :
+        request.getBodyStream( );
+  }
+
+  private static FileChannel open( final StoredObject object ) {
+    try {
+      return object.content.open( );
+    } catch ( final IOException e ) {
+      throw new LocalFault( 500, "InternalError", "Error reading object content: " + e );
+    }
+  }
+
+  private static void delete( final StoredObject object ) {
+    if ( object != null ) object.content.delete( );
+  }
+
+  private static Upload upload( final Bucket bucket, final String uploadId ) {
+    final Upload upload = bucket.uploads.get( uploadId );
+    if ( upload == null ) {
+      throw new LocalFault( 404, "NoSuchUpload", "The specified upload does not exist" );
+    }
+    return upload;
+  }
+
+  /**
+   * List keys after the marker, rolling up keys with the delimiter after the prefix.
+   */
+  private static Listing list(
+      final NavigableMap<String,StoredObject> objects,
+      final String prefix,
+      final String delimiter,
+      final String marker,
+      final int maxKeys
+  ) {
+    final Listing listing = new Listing( );
+    final String from = marker.compareTo( prefix ) > 0 ? marker : prefix;
+    String lastPrefix = null;
+    int count = 0;
+    for ( final StoredObject object : objects.tailMap( from, !from.equals( marker ) ).values( ) ) {
+      if ( !object.key.startsWith( prefix ) ) break;
+      String commonPrefix = null;
+      if ( delimiter != null && !delimiter.isEmpty( ) ) {
+        final int index = object.key.indexOf( delimiter, prefix.length( ) );
+        if ( index >= 0 ) commonPrefix = object.key.substring( 0, index + delimiter.length( ) );
+      }
+      if ( commonPrefix != null && ( commonPrefix.equals( lastPrefix ) || commonPrefix.compareTo( marker ) <= 0 ) ) {
+        continue;
+      }
+      if ( count == maxKeys ) {
+        listing.truncated = true;
+        break;
+      }
+      if ( commonPrefix != null ) {
+        listing.prefixes.add( commonPrefix );
+        lastPrefix = commonPrefix;
+        listing.next = commonPrefix;
+      } else {
+        listing.objects.add( object );
+        listing.next = object.key;
+      }
+      count++;
+    }
+    return listing;
+  }
+
+  private static void owner( final Xml xml, final Bucket bucket ) {
+    xml.start( "Owner" ).value( "ID", bucket.owner.getId( ) ).value( "DisplayName", bucket.owner.getName( ) ).end( );
+  }
+
+  private static void prefixes( final Xml xml, final Listing listing, final boolean encode ) {
+    for ( final String prefix : listing.prefixes ) {
+      xml.start( "CommonPrefixes" ).value( "Prefix", encode( prefix, encode ) ).end( );
+    }
+  }
+
+  private static boolean isIgnoredSubresource( final LocalRequest request ) {
+    for ( final String subresource : IGNORED_SUBRESOURCES ) {
+      if ( request.has( subresource ) ) return true;
+    }
+    return false;
+  }
+
+  private static LocalFault methodNotAllowed( final LocalRequest request ) {
+    return new LocalFault( 405, "MethodNotAllowed", "The specified method is not allowed against this resource: " +
+        request.getMethod( ) );
+  }
+
+  private static String encode( final String value, final boolean encode ) {
+    if ( value == null || !encode ) return value;
+    try {
+      return URLEncoder.encode( value, "UTF-8" );
+    } catch ( final UnsupportedEncodingException e ) {
+      throw new IllegalStateException( e );
+    }
+  }
+
+  private static String decode( final String value ) {
+    try {
+      return URLDecoder.decode( value.replace( "+", "%2B" ), "UTF-8" );
+    } catch ( final UnsupportedEncodingException e ) {
+      throw new IllegalStateException( e );
+    }
+  }
+
+  private static String unescape( final String xml ) {
+    return xml.replace( "&lt;", "<" ).replace( "&gt;", ">" ).replace( "&quot;", "\"" )
+        .replace( "&apos;", "'" ).replace( "&#13;", "\r" ).replace( "&amp;", "&" );
+  }
+
+  private static String httpDate( final Date date ) {
+    final SimpleDateFormat format = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US );
+    format.setTimeZone( TimeZone.getTimeZone( "GMT" ) );
+    return format.format( date );
+  }
+
+  private static final class Bucket {
+    private final String name;
+    private final LocalAccounts.Account owner;
+    private final Date created = new Date( );
+    private final ConcurrentSkipListMap<String,StoredObject> objects = new ConcurrentSkipListMap<>( );
+    private final ConcurrentMap<String,Upload> uploads = new ConcurrentHashMap<>( );
+    private volatile String versioning;
+
+    private Bucket( final String name, final LocalAccounts.Account owner ) {
+      this.name = name;
+      this.owner = owner;
+    }
+  }
+
+  private static final class StoredObject {
+    private final String key;
+    private final LocalContent content;
+    private final String etag;
+    private final String contentType;
+    private final Map<String,String> metadata;
+    private final Date lastModified = new Date( );
+
+    private StoredObject(
+        final String key,
+        final LocalContent content,
+        final String contentType,
+        final Map<String,String> metadata
+    ) {
+      this( key, content, contentType, metadata, "\"" + BinaryUtils.toHex( content.getMd5( ) ) + "\"" );
+    }
+
+    private StoredObject(
+        final String key,
+        final LocalContent content,
+        final String contentType,
+        final Map<String,String> metadata,
+        final String etag
+    ) {
+      this.key = key;
+      this.content = content;
+      this.etag = etag;
+      this.contentType = contentType == null ? "binary/octet-stream" : contentType;
+      this.metadata = metadata == null ? new ConcurrentHashMap<>( ) : metadata;
+    }
+  }
+
+  private static final class Upload {
+    private final String id = UUID.randomUUID( ).toString( ).replace( "-", "" );
+    private final String key;
+    private final String contentType;
+    private final Map<String,String> metadata;
+    private final Date initiated = new Date( );
+    private final ConcurrentSkipListMap<Integer,StoredObject> parts = new ConcurrentSkipListMap<>( );
+
+    private Upload( final String key, final String contentType, final Map<String,String> metadata ) {
+      this.key = key;
+      this.contentType = contentType;
+      this.metadata = metadata;
+    }
+  }
+
+  /**
+   * Stream for aws-chunked content, chunk signatures are not verified.
+   */
+  private static final class ChunkedInputStream extends InputStream {
+    private final InputStream in;
+    private long remaining;
+    private boolean done;
+
+    private ChunkedInputStream( final InputStream in ) {
+      this.in = in;
+    }
+
+    @Override
+    public int read( ) throws IOException {
+      final byte[] b = new byte[ 1 ];
+      return read( b, 0, 1 ) == -1 ? -1 : b[ 0 ] & 0xFF;
+    }
+
+    @Override
+    public int read( final byte[] bytes, final int offset, final int count ) throws IOException {
+      if ( count == 0 ) return 0;
+      if ( remaining == 0 && !nextChunk( ) ) return -1;
+      final int read = in.read( bytes, offset, (int) Math.min( count, remaining ) );
+      if ( read == -1 ) throw new EOFException( "Truncated aws-chunked content" );
+      remaining -= read;
+      if ( remaining == 0 ) line( );
+      return read;
+    }
+
+    private boolean nextChunk( ) throws IOException {
+      if ( done ) return false;
+      final String header = line( );
+      final int end = header.indexOf( ';' );
+      try {
+        remaining = Long.parseLong( end < 0 ? header.trim( ) : header.substring( 0, end ).trim( ), 16 );
+      } catch ( final NumberFormatException e ) {
+        throw new IOException( "Invalid aws-chunked chunk header: " + header );
+      }
+      if ( remaining == 0 ) {
+        done = true;
+        line( );
+        return false;
+      }
+      return true;
+    }
+
+    private String line( ) throws IOException {
+      final StringBuilder line = new StringBuilder( );
+      int b;
+      while ( ( b = in.read( ) ) != -1 && b != '\n' ) {
+        if ( b != '\r' ) line.append( (char) b );
+      }
+      return line.toString( );
+    }
+  }
+
+  private static final class Listing {
+    private final List<StoredObject> objects = new ArrayList<>( );
+    private final List<String> prefixes = new ArrayList<>( );
+    private boolean truncated;
+    private String next;
+  }
+}
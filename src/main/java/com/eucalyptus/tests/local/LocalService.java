@@ -0,0 +1,69 @@
+package com.eucalyptus.tests.local;
+
+/**
+ * Base for local cloud services.
+ *
+ * Errors default to the query (IAM, SQS, etc) error format.
+ */
+abstract class LocalService {
+
+  private final String namespace;
+
+  LocalService( final String namespace ) {
+    this.namespace = namespace;
+  }
+
+  abstract LocalResponse handle( LocalRequest request );
+
+  LocalResponse error( final LocalRequest request, final LocalFault fault ) {
+    return LocalResponse.xml( fault.getStatus( ), new Xml( )
+        .start( "ErrorResponse", namespace )
+        .start( "Error" )
+        .value( "Type", fault.getStatus( ) < 500 ? "Sender" : "Receiver" )
+        .value( "Code", fault.getCode( ) )
+        .value( "Message", fault.getMessage( ) )
+        .end( )
+        .value( "RequestId", request.getRequestId( ) ) );
+  }
+
+  /**
+   * Start a query response, ACTIONResponse with an open ACTIONResult element.
+   */
+  Xml result( final String action ) {
+    return new Xml( ).start( action + "Response", namespace ).start( action + "Result" );
+  }
+
+  /**
+   * Complete a query response started with result, content elements must be closed.
+   */
+  LocalResponse done( final LocalRequest request, final Xml xml ) {
+    return LocalResponse.xml( xml
+        .end( )
+        .start( "ResponseMetadata" )
+        .value( "RequestId", request.getRequestId( ) )
+        .end( ) );
+  }
+
+  /**
+   * Response for actions that return no result.
+   */
+  LocalResponse ok( final LocalRequest request, final String action ) {
+    return LocalResponse.xml( new Xml( )
+        .start( action + "Response", namespace )
+        .start( "ResponseMetadata" )
+        .value( "RequestId", request.getRequestId( ) )
+        .end( ) );
+  }
+
+  /**
+   * True for describe and list actions, which can return an empty result
+   * for resources the local cloud does not model.
+   */
+  static boolean isDescribe( final String action ) {
+    return action.startsWith( "Describe" ) || action.startsWith( "List" );
+  }
+
+  String getNamespace( ) {
+    return namespace;
+  }
+}
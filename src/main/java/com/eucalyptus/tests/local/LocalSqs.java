@@ -0,0 +1,363 @@
+package com.eucalyptus.tests.local;
+
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Md5Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local SQS service.
+ *
+ * Queues support delays, visibility timeouts, long polling and message
+ * attributes. Queue URLs are ENDPOINT/ACCOUNT_ID/QUEUE_NAME.
+ */
+final class LocalSqs extends LocalService {
+
+  private static final String NON_EXISTENT_QUEUE = "AWS.SimpleQueueService.NonExistentQueue";
+  private static final long MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis( 20 );
+  private static final long POLL_MILLIS = 100L;
+
+  private final String endpoint;
+  private final ConcurrentMap<String,Queue> queues = new ConcurrentHashMap<>( );
+
+  LocalSqs( final String endpoint ) {
+    super( "http://queue.amazonaws.com/doc/2012-11-05/" );
+    this.endpoint = endpoint;
+  }
+
+  @Override
+  LocalResponse handle( final LocalRequest request ) {
+    final String action = request.required( "Action" );
+    switch ( action ) {
+      case "CreateQueue": {
+        final String name = request.required( "QueueName" );
+        final String accountId = request.getAccount( ).getId( );
+        final Queue queue = queues.computeIfAbsent( accountId + "/" + name, key -> new Queue( accountId, name ) );
+        queue.attributes.putAll( attributes( request, "Attribute" ) );
+        return done( request, result( action ).value( "QueueUrl", url( queue ) ) );
+      }
+      case "GetQueueUrl":
+        return done( request, result( action ).value( "QueueUrl", url( queue( request, request.required( "QueueName" ) ) ) ) );
+      case "ListQueues": {
+        final String prefix = request.param( "QueueNamePrefix", "" );
+        final String accountId = request.getAccount( ).getId( );
+        final Xml xml = result( action );
+        queues.values( ).stream( )
+            .filter( queue -> queue.accountId.equals( accountId ) && queue.name.startsWith( prefix ) )
+            .forEach( queue -> xml.value( "QueueUrl", url( queue ) ) );
+        return done( request, xml );
+      }
+      case "DeleteQueue": {
+        final Queue queue = queue( request );
+        queues.remove( queue.accountId + "/" + queue.name );
+        return ok( request, action );
+      }
+      case "PurgeQueue": {
+        final Queue queue = queue( request );
+        synchronized ( queue ) {
+          queue.messages.clear( );
+        }
+        return ok( request, action );
+      }
+      case "GetQueueAttributes":
+        return getQueueAttributes( request, action, queue( request ) );
+      case "SetQueueAttributes":
+        queue( request ).attributes.putAll( attributes( request, "Attribute" ) );
+        return ok( request, action );
+      case "SendMessage": {
+        final Message message = send( queue( request ), request, "" );
+        return done( request, result( action )
+            .value( "MessageId", message.id )
+            .value( "MD5OfMessageBody", message.md5 )
+            .value( "MD5OfMessageAttributes", message.attributesMd5 ) );
+      }
+      case "SendMessageBatch": {
+        final Queue queue = queue( request );
+        final Xml xml = result( action );
+        for ( int i = 1; request.has( "SendMessageBatchRequestEntry." + i + ".Id" ); i++ ) {
+          final String prefix = "SendMessageBatchRequestEntry." + i + ".";
+          final Message message = send( queue, request, prefix );
+          xml.start( "SendMessageBatchResultEntry" )
+              .value( "Id", request.param( prefix + "Id" ) )
+              .value( "MessageId", message.id )
+              .value( "MD5OfMessageBody", message.md5 )
+              .value( "MD5OfMessageAttributes", message.attributesMd5 )
+              .end( );
+        }
+        return done( request, xml );
+      }
+      case "ReceiveMessage":
+        return receiveMessage( request, action, queue( request ) );
+      case "DeleteMessage":
+        delete( queue( request ), request.required( "ReceiptHandle" ) );
+        return ok( request, action );
+      case "DeleteMessageBatch": {
+        final Queue queue = queue( request );
+        final Xml xml = result( action );
+        for ( int i = 1; request.has( "DeleteMessageBatchRequestEntry." + i + ".Id" ); i++ ) {
+          final String prefix = "DeleteMessageBatchRequestEntry." + i + ".";
+          delete( queue, request.required( prefix + "ReceiptHandle" ) );
+          xml.start( "DeleteMessageBatchResultEntry" ).value( "Id", request.param( prefix + "Id" ) ).end( );
+        }
+        return done( request, xml );
+      }
+      case "ChangeMessageVisibility": {
+        final Queue queue = queue( request );
+        final String receiptHandle = request.required( "ReceiptHandle" );
+        final int timeout = request.intParam( "VisibilityTimeout", 0 );
+        synchronized ( queue ) {
+          find( queue, receiptHandle ).visibleAt = System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( timeout );
+          queue.notifyAll( );
+        }
+        return ok( request, action );
+      }
+      default:
+        throw LocalFault.unsupported( action );
+    }
+  }
+
+  private LocalResponse getQueueAttributes( final LocalRequest request, final String action, final Queue queue ) {
+    final Map<String,String> attributes = new TreeMap<>( queue.attributes );
+    final long now = System.currentTimeMillis( );
+    synchronized ( queue ) {
+      attributes.put( "ApproximateNumberOfMessages",
+          String.valueOf( queue.messages.stream( ).filter( m -> m.visibleAt <= now ).count( ) ) );
+      attributes.put( "ApproximateNumberOfMessagesNotVisible",
+          String.valueOf( queue.messages.stream( ).filter( m -> m.receiveCount > 0 && m.visibleAt > now ).count( ) ) );
+      attributes.put( "ApproximateNumberOfMessagesDelayed",
+          String.valueOf( queue.messages.stream( ).filter( m -> m.receiveCount == 0 && m.visibleAt > now ).count( ) ) );
+    }
+    attributes.put( "CreatedTimestamp", String.valueOf( TimeUnit.MILLISECONDS.toSeconds( queue.created ) ) );
+    attributes.put( "QueueArn", "arn:aws:sqs:" + LocalEc2.REGION + ":" + queue.accountId + ":" + queue.name );
+    final List<String> names = request.list( "AttributeName" );
+    final Xml xml = result( action );
+    attributes.forEach( ( name, value ) -> {
+      if ( names.contains( "All" ) || names.contains( name ) ) {
+        xml.start( "Attribute" ).value( "Name", name ).value( "Value", value ).end( );
+      }
+    } );
+    return done( request, xml );
+  }
+
+  private LocalResponse receiveMessage( final LocalRequest request, final String action, final Queue queue ) {
+    final int max = request.intParam( "MaxNumberOfMessages", 1 );
+    if ( max < 1 || max > 10 ) {
+      throw LocalFault.invalidParameter( "MaxNumberOfMessages must be between 1 and 10" );
+    }
+    final long visibilityMillis = TimeUnit.SECONDS.toMillis( request.intParam( "VisibilityTimeout",
+        Integer.parseInt( queue.attributes.getOrDefault( "VisibilityTimeout", "30" ) ) ) );
+    final long waitMillis = Math.min( MAX_WAIT_MILLIS, TimeUnit.SECONDS.toMillis( request.intParam( "WaitTimeSeconds",
+        Integer.parseInt( queue.attributes.getOrDefault( "ReceiveMessageWaitTimeSeconds", "0" ) ) ) ) );
+    final boolean withAttributes = !request.list( "MessageAttributeName" ).isEmpty( );
+    final boolean withSystemAttributes = !request.list( "AttributeName" ).isEmpty( );
+    final long deadline = System.currentTimeMillis( ) + waitMillis;
+    final List<Message> received = new ArrayList<>( );
+    synchronized ( queue ) {
+      while ( true ) {
+        final long now = System.currentTimeMillis( );
+        for ( final Message message : queue.messages ) {
+          if ( received.size( ) >= max ) break;
+          if ( message.visibleAt <= now ) {
+            message.visibleAt = now + visibilityMillis;
+            message.receiveCount++;
+            message.receiptHandle = UUID.randomUUID( ).toString( );
+            received.add( message );
+          }
+        }
+        if ( !received.isEmpty( ) || now >= deadline ) break;
+        try {
+          queue.wait( Math.min( POLL_MILLIS, deadline - now ) );
+        } catch ( final InterruptedException e ) {
+          Thread.currentThread( ).interrupt( );
+          break;
+        }
+      }
+    }
+    final Xml xml = result( action );
+    for ( final Message message : received ) {
+      xml.start( "Message" )
+          .value( "MessageId", message.id )
+          .value( "ReceiptHandle", message.receiptHandle )
+          .value( "MD5OfBody", message.md5 )
+          .value( "Body", message.body );
+      if ( withSystemAttributes ) {
+        xml.start( "Attribute" ).value( "Name", "SentTimestamp" ).value( "Value", message.sent ).end( );
+        xml.start( "Attribute" ).value( "Name", "ApproximateReceiveCount" ).value( "Value", message.receiveCount ).end( );
+      }
+      if ( withAttributes && message.attributesMd5 != null ) {
+        xml.value( "MD5OfMessageAttributes", message.attributesMd5 );
+        message.attributes.forEach( ( name, value ) -> {
+          xml.start( "MessageAttribute" )
+              .value( "Name", name )
+              .start( "Value" )
+              .value( "DataType", value.dataType );
+          if ( value.binary != null ) {
+            xml.value( "BinaryValue", Base64.getEncoder( ).encodeToString( value.binary ) );
+          } else {
+            xml.value( "StringValue", value.string );
+          }
+          xml.end( ).end( );
+        } );
+      }
+      xml.end( );
+    }
+    return done( request, xml );
+  }
+
+  private Message send( final Queue queue, final LocalRequest request, final String prefix ) {
+    final String body = request.required( prefix + "MessageBody" );
+    final int delay = request.intParam( prefix + "DelaySeconds",
+        Integer.parseInt( queue.attributes.getOrDefault( "DelaySeconds", "0" ) ) );
+    final Map<String,AttributeValue> attributes = new TreeMap<>( );
+    for ( int i = 1; request.has( prefix + "MessageAttribute." + i + ".Name" ); i++ ) {
+      final String attribute = prefix + "MessageAttribute." + i + ".";
+      final String binary = request.param( attribute + "Value.BinaryValue" );
+      attributes.put( request.param( attribute + "Name" ), new AttributeValue(
+          request.required( attribute + "Value.DataType" ),
+          request.param( attribute + "Value.StringValue" ),
+          binary == null ? null : Base64.getDecoder( ).decode( binary ) ) );
+    }
+    final Message message = new Message( body, attributes, System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( delay ) );
+    synchronized ( queue ) {
+      queue.messages.add( message );
+      queue.notifyAll( );
+    }
+    return message;
+  }
+
+  private static void delete( final Queue queue, final String receiptHandle ) {
+    synchronized ( queue ) {
+      queue.messages.remove( find( queue, receiptHandle ) );
+    }
+  }
+
+  private static Message find( final Queue queue, final String receiptHandle ) {
+    for ( final Message message : queue.messages ) {
+      if ( receiptHandle.equals( message.receiptHandle ) ) return message;
+    }
+    throw new LocalFault( 400, "ReceiptHandleIsInvalid", "Receipt handle not valid: " + receiptHandle );
+  }
+
+  /**
+   * The queue for the QueueUrl parameter or request path.
+   */
+  private Queue queue( final LocalRequest request ) {
+    final String url = request.param( "QueueUrl" );
+    final String name;
+    if ( url != null ) {
+      name = url.substring( url.lastIndexOf( '/' ) + 1 );
+    } else if ( request.getPath( ).size( ) == 2 ) {
+      name = request.getPath( ).get( 1 );
+    } else {
+      throw LocalFault.missingParameter( "QueueUrl" );
+    }
+    return queue( request, name );
+  }
+
+  private Queue queue( final LocalRequest request, final String name ) {
+    final Queue queue = queues.get( request.getAccount( ).getId( ) + "/" + name );
+    if ( queue == null ) {
+      throw new LocalFault( 400, NON_EXISTENT_QUEUE, "The specified queue does not exist." );
+    }
+    return queue;
+  }
+
+  private String url( final Queue queue ) {
+    return endpoint + "/" + queue.accountId + "/" + queue.name;
+  }
+
+  private static Map<String,String> attributes( final LocalRequest request, final String prefix ) {
+    final Map<String,String> attributes = new LinkedHashMap<>( );
+    for ( int i = 1; request.has( prefix + "." + i + ".Name" ); i++ ) {
+      attributes.put( request.param( prefix + "." + i + ".Name" ), request.param( prefix + "." + i + ".Value", "" ) );
+    }
+    return attributes;
+  }
+
+  private static String md5( final String text ) {
+    return BinaryUtils.toHex( Md5Utils.computeMD5Hash( text.getBytes( StandardCharsets.UTF_8 ) ) );
+  }
+
+  /**
+   * MD5 of message attributes, encoded as SQS does and the SDK verifies.
+   */
+  private static String md5( final Map<String,AttributeValue> attributes ) {
+    if ( attributes.isEmpty( ) ) return null;
+    final ByteArrayOutputStream encoded = new ByteArrayOutputStream( );
+    attributes.forEach( ( name, value ) -> {
+      lengthPrefixed( encoded, name.getBytes( StandardCharsets.UTF_8 ) );
+      lengthPrefixed( encoded, value.dataType.getBytes( StandardCharsets.UTF_8 ) );
+      if ( value.binary != null ) {
+        encoded.write( 2 );
+        lengthPrefixed( encoded, value.binary );
+      } else {
+        encoded.write( 1 );
+        lengthPrefixed( encoded, value.string == null ? new byte[0] : value.string.getBytes( StandardCharsets.UTF_8 ) );
+      }
+    } );
+    return BinaryUtils.toHex( Md5Utils.computeMD5Hash( encoded.toByteArray( ) ) );
+  }
+
+  private static void lengthPrefixed( final ByteArrayOutputStream out, final byte[] bytes ) {
+    out.write( ByteBuffer.allocate( 4 ).putInt( bytes.length ).array( ), 0, 4 );
+    out.write( bytes, 0, bytes.length );
+  }
+
+  private static final class Queue {
+    private final String accountId;
+    private final String name;
+    private final long created = System.currentTimeMillis( );
+    private final Map<String,String> attributes = new ConcurrentHashMap<>( );
+    private final List<Message> messages = new LinkedList<>( );
+
+    private Queue( final String accountId, final String name ) {
+      this.accountId = accountId;
+      this.name = name;
+    }
+  }
+
+  private static final class Message {
+    private final String id = UUID.randomUUID( ).toString( );
+    private final String body;
+    private final String md5;
+    private final Map<String,AttributeValue> attributes;
+    private final String attributesMd5;
+    private final long sent = System.currentTimeMillis( );
+    private long visibleAt;
+    private int receiveCount;
+    private String receiptHandle;
+
+    private Message( final String body, final Map<String,AttributeValue> attributes, final long visibleAt ) {
+      this.body = body;
+      this.md5 = md5( body );
+      this.attributes = attributes;
+      this.attributesMd5 = md5( attributes );
+      this.visibleAt = visibleAt;
+    }
+  }
+
+  private static final class AttributeValue {
+    private final String dataType;
+    private final String string;
+    private final byte[] binary;
+
+    private AttributeValue( final String dataType, final String string, final byte[] binary ) {
+      this.dataType = dataType;
+      this.string = string;
+      this.binary = binary;
+    }
+  }
+}
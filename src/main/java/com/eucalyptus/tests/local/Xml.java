@@ -0,0 +1,77 @@
+package com.eucalyptus.tests.local;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.TimeZone;
+
+/**
+ * Minimal builder for service response documents.
+ */
+final class Xml {
+
+  private final StringBuilder xml = new StringBuilder( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" );
+  private final Deque<String> elements = new ArrayDeque<>( );
+
+  Xml start( final String name ) {
+    return start( name, null );
+  }
+
+  Xml start( final String name, final String namespace ) {
+    xml.append( '<' ).append( name );
+    if ( namespace != null ) {
+      xml.append( " xmlns=\"" ).append( escape( namespace ) ).append( '"' );
+    }
+    xml.append( '>' );
+    elements.push( name );
+    return this;
+  }
+
+  /**
+   * Add an element with text content, null values are omitted.
+   */
+  Xml value( final String name, final Object value ) {
+    if ( value != null ) {
+      xml.append( '<' ).append( name ).append( '>' )
+          .append( escape( value instanceof Date ? timestamp( (Date) value ) : String.valueOf( value ) ) )
+          .append( "</" ).append( name ).append( '>' );
+    }
+    return this;
+  }
+
+  Xml end( ) {
+    xml.append( "</" ).append( elements.pop( ) ).append( '>' );
+    return this;
+  }
+
+  /**
+   * Close any open elements and return the document.
+   */
+  byte[] bytes( ) {
+    while ( !elements.isEmpty( ) ) end( );
+    return xml.toString( ).getBytes( StandardCharsets.UTF_8 );
+  }
+
+  static String timestamp( final Date date ) {
+    final SimpleDateFormat format = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'" );
+    format.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+    return format.format( date );
+  }
+
+  static String escape( final String text ) {
+    final StringBuilder escaped = new StringBuilder( text.length( ) );
+    for ( final char c : text.toCharArray( ) ) {
+      switch ( c ) {
+        case '<': escaped.append( "&lt;" ); break;
+        case '>': escaped.append( "&gt;" ); break;
+        case '&': escaped.append( "&amp;" ); break;
+        case '"': escaped.append( "&quot;" ); break;
+        case '\r': escaped.append( "&#13;" ); break;
+        default: escaped.append( c );
+      }
+    }
+    return escaped.toString( );
+  }
+}
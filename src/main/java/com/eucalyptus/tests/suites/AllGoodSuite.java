@@ -1,13 +1,13 @@
 package com.eucalyptus.tests.suites;
 
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import com.eucalyptus.tests.awssdk.ParallelSuite;
 
 /**
  * Tests that take too long for the short suite
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @SuiteClasses({
     InitializationSuite.class,
     AutoScalingFullSuite.class,
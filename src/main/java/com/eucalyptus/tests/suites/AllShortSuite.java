@@ -1,13 +1,13 @@
 package com.eucalyptus.tests.suites;
 
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import com.eucalyptus.tests.awssdk.ParallelSuite;
 
 /**
  * Quick tests that should be run before merging.
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @SuiteClasses({
     InitializationSuite.class,
     AutoScalingShortSuite.class,
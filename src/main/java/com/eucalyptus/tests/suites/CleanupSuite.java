@@ -1,12 +1,17 @@
 package com.eucalyptus.tests.suites;
 
 import org.junit.runner.RunWith;
-import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import com.eucalyptus.tests.awssdk.Ec2CleanupTest;
+import com.eucalyptus.tests.awssdk.ParallelSuite;
 import com.eucalyptus.tests.awssdk.S3CleanupTest;
+import com.eucalyptus.tests.awssdk.TestResources;
 
-@RunWith(Suite.class)
+/**
+ * Cleanup for ec2 and s3 resources, which run concurrently.
+ */
+@RunWith(ParallelSuite.class)
+@TestResources
 @SuiteClasses({
     Ec2CleanupTest.class,
     S3CleanupTest.class,
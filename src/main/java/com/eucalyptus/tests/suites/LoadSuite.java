@@ -7,6 +7,7 @@ import com.eucalyptus.tests.load.EbsInstanceChurnLoadTest;
 import com.eucalyptus.tests.load.InstanceChurnLoadTest;
 import com.eucalyptus.tests.load.LoadBalancerChurnLoadTest;
 import com.eucalyptus.tests.load.ObjectChurnLoadTest;
+import com.eucalyptus.tests.load.QueueChurnLoadTest;
 import com.eucalyptus.tests.load.StackChurnLoadTest;
 
 @RunWith(Suite.class)
@@ -19,6 +20,7 @@ import com.eucalyptus.tests.load.StackChurnLoadTest;
     InstanceChurnLoadTest.class,
     LoadBalancerChurnLoadTest.class,
     ObjectChurnLoadTest.class,
+    QueueChurnLoadTest.class,
     StackChurnLoadTest.class,
     EbsInstanceChurnLoadTest.class,
 })
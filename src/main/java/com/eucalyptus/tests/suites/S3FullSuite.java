@@ -3,6 +3,7 @@ package com.eucalyptus.tests.suites;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import com.eucalyptus.tests.awssdk.TestResources;
 import com.eucalyptus.tests.awssdk.S3BucketPolicyTests;
 import com.eucalyptus.tests.awssdk.S3CopyObjectTests;
 import com.eucalyptus.tests.awssdk.S3CorsTests;
@@ -12,6 +13,7 @@ import com.eucalyptus.tests.awssdk.S3ObjectLifecycleTests;
 import com.eucalyptus.tests.awssdk.S3SignatureTests;
 
 @RunWith(Suite.class)
+@TestResources
 @SuiteClasses({
     // suites
     S3ShortSuite.class,
@@ -6,6 +6,7 @@ import org.junit.runners.Suite.SuiteClasses;
 import com.eucalyptus.tests.awssdk.*;
 
 @RunWith(Suite.class)
+@TestResources
 @SuiteClasses({
     S3BucketACLTests.class,
     S3BucketTests.class,
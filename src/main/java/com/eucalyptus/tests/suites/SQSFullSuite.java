@@ -3,6 +3,7 @@ package com.eucalyptus.tests.suites;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import com.eucalyptus.tests.awssdk.TestResources;
 import com.eucalyptus.tests.awssdk.TestSQSAnonymousAccess;
 import com.eucalyptus.tests.awssdk.TestSQSAttributeValuesInMessages;
 import com.eucalyptus.tests.awssdk.TestSQSChangeMessageVisibilityBatch;
@@ -30,6 +31,7 @@ import com.eucalyptus.tests.awssdk.TestSQSVisibilityTimeout;
  *
  */
 @RunWith(Suite.class)
+@TestResources
 @SuiteClasses({
     // suites
     SQSShortSuite.class,
@@ -3,6 +3,7 @@ package com.eucalyptus.tests.suites;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import com.eucalyptus.tests.awssdk.TestResources;
 import com.eucalyptus.tests.awssdk.TestSQSAdminFunctions;
 import com.eucalyptus.tests.awssdk.TestSQSAttributes;
 import com.eucalyptus.tests.awssdk.TestSQSChangeMessageVisibility;
@@ -16,6 +17,7 @@ import com.eucalyptus.tests.awssdk.TestSQSSendMessageBatch;
 import com.eucalyptus.tests.awssdk.TestSQSSenderId;
 
 @RunWith(Suite.class)
+@TestResources
 @SuiteClasses({
     TestSQSAdminFunctions.class,
     TestSQSAttributes.class,